@@ -1,44 +1,259 @@
-package splat;
-
-import java.io.File;
-import java.io.IOException;
-import java.util.List;
-
-import splat.executor.Executor;
-import splat.lexer.Lexer;
-import splat.lexer.Token;
-import splat.parser.ParseException;
-import splat.parser.Parser;
-import splat.parser.elements.ProgramAST;
-import splat.semanticanalyzer.SemanticAnalysisException;
-import splat.semanticanalyzer.SemanticAnalyzer;
-
-public class Splat {
-
-	private File progFile;
-
-	public Splat(File progFile) {
-		this.progFile = progFile;
-	}
-
-	public void processFileAndExecute() throws SplatException, IOException {
-
-		// Step 1.  Tokenize
-		Lexer lexer = new Lexer(progFile);
-		List<Token> tokens = lexer.tokenize();
-
-		// Step 2.  Parse
-		Parser parser = new Parser(tokens);
-		ProgramAST progAST = parser.parse();
-
-		// Step 3.  Semantic Analysis
-		SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
-		analyzer.analyze();
-
-		// Step 4.  Executor
-		 Executor executor = new Executor(progAST);
-		 executor.runProgram();
-
-		// THE END!
-	}
-}
+package splat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import splat.cache.AstCache;
+import splat.executor.Executor;
+import splat.lexer.Lexer;
+import splat.lexer.TokenSource;
+import splat.lexer.TokenStream;
+import splat.parser.ParallelParser;
+import splat.parser.ParseException;
+import splat.parser.Parser;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.FunctionLoadException;
+import splat.semanticanalyzer.SemanticAnalysisException;
+import splat.semanticanalyzer.SemanticAnalyzer;
+import splat.closure.ClosureCompiler;
+import splat.jit.JitCompiler;
+import splat.jit.JitProgram;
+import splat.opt.Inliner;
+import splat.opt.PassManager;
+import splat.tiered.TieredCompiler;
+import splat.vm.BytecodeCompiler;
+import splat.vm.VirtualMachine;
+
+public class Splat {
+
+	// Exactly one of these is set: the program is either read from a file
+	// on every run, or was handed over in memory
+	private File progFile;
+	private ByteBuffer source;
+	private SplatOptions options;
+
+	public Splat(File progFile) {
+		this(progFile, new SplatOptions());
+	}
+
+	public Splat(File progFile, SplatOptions options) {
+		this.progFile = progFile;
+		this.options = options;
+	}
+
+	/**
+	 * Runs the program held between the buffer's position and its limit,
+	 * as UTF-8 text, without going through a file.
+	 */
+	public Splat(ByteBuffer source, SplatOptions options) {
+		this.source = source.slice();
+		this.options = options;
+	}
+
+	public Splat(byte[] source, SplatOptions options) {
+		this(ByteBuffer.wrap(source), options);
+	}
+
+	public Splat(CharSequence source, SplatOptions options) {
+		this(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)), options);
+	}
+
+	/**
+	 * Reads the whole program from the stream, without closing it.
+	 */
+	public Splat(InputStream source, SplatOptions options) throws IOException {
+		this(source.readAllBytes(), options);
+	}
+
+	/**
+	 * Runs a program from the command line:
+	 *
+	 *     java splat.Splat [options] program.splat
+	 */
+	public static void main(String[] args) throws IOException {
+		SplatOptions options = new SplatOptions();
+		int fileArg;
+		try {
+			fileArg = options.parseFlags(args);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		if (fileArg != args.length - 1) {
+			System.err.println("Usage: java splat.Splat [options] program.splat");
+			System.err.println(SplatOptions.usage());
+			System.exit(2);
+		}
+
+		try {
+			new Splat(new File(args[fileArg]), options).processFileAndExecute();
+		} catch (SplatException ex) {
+			System.out.flush();
+			System.err.println(ex.getClass().getSimpleName() + ": " + ex);
+			System.exit(1);
+		}
+	}
+
+	public void processFileAndExecute() throws SplatException, IOException {
+
+		// Step 1.  Tokenize
+		Lexer lexer = progFile != null ? new Lexer(progFile) : new Lexer(source);
+
+		// Run between analysis and execution, and on each function parsed
+		// lazily as it is loaded
+		Inliner inliner = new Inliner();
+		inliner.setBudget(options.getInlineBudget());
+		if (options.isInlineReport()) {
+			inliner.setLog(System.err);
+		}
+		PassManager passes = PassManager.forLevel(options.getOptimizationLevel(), inliner);
+		passes.setVerifying(options.isVerifyPasses());
+
+		// A program that was analyzed before can skip steps 2 and 3
+		AstCache cache = null;
+		String cacheKey = null;
+		ProgramAST progAST = null;
+		if (options.getCacheDir() != null) {
+			cache = new AstCache(options.getCacheDir(), options.getCacheMaxBytes());
+			cacheKey = AstCache.key(lexer.getSource());
+			progAST = cache.load(cacheKey);
+		}
+
+		if (progAST == null) {
+
+			// Step 2.  Parse
+			Parser lazyParser = null;
+			if (options.isLazyFunctions()) {
+				TokenStream tokens = options.isParallelLexing() ? lexer.tokenizeParallel() : lexer.tokenize();
+				lazyParser = new Parser(tokens);
+				lazyParser.setLazyFunctions(true);
+				progAST = lazyParser.parse();
+			} else if (options.isParallelParsing()) {
+				TokenStream tokens = options.isParallelLexing() ? lexer.tokenizeParallel() : lexer.tokenize();
+				progAST = new ParallelParser(tokens).parse();
+			} else if (options.isParallelLexing()) {
+				progAST = new Parser(lexer.tokenizeParallel()).parse();
+			} else {
+				progAST = parseStreaming(lexer);
+			}
+
+			// Step 3.  Semantic Analysis
+			SemanticAnalyzer analyzer = new SemanticAnalyzer(progAST);
+			analyzer.analyze();
+
+			if (lazyParser != null) {
+				deferFunctionBodies(progAST, lazyParser, analyzer, passes);
+			} else if (cache != null) {
+				// Only a fully analyzed program is cached
+				cache.store(cacheKey, progAST);
+			}
+		}
+
+		// The cache holds the program as analyzed, so it is optimized after
+		// being stored or loaded
+		passes.run(progAST);
+		if (options.isPassReport()) {
+			passes.printReport(System.err);
+		}
+
+		// Step 4.  Executor
+		try {
+			JitProgram jitProgram = null;
+			if (options.getEngine() == SplatOptions.Engine.JIT) {
+				// Null if the program is too large to compile, and then it
+				// runs on the Executor
+				jitProgram = JitCompiler.compile(progAST);
+			}
+
+			if (jitProgram != null) {
+				jitProgram.runProgram();
+			} else if (options.getEngine() == SplatOptions.Engine.CLOSURE) {
+				ClosureCompiler.compile(progAST).runProgram();
+			} else if (options.getEngine() == SplatOptions.Engine.VM) {
+				new VirtualMachine(BytecodeCompiler.compile(progAST)).runProgram();
+			} else if (options.getEngine() == SplatOptions.Engine.TIERED) {
+				runTiered(progAST);
+			} else {
+				Executor executor = new Executor(progAST);
+				executor.setChecked(options.isCheckedExecution());
+				executor.runProgram();
+			}
+		} catch (FunctionLoadException ex) {
+			// Found in the body of a function parsed lazily, on its first call
+			throw ex.getError();
+		}
+
+		// THE END!
+	}
+
+	/**
+	 * Runs the program on the Executor, with hot functions compiled in the
+	 * background.
+	 */
+	private void runTiered(ProgramAST progAST) throws SplatException {
+		TieredCompiler tiers = new TieredCompiler(progAST);
+		tiers.setTier(options.getTierUpEngine() == SplatOptions.Engine.CLOSURE
+				? TieredCompiler.Tier.CLOSURE : TieredCompiler.Tier.JIT);
+		tiers.setCallThreshold(options.getTierCallThreshold());
+		tiers.setLoopThreshold(options.getTierLoopThreshold());
+		tiers.setOsrThreshold(options.getTierOsrThreshold());
+		if (options.isCompileLog()) {
+			tiers.setLog(System.err);
+		}
+
+		Executor executor = new Executor(progAST);
+		executor.setProfiler(tiers);
+		try {
+			executor.runProgram();
+		} finally {
+			tiers.shutdown();
+		}
+	}
+
+	/**
+	 * Makes each function that was parsed lazily parse and analyze its
+	 * body the first time it is called, and run the optimization passes
+	 * over it.
+	 */
+	private static void deferFunctionBodies(ProgramAST progAST, Parser parser, SemanticAnalyzer analyzer,
+											PassManager passes) {
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && !((FunctionDecl) decl).isBodyParsed()) {
+				((FunctionDecl) decl).setBodyLoader(funcDecl -> {
+					// The tiered engine's compiler may load functions from
+					// its own thread, and there is only one parser
+					synchronized (parser) {
+						parser.parseFunctionBody(funcDecl);
+						analyzer.analyzeFuncDecl(funcDecl);
+						passes.run(funcDecl);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Parses while lexing, one token at a time as the parser pulls them.
+	 */
+	private static ProgramAST parseStreaming(Lexer lexer) throws SplatException {
+		TokenSource tokens = lexer.tokenSource();
+		ProgramAST progAST;
+		try {
+			progAST = new Parser(tokens).parse();
+		} catch (ParseException ex) {
+			// A lexical error anywhere in the file wins over a parse error
+			tokens.finish();
+			throw ex;
+		}
+		tokens.finish();
+		return progAST;
+	}
+}
@@ -0,0 +1,985 @@
+package splat;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+
+import splat.cache.AstCodec;
+import splat.closure.ClosureCompiler;
+import splat.closure.ClosureProgram;
+import splat.executor.Executor;
+import splat.jit.JitCompiler;
+import splat.jit.JitProgram;
+import splat.lexer.Lexer;
+import splat.lexer.TokenStream;
+import splat.opt.Inliner;
+import splat.opt.PassManager;
+import splat.parser.ParallelParser;
+import splat.parser.Parser;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.statements.AssignmentStatement;
+import splat.parser.elements.statements.Statement;
+import splat.semanticanalyzer.SemanticAnalyzer;
+import splat.vm.BytecodeCompiler;
+import splat.vm.VirtualMachine;
+
+public class SplatBenchmark {
+
+	// Number of timed runs per measurement; the fastest one is reported
+	private final int runs = 5;
+
+	public static void main(String[] args) throws Exception {
+
+		SplatBenchmark benchmark = new SplatBenchmark();
+		String which = args.length > 0 ? args[0] : "all";
+
+		// Every check runs, even after one has failed
+		boolean passed = true;
+
+		if (which.equals("all") || which.equals("parse-scaling")) {
+			passed &= benchmark.parseScaling();
+		}
+		if (which.equals("all") || which.equals("parallel-lex")) {
+			passed &= benchmark.parallelLexing();
+		}
+		if (which.equals("all") || which.equals("expressions")) {
+			passed &= benchmark.expressionShapes();
+		}
+		if (which.equals("all") || which.equals("parallel-parse")) {
+			passed &= benchmark.parallelParsing();
+		}
+		if (which.equals("all") || which.equals("checked")) {
+			passed &= benchmark.checkedExecution();
+		}
+		if (which.equals("all") || which.equals("calls")) {
+			passed &= benchmark.callHeavy();
+		}
+		if (which.equals("all") || which.equals("engines")) {
+			passed &= benchmark.engines();
+		}
+		if (which.equals("all") || which.equals("inlining")) {
+			passed &= benchmark.inlining();
+		}
+		if (which.equals("all") || which.equals("loop-invariants")) {
+			passed &= benchmark.loopInvariants();
+		}
+
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Lexes and parses generated programs of growing size, and checks that
+	 * the time spent per token stays flat, i.e. that the front end is
+	 * linear in the number of tokens.
+	 */
+	public boolean parseScaling() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("PARSE SCALING");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%10s %12s %12s", "tokens", "millis", "ns/token"));
+
+		int[] statementCounts = {12_500, 25_000, 50_000, 100_000, 200_000};
+
+		// Warm up the JIT so the smallest input isn't measured cold
+		byte[] warmUpProgram = generateStatements(statementCounts[0]).getBytes();
+		for (int run = 0; run < 4 * runs; run++) {
+			new Parser(new Lexer(warmUpProgram).tokenize()).parse();
+		}
+
+		double firstNsPerToken = 0;
+		double lastNsPerToken = 0;
+
+		for (int i = 0; i < statementCounts.length; i++) {
+			byte[] program = generateStatements(statementCounts[i]).getBytes();
+
+			int tokenCount = 0;
+			long best = Long.MAX_VALUE;
+			for (int run = 0; run < runs; run++) {
+				long start = System.nanoTime();
+				TokenStream tokens = new Lexer(program).tokenize();
+				new Parser(tokens).parse();
+				best = Math.min(best, System.nanoTime() - start);
+				tokenCount = tokens.size();
+			}
+
+			double nsPerToken = (double) best / tokenCount;
+			if (i == 0) {
+				firstNsPerToken = nsPerToken;
+			}
+			lastNsPerToken = nsPerToken;
+
+			System.out.println(String.format("%10d %12.1f %12.1f", tokenCount, best / 1e6, nsPerToken));
+		}
+
+		// Quadratic behaviour would make the largest input 16x slower per
+		// token than the smallest one; allow some noise for linear growth
+		boolean linear = lastNsPerToken < 2.5 * firstNsPerToken;
+		System.out.println("Parse time grows linearly with token count: " + (linear ? "passed" : "FAILED"));
+		return linear;
+	}
+
+	/**
+	 * Compares the single-threaded lexer with tokenizeParallel() on
+	 * generated files of 10MB and up, and checks that both produce the
+	 * same tokens.
+	 */
+	public boolean parallelLexing() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("PARALLEL LEXING (" + Runtime.getRuntime().availableProcessors() + " cpus)");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%10s %12s %12s %12s %9s", "MB", "tokens", "serial ms", "parallel ms", "speedup"));
+
+		boolean same = true;
+		for (int megabytes : new int[]{10, 20}) {
+			// generated statements average about 40 bytes
+			File progFile = writeTempProgram(generateStatements(megabytes * 1024 * 1024 / 40));
+
+			TokenStream serial = null;
+			TokenStream parallel = null;
+			long bestSerial = Long.MAX_VALUE;
+			long bestParallel = Long.MAX_VALUE;
+			for (int run = 0; run < runs; run++) {
+				serial = null;
+				parallel = null;
+
+				long start = System.nanoTime();
+				serial = new Lexer(progFile).tokenize();
+				bestSerial = Math.min(bestSerial, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				parallel = new Lexer(progFile).tokenizeParallel();
+				bestParallel = Math.min(bestParallel, System.nanoTime() - start);
+			}
+
+			same &= sameTokens(serial, parallel);
+			System.out.println(String.format("%10.1f %12d %12.1f %12.1f %8.2fx", progFile.length() / (1024.0 * 1024.0),
+					serial.size(), bestSerial / 1e6, bestParallel / 1e6, (double) bestSerial / bestParallel));
+			progFile.delete();
+		}
+
+		System.out.println("Parallel lexing produces the same tokens: " + (same ? "passed" : "FAILED"));
+		return same;
+	}
+
+	/**
+	 * Parses single expressions that are very deeply nested or very wide,
+	 * and checks that even the deepest ones parse without running out of
+	 * Java stack.
+	 */
+	public boolean expressionShapes() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("EXPRESSION SHAPES");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%-14s %10s %10s %12s %12s", "shape", "size", "tokens", "millis", "ns/token"));
+
+		String[] shapes = {"deep-left", "deep-right", "deep-unary", "wide-balanced", "wide-call"};
+		int[] sizes = {1_000, 10_000, 100_000};
+
+		// Warm up on the smallest size of every shape
+		for (String shape : shapes) {
+			byte[] program = generateExpression(shape, sizes[0]).getBytes();
+			for (int run = 0; run < 4 * runs; run++) {
+				new Parser(new Lexer(program).tokenize()).parse();
+			}
+		}
+
+		boolean parsed = true;
+		for (String shape : shapes) {
+			for (int size : sizes) {
+				byte[] program = generateExpression(shape, size).getBytes();
+
+				int tokenCount = 0;
+				long best = Long.MAX_VALUE;
+				try {
+					for (int run = 0; run < runs; run++) {
+						long start = System.nanoTime();
+						TokenStream tokens = new Lexer(program).tokenize();
+						new Parser(tokens).parse();
+						best = Math.min(best, System.nanoTime() - start);
+						tokenCount = tokens.size();
+					}
+				} catch (StackOverflowError err) {
+					System.out.println(String.format("%-14s %10d %10s", shape, size, "stack overflow"));
+					parsed = false;
+					continue;
+				}
+
+				System.out.println(String.format("%-14s %10d %10d %12.1f %12.1f", shape, size, tokenCount,
+						best / 1e6, (double) best / tokenCount));
+			}
+		}
+
+		System.out.println("Deep expressions parse without stack overflow: " + (parsed ? "passed" : "FAILED"));
+		return parsed;
+	}
+
+	/**
+	 * Compares Parser with ParallelParser on generated programs made of
+	 * many functions, and checks that both produce the same tree.
+	 */
+	public boolean parallelParsing() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("PARALLEL PARSING (" + Runtime.getRuntime().availableProcessors() + " cpus)");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%10s %12s %12s %12s %9s", "functions", "tokens", "serial ms", "parallel ms", "speedup"));
+
+		boolean same = true;
+		for (int functionCount : new int[]{2_000, 20_000}) {
+			TokenStream tokens = new Lexer(generateFunctions(functionCount)).tokenize();
+
+			ProgramAST serial = null;
+			ProgramAST parallel = null;
+			long bestSerial = Long.MAX_VALUE;
+			long bestParallel = Long.MAX_VALUE;
+			for (int run = 0; run < runs; run++) {
+				long start = System.nanoTime();
+				serial = new Parser(tokens).parse();
+				bestSerial = Math.min(bestSerial, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				parallel = new ParallelParser(tokens).parse();
+				bestParallel = Math.min(bestParallel, System.nanoTime() - start);
+			}
+
+			same &= Arrays.equals(encode(serial), encode(parallel));
+			System.out.println(String.format("%10d %12d %12.1f %12.1f %8.2fx", functionCount, tokens.size(),
+					bestSerial / 1e6, bestParallel / 1e6, (double) bestSerial / bestParallel));
+		}
+
+		System.out.println("Parallel parsing produces the same tree: " + (same ? "passed" : "FAILED"));
+		return same;
+	}
+
+	/**
+	 * Runs arithmetic-heavy loops, in the program body and inside a
+	 * function, with and without the executor re-checking types at run
+	 * time, and checks that both modes print the same results.
+	 */
+	public boolean checkedExecution() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("CHECKED EXECUTION");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%-10s %12s %12s %14s %9s", "loop in", "iterations", "checked ms", "unchecked ms", "speedup"));
+
+		boolean same = true;
+		for (boolean inFunction : new boolean[]{false, true}) {
+			for (int iterations : new int[]{100_000, 1_000_000}) {
+				ProgramAST progAST = new Parser(new Lexer(generateArithmeticLoop(inFunction, iterations)).tokenize()).parse();
+				new SemanticAnalyzer(progAST).analyze();
+
+				String checkedOutput = null;
+				String uncheckedOutput = null;
+				long bestChecked = Long.MAX_VALUE;
+				long bestUnchecked = Long.MAX_VALUE;
+				for (int run = 0; run < runs; run++) {
+					long start = System.nanoTime();
+					checkedOutput = execute(progAST, true);
+					bestChecked = Math.min(bestChecked, System.nanoTime() - start);
+
+					start = System.nanoTime();
+					uncheckedOutput = execute(progAST, false);
+					bestUnchecked = Math.min(bestUnchecked, System.nanoTime() - start);
+				}
+
+				same &= checkedOutput.equals(uncheckedOutput);
+				System.out.println(String.format("%-10s %12d %12.1f %14.1f %8.2fx", inFunction ? "function" : "body",
+						iterations, bestChecked / 1e6, bestUnchecked / 1e6, (double) bestChecked / bestUnchecked));
+			}
+		}
+
+		System.out.println("Checked and unchecked runs print the same: " + (same ? "passed" : "FAILED"));
+		return same;
+	}
+
+	/**
+	 * Runs programs that spend their time making function calls: naive
+	 * recursive Fibonacci, and a loop calling a void function that returns
+	 * early.  Reports the time per call.
+	 */
+	public boolean callHeavy() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("CALL-HEAVY PROGRAMS");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%-12s %12s %12s %12s", "program", "calls", "millis", "ns/call"));
+
+		// fib(n) makes 2 * fib(n + 1) - 1 calls
+		String[] names = {"fib(25)", "fib(30)", "void-loop"};
+		String[] programs = {generateFibonacci(25), generateFibonacci(30), generateVoidCalls(1_000_000)};
+		long[] callCounts = {2 * 121_393 - 1, 2 * 1_346_269 - 1, 1_000_000};
+		String[] expected = {"75025", "832040", "done"};
+
+		// Warm up the JIT so the first program isn't measured cold
+		ProgramAST warmUp = new Parser(new Lexer(generateFibonacci(20)).tokenize()).parse();
+		new SemanticAnalyzer(warmUp).analyze();
+		for (int run = 0; run < 4 * runs; run++) {
+			execute(warmUp, false);
+		}
+
+		boolean correct = true;
+		for (int i = 0; i < programs.length; i++) {
+			ProgramAST progAST = new Parser(new Lexer(programs[i]).tokenize()).parse();
+			new SemanticAnalyzer(progAST).analyze();
+
+			String output = null;
+			long best = Long.MAX_VALUE;
+			for (int run = 0; run < runs; run++) {
+				long start = System.nanoTime();
+				output = execute(progAST, false);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+
+			correct &= output.equals(expected[i]);
+			System.out.println(String.format("%-12s %12d %12.1f %12.1f", names[i], callCounts[i], best / 1e6,
+					(double) best / callCounts[i]));
+		}
+
+		System.out.println("Call-heavy programs print the expected results: " + (correct ? "passed" : "FAILED"));
+		return correct;
+	}
+
+	/**
+	 * Runs the same programs on every engine, and checks that they all
+	 * print the same.  Compiling for the VM and the JIT is done once,
+	 * outside the timed runs, as the Executor's analysis is.
+	 */
+	public boolean engines() throws Exception {
+
+		String[] engineNames = {"ast", "closure", "vm", "jit"};
+
+		System.out.println("---------------------------");
+		System.out.println("EXECUTION ENGINES");
+		System.out.println("---------------------------");
+		StringBuilder header = new StringBuilder(String.format("%-14s", "program"));
+		for (String engineName : engineNames) {
+			header.append(String.format(" %10s", engineName + " ms"));
+		}
+		System.out.println(header);
+
+		String[] names = {"loop-body", "loop-function", "fib(30)", "void-loop"};
+		String[] programs = {generateArithmeticLoop(false, 1_000_000), generateArithmeticLoop(true, 1_000_000),
+				generateFibonacci(30), generateVoidCalls(1_000_000)};
+
+		// Warm up the JIT so the first program isn't measured cold
+		ProgramAST warmUp = new Parser(new Lexer(generateFibonacci(20)).tokenize()).parse();
+		new SemanticAnalyzer(warmUp).analyze();
+		for (int run = 0; run < 4 * runs; run++) {
+			for (Run engine : compileForEngines(warmUp)) {
+				captureOutput(engine);
+			}
+		}
+
+		boolean same = true;
+		for (int i = 0; i < programs.length; i++) {
+			ProgramAST progAST = new Parser(new Lexer(programs[i]).tokenize()).parse();
+			new SemanticAnalyzer(progAST).analyze();
+			Run[] engines = compileForEngines(progAST);
+
+			String[] outputs = new String[engines.length];
+			long[] best = new long[engines.length];
+			Arrays.fill(best, Long.MAX_VALUE);
+			for (int run = 0; run < runs; run++) {
+				for (int e = 0; e < engines.length; e++) {
+					long start = System.nanoTime();
+					outputs[e] = captureOutput(engines[e]);
+					best[e] = Math.min(best[e], System.nanoTime() - start);
+				}
+			}
+
+			StringBuilder line = new StringBuilder(String.format("%-14s", names[i]));
+			for (int e = 0; e < engines.length; e++) {
+				same &= outputs[e].equals(outputs[0]);
+				line.append(String.format(" %10.1f", best[e] / 1e6));
+			}
+			System.out.println(line);
+		}
+
+		System.out.println("All engines print the same: " + (same ? "passed" : "FAILED"));
+		return same;
+	}
+
+	/**
+	 * Runs programs whose calls must be inlined in order, or not at all, at
+	 * -O0 and at -O2, and checks that every engine prints the same at both
+	 * levels, and that the inliner reports exactly the calls it was meant
+	 * to inline.
+	 */
+	public boolean inlining() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("INLINING");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%-16s %9s %12s %12s", "program", "inlined", "report ok", "-O0 == -O2"));
+
+		String[] names = {"print-order", "after-call", "early-return"};
+		String[] programs = {generatePrintingCallees(), generateCallAfterRecursion(), generateEarlyReturn()};
+		String[][] expectedReports = {
+				{"[inline] a() into the program body at line 13, column 10 (10 nodes)",
+						"[inline] b() into the program body at line 13, column 17 (10 nodes)",
+						"[inline] b() into the program body at line 14, column 10 (10 nodes)",
+						"[inline] a() into the program body at line 14, column 17 (10 nodes)"},
+				// inc(5) comes after a call to a recursive function, which
+				// may print or fail first
+				{"[inline] inc() into the program body at line 17, column 9 (10 nodes)"},
+				{"[inline] sign() into the program body at line 15, column 11 (12 nodes)"}};
+
+		boolean correct = true;
+		for (int i = 0; i < programs.length; i++) {
+			String unoptimized = runOnEngines(optimize(programs[i], 0, new Inliner()));
+
+			Inliner inliner = new Inliner();
+			ByteArrayOutputStream report = new ByteArrayOutputStream();
+			inliner.setLog(new PrintStream(report, true));
+			String output = runOnEngines(optimize(programs[i], 2, inliner));
+
+			String[] reported = report.toString().isEmpty() ? new String[0] : report.toString().split("\\R");
+			boolean reportOk = Arrays.equals(reported, expectedReports[i]);
+			boolean same = unoptimized != null && unoptimized.equals(output);
+			correct &= same && reportOk;
+			System.out.println(String.format("%-16s %9d %12s %12s", names[i], reported.length, reportOk ? "yes" : "no",
+					same ? "yes" : "no"));
+		}
+
+		System.out.println("Inlining keeps output, and reports what it inlined: " + (correct ? "passed" : "FAILED"));
+		return correct;
+	}
+
+	/**
+	 * Runs programs whose loops have invariant expressions that must not
+	 * be moved, or must not fail once moved, at -O1 and at -O2, and checks
+	 * that every engine prints the same, and stops with the same error at
+	 * the same position, at both levels.  Also checks that the expressions
+	 * that can be moved out of every loop around them are.
+	 */
+	public boolean loopInvariants() throws Exception {
+
+		System.out.println("---------------------------");
+		System.out.println("LOOP-INVARIANT CODE MOTION");
+		System.out.println("---------------------------");
+		System.out.println(String.format("%-16s %9s %9s %12s", "program", "hoisted", "expected", "-O1 == -O2"));
+
+		String[] names = {"zero-trip", "unassigned", "nested", "tail-call"};
+		String[] programs = {generateZeroTripLoops(), generateUnassignedInvariant(), generateNestedLoops(),
+				generateTailCallLoop()};
+		// The body whose top level the invariant should end up in, with null
+		// for the program body, or no hoist expected at all
+		String[] hoistedInto = {null, null, "f", "total"};
+		boolean[] hoistExpected = {true, false, true, true};
+
+		boolean correct = true;
+		for (int i = 0; i < programs.length; i++) {
+			String unoptimized = runOnEngines(optimize(programs[i], 1, new Inliner()));
+			ProgramAST optimized = optimize(programs[i], 2, new Inliner());
+			String output = runOnEngines(optimized);
+
+			List<Statement> body = optimized.getStmts();
+			for (Declaration decl : optimized.getDecls()) {
+				if (decl instanceof FunctionDecl && decl.getLabel().equals(hoistedInto[i])) {
+					body = ((FunctionDecl) decl).getStmts();
+				}
+			}
+			boolean hoisted = false;
+			for (Statement stmt : body) {
+				hoisted |= stmt instanceof AssignmentStatement
+						&& ((AssignmentStatement) stmt).getLhs().startsWith("invariant#");
+			}
+
+			boolean same = unoptimized != null && unoptimized.equals(output);
+			correct &= same && hoisted == hoistExpected[i];
+			System.out.println(String.format("%-16s %9s %9s %12s", names[i], hoisted ? "yes" : "no",
+					hoistExpected[i] ? "yes" : "no", same ? "yes" : "no"));
+		}
+
+		System.out.println("Moving loop invariants keeps output and errors: " + (correct ? "passed" : "FAILED"));
+		return correct;
+	}
+
+	/*
+	 * Parses and analyzes a program, and runs the passes of the level over
+	 * it, checking the tree after each one.
+	 */
+	private static ProgramAST optimize(String program, int level, Inliner inliner) throws Exception {
+		ProgramAST progAST = new Parser(new Lexer(program).tokenize()).parse();
+		new SemanticAnalyzer(progAST).analyze();
+		PassManager passes = PassManager.forLevel(level, inliner);
+		passes.setVerifying(true);
+		passes.run(progAST);
+		return progAST;
+	}
+
+	/*
+	 * Runs an analyzed program on every engine, and returns what it printed
+	 * followed by the error it stopped with, as Splat reports it, or null
+	 * if the engines did not all do the same.
+	 */
+	private static String runOnEngines(ProgramAST progAST) throws SplatException {
+		String first = null;
+		for (Run engine : compileForEngines(progAST)) {
+			String output = captureOutput(() -> {
+				try {
+					engine.run();
+				} catch (SplatException ex) {
+					System.out.print(ex.getClass().getSimpleName() + ": " + ex);
+				}
+			});
+			if (first == null) {
+				first = output;
+			} else if (!output.equals(first)) {
+				return null;
+			}
+		}
+		return first;
+	}
+
+	/*
+	 * The ways to run an analyzed program, in the order of the columns of
+	 * engines().
+	 */
+	private static Run[] compileForEngines(ProgramAST progAST) {
+		Executor executor = new Executor(progAST);
+		ClosureProgram closureProgram = ClosureCompiler.compile(progAST);
+		VirtualMachine vm = new VirtualMachine(BytecodeCompiler.compile(progAST));
+		JitProgram jitProgram = JitCompiler.compile(progAST);
+		return new Run[]{executor::runProgram, closureProgram::runProgram, vm::runProgram, jitProgram::runProgram};
+	}
+
+	/**
+	 * Runs an analyzed program and returns what it printed.
+	 */
+	private static String execute(ProgramAST progAST, boolean checked) throws SplatException {
+		Executor executor = new Executor(progAST);
+		executor.setChecked(checked);
+		return captureOutput(executor::runProgram);
+	}
+
+	private interface Run {
+		void run() throws SplatException;
+	}
+
+	private static String captureOutput(Run run) throws SplatException {
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out));
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			run.run();
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+		return out.toString();
+	}
+
+	private static byte[] encode(ProgramAST progAST) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AstCodec.write(progAST, out);
+		return out.toByteArray();
+	}
+
+	private static boolean sameTokens(TokenStream a, TokenStream b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (a.kind(i) != b.kind(i) || a.offset(i) != b.offset(i) || a.length(i) != b.length(i)
+					|| a.line(i) != b.line(i) || a.column(i) != b.column(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Generates a program whose body has the given number of statements,
+	 * mixing assignments, conditionals and loops.
+	 */
+	static String generateStatements(int statementCount) {
+		StringBuilder prog = new StringBuilder();
+		prog.append("program\n");
+		prog.append("  x : Integer;\n");
+		prog.append("  y : Integer;\n");
+		prog.append("  b : Boolean;\n");
+		prog.append("begin\n");
+		for (int i = 0; i < statementCount; i++) {
+			switch (i % 4) {
+				case 0:
+					prog.append("  x := ((x + ").append(i).append(") * (y - 2));\n");
+					break;
+				case 1:
+					prog.append("  b := ((x < y) and (not b));\n");
+					break;
+				case 2:
+					prog.append("  if b then y := (y % 7); else y := (-y); end if;\n");
+					break;
+				default:
+					prog.append("  while (y > 100) do y := (y / 2); end while;\n");
+			}
+		}
+		prog.append("end;\n");
+		return prog.toString();
+	}
+
+	/**
+	 * Generates a program that declares the given number of functions,
+	 * each with parameters, locals and nested loops and conditionals, and
+	 * calls a few of them.
+	 */
+	static String generateFunctions(int functionCount) {
+		StringBuilder prog = new StringBuilder();
+		prog.append("program\n");
+		prog.append("  total : Integer;\n");
+		for (int i = 0; i < functionCount; i++) {
+			prog.append("  f").append(i).append(" (a : Integer, b : Boolean) : Integer is\n");
+			prog.append("    x : Integer;\n");
+			prog.append("  begin\n");
+			prog.append("    x := (a * ").append(i).append(");\n");
+			prog.append("    while (x > 10) do\n");
+			prog.append("      if b then x := (x / 2); else x := (x - 1); end if;\n");
+			prog.append("    end while;\n");
+			prog.append("    return x;\n");
+			prog.append("  end;\n");
+		}
+		prog.append("begin\n");
+		for (int i = 0; i < functionCount; i += functionCount / 10) {
+			prog.append("  total := (total + f").append(i).append("(100, true));\n");
+		}
+		prog.append("  print total;\n");
+		prog.append("end;\n");
+		return prog.toString();
+	}
+
+	/**
+	 * Generates a program that runs a loop of integer arithmetic and
+	 * comparisons the given number of times, either in the program body or
+	 * in a function called once, and prints the result.
+	 */
+	static String generateArithmeticLoop(boolean inFunction, int iterations) {
+		String loop = ""
+				+ "    i := 0;\n"
+				+ "    sum := 0;\n"
+				+ "    while (i < n) do\n"
+				+ "      x := ((i * 7) % 13);\n"
+				+ "      if ((x > 6) and (not (x == 9))) then\n"
+				+ "        sum := (sum + (x * x));\n"
+				+ "      else\n"
+				+ "        sum := ((sum - x) / 2);\n"
+				+ "      end if;\n"
+				+ "      i := (i + 1);\n"
+				+ "    end while;\n";
+
+		StringBuilder prog = new StringBuilder();
+		prog.append("program\n");
+		if (inFunction) {
+			prog.append("  loop (n : Integer) : Integer is\n");
+			prog.append("    i : Integer;\n");
+			prog.append("    x : Integer;\n");
+			prog.append("    sum : Integer;\n");
+			prog.append("  begin\n");
+			prog.append(loop);
+			prog.append("    return sum;\n");
+			prog.append("  end;\n");
+			prog.append("begin\n");
+			prog.append("  print loop(").append(iterations).append(");\n");
+		} else {
+			prog.append("  n : Integer;\n");
+			prog.append("  i : Integer;\n");
+			prog.append("  x : Integer;\n");
+			prog.append("  sum : Integer;\n");
+			prog.append("begin\n");
+			prog.append("  n := ").append(iterations).append(";\n");
+			prog.append(loop);
+			prog.append("  print sum;\n");
+		}
+		prog.append("end;\n");
+		return prog.toString();
+	}
+
+	/**
+	 * Generates a program that prints fib(n), computed with the naive
+	 * doubly recursive function.
+	 */
+	static String generateFibonacci(int n) {
+		return "program\n"
+				+ "  fib (n : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    if (n < 2) then\n"
+				+ "      return n;\n"
+				+ "    else\n"
+				+ "      return (fib((n - 1)) + fib((n - 2)));\n"
+				+ "    end if;\n"
+				+ "  end;\n"
+				+ "begin\n"
+				+ "  print fib(" + n + ");\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program that calls a void function the given number of
+	 * times, which returns from inside a loop on every call.
+	 */
+	static String generateVoidCalls(int calls) {
+		return "program\n"
+				+ "  i : Integer;\n"
+				+ "  step (x : Integer) : void is\n"
+				+ "    y : Integer;\n"
+				+ "  begin\n"
+				+ "    y := x;\n"
+				+ "    while true do\n"
+				+ "      if ((y % 4) == 0) then return; end if;\n"
+				+ "      y := (y + 1);\n"
+				+ "    end while;\n"
+				+ "  end;\n"
+				+ "begin\n"
+				+ "  while (i < " + calls + ") do\n"
+				+ "    step(i);\n"
+				+ "    i := (i + 1);\n"
+				+ "  end while;\n"
+				+ "  print \"done\";\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program that adds up the results of two functions that
+	 * print, in both orders, so that inlining them has to keep their output
+	 * in the order of the calls.
+	 */
+	static String generatePrintingCallees() {
+		return "program\n"
+				+ "  a (n : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    print \"a\"; print n; print_line;\n"
+				+ "    return (n * 10);\n"
+				+ "  end;\n"
+				+ "  b (n : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    print \"b\"; print n; print_line;\n"
+				+ "    return (n + 1);\n"
+				+ "  end;\n"
+				+ "begin\n"
+				+ "  print (a(1) + b(2)); print_line;\n"
+				+ "  print (b(3) - a(4)); print_line;\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program that calls a small function that prints, once
+	 * after a call to a recursive function that prints as well, and once
+	 * on its own.
+	 */
+	static String generateCallAfterRecursion() {
+		return "program\n"
+				+ "  count (n : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    print \"count \"; print n; print_line;\n"
+				+ "    if (n < 1) then\n"
+				+ "      return 0;\n"
+				+ "    end if;\n"
+				+ "    return (1 + count((n - 1)));\n"
+				+ "  end;\n"
+				+ "  inc (n : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    print \"inc \"; print n; print_line;\n"
+				+ "    return (n + 1);\n"
+				+ "  end;\n"
+				+ "begin\n"
+				+ "  print (count(2) + inc(5)); print_line;\n"
+				+ "  print inc(7); print_line;\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program that calls, in a loop, a function that returns
+	 * early from an if statement without an else, so that the rest of its
+	 * body only runs when the condition does not hold.
+	 */
+	static String generateEarlyReturn() {
+		return "program\n"
+				+ "  sign (n : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    if (n < 0) then\n"
+				+ "      print \"negative \";\n"
+				+ "      return (-1);\n"
+				+ "    end if;\n"
+				+ "    print \"non-negative \";\n"
+				+ "    return 1;\n"
+				+ "  end;\n"
+				+ "  i : Integer;\n"
+				+ "begin\n"
+				+ "  i := (-2);\n"
+				+ "  while (i < 2) do\n"
+				+ "    print sign(i); print_line;\n"
+				+ "    i := (i + 1);\n"
+				+ "  end while;\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program with a loop that never runs, holding a division
+	 * by a variable that is 0, and then a loop that does run, and fails on
+	 * that division.  Both loops also add an expression that can be moved.
+	 */
+	static String generateZeroTripLoops() {
+		return "program\n"
+				+ "  z : Integer;\n"
+				+ "  i : Integer;\n"
+				+ "  s : Integer;\n"
+				+ "begin\n"
+				+ "  while (i < 0) do\n"
+				+ "    s := (s + ((z + 1) * (100 / z)));\n"
+				+ "    i := (i + 1);\n"
+				+ "  end while;\n"
+				+ "  print s; print_line;\n"
+				+ "  while (i < 3) do\n"
+				+ "    s := (s + (z + 1));\n"
+				+ "    print s; print_line;\n"
+				+ "    print (100 / z); print_line;\n"
+				+ "    i := (i + 1);\n"
+				+ "  end while;\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program with a loop that compares a String variable in a
+	 * branch that is never taken, before anything has assigned it, and
+	 * then fails reading it after the loop.
+	 */
+	static String generateUnassignedInvariant() {
+		return "program\n"
+				+ "  str : String;\n"
+				+ "  b : Boolean;\n"
+				+ "  i : Integer;\n"
+				+ "  n : Integer;\n"
+				+ "begin\n"
+				+ "  while (i < 3) do\n"
+				+ "    if b then\n"
+				+ "      print (str == \"x\");\n"
+				+ "    end if;\n"
+				+ "    n := (n + (i * 2));\n"
+				+ "    i := (i + 1);\n"
+				+ "  end while;\n"
+				+ "  print n; print_line;\n"
+				+ "  print (str == \"x\");\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program with a function whose inner loop computes an
+	 * expression of its parameters, which can be moved out of both loops.
+	 */
+	static String generateNestedLoops() {
+		return "program\n"
+				+ "  f (n : Integer, k : Integer) : Integer is\n"
+				+ "    i : Integer;\n"
+				+ "    j : Integer;\n"
+				+ "    s : Integer;\n"
+				+ "  begin\n"
+				+ "    i := 0;\n"
+				+ "    s := 0;\n"
+				+ "    while (i < n) do\n"
+				+ "      j := 0;\n"
+				+ "      while (j < k) do\n"
+				+ "        s := ((s + ((n * k) - 3)) + j);\n"
+				+ "        j := (j + 1);\n"
+				+ "      end while;\n"
+				+ "      i := (i + 1);\n"
+				+ "    end while;\n"
+				+ "    return s;\n"
+				+ "  end;\n"
+				+ "begin\n"
+				+ "  print f(30, 20); print_line;\n"
+				+ "  print f(0, 5); print_line;\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program with a tail-recursive function, which runs as a
+	 * while true loop once its tail call is eliminated.  One of the
+	 * arguments it passes itself only reads a parameter that it passes on
+	 * unchanged, and the others read parameters that change every turn.
+	 */
+	static String generateTailCallLoop() {
+		return "program\n"
+				+ "  total (n : Integer, acc : Integer, k : Integer) : Integer is\n"
+				+ "  begin\n"
+				+ "    if (n == 0) then\n"
+				+ "      return acc;\n"
+				+ "    end if;\n"
+				+ "    return total((n - 1), ((acc + ((k * 2) + 1)) + n), k);\n"
+				+ "  end;\n"
+				+ "begin\n"
+				+ "  print total(100000, 0, 3); print_line;\n"
+				+ "  print total(0, 7, 3); print_line;\n"
+				+ "end;\n";
+	}
+
+	/**
+	 * Generates a program that assigns one expression of the given shape,
+	 * where size is the nesting depth for the deep shapes and the number
+	 * of leaves for the wide ones.
+	 */
+	static String generateExpression(String shape, int size) {
+		StringBuilder expr = new StringBuilder();
+		switch (shape) {
+			case "deep-left":
+				// ((((1 + 1) + 1) + 1) ...)
+				expr.append("(".repeat(size)).append("1");
+				for (int i = 0; i < size; i++) {
+					expr.append(" + 1)");
+				}
+				break;
+			case "deep-right":
+				// (1 + (1 + (1 + ...)))
+				expr.append("(1 + ".repeat(size)).append("1").append(")".repeat(size));
+				break;
+			case "deep-unary":
+				// (-(-(- ...)))
+				expr.append("(-".repeat(size)).append("1").append(")".repeat(size));
+				break;
+			case "wide-balanced":
+				appendBalanced(expr, size);
+				break;
+			case "wide-call":
+				// f(1, 1, 1, ...)
+				expr.append("f(1");
+				for (int i = 1; i < size; i++) {
+					expr.append(", 1");
+				}
+				expr.append(")");
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown expression shape " + shape);
+		}
+		return "program\n  x : Integer;\nbegin\n  x := " + expr + ";\nend;\n";
+	}
+
+	private static void appendBalanced(StringBuilder expr, int leaves) {
+		if (leaves == 1) {
+			expr.append("x");
+			return;
+		}
+		expr.append("(");
+		appendBalanced(expr, leaves / 2);
+		expr.append(" * ");
+		appendBalanced(expr, leaves - leaves / 2);
+		expr.append(")");
+	}
+
+	static File writeTempProgram(String program) throws IOException {
+		File progFile = File.createTempFile("splat-bench", ".splat");
+		progFile.deleteOnExit();
+		try (Writer writer = new BufferedWriter(new FileWriter(progFile))) {
+			writer.write(program);
+		}
+		return progFile;
+	}
+}
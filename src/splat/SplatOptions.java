@@ -0,0 +1,415 @@
+package splat;
+
+import java.io.File;
+
+/**
+ * Settings that select between the different ways Splat can process a
+ * program.  The defaults match a plain run of processFileAndExecute().
+ */
+public class SplatOptions {
+
+	/**
+	 * The ways a program can be run once it has been analyzed.
+	 */
+	public enum Engine {
+		// The Executor, walking the AST
+		AST,
+		// The tree of closures built by the ClosureCompiler
+		CLOSURE,
+		// The VirtualMachine, running the program compiled to bytecode
+		VM,
+		// The program compiled to a JVM class by the JitCompiler
+		JIT,
+		// The Executor, handing the functions that get hot to a faster
+		// tier as it goes
+		TIERED
+	}
+
+	private boolean parallelLexing = false;
+	private boolean parallelParsing = false;
+	private boolean lazyFunctions = false;
+	private boolean verifyAll = false;
+	private boolean checkedExecution = false;
+	private int optimizationLevel = 1;
+	private boolean verifyPasses = false;
+	private boolean passReport = false;
+	private int inlineBudget = 40;
+	private boolean inlineReport = false;
+	private Engine engine = Engine.AST;
+	private Engine tierUpEngine = Engine.JIT;
+	private long tierCallThreshold = 1000;
+	private long tierLoopThreshold = 10000;
+	private long tierOsrThreshold = 10000;
+	private boolean compileLog = false;
+	private File cacheDir = null;
+	private long cacheMaxBytes = 64L * 1024 * 1024;
+
+	/**
+	 * Describes the command-line flags understood by parseFlags().
+	 */
+	public static String usage() {
+		return "  --parallel-lex       lex the whole file up front, in parallel chunks\n"
+				+ "  --parallel-parse     parse the function declarations in parallel\n"
+				+ "  --lazy               parse and check each function only when it is first called\n"
+				+ "  --verify-all         parse and check every function before running, even with --lazy\n"
+				+ "  --checked            check the type of every value again as the program runs (ast engine only)\n"
+				+ "  -O0, -O1, -O2        how much to optimize the program before it runs (default -O1)\n"
+				+ "  --verify-passes      check the AST after every optimization pass\n"
+				+ "  --pass-report        print the time and node count of every optimization pass to stderr\n"
+				+ "  --inline-budget=N    inline functions of up to N nodes (-O2, default 40)\n"
+				+ "  --inline-report      print each call inlined to stderr\n"
+				+ "  --engine=NAME        run the program with 'ast' (the default), 'closure',\n"
+				+ "                       'vm', 'jit' or 'tiered'\n"
+				+ "  --tier-up=NAME       compile hot functions with 'jit' (the default) or 'closure'\n"
+				+ "  --tier-calls=N       compile a function after N calls (tiered engine, default 1000)\n"
+				+ "  --tier-loops=N       compile a function after N turns of a loop in it (default 10000)\n"
+				+ "  --tier-osr=N         compile a loop after N turns, and go on running it compiled\n"
+				+ "                       (default 10000)\n"
+				+ "  --compile-log        print each function compiled by the tiered engine to stderr\n"
+				+ "  --cache-dir=DIR      reuse analyzed programs stored in DIR\n"
+				+ "  --cache-size=MB      evict old entries once DIR holds more than this (default 64)";
+	}
+
+	/**
+	 * Reads the options given as command-line flags, starting at args[0],
+	 * and stops at the first argument that is not a flag.
+	 *
+	 * @return the index of the first argument that is not a flag
+	 * @throws IllegalArgumentException for an unknown flag, or a flag
+	 * 			with a missing or malformed value
+	 */
+	public int parseFlags(String[] args) {
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++) {
+			// Flags that take a value are written --flag=value
+			String flag = args[i];
+			String value = null;
+			int equals = flag.indexOf('=');
+			if (equals >= 0) {
+				value = flag.substring(equals + 1);
+				flag = flag.substring(0, equals);
+			}
+
+			switch (flag) {
+				case "--parallel-lex":
+					parallelLexing = true;
+					break;
+				case "--parallel-parse":
+					parallelParsing = true;
+					break;
+				case "--lazy":
+					lazyFunctions = true;
+					break;
+				case "--verify-all":
+					verifyAll = true;
+					break;
+				case "--checked":
+					checkedExecution = true;
+					break;
+				case "-O0":
+				case "-O1":
+				case "-O2":
+					optimizationLevel = flag.charAt(2) - '0';
+					break;
+				case "--verify-passes":
+					verifyPasses = true;
+					break;
+				case "--pass-report":
+					passReport = true;
+					break;
+				case "--inline-budget":
+					inlineBudget = (int) Math.min(requireCount(flag, value), Integer.MAX_VALUE);
+					break;
+				case "--inline-report":
+					inlineReport = true;
+					break;
+				case "--engine":
+					try {
+						engine = Engine.valueOf(requireValue(flag, value).toUpperCase());
+					} catch (IllegalArgumentException ex) {
+						throw new IllegalArgumentException("Unknown engine " + value);
+					}
+					break;
+				case "--tier-up":
+					tierUpEngine = "jit".equals(value) ? Engine.JIT
+							: "closure".equals(value) ? Engine.CLOSURE : null;
+					if (tierUpEngine == null) {
+						throw new IllegalArgumentException("Cannot tier up to " + requireValue(flag, value));
+					}
+					break;
+				case "--tier-calls":
+					tierCallThreshold = requireCount(flag, value);
+					break;
+				case "--tier-loops":
+					tierLoopThreshold = requireCount(flag, value);
+					break;
+				case "--tier-osr":
+					tierOsrThreshold = requireCount(flag, value);
+					break;
+				case "--compile-log":
+					compileLog = true;
+					break;
+				case "--cache-dir":
+					cacheDir = new File(requireValue(flag, value));
+					break;
+				case "--cache-size":
+					cacheMaxBytes = requireMegabytes(flag, value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + flag);
+			}
+		}
+		return i;
+	}
+
+	private static String requireValue(String flag, String value) {
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing value for " + flag);
+		}
+		return value;
+	}
+
+	private static long requireCount(String flag, String value) {
+		try {
+			long count = Long.parseLong(requireValue(flag, value));
+			if (count > 0) {
+				return count;
+			}
+		} catch (NumberFormatException ex) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("Expected a positive number for " + flag);
+	}
+
+	/*
+	 * A negative bound would have the cache evict every entry, including
+	 * the one it has just stored, so only 0 and up are accepted.
+	 */
+	private static long requireMegabytes(String flag, String value) {
+		try {
+			long megabytes = Long.parseLong(requireValue(flag, value));
+			if (megabytes >= 0) {
+				return megabytes > Long.MAX_VALUE >> 20 ? Long.MAX_VALUE : megabytes << 20;
+			}
+		} catch (NumberFormatException ex) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("Expected a number of megabytes for " + flag);
+	}
+
+	/**
+	 * Whether the whole file is lexed up front, in parallel chunks, instead
+	 * of one token at a time as the parser needs them.
+	 */
+	public boolean isParallelLexing() {
+		return parallelLexing;
+	}
+
+	public void setParallelLexing(boolean parallelLexing) {
+		this.parallelLexing = parallelLexing;
+	}
+
+	/**
+	 * Whether top-level declarations are parsed in parallel.  This needs
+	 * the whole file lexed up front, in parallel chunks or not.
+	 */
+	public boolean isParallelParsing() {
+		return parallelParsing;
+	}
+
+	public void setParallelParsing(boolean parallelParsing) {
+		this.parallelParsing = parallelParsing;
+	}
+
+	/**
+	 * Whether function bodies are only parsed and analyzed the first time
+	 * the function is called.  Errors in a function that is never called
+	 * then go unreported, and errors in one that is called are reported
+	 * only once the program gets there.
+	 */
+	public boolean isLazyFunctions() {
+		return lazyFunctions && !verifyAll;
+	}
+
+	public void setLazyFunctions(boolean lazyFunctions) {
+		this.lazyFunctions = lazyFunctions;
+	}
+
+	/**
+	 * Whether every function is parsed and analyzed before the program
+	 * runs, which overrides lazy functions.  Meant for CI, so that no
+	 * error can slip through to a run that happens to call the function.
+	 */
+	public boolean isVerifyAll() {
+		return verifyAll;
+	}
+
+	public void setVerifyAll(boolean verifyAll) {
+		this.verifyAll = verifyAll;
+	}
+
+	/**
+	 * Whether the executor checks the types of values again at run time,
+	 * although semantic analysis has already proved them.  Only meant for
+	 * debugging the interpreter, since it slows every operation down.
+	 */
+	public boolean isCheckedExecution() {
+		return checkedExecution;
+	}
+
+	public void setCheckedExecution(boolean checkedExecution) {
+		this.checkedExecution = checkedExecution;
+	}
+
+	/**
+	 * Which passes of the PassManager optimize the program before it
+	 * runs: none at 0, constant folding and tail calls at 1, the default,
+	 * and inlining and loop-invariant code motion as well at 2.
+	 */
+	public int getOptimizationLevel() {
+		return optimizationLevel;
+	}
+
+	public void setOptimizationLevel(int optimizationLevel) {
+		this.optimizationLevel = optimizationLevel;
+	}
+
+	/**
+	 * Whether the AST is checked after every optimization pass, to catch a
+	 * pass that breaks it.  Only meant for debugging the passes.
+	 */
+	public boolean isVerifyPasses() {
+		return verifyPasses;
+	}
+
+	public void setVerifyPasses(boolean verifyPasses) {
+		this.verifyPasses = verifyPasses;
+	}
+
+	/**
+	 * Whether what every optimization pass took and did is printed to
+	 * System.err.
+	 */
+	public boolean isPassReport() {
+		return passReport;
+	}
+
+	public void setPassReport(boolean passReport) {
+		this.passReport = passReport;
+	}
+
+	/**
+	 * The most nodes a function may have for its calls to be inlined, at
+	 * optimization level 2.
+	 */
+	public int getInlineBudget() {
+		return inlineBudget;
+	}
+
+	public void setInlineBudget(int inlineBudget) {
+		this.inlineBudget = inlineBudget;
+	}
+
+	/**
+	 * Whether each call that is inlined is printed to System.err.
+	 */
+	public boolean isInlineReport() {
+		return inlineReport;
+	}
+
+	public void setInlineReport(boolean inlineReport) {
+		this.inlineReport = inlineReport;
+	}
+
+	/**
+	 * Which engine runs the program.  Only the AST engine re-checks types,
+	 * whatever isCheckedExecution() says.
+	 */
+	public Engine getEngine() {
+		return engine;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * What the tiered engine compiles hot functions with: JIT, the
+	 * default, or CLOSURE.
+	 */
+	public Engine getTierUpEngine() {
+		return tierUpEngine;
+	}
+
+	public void setTierUpEngine(Engine tierUpEngine) {
+		this.tierUpEngine = tierUpEngine;
+	}
+
+	/**
+	 * The number of calls after which the tiered engine compiles a
+	 * function.
+	 */
+	public long getTierCallThreshold() {
+		return tierCallThreshold;
+	}
+
+	public void setTierCallThreshold(long tierCallThreshold) {
+		this.tierCallThreshold = tierCallThreshold;
+	}
+
+	/**
+	 * The number of turns of a loop in a function after which the tiered
+	 * engine compiles the function.
+	 */
+	public long getTierLoopThreshold() {
+		return tierLoopThreshold;
+	}
+
+	public void setTierLoopThreshold(long tierLoopThreshold) {
+		this.tierLoopThreshold = tierLoopThreshold;
+	}
+
+	/**
+	 * The number of turns after which the tiered engine compiles a loop,
+	 * and switches to the compiled loop in the middle of running it.
+	 */
+	public long getTierOsrThreshold() {
+		return tierOsrThreshold;
+	}
+
+	public void setTierOsrThreshold(long tierOsrThreshold) {
+		this.tierOsrThreshold = tierOsrThreshold;
+	}
+
+	/**
+	 * Whether the tiered engine prints each function it compiles, and
+	 * when, to System.err.
+	 */
+	public boolean isCompileLog() {
+		return compileLog;
+	}
+
+	public void setCompileLog(boolean compileLog) {
+		this.compileLog = compileLog;
+	}
+
+	/**
+	 * The directory where analyzed programs are cached between runs, or
+	 * null if they are not cached.
+	 */
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	public void setCacheDir(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	public long getCacheMaxBytes() {
+		return cacheMaxBytes;
+	}
+
+	public void setCacheMaxBytes(long cacheMaxBytes) {
+		this.cacheMaxBytes = cacheMaxBytes;
+	}
+}
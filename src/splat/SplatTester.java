@@ -21,9 +21,16 @@ public class  SplatTester {
 	private int[] resCodeCount;
 	private int[] falseThrows;
 
+	private SplatOptions options = new SplatOptions();
+
+	/**
+	 * Takes the same flags as Splat, e.g. --engine=vm, and runs every test
+	 * with them.
+	 */
 	public static void main(String[] args) throws Exception {
 
 		SplatTester tester = new SplatTester();
+		tester.options.parseFlags(args);
 		tester.runTests();
 	}
 
@@ -147,7 +154,7 @@ public class  SplatTester {
 		totalTestsRun++;
 		System.out.print("Test Case " + totalTestsRun + ": " + testFile.getName() + "...");
 
-		Splat splat = new Splat(testFile);
+		Splat splat = new Splat(testFile, options);
 
 		// The expected result code is determined by the .splat filename
 		int expectedResultCode = getExpectedResultCode(testFile.getName());
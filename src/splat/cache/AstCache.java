@@ -0,0 +1,164 @@
+package splat.cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import splat.parser.elements.ProgramAST;
+
+/**
+ * A directory of analyzed programs, written with AstCodec and named after
+ * a SHA-256 hash of their source, so that running the same source again
+ * can skip lexing, parsing and semantic analysis.
+ *
+ * The cache is best effort: an entry that cannot be read (including one
+ * written by another FORMAT_VERSION) is deleted and treated as a miss,
+ * and a failure to write one is ignored.  Once the entries add up to more
+ * than the size bound, the least recently used ones are evicted; a hit
+ * counts as a use by bumping the entry's modification time.
+ */
+public class AstCache {
+
+	private static final String SUFFIX = ".ast";
+
+	private final Path dir;
+	private final long maxBytes;
+
+	public AstCache(File dir, long maxBytes) {
+		this.dir = dir.toPath();
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cache key for the source held between the buffer's
+	 * position and its limit.
+	 */
+	public static String key(ByteBuffer source) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(ex);
+		}
+		digest.update(source.duplicate());
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the analyzed program stored under the key, or null if there
+	 * is none that can be used.
+	 */
+	public ProgramAST load(String key) {
+		Path entry = dir.resolve(key + SUFFIX);
+		if (!Files.isRegularFile(entry)) {
+			return null;
+		}
+
+		ProgramAST progAST;
+		try (InputStream in = Files.newInputStream(entry)) {
+			progAST = AstCodec.read(in);
+		} catch (IOException | RuntimeException ex) {
+			// Stale format or a damaged file; it gets rewritten after this run
+			delete(entry);
+			return null;
+		}
+
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException ex) {
+			// Only the eviction order suffers
+		}
+		return progAST;
+	}
+
+	/**
+	 * Stores an analyzed program under the key, and evicts old entries if
+	 * the cache has grown past its size bound.
+	 */
+	public void store(String key, ProgramAST progAST) {
+		Path entry = dir.resolve(key + SUFFIX);
+		Path temp = null;
+		try {
+			Files.createDirectories(dir);
+
+			// Write to a temporary file first, so that a concurrent run never
+			// sees a half-written entry
+			temp = Files.createTempFile(dir, key, ".tmp");
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				AstCodec.write(progAST, out);
+			}
+			try {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+
+			evict();
+		} catch (IOException ex) {
+			// A program that could not be cached still runs
+		} finally {
+			if (temp != null) {
+				delete(temp);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the ones that are left
+	 * fit in maxBytes.
+	 */
+	private void evict() throws IOException {
+		List<Path> entries = new ArrayList<>();
+		long total = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+				total += Files.size(entry);
+			}
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+
+		entries.sort(Comparator.comparing(AstCache::lastModified));
+		for (Path entry : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			long size = Files.size(entry);
+			if (delete(entry)) {
+				total -= size;
+			}
+		}
+	}
+
+	private static FileTime lastModified(Path entry) {
+		try {
+			return Files.getLastModifiedTime(entry);
+		} catch (IOException ex) {
+			// Already gone; evict it first
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static boolean delete(Path path) {
+		try {
+			return Files.deleteIfExists(path);
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,685 @@
+package splat.cache;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Writes an analyzed ProgramAST to a compact binary form and reads it back.
+ *
+ * Every node is written as a one-byte tag, its line and column, and then
+ * its fields in a fixed order, including the frame slots and sizes that
+ * semantic analysis worked out.  Calls are not written with their target;
+ * they are resolved by label once all the declarations are read.  Numbers
+ * are written as variable-length integers, and each distinct string is
+ * written once and referred to by index after that, since the same labels
+ * come up over and over.
+ *
+ * The header holds a CRC-32 of everything after it, so that a file that
+ * was cut short or damaged on disk is rejected instead of read as some
+ * other program.  The reader also checks every count against the bytes
+ * left and every slot against the frame it is in, so that it throws an
+ * IOException for malformed data rather than running out of memory or
+ * indexing out of bounds.
+ *
+ * Bump FORMAT_VERSION whenever the layout changes, or whenever the AST
+ * gains a field that has to survive the trip; files written with any
+ * other version are rejected.
+ */
+public class AstCodec {
+
+	public static final int MAGIC = 0x53504c54; // "SPLT"
+	public static final int FORMAT_VERSION = 4;
+
+	// Declarations
+	private static final int VARIABLE_DECL = 1;
+	private static final int FUNCTION_DECL = 2;
+
+	// Statements
+	private static final int ASSIGNMENT = 10;
+	private static final int IF_THEN = 11;
+	private static final int IF_THEN_ELSE = 12;
+	private static final int WHILE_LOOP = 13;
+	private static final int PRINT = 14;
+	private static final int RETURN = 15;
+	private static final int VOID_CALL = 16;
+
+	// Expressions
+	private static final int INT_LITERAL = 30;
+	private static final int BOOL_LITERAL = 31;
+	private static final int STRING_LITERAL = 32;
+	private static final int LABEL = 33;
+	private static final int CALL = 34;
+	private static final int NOT = 35;
+	private static final int NEGATIVE = 36;
+	private static final int PLUS = 40;
+	private static final int MINUS = 41;
+	private static final int MULTIPLY = 42;
+	private static final int DIVIDE = 43;
+	private static final int MODULO = 44;
+	private static final int AND = 45;
+	private static final int OR = 46;
+	private static final int LESS_THAN = 47;
+	private static final int GREATER_THAN = 48;
+	private static final int LESS_THAN_EQUAL = 49;
+	private static final int GREATER_THAN_EQUAL = 50;
+	private static final int EQUAL = 51;
+
+	// Types, with 0 standing for a type that was never set
+	private static final int NO_TYPE = 0;
+	private static final int INTEGER_TYPE = 1;
+	private static final int BOOLEAN_TYPE = 2;
+	private static final int STRING_TYPE = 3;
+	private static final int VOID_TYPE = 4;
+
+	private AstCodec() {
+	}
+
+	/**
+	 * Writes the program, after the MAGIC, FORMAT_VERSION and checksum
+	 * header.
+	 */
+	public static void write(ProgramAST progAST, OutputStream out) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		Writer writer = new Writer(new DataOutputStream(body));
+		writer.writeProgram(progAST);
+		writer.out.flush();
+
+		CRC32 crc = new CRC32();
+		crc.update(body.toByteArray());
+		DataOutputStream header = new DataOutputStream(new BufferedOutputStream(out));
+		header.writeInt(MAGIC);
+		header.writeInt(FORMAT_VERSION);
+		header.writeInt((int) crc.getValue());
+		body.writeTo(header);
+		header.flush();
+	}
+
+	/**
+	 * Reads a program written by write().
+	 *
+	 * @throws IOException if the data was written by another format
+	 * 			version, or is truncated or otherwise malformed
+	 */
+	public static ProgramAST read(InputStream in) throws IOException {
+		DataInputStream header = new DataInputStream(new BufferedInputStream(in));
+		if (header.readInt() != MAGIC) {
+			throw new IOException("Not a compiled Splat program");
+		}
+		int version = header.readInt();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Compiled with format version " + version
+					+ ", expected " + FORMAT_VERSION);
+		}
+		int checksum = header.readInt();
+		byte[] body = header.readAllBytes();
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Checksum mismatch");
+		}
+
+		// Reading from memory, available() is exactly the bytes left
+		Reader reader = new Reader(new DataInputStream(new ByteArrayInputStream(body)));
+		ProgramAST progAST = reader.readProgram();
+		if (reader.in.available() > 0) {
+			throw new IOException("Trailing data after the program");
+		}
+		return progAST;
+	}
+
+	private static class Writer {
+
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings = new HashMap<>();
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void writeProgram(ProgramAST progAST) throws IOException {
+			writePosition(progAST);
+			writeVarInt(progAST.getFrameSize());
+			writeVarInt(progAST.getDecls().size());
+			for (Declaration decl : progAST.getDecls()) {
+				writeDecl(decl);
+			}
+			writeStmts(progAST.getStmts());
+		}
+
+		void writeDecl(Declaration decl) throws IOException {
+			if (decl instanceof VariableDecl) {
+				writeVariableDecl((VariableDecl) decl);
+			} else {
+				FunctionDecl funcDecl = (FunctionDecl) decl;
+				if (!funcDecl.isBodyParsed()) {
+					throw new IOException("The body of " + funcDecl.getLabel() + "() has not been parsed");
+				}
+				out.writeByte(FUNCTION_DECL);
+				writePosition(funcDecl);
+				writeString(funcDecl.getLabel());
+				writeType(funcDecl.getReturnType());
+				writeVarInt(funcDecl.getFrameSize());
+				writeVariableDecls(funcDecl.getParams());
+				writeVariableDecls(funcDecl.getLocalVars());
+				writeStmts(funcDecl.getStmts());
+			}
+		}
+
+		void writeVariableDecls(List<Declaration> decls) throws IOException {
+			writeVarInt(decls.size());
+			for (Declaration decl : decls) {
+				writeVariableDecl((VariableDecl) decl);
+			}
+		}
+
+		void writeVariableDecl(VariableDecl decl) throws IOException {
+			out.writeByte(VARIABLE_DECL);
+			writePosition(decl);
+			writeString(decl.getLabel());
+			writeType(decl.getType());
+			writeVarInt(decl.getSlot() + 1);
+		}
+
+		void writeStmts(List<Statement> stmts) throws IOException {
+			writeVarInt(stmts.size());
+			for (Statement stmt : stmts) {
+				writeStmt(stmt);
+			}
+		}
+
+		void writeStmt(Statement stmt) throws IOException {
+			if (stmt instanceof AssignmentStatement) {
+				AssignmentStatement assignment = (AssignmentStatement) stmt;
+				writeHeader(ASSIGNMENT, stmt);
+				writeString(assignment.getLhs());
+				writeVarInt(assignment.getSlot() + 1);
+				writeExpr(assignment.getRhs());
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				writeHeader(IF_THEN_ELSE, stmt);
+				writeExpr(ifThenElse.getExpression());
+				writeStmts(ifThenElse.getThenStatements());
+				writeStmts(ifThenElse.getElseStatements());
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				writeHeader(IF_THEN, stmt);
+				writeExpr(ifThen.getExpression());
+				writeStmts(ifThen.getThenStatements());
+			} else if (stmt instanceof WhileLoopStatement) {
+				WhileLoopStatement loop = (WhileLoopStatement) stmt;
+				writeHeader(WHILE_LOOP, stmt);
+				writeExpr(loop.getExpression());
+				writeStmts(loop.getStatements());
+			} else if (stmt instanceof PrintStatement) {
+				writeHeader(PRINT, stmt);
+				writeExpr(((PrintStatement) stmt).getExpressionToPrint());
+			} else if (stmt instanceof ReturnStatement) {
+				ReturnStatement ret = (ReturnStatement) stmt;
+				writeHeader(RETURN, stmt);
+				writeString(ret.getParentLabel());
+				writeVarInt(ret.getSlot() + 1);
+				out.writeBoolean(ret.getExpression() != null);
+				if (ret.getExpression() != null) {
+					writeExpr(ret.getExpression());
+				}
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+				writeHeader(VOID_CALL, stmt);
+				writeString(call.getLabel());
+				writeExprs(call.getArguments());
+			} else {
+				throw new IOException("Cannot serialize " + stmt.getClass().getSimpleName());
+			}
+		}
+
+		void writeExprs(List<Expression> exprs) throws IOException {
+			writeVarInt(exprs.size());
+			for (Expression expr : exprs) {
+				writeExpr(expr);
+			}
+		}
+
+		void writeExpr(Expression expr) throws IOException {
+			if (expr instanceof BinaryOperatorExpression) {
+				BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+				writeHeader(binaryTag(binary), expr);
+				writeType(expr.getType());
+				writeExpr(binary.getArg1());
+				writeExpr(binary.getArg2());
+				return;
+			}
+
+			if (expr instanceof UnaryOperatorExpression) {
+				writeHeader(expr instanceof NotUnaryOperatorExpression ? NOT : NEGATIVE, expr);
+				writeType(expr.getType());
+				writeExpr(((UnaryOperatorExpression) expr).getArg1());
+				return;
+			}
+
+			if (expr instanceof IntLiteralExpression) {
+				writeHeader(INT_LITERAL, expr);
+				writeType(expr.getType());
+				writeVarInt(zigZag((Integer) ((LiteralExpression) expr).getValue()));
+			} else if (expr instanceof BoolLiteralExpression) {
+				writeHeader(BOOL_LITERAL, expr);
+				writeType(expr.getType());
+				out.writeBoolean((Boolean) ((LiteralExpression) expr).getValue());
+			} else if (expr instanceof StringLiteralExpression) {
+				writeHeader(STRING_LITERAL, expr);
+				writeType(expr.getType());
+				writeString((String) ((LiteralExpression) expr).getValue());
+			} else if (expr instanceof LabelExpression) {
+				writeHeader(LABEL, expr);
+				writeType(expr.getType());
+				writeString(((LabelExpression) expr).getLabel());
+				writeVarInt(((LabelExpression) expr).getSlot() + 1);
+			} else if (expr instanceof NonVoidFunctionCallExpression) {
+				NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+				writeHeader(CALL, expr);
+				writeType(expr.getType());
+				writeString(call.getLabel());
+				writeExprs(call.getArguments());
+			} else {
+				throw new IOException("Cannot serialize " + expr.getClass().getSimpleName());
+			}
+		}
+
+		static int binaryTag(BinaryOperatorExpression expr) throws IOException {
+			if (expr instanceof PlusBinaryOperatorExpression) return PLUS;
+			if (expr instanceof MinusBinaryOperatorExpression) return MINUS;
+			if (expr instanceof MultiplyBinaryOperatorExpression) return MULTIPLY;
+			if (expr instanceof DivideBinaryOperatorExpression) return DIVIDE;
+			if (expr instanceof ModuloBinaryOperatorExpression) return MODULO;
+			if (expr instanceof AndBinaryOperatorExpression) return AND;
+			if (expr instanceof OrBinaryOperatorExpression) return OR;
+			if (expr instanceof LessThanBinaryOperatorExpression) return LESS_THAN;
+			if (expr instanceof GreaterThanBinaryOperatorExpression) return GREATER_THAN;
+			if (expr instanceof LessThanEqualBinaryOperatorExpression) return LESS_THAN_EQUAL;
+			if (expr instanceof GreaterThanEqualBinaryOperatorExpression) return GREATER_THAN_EQUAL;
+			if (expr instanceof EqualBinaryOperatorExpression) return EQUAL;
+			throw new IOException("Cannot serialize " + expr.getClass().getSimpleName());
+		}
+
+		void writeHeader(int tag, ASTElement element) throws IOException {
+			out.writeByte(tag);
+			writePosition(element);
+		}
+
+		void writePosition(ASTElement element) throws IOException {
+			// Errors raised outside the source text use -1
+			writeVarInt(element.getLine() + 1);
+			writeVarInt(element.getColumn() + 1);
+		}
+
+		void writeType(Type type) throws IOException {
+			if (type == null) {
+				out.writeByte(NO_TYPE);
+			} else if (type == Type.Integer()) {
+				out.writeByte(INTEGER_TYPE);
+			} else if (type == Type.Boolean()) {
+				out.writeByte(BOOLEAN_TYPE);
+			} else if (type == Type.String()) {
+				out.writeByte(STRING_TYPE);
+			} else {
+				out.writeByte(VOID_TYPE);
+			}
+		}
+
+		/*
+		 * The first time a string is seen it is written out in full after a
+		 * 0; every later time only its index plus one is written.
+		 */
+		void writeString(String s) throws IOException {
+			Integer index = strings.get(s);
+			if (index != null) {
+				writeVarInt(index + 1);
+				return;
+			}
+			strings.put(s, strings.size());
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(0);
+			writeVarInt(bytes.length);
+			out.write(bytes);
+		}
+
+		void writeVarInt(int value) throws IOException {
+			while ((value & ~0x7f) != 0) {
+				out.writeByte((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+
+		static int zigZag(int value) {
+			return (value << 1) ^ (value >> 31);
+		}
+	}
+
+	private static class Reader {
+
+		private final DataInputStream in;
+		private final List<String> strings = new ArrayList<>();
+
+		// Calls seen so far, to be resolved once every function is read
+		private final List<NonVoidFunctionCallExpression> calls = new ArrayList<>();
+		private final List<VoidFunctionCallStatement> callStmts = new ArrayList<>();
+
+		// Size of the frame whose slots are being read
+		private int frameSize;
+
+		Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		ProgramAST readProgram() throws IOException {
+			Token tok = readPosition("program");
+			int progFrameSize = readVarInt();
+			int declCount = readCount();
+			List<Declaration> decls = new ArrayList<>(declCount);
+			int varCount = 0;
+			for (int i = 0; i < declCount; i++) {
+				frameSize = progFrameSize;
+				Declaration decl = readDecl();
+				if (decl instanceof VariableDecl) {
+					varCount++;
+				}
+				decls.add(decl);
+			}
+			if (progFrameSize != varCount) {
+				throw new IOException("Program frame of " + progFrameSize + " slots for " + varCount + " variables");
+			}
+			frameSize = progFrameSize;
+			ProgramAST progAST = new ProgramAST(decls, readStmts(), tok);
+			progAST.setFrameSize(progFrameSize);
+			// Only analyzed programs are ever written to the cache
+			progAST.setAnalyzed(true);
+
+			Map<String, FunctionDecl> funcMap = new HashMap<>();
+			for (Declaration decl : decls) {
+				if (decl instanceof FunctionDecl) {
+					funcMap.put(decl.getLabel(), (FunctionDecl) decl);
+				}
+			}
+			for (NonVoidFunctionCallExpression call : calls) {
+				call.setFunctionDecl(resolve(funcMap, call.getLabel()));
+			}
+			for (VoidFunctionCallStatement call : callStmts) {
+				call.setFunctionDecl(resolve(funcMap, call.getLabel()));
+			}
+			return progAST;
+		}
+
+		static FunctionDecl resolve(Map<String, FunctionDecl> funcMap, String label) throws IOException {
+			FunctionDecl funcDecl = funcMap.get(label);
+			if (funcDecl == null) {
+				throw new IOException("Call to undeclared function " + label);
+			}
+			return funcDecl;
+		}
+
+		Declaration readDecl() throws IOException {
+			int tag = in.readUnsignedByte();
+			if (tag == VARIABLE_DECL) {
+				return readVariableDeclBody();
+			}
+			if (tag != FUNCTION_DECL) {
+				throw new IOException("Unknown declaration tag " + tag);
+			}
+
+			int line = readVarInt() - 1;
+			int column = readVarInt() - 1;
+			String label = readString();
+			Type returnType = readType();
+			frameSize = readVarInt();
+			List<Declaration> params = readVariableDecls();
+			List<Declaration> localVars = readVariableDecls();
+			// The variables, then the return slot
+			if (frameSize != params.size() + localVars.size() + 1) {
+				throw new IOException("Frame of " + frameSize + " slots for the variables of " + label);
+			}
+			List<Statement> stmts = readStmts();
+			FunctionDecl funcDecl = new FunctionDecl(new Token(label, line, column), label, returnType, params, localVars, stmts);
+			funcDecl.setFrameSize(frameSize);
+			return funcDecl;
+		}
+
+		List<Declaration> readVariableDecls() throws IOException {
+			int count = readCount();
+			List<Declaration> decls = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int tag = in.readUnsignedByte();
+				if (tag != VARIABLE_DECL) {
+					throw new IOException("Expected a variable declaration, found tag " + tag);
+				}
+				decls.add(readVariableDeclBody());
+			}
+			return decls;
+		}
+
+		VariableDecl readVariableDeclBody() throws IOException {
+			int line = readVarInt() - 1;
+			int column = readVarInt() - 1;
+			String label = readString();
+			VariableDecl decl = new VariableDecl(new Token(label, line, column), label, readType());
+			decl.setSlot(readSlot());
+			return decl;
+		}
+
+		List<Statement> readStmts() throws IOException {
+			int count = readCount();
+			List<Statement> stmts = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				stmts.add(readStmt());
+			}
+			return stmts;
+		}
+
+		Statement readStmt() throws IOException {
+			int tag = in.readUnsignedByte();
+			Token tok = readPosition("stmt");
+
+			switch (tag) {
+				case ASSIGNMENT: {
+					String lhs = readString();
+					int slot = readSlot();
+					AssignmentStatement assignment = new AssignmentStatement(tok, lhs, readExpr());
+					assignment.setSlot(slot);
+					return assignment;
+				}
+				case IF_THEN_ELSE: {
+					Expression expr = readExpr();
+					List<Statement> thenStmts = readStmts();
+					return new IfThenElseStatement(tok, expr, thenStmts, readStmts());
+				}
+				case IF_THEN: {
+					Expression expr = readExpr();
+					return new IfThenStatement(tok, expr, readStmts());
+				}
+				case WHILE_LOOP: {
+					Expression expr = readExpr();
+					return new WhileLoopStatement(tok, expr, readStmts());
+				}
+				case PRINT:
+					return new PrintStatement(tok, readExpr());
+				case RETURN: {
+					String parentLabel = readString();
+					int slot = readSlot();
+					ReturnStatement ret = in.readBoolean()
+							? new ReturnStatement(tok, readExpr(), parentLabel)
+							: new ReturnStatement(tok, parentLabel);
+					ret.setSlot(slot);
+					return ret;
+				}
+				case VOID_CALL: {
+					String label = readString();
+					VoidFunctionCallStatement call = new VoidFunctionCallStatement(tok, label, readExprs());
+					callStmts.add(call);
+					return call;
+				}
+				default:
+					throw new IOException("Unknown statement tag " + tag);
+			}
+		}
+
+		List<Expression> readExprs() throws IOException {
+			int count = readCount();
+			List<Expression> exprs = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				exprs.add(readExpr());
+			}
+			return exprs;
+		}
+
+		Expression readExpr() throws IOException {
+			int tag = in.readUnsignedByte();
+			Token tok = readPosition("expr");
+			Type type = readType();
+
+			Expression expr;
+			switch (tag) {
+				case INT_LITERAL: {
+					int zigZagged = readVarInt();
+					expr = new IntLiteralExpression(tok, (zigZagged >>> 1) ^ -(zigZagged & 1));
+					break;
+				}
+				case BOOL_LITERAL:
+					expr = new BoolLiteralExpression(tok, in.readBoolean());
+					break;
+				case STRING_LITERAL:
+					expr = new StringLiteralExpression(tok, readString());
+					break;
+				case LABEL: {
+					LabelExpression labelExpr = new LabelExpression(tok, readString());
+					labelExpr.setSlot(readSlot());
+					expr = labelExpr;
+					break;
+				}
+				case CALL: {
+					String label = readString();
+					NonVoidFunctionCallExpression call = new NonVoidFunctionCallExpression(tok, label, readExprs());
+					calls.add(call);
+					expr = call;
+					break;
+				}
+				case NOT:
+					expr = new NotUnaryOperatorExpression(tok, readExpr());
+					break;
+				case NEGATIVE:
+					expr = new NegativeUnaryOperatorExpression(tok, readExpr());
+					break;
+				default:
+					Expression arg1 = readExpr();
+					Expression arg2 = readExpr();
+					expr = createBinary(tag, tok, arg1, arg2);
+			}
+
+			expr.setType(type);
+			return expr;
+		}
+
+		static Expression createBinary(int tag, Token tok, Expression arg1, Expression arg2) throws IOException {
+			switch (tag) {
+				case PLUS: return new PlusBinaryOperatorExpression(tok, arg1, arg2);
+				case MINUS: return new MinusBinaryOperatorExpression(tok, arg1, arg2);
+				case MULTIPLY: return new MultiplyBinaryOperatorExpression(tok, arg1, arg2);
+				case DIVIDE: return new DivideBinaryOperatorExpression(tok, arg1, arg2);
+				case MODULO: return new ModuloBinaryOperatorExpression(tok, arg1, arg2);
+				case AND: return new AndBinaryOperatorExpression(tok, arg1, arg2);
+				case OR: return new OrBinaryOperatorExpression(tok, arg1, arg2);
+				case LESS_THAN: return new LessThanBinaryOperatorExpression(tok, arg1, arg2);
+				case GREATER_THAN: return new GreaterThanBinaryOperatorExpression(tok, arg1, arg2);
+				case LESS_THAN_EQUAL: return new LessThanEqualBinaryOperatorExpression(tok, arg1, arg2);
+				case GREATER_THAN_EQUAL: return new GreaterThanEqualBinaryOperatorExpression(tok, arg1, arg2);
+				case EQUAL: return new EqualBinaryOperatorExpression(tok, arg1, arg2);
+				default:
+					throw new IOException("Unknown expression tag " + tag);
+			}
+		}
+
+		/*
+		 * AST elements take their position from a token, so one is made up
+		 * to carry it; its text is never looked at.
+		 */
+		Token readPosition(String text) throws IOException {
+			int line = readVarInt() - 1;
+			int column = readVarInt() - 1;
+			return new Token(text, line, column);
+		}
+
+		Type readType() throws IOException {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+				case NO_TYPE: return null;
+				case INTEGER_TYPE: return Type.Integer();
+				case BOOLEAN_TYPE: return Type.Boolean();
+				case STRING_TYPE: return Type.String();
+				case VOID_TYPE: return Type.Void();
+				default:
+					throw new IOException("Unknown type tag " + tag);
+			}
+		}
+
+		String readString() throws IOException {
+			int index = readVarInt();
+			if (index > 0) {
+				if (index > strings.size()) {
+					throw new IOException("Bad string reference " + index);
+				}
+				return strings.get(index - 1);
+			}
+			byte[] bytes = new byte[readCount()];
+			in.readFully(bytes);
+			String s = new String(bytes, StandardCharsets.UTF_8);
+			strings.add(s);
+			return s;
+		}
+
+		/*
+		 * Reads the number of elements or bytes that follow, each of which
+		 * takes at least one byte.
+		 */
+		int readCount() throws IOException {
+			int count = readVarInt();
+			if (count < 0 || count > in.available()) {
+				throw new IOException("Bad count " + count);
+			}
+			return count;
+		}
+
+		int readSlot() throws IOException {
+			int slot = readVarInt() - 1;
+			if (slot < 0 || slot >= frameSize) {
+				throw new IOException("Slot " + slot + " out of a frame of " + frameSize);
+			}
+			return slot;
+		}
+
+		int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = in.readUnsignedByte();
+				value |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Malformed variable-length integer");
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package splat.closure;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+
+/**
+ * A Boolean expression, compiled by the ClosureCompiler.
+ */
+@FunctionalInterface
+public interface BoolClosure {
+
+	boolean evaluate(Frame frame) throws ExecutionException;
+}
@@ -0,0 +1,377 @@
+package splat.closure;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import splat.closure.ClosureFunction.ArgumentBinder;
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.StringValue;
+import splat.executor.Value;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Compiles analyzed statements and expressions to a tree of closures,
+ * each bound to the closures of its children and to whatever it needs
+ * from the AST: a frame slot, a literal, the function called.
+ *
+ * Everything that the AST nodes work out again on every evaluation is
+ * settled once here.  Which closure to build follows from the node's
+ * class and the type semantic analysis gave it, so a closure never tests
+ * a type or whether the frame is checked, and Integers and Booleans are
+ * never boxed.  Frames and the completion of statements are the same as
+ * in the AST walker.
+ */
+public class ClosureCompiler {
+
+	// One per function called, shared by all its call sites
+	private final Map<FunctionDecl, ClosureFunction> functions = new IdentityHashMap<>();
+
+	/**
+	 * Compiles the program body.  Functions are compiled the first time
+	 * they are called.
+	 */
+	public static ClosureProgram compile(ProgramAST progAST) {
+		ClosureCompiler compiler = new ClosureCompiler();
+		return new ClosureProgram(progAST, compiler.compileBlock(progAST.getStmts()));
+	}
+
+	/**
+	 * @return the function as the closure tier runs it, the same one for
+	 * 			every call of the function
+	 */
+	public ClosureFunction getFunction(FunctionDecl funcDecl) {
+		return functions.computeIfAbsent(funcDecl, decl -> new ClosureFunction(this, decl));
+	}
+
+	public StatementClosure compileBlock(List<Statement> stmts) {
+		StatementClosure[] closures = new StatementClosure[stmts.size()];
+		for (int i = 0; i < closures.length; i++) {
+			closures[i] = compileStmt(stmts.get(i));
+		}
+
+		if (closures.length == 0) {
+			return frame -> Completion.NORMAL;
+		}
+		if (closures.length == 1) {
+			return closures[0];
+		}
+		return frame -> {
+			for (StatementClosure closure : closures) {
+				if (closure.execute(frame) == Completion.RETURN) {
+					return Completion.RETURN;
+				}
+			}
+			return Completion.NORMAL;
+		};
+	}
+
+	public StatementClosure compileStmt(Statement stmt) {
+		if (stmt instanceof AssignmentStatement) {
+			return compileAssignment((AssignmentStatement) stmt);
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			BoolClosure condition = compileBool(ifThenElse.getExpression());
+			StatementClosure thenBlock = compileBlock(ifThenElse.getThenStatements());
+			StatementClosure elseBlock = compileBlock(ifThenElse.getElseStatements());
+			return frame -> condition.evaluate(frame) ? thenBlock.execute(frame) : elseBlock.execute(frame);
+		} else if (stmt instanceof IfThenStatement) {
+			IfThenStatement ifThen = (IfThenStatement) stmt;
+			BoolClosure condition = compileBool(ifThen.getExpression());
+			StatementClosure thenBlock = compileBlock(ifThen.getThenStatements());
+			return frame -> condition.evaluate(frame) ? thenBlock.execute(frame) : Completion.NORMAL;
+		} else if (stmt instanceof WhileLoopStatement) {
+			WhileLoopStatement loop = (WhileLoopStatement) stmt;
+			BoolClosure condition = compileBool(loop.getExpression());
+			StatementClosure body = compileBlock(loop.getStatements());
+			return frame -> {
+				while (condition.evaluate(frame)) {
+					if (body.execute(frame) == Completion.RETURN) {
+						return Completion.RETURN;
+					}
+				}
+				return Completion.NORMAL;
+			};
+		} else if (stmt instanceof PrintStatement) {
+			return compilePrint(((PrintStatement) stmt).getExpressionToPrint());
+		} else if (stmt instanceof ReturnStatement) {
+			return compileReturn((ReturnStatement) stmt);
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+			ClosureFunction function = getFunction(call.getFunctionDecl());
+			ArgumentBinder[] args = compileArguments(call.getArguments());
+			return frame -> {
+				function.callVoid(frame, args);
+				return Completion.NORMAL;
+			};
+		}
+		throw new IllegalArgumentException("Cannot compile " + stmt.getClass().getSimpleName());
+	}
+
+	private StatementClosure compileAssignment(AssignmentStatement assignment) {
+		int slot = assignment.getSlot();
+		Expression rhs = assignment.getRhs();
+		if (rhs.getType() == Type.Integer()) {
+			IntClosure value = compileInt(rhs);
+			return frame -> {
+				frame.setInt(slot, value.evaluate(frame));
+				return Completion.NORMAL;
+			};
+		}
+		if (rhs.getType() == Type.Boolean()) {
+			BoolClosure value = compileBool(rhs);
+			return frame -> {
+				frame.setBoolean(slot, value.evaluate(frame));
+				return Completion.NORMAL;
+			};
+		}
+		ValueClosure value = compileValue(rhs);
+		return frame -> {
+			frame.set(slot, value.evaluate(frame));
+			return Completion.NORMAL;
+		};
+	}
+
+	private StatementClosure compilePrint(Expression expr) {
+		if (expr.getType() == Type.Integer()) {
+			IntClosure value = compileInt(expr);
+			return frame -> {
+				System.out.print(value.evaluate(frame));
+				return Completion.NORMAL;
+			};
+		}
+		if (expr.getType() == Type.Boolean()) {
+			BoolClosure value = compileBool(expr);
+			return frame -> {
+				System.out.print(value.evaluate(frame));
+				return Completion.NORMAL;
+			};
+		}
+		ValueClosure value = compileValue(expr);
+		return frame -> {
+			System.out.print(value.evaluate(frame).getValue());
+			return Completion.NORMAL;
+		};
+	}
+
+	/*
+	 * A return stores its value in the return slot of the frame, where the
+	 * caller reads it from.
+	 */
+	private StatementClosure compileReturn(ReturnStatement stmt) {
+		Expression expr = stmt.getExpression();
+		int slot = stmt.getSlot();
+		if (expr == null) {
+			return frame -> Completion.RETURN;
+		}
+		if (expr.getType() == Type.Integer()) {
+			IntClosure value = compileInt(expr);
+			return frame -> {
+				frame.setInt(slot, value.evaluate(frame));
+				return Completion.RETURN;
+			};
+		}
+		if (expr.getType() == Type.Boolean()) {
+			BoolClosure value = compileBool(expr);
+			return frame -> {
+				frame.setBoolean(slot, value.evaluate(frame));
+				return Completion.RETURN;
+			};
+		}
+		ValueClosure value = compileValue(expr);
+		return frame -> {
+			frame.set(slot, value.evaluate(frame));
+			return Completion.RETURN;
+		};
+	}
+
+	public IntClosure compileInt(Expression expr) {
+		if (expr instanceof IntLiteralExpression) {
+			int value = (int) ((IntLiteralExpression) expr).getValue();
+			return frame -> value;
+		} else if (expr instanceof LabelExpression) {
+			LabelExpression label = (LabelExpression) expr;
+			int slot = label.getSlot();
+			return frame -> {
+				long value = frame.getPrimitive(slot);
+				if (value == Frame.UNASSIGNED) {
+					throw uninitialized(label);
+				}
+				return (int) value;
+			};
+		} else if (expr instanceof PlusBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) + arg2.evaluate(frame);
+		} else if (expr instanceof MinusBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) - arg2.evaluate(frame);
+		} else if (expr instanceof MultiplyBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) * arg2.evaluate(frame);
+		} else if (expr instanceof DivideBinaryOperatorExpression) {
+			Expression divisor = ((BinaryOperatorExpression) expr).getArg2();
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(divisor);
+			return frame -> {
+				int dividend = arg1.evaluate(frame);
+				return dividend / checkDivisor(arg2.evaluate(frame), divisor);
+			};
+		} else if (expr instanceof ModuloBinaryOperatorExpression) {
+			Expression divisor = ((BinaryOperatorExpression) expr).getArg2();
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(divisor);
+			return frame -> {
+				int dividend = arg1.evaluate(frame);
+				return dividend % checkDivisor(arg2.evaluate(frame), divisor);
+			};
+		} else if (expr instanceof NegativeUnaryOperatorExpression) {
+			IntClosure arg = compileInt(((UnaryOperatorExpression) expr).getArg1());
+			return frame -> -arg.evaluate(frame);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			ClosureFunction function = getFunction(call.getFunctionDecl());
+			ArgumentBinder[] args = compileArguments(call.getArguments());
+			return frame -> function.callInt(frame, args);
+		}
+		throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName() + " as an Integer");
+	}
+
+	public BoolClosure compileBool(Expression expr) {
+		if (expr instanceof BoolLiteralExpression) {
+			boolean value = (boolean) ((BoolLiteralExpression) expr).getValue();
+			return frame -> value;
+		} else if (expr instanceof LabelExpression) {
+			LabelExpression label = (LabelExpression) expr;
+			int slot = label.getSlot();
+			return frame -> {
+				long value = frame.getPrimitive(slot);
+				if (value == Frame.UNASSIGNED) {
+					throw uninitialized(label);
+				}
+				return value != 0;
+			};
+		} else if (expr instanceof LessThanBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) < arg2.evaluate(frame);
+		} else if (expr instanceof LessThanEqualBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) <= arg2.evaluate(frame);
+		} else if (expr instanceof GreaterThanBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) > arg2.evaluate(frame);
+		} else if (expr instanceof GreaterThanEqualBinaryOperatorExpression) {
+			IntClosure arg1 = compileInt(((BinaryOperatorExpression) expr).getArg1());
+			IntClosure arg2 = compileInt(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) >= arg2.evaluate(frame);
+		} else if (expr instanceof EqualBinaryOperatorExpression) {
+			return compileEqual((BinaryOperatorExpression) expr);
+		} else if (expr instanceof AndBinaryOperatorExpression) {
+			// Both sides are always evaluated, as in the AST walker
+			BoolClosure arg1 = compileBool(((BinaryOperatorExpression) expr).getArg1());
+			BoolClosure arg2 = compileBool(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) & arg2.evaluate(frame);
+		} else if (expr instanceof OrBinaryOperatorExpression) {
+			BoolClosure arg1 = compileBool(((BinaryOperatorExpression) expr).getArg1());
+			BoolClosure arg2 = compileBool(((BinaryOperatorExpression) expr).getArg2());
+			return frame -> arg1.evaluate(frame) | arg2.evaluate(frame);
+		} else if (expr instanceof NotUnaryOperatorExpression) {
+			BoolClosure arg = compileBool(((UnaryOperatorExpression) expr).getArg1());
+			return frame -> !arg.evaluate(frame);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			ClosureFunction function = getFunction(call.getFunctionDecl());
+			ArgumentBinder[] args = compileArguments(call.getArguments());
+			return frame -> function.callBoolean(frame, args);
+		}
+		throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName() + " as a Boolean");
+	}
+
+	private BoolClosure compileEqual(BinaryOperatorExpression expr) {
+		// Both sides have the same type, as semantic analysis checked
+		Type argType = expr.getArg1().getType();
+		if (argType == Type.Integer()) {
+			IntClosure arg1 = compileInt(expr.getArg1());
+			IntClosure arg2 = compileInt(expr.getArg2());
+			return frame -> arg1.evaluate(frame) == arg2.evaluate(frame);
+		}
+		if (argType == Type.Boolean()) {
+			BoolClosure arg1 = compileBool(expr.getArg1());
+			BoolClosure arg2 = compileBool(expr.getArg2());
+			return frame -> arg1.evaluate(frame) == arg2.evaluate(frame);
+		}
+		ValueClosure arg1 = compileValue(expr.getArg1());
+		ValueClosure arg2 = compileValue(expr.getArg2());
+		return frame -> Objects.equals(arg1.evaluate(frame).getValue(), arg2.evaluate(frame).getValue());
+	}
+
+	public ValueClosure compileValue(Expression expr) {
+		if (expr instanceof StringLiteralExpression) {
+			Value value = new StringValue(((StringLiteralExpression) expr).getValue());
+			return frame -> value;
+		} else if (expr instanceof LabelExpression) {
+			LabelExpression label = (LabelExpression) expr;
+			int slot = label.getSlot();
+			return frame -> {
+				Value value = frame.get(slot);
+				if (value == null) {
+					throw uninitialized(label);
+				}
+				return value;
+			};
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			ClosureFunction function = getFunction(call.getFunctionDecl());
+			ArgumentBinder[] args = compileArguments(call.getArguments());
+			return frame -> function.callValue(frame, args);
+		}
+		throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName() + " as a String");
+	}
+
+	/*
+	 * The parameters take the first slots of a call's frame, in order, so
+	 * the slot of each argument is its position.
+	 */
+	private ArgumentBinder[] compileArguments(List<Expression> args) {
+		ArgumentBinder[] binders = new ArgumentBinder[args.size()];
+		for (int i = 0; i < binders.length; i++) {
+			int slot = i;
+			Expression arg = args.get(i);
+			if (arg.getType() == Type.Integer()) {
+				IntClosure value = compileInt(arg);
+				binders[i] = (caller, callee) -> callee.setInt(slot, value.evaluate(caller));
+			} else if (arg.getType() == Type.Boolean()) {
+				BoolClosure value = compileBool(arg);
+				binders[i] = (caller, callee) -> callee.setBoolean(slot, value.evaluate(caller));
+			} else {
+				ValueClosure value = compileValue(arg);
+				binders[i] = (caller, callee) -> callee.set(slot, value.evaluate(caller));
+			}
+		}
+		return binders;
+	}
+
+	private static int checkDivisor(int divisor, Expression expr) throws ExecutionException {
+		if (divisor == 0) {
+			throw new ExecutionException("Division by zero", expr);
+		}
+		return divisor;
+	}
+
+	private static ExecutionException uninitialized(LabelExpression label) {
+		return new ExecutionException("Cannot use uninitialized label " + label.getLabel(), label);
+	}
+}
@@ -0,0 +1,88 @@
+package splat.closure;
+
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.FunctionDecl;
+
+/**
+ * A function as the closure tier runs it.  Its body is compiled the first
+ * time it is called, after being parsed and analyzed if it was parsed
+ * lazily, so functions that are never called cost nothing.
+ */
+public class ClosureFunction {
+
+	/**
+	 * Evaluates one argument of a call in the caller's frame, and stores it
+	 * in its parameter's slot of the new frame.
+	 */
+	@FunctionalInterface
+	interface ArgumentBinder {
+		void bind(Frame caller, Frame callee) throws ExecutionException;
+	}
+
+	private final ClosureCompiler compiler;
+	private final FunctionDecl funcDecl;
+
+	private StatementClosure body;
+	private int frameSize;
+	private int returnSlot;
+
+	ClosureFunction(ClosureCompiler compiler, FunctionDecl funcDecl) {
+		this.compiler = compiler;
+		this.funcDecl = funcDecl;
+	}
+
+	public FunctionDecl getFuncDecl() {
+		return funcDecl;
+	}
+
+	/**
+	 * Runs the body on the frame of a call, whose arguments are bound
+	 * already.
+	 */
+	public Completion execute(Frame frame) throws ExecutionException {
+		return getBody().execute(frame);
+	}
+
+	private StatementClosure getBody() {
+		if (body == null) {
+			funcDecl.load();
+			frameSize = funcDecl.getFrameSize();
+			returnSlot = funcDecl.getReturnSlot();
+			body = compiler.compileBlock(funcDecl.getStmts());
+		}
+		return body;
+	}
+
+	int callInt(Frame caller, ArgumentBinder[] args) throws ExecutionException {
+		return (int) call(caller, args).getPrimitive(returnSlot);
+	}
+
+	boolean callBoolean(Frame caller, ArgumentBinder[] args) throws ExecutionException {
+		return call(caller, args).getPrimitive(returnSlot) != 0;
+	}
+
+	Value callValue(Frame caller, ArgumentBinder[] args) throws ExecutionException {
+		return call(caller, args).get(returnSlot);
+	}
+
+	void callVoid(Frame caller, ArgumentBinder[] args) throws ExecutionException {
+		call(caller, args);
+	}
+
+	private Frame call(Frame caller, ArgumentBinder[] args) throws ExecutionException {
+		StatementClosure body = getBody();
+		Frame frame = new Frame(frameSize);
+		for (ArgumentBinder arg : args) {
+			arg.bind(caller, frame);
+		}
+
+		if (body.execute(frame) != Completion.RETURN && funcDecl.getReturnType() != Type.Void()) {
+			throw new ExecutionException("Internal error -- did not return from " + funcDecl.getLabel() + "()", -1, -1);
+		}
+		return frame;
+	}
+}
@@ -0,0 +1,41 @@
+package splat.closure;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.VariableDecl;
+
+/**
+ * A program whose body was compiled by the ClosureCompiler, ready to run.
+ */
+public class ClosureProgram {
+
+	private final ProgramAST progAST;
+	private final StatementClosure body;
+
+	ClosureProgram(ProgramAST progAST, StatementClosure body) {
+		this.progAST = progAST;
+		this.body = body;
+	}
+
+	public void runProgram() throws ExecutionException {
+		// Integer and Boolean program variables start out as 0 and false,
+		// as in the Executor
+		Frame frame = new Frame(progAST.getFrameSize());
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof VariableDecl) {
+				VariableDecl varDecl = (VariableDecl) decl;
+				if (varDecl.getType() == Type.Boolean()) {
+					frame.setBoolean(varDecl.getSlot(), false);
+				} else if (varDecl.getType() == Type.Integer()) {
+					frame.setInt(varDecl.getSlot(), 0);
+				}
+			}
+		}
+
+		// The program body has no return statements
+		body.execute(frame);
+	}
+}
@@ -0,0 +1,13 @@
+package splat.closure;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+
+/**
+ * An Integer expression, compiled by the ClosureCompiler.
+ */
+@FunctionalInterface
+public interface IntClosure {
+
+	int evaluate(Frame frame) throws ExecutionException;
+}
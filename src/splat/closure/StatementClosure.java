@@ -0,0 +1,15 @@
+package splat.closure;
+
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+
+/**
+ * A statement, or a block of them, compiled by the ClosureCompiler.  It
+ * completes the way Statement.execute() does.
+ */
+@FunctionalInterface
+public interface StatementClosure {
+
+	Completion execute(Frame frame) throws ExecutionException;
+}
@@ -0,0 +1,15 @@
+package splat.closure;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.Value;
+
+/**
+ * A String expression, compiled by the ClosureCompiler.  Strings stay
+ * boxed, as they are in a Frame.
+ */
+@FunctionalInterface
+public interface ValueClosure {
+
+	Value evaluate(Frame frame) throws ExecutionException;
+}
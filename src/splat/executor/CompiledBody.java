@@ -0,0 +1,13 @@
+package splat.executor;
+
+/**
+ * Statements compiled by a faster tier, which run on a frame of the AST
+ * walker in place of the statements: the body of a function, or a loop
+ * that takes over in the middle of running.  They leave the frame as the
+ * statements would, with the return value, if any, in the return slot.
+ */
+@FunctionalInterface
+public interface CompiledBody {
+
+	Completion execute(Frame frame) throws ExecutionException;
+}
@@ -0,0 +1,12 @@
+package splat.executor;
+
+/**
+ * How a statement finished executing: either normally, so that execution
+ * goes on with the next statement, or by returning from the function it
+ * is in.  A statement that returned has already stored the return value,
+ * if any, in the return slot of the function's Frame.
+ */
+public enum Completion {
+	NORMAL,
+	RETURN
+}
@@ -1,12 +1,8 @@
 package splat.executor;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
 
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.Declaration;
-import splat.parser.elements.declarations.FunctionDecl;
 import splat.parser.elements.ProgramAST;
 import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.statements.Statement;
@@ -15,56 +11,88 @@ public class Executor {
 
 	private ProgramAST progAST;
 	
-	private Map<String, FunctionDecl> funcMap = new HashMap<>();
-	private Map<String, Value> progVarMap = new HashMap<>();
+	private Frame progFrame;
+
+	// Whether values are type checked again as the program runs
+	private boolean checked = false;
+
+	private Profiler profiler;
 	
 	public Executor(ProgramAST progAST) {
 		this.progAST = progAST;
 	}
 
+	/**
+	 * Whether every operation checks the types of its operands again, as
+	 * it runs.  Semantic analysis already proved them, so this is only
+	 * useful for debugging the interpreter; the default is to trust the
+	 * analyzer and skip the checks.
+	 */
+	public boolean isChecked() {
+		return checked;
+	}
+
+	public void setChecked(boolean checked) {
+		this.checked = checked;
+	}
+
+	/**
+	 * The profiler told of the calls and loops run, or null, the default,
+	 * to run without one.
+	 */
+	public Profiler getProfiler() {
+		return profiler;
+	}
+
+	public void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+
 	public void runProgram() throws ExecutionException {
 
-		// This sets the maps that will be needed for executing function 
-		// calls and storing the values of the program variables
-		setMaps();
+		// Variables and calls are only resolved, and types only proved,
+		// by semantic analysis
+		if (!progAST.isAnalyzed()) {
+			throw new ExecutionException("Internal error -- the program "
+					+ "must pass semantic analysis before it runs", -1, -1);
+		}
+
+		// This sets up the frame that stores the values of the program
+		// variables
+		setFrame();
 		
-		try {
-			
-			// Go through and execute each of the statements
-			for (Statement stmt : progAST.getStmts()) {
-				stmt.execute(funcMap, progVarMap);
+		// Go through and execute each of the statements
+		for (Statement stmt : progAST.getStmts()) {
+
+			// We should never see a return here, since the main program
+			// body cannot have returns
+			if (stmt.execute(progFrame) == Completion.RETURN) {
+				System.out.println("Internal error!!! The main program body "
+						+ "cannot have a return statement -- this should have "
+						+ "been caught during semantic analysis!");
+				
+				throw new ExecutionException("Internal error -- fix your "
+						+ "semantic analyzer!", -1, -1);
 			}
-			
-		// We should never have to catch this exception here, since the
-		// main program body cannot have returns
-		} catch (ReturnFromCall ex) {
-			System.out.println("Internal error!!! The main program body "
-					+ "cannot have a return statement -- this should have "
-					+ "been caught during semantic analysis!");
-			
-			throw new ExecutionException("Internal error -- fix your "
-					+ "semantic analyzer!", -1, -1);
 		}
 	}
 	
-	private void setMaps() {
-		for (Declaration decl : progAST.getDecls()) {
+	private void setFrame() {
+		// Function calls were resolved to their FunctionDecl during semantic
+		// analysis, and variables to their slot in a frame
+		progFrame = new Frame(progAST.getFrameSize(), checked, profiler);
 
-			String label = decl.getLabel();
-
-			if (decl instanceof FunctionDecl) {
-				FunctionDecl funcDecl = (FunctionDecl)decl;
-				funcMap.put(label, funcDecl);
+		for (Declaration decl : progAST.getDecls()) {
 
-			} else if (decl instanceof VariableDecl) {
+			if (decl instanceof VariableDecl) {
 				VariableDecl varDecl = (VariableDecl)decl;
-				if (Objects.equals(varDecl.getType(), Type.Boolean()))
+				if (varDecl.getType() == Type.Boolean())
 				{
-					progVarMap.put(label, new BoolValue(false));
+					progFrame.setBoolean(varDecl.getSlot(), false);
 				}
-				else if (Objects.equals(varDecl.getType(), Type.Integer()))
+				else if (varDecl.getType() == Type.Integer())
 				{
-					progVarMap.put(label, new IntValue(0));
+					progFrame.setInt(varDecl.getSlot(), 0);
 				}
 			}
 		}
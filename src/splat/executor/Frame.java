@@ -0,0 +1,116 @@
+package splat.executor;
+
+import java.util.Arrays;
+
+import splat.parser.elements.declarations.FunctionDecl;
+
+/**
+ * The variables of one running function call, or of the program body,
+ * held in slots numbered by the SemanticAnalyzer: a function's parameters
+ * come first, in order, followed by its local variables.
+ *
+ * Integer and Boolean variables are kept unboxed, as an int or as 0 and 1,
+ * and read with getPrimitive().  Everything else is kept as a Value, read
+ * with get().  Which of the two a slot uses follows from the
+ * variable's declared type, so both sides always agree.  A slot that was
+ * never assigned holds null, or UNASSIGNED.
+ *
+ * A checked frame asks every expression evaluated with it to check the
+ * types of its operands again, and every call to check the FunctionDecl
+ * it was resolved to.  Semantic analysis has already proved all of that,
+ * so this only ever fails when the interpreter itself has a bug; the
+ * frames of a call inherit the caller's setting.
+ *
+ * The frames of a call also inherit the caller's Profiler, if any, and
+ * know the function they belong to.
+ */
+public class Frame {
+
+	// Held by an Integer or Boolean slot that was never assigned, since
+	// it is not the value of any int
+	public static final long UNASSIGNED = Long.MIN_VALUE;
+
+	private final Value[] slots;
+	private final long[] primitives;
+	private final boolean checked;
+	private final Profiler profiler;
+	// Null for the program body
+	private final FunctionDecl function;
+
+	public Frame(int size) {
+		this(size, false);
+	}
+
+	public Frame(int size, boolean checked) {
+		this(size, checked, null, null);
+	}
+
+	/**
+	 * Creates the frame of the program body, profiled by the given
+	 * profiler, if it is not null.
+	 */
+	public Frame(int size, boolean checked, Profiler profiler) {
+		this(size, checked, profiler, null);
+	}
+
+	/**
+	 * Creates the frame of a call of the function, with all its slots
+	 * unassigned, which inherits the caller's settings.
+	 */
+	public Frame(FunctionDecl function, Frame caller) {
+		this(function.getFrameSize(), caller.checked, caller.profiler, function);
+	}
+
+	private Frame(int size, boolean checked, Profiler profiler, FunctionDecl function) {
+		this.slots = new Value[size];
+		this.primitives = new long[size];
+		this.checked = checked;
+		this.profiler = profiler;
+		this.function = function;
+		Arrays.fill(primitives, UNASSIGNED);
+	}
+
+	public Value get(int slot) {
+		return slots[slot];
+	}
+
+	public void set(int slot, Value value) {
+		slots[slot] = value;
+	}
+
+	/**
+	 * @return the int or boolean (as 0 or 1) held in the slot, or
+	 * 			UNASSIGNED
+	 */
+	public long getPrimitive(int slot) {
+		return primitives[slot];
+	}
+
+	public void setInt(int slot, int value) {
+		primitives[slot] = value;
+	}
+
+	public void setBoolean(int slot, boolean value) {
+		primitives[slot] = value ? 1 : 0;
+	}
+
+	public boolean isChecked() {
+		return checked;
+	}
+
+	/**
+	 * @return the profiler watching the program, or null if it is not
+	 * 			profiled
+	 */
+	public Profiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * @return the function called, or null for the frame of the program
+	 * 			body
+	 */
+	public FunctionDecl getFunction() {
+		return function;
+	}
+}
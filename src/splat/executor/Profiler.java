@@ -0,0 +1,35 @@
+package splat.executor;
+
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.statements.WhileLoopStatement;
+
+/**
+ * Watches the AST walker run a program, to find the code it spends its
+ * time in.  It is told of every call of a function that runs in the AST
+ * walker, and of every turn of a loop, together with the counters the
+ * FunctionDecl and the WhileLoopStatement keep.
+ *
+ * A profiler is given to the program's Frame, and every call inherits it
+ * from its caller's frame; frames without one are not profiled.
+ */
+public interface Profiler {
+
+	/**
+	 * Called before the body of a function runs in the AST walker.
+	 *
+	 * @param invocations how many times the AST walker has called the
+	 * 			function, this call included
+	 */
+	void functionCalled(FunctionDecl funcDecl, long invocations);
+
+	/**
+	 * Called each time the body of a loop has run, before its condition is
+	 * evaluated again.
+	 *
+	 * @param frame the frame the loop runs in, of a function call or of
+	 * 			the program body
+	 * @param backEdges how many times the loop has gone back to its
+	 * 			condition, over all the times it ran
+	 */
+	void loopIterated(WhileLoopStatement loop, Frame frame, long backEdges);
+}
@@ -0,0 +1,199 @@
+package splat.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a JVM class file holding static fields and static methods, with
+ * just the constant pool entries that the JitCompiler needs.
+ *
+ * The class file is version 49, which predates the StackMapTable
+ * attribute: the JVM verifies such classes by inferring the types of the
+ * stack and locals itself, so the code is written without frames.
+ */
+class ClassFileWriter {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private static final int MAJOR_VERSION = 49;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private final String className;
+
+	// Each constant once, keyed by its kind and contents
+	private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+	private final Map<String, Integer> constantIndices = new HashMap<>();
+	private int constantCount = 1;
+
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<byte[]> methods = new ArrayList<>();
+
+	/**
+	 * @param className the internal name of the class, e.g. splat/jit/Foo
+	 */
+	ClassFileWriter(String className) {
+		this.className = className;
+	}
+
+	int utf8(String text) {
+		String key = "U" + text;
+		Integer index = constantIndices.get(key);
+		if (index == null) {
+			DataOutputStream out = new DataOutputStream(constants);
+			try {
+				out.writeByte(CONSTANT_UTF8);
+				out.writeUTF(text);
+			} catch (IOException ex) {
+				// Only thrown for a text over 64K in modified UTF-8
+				throw new ClassTooLargeException("String constant too long in " + className);
+			}
+			index = addConstant(key);
+		}
+		return index;
+	}
+
+	int classRef(String internalName) {
+		return refConstant(CONSTANT_CLASS, "C" + internalName, utf8(internalName));
+	}
+
+	int string(String text) {
+		return refConstant(CONSTANT_STRING, "S" + text, utf8(text));
+	}
+
+	int integer(int value) {
+		String key = "I" + value;
+		Integer index = constantIndices.get(key);
+		if (index == null) {
+			constants.write(CONSTANT_INTEGER);
+			writeInt(constants, value);
+			index = addConstant(key);
+		}
+		return index;
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		String key = "M" + tag + owner + '.' + name + descriptor;
+		Integer index = constantIndices.get(key);
+		if (index == null) {
+			int ownerIndex = classRef(owner);
+			int nameAndType = refConstant(CONSTANT_NAME_AND_TYPE, "N" + name + ' ' + descriptor,
+					utf8(name), utf8(descriptor));
+			constants.write(tag);
+			writeShort(constants, ownerIndex);
+			writeShort(constants, nameAndType);
+			index = addConstant(key);
+		}
+		return index;
+	}
+
+	private int refConstant(int tag, String key, int... refs) {
+		Integer index = constantIndices.get(key);
+		if (index == null) {
+			constants.write(tag);
+			for (int ref : refs) {
+				writeShort(constants, ref);
+			}
+			index = addConstant(key);
+		}
+		return index;
+	}
+
+	private int addConstant(String key) {
+		if (constantCount == 0xFFFF) {
+			throw new ClassTooLargeException("Too many constants in " + className);
+		}
+		int index = constantCount++;
+		constantIndices.put(key, index);
+		return index;
+	}
+
+	void addField(int access, String name, String descriptor) {
+		ByteArrayOutputStream field = new ByteArrayOutputStream();
+		writeShort(field, access);
+		writeShort(field, utf8(name));
+		writeShort(field, utf8(descriptor));
+		writeShort(field, 0);
+		fields.add(field.toByteArray());
+	}
+
+	void addMethod(int access, String name, String descriptor, CodeBuilder code) {
+		byte[] bytecode = code.toByteArray();
+
+		ByteArrayOutputStream method = new ByteArrayOutputStream();
+		writeShort(method, access);
+		writeShort(method, utf8(name));
+		writeShort(method, utf8(descriptor));
+		writeShort(method, 1);
+
+		// The Code attribute, with no exception table and no attributes
+		writeShort(method, utf8("Code"));
+		writeInt(method, 12 + bytecode.length);
+		writeShort(method, code.getMaxStack());
+		writeShort(method, code.getMaxLocals());
+		writeInt(method, bytecode.length);
+		method.writeBytes(bytecode);
+		writeShort(method, 0);
+		writeShort(method, 0);
+		methods.add(method.toByteArray());
+	}
+
+	byte[] toByteArray() {
+		int thisClass = classRef(className);
+		int superClass = classRef("java/lang/Object");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeInt(out, 0xCAFEBABE);
+		writeShort(out, 0);
+		writeShort(out, MAJOR_VERSION);
+		writeShort(out, constantCount);
+		out.writeBytes(constants.toByteArray());
+		writeShort(out, ACC_FINAL | ACC_SUPER);
+		writeShort(out, thisClass);
+		writeShort(out, superClass);
+		writeShort(out, 0);
+		writeShort(out, fields.size());
+		for (byte[] field : fields) {
+			out.writeBytes(field);
+		}
+		writeShort(out, methods.size());
+		for (byte[] method : methods) {
+			out.writeBytes(method);
+		}
+		writeShort(out, 0);
+		return out.toByteArray();
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		writeShort(out, value >>> 16);
+		writeShort(out, value);
+	}
+}
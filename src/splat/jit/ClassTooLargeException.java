@@ -0,0 +1,14 @@
+package splat.jit;
+
+/**
+ * Thrown when the compiled program does not fit the limits of a class
+ * file, on the size of the constant pool or of a method's code.
+ */
+class ClassTooLargeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	ClassTooLargeException(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,307 @@
+package splat.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles the bytecode of one JVM method, keeping track of the operand
+ * stack depth and the number of locals for its Code attribute.
+ *
+ * Code after a return, a throw or a goto that no jump leads to is never
+ * executed, so it is dropped instead of being written.
+ */
+class CodeBuilder {
+
+	static final int ACONST_NULL = 0x01;
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC = 0x12;
+	static final int LDC_W = 0x13;
+	static final int ILOAD = 0x15;
+	static final int ALOAD = 0x19;
+	static final int AALOAD = 0x32;
+	static final int ISTORE = 0x36;
+	static final int ASTORE = 0x3A;
+	static final int POP = 0x57;
+	static final int IADD = 0x60;
+	static final int ISUB = 0x64;
+	static final int IMUL = 0x68;
+	static final int IDIV = 0x6C;
+	static final int IREM = 0x70;
+	static final int INEG = 0x74;
+	static final int IAND = 0x7E;
+	static final int IOR = 0x80;
+	static final int IXOR = 0x82;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9A;
+	static final int IF_ICMPEQ = 0x9F;
+	static final int IF_ICMPNE = 0xA0;
+	static final int IF_ICMPLT = 0xA1;
+	static final int IF_ICMPGE = 0xA2;
+	static final int IF_ICMPGT = 0xA3;
+	static final int IF_ICMPLE = 0xA4;
+	static final int GOTO = 0xA7;
+	static final int IRETURN = 0xAC;
+	static final int ARETURN = 0xB0;
+	static final int RETURN = 0xB1;
+	static final int GETSTATIC = 0xB2;
+	static final int PUTSTATIC = 0xB3;
+	static final int INVOKEVIRTUAL = 0xB6;
+	static final int INVOKESTATIC = 0xB8;
+	static final int ATHROW = 0xBF;
+	static final int CHECKCAST = 0xC0;
+	static final int WIDE = 0xC4;
+	static final int IFNULL = 0xC6;
+	static final int IFNONNULL = 0xC7;
+
+	/**
+	 * A position in the code that jumps lead to.  Jumps to a label that
+	 * is not bound yet are patched when it is.
+	 */
+	static class Label {
+		private int offset = -1;
+		// Stack depth at the label, known from the first jump to it
+		private int depth = -1;
+		// Where each pending jump starts, and where its offset goes
+		private final List<int[]> pendingJumps = new ArrayList<>();
+	}
+
+	private final ClassFileWriter classFile;
+
+	private byte[] code = new byte[256];
+	private int length = 0;
+
+	private int depth = 0;
+	private int maxDepth = 0;
+	private int maxLocals;
+
+	// False after an instruction that never falls through, until a label
+	// that some jump leads to
+	private boolean reachable = true;
+
+	/**
+	 * @param paramCount the number of locals taken by the parameters
+	 */
+	CodeBuilder(ClassFileWriter classFile, int paramCount) {
+		this.classFile = classFile;
+		this.maxLocals = paramCount;
+	}
+
+	int getMaxStack() {
+		return maxDepth;
+	}
+
+	int getMaxLocals() {
+		return maxLocals;
+	}
+
+	boolean isReachable() {
+		return reachable;
+	}
+
+	byte[] toByteArray() {
+		// Branch offsets are written in 16 bits, so longer code cannot be
+		// assembled
+		if (length > Short.MAX_VALUE) {
+			throw new ClassTooLargeException("Method code too large: " + length + " bytes");
+		}
+		return Arrays.copyOf(code, length);
+	}
+
+	void pushInt(int value) {
+		if (value >= -1 && value <= 5) {
+			op(ICONST_0 + value, 1);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			op(BIPUSH, 1);
+			emitByte(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			op(SIPUSH, 1);
+			emitShort(value);
+		} else {
+			ldc(classFile.integer(value));
+		}
+	}
+
+	void pushString(String text) {
+		ldc(classFile.string(text));
+	}
+
+	void pushClass(String internalName) {
+		ldc(classFile.classRef(internalName));
+	}
+
+	private void ldc(int index) {
+		if (index <= 0xFF) {
+			op(LDC, 1);
+			emitByte(index);
+		} else {
+			op(LDC_W, 1);
+			emitShort(index);
+		}
+	}
+
+	/**
+	 * Emits ILOAD, ALOAD, ISTORE or ASTORE of a local.
+	 */
+	void local(int opcode, int local) {
+		if (!reachable) {
+			return;
+		}
+		maxLocals = Math.max(maxLocals, local + 1);
+		int delta = opcode == ILOAD || opcode == ALOAD ? 1 : -1;
+		if (local <= 0xFF) {
+			op(opcode, delta);
+			emitByte(local);
+		} else {
+			op(WIDE, 0);
+			op(opcode, delta);
+			emitShort(local);
+		}
+	}
+
+	/**
+	 * Emits an instruction without operands.
+	 */
+	void op(int opcode) {
+		switch (opcode) {
+			case ACONST_NULL:
+				op(opcode, 1);
+				break;
+			case INEG:
+				op(opcode, 0);
+				break;
+			case IRETURN:
+			case ARETURN:
+			case ATHROW:
+				op(opcode, -1);
+				reachable = false;
+				break;
+			case RETURN:
+				op(opcode, 0);
+				reachable = false;
+				break;
+			default:
+				// POP, AALOAD and the binary int operators
+				op(opcode, -1);
+				break;
+		}
+	}
+
+	void jump(int opcode, Label target) {
+		if (!reachable) {
+			return;
+		}
+		int start = length;
+		if (opcode == GOTO) {
+			op(opcode, 0);
+		} else if (opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE) {
+			op(opcode, -2);
+		} else {
+			op(opcode, -1);
+		}
+
+		if (target.depth < 0) {
+			target.depth = depth;
+		}
+		if (target.offset >= 0) {
+			emitShort(target.offset - start);
+		} else {
+			target.pendingJumps.add(new int[]{start, length});
+			emitShort(0);
+		}
+		if (opcode == GOTO) {
+			reachable = false;
+		}
+	}
+
+	void bind(Label label) {
+		label.offset = length;
+		for (int[] jump : label.pendingJumps) {
+			int offset = length - jump[0];
+			code[jump[1]] = (byte) (offset >>> 8);
+			code[jump[1] + 1] = (byte) offset;
+		}
+		if (!label.pendingJumps.isEmpty()) {
+			if (!reachable) {
+				depth = label.depth;
+			}
+			reachable = true;
+		}
+		label.pendingJumps.clear();
+		if (label.depth < 0 && reachable) {
+			label.depth = depth;
+		}
+	}
+
+	void getStatic(String owner, String name, String descriptor) {
+		op(GETSTATIC, 1);
+		emitShort(classFile.fieldRef(owner, name, descriptor));
+	}
+
+	void putStatic(String owner, String name, String descriptor) {
+		op(PUTSTATIC, -1);
+		emitShort(classFile.fieldRef(owner, name, descriptor));
+	}
+
+	void invokeStatic(String owner, String name, String descriptor) {
+		op(INVOKESTATIC, stackDelta(descriptor));
+		emitShort(classFile.methodRef(owner, name, descriptor));
+	}
+
+	void invokeVirtual(String owner, String name, String descriptor) {
+		op(INVOKEVIRTUAL, stackDelta(descriptor) - 1);
+		emitShort(classFile.methodRef(owner, name, descriptor));
+	}
+
+	void checkcast(String internalName) {
+		op(CHECKCAST, 0);
+		emitShort(classFile.classRef(internalName));
+	}
+
+	/*
+	 * What a call does to the stack depth: pops the arguments and pushes
+	 * the result.  No descriptor used here has a long or a double, so
+	 * every value takes one stack entry.
+	 */
+	private static int stackDelta(String descriptor) {
+		int args = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			while (descriptor.charAt(i) == '[') {
+				i++;
+			}
+			if (descriptor.charAt(i) == 'L') {
+				i = descriptor.indexOf(';', i);
+			}
+			i++;
+			args++;
+		}
+		return (descriptor.charAt(i + 1) == 'V' ? 0 : 1) - args;
+	}
+
+	private void op(int opcode, int stackDelta) {
+		if (!reachable) {
+			return;
+		}
+		emitByte(opcode);
+		depth += stackDelta;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	private void emitByte(int value) {
+		if (!reachable) {
+			return;
+		}
+		if (length == code.length) {
+			code = Arrays.copyOf(code, 2 * code.length);
+		}
+		code[length++] = (byte) value;
+	}
+
+	private void emitShort(int value) {
+		emitByte(value >>> 8);
+		emitByte(value);
+	}
+}
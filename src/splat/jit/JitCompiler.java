@@ -0,0 +1,815 @@
+package splat.jit;
+
+import static splat.jit.CodeBuilder.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.executor.Frame;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.FunctionLoadException;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Compiles an analyzed program to a JVM class, with one static method for
+ * the program body and one for each function it calls.  Integers and
+ * Booleans live in int locals and Strings in String locals, so nothing is
+ * boxed, and the JVM's JIT compiles Splat code like any other Java code.
+ *
+ * The class is defined as a hidden class, which is unloaded once the
+ * JitProgram running it is no longer used.  A single function can be
+ * compiled the same way, with an entry method that takes its arguments
+ * from the Frame of an AST walker's call, for tiered execution.  So can a
+ * single loop, which takes every variable from the Frame it was running
+ * in, and stores back the ones it assigns, for on-stack replacement.
+ *
+ * Run-time errors are raised as the AST walker raises them, with the
+ * line and column of the element at fault:
+ *
+ * - Reading a variable that may not be assigned yet checks for it first.
+ *   A String variable is null until it is assigned; an Integer or Boolean
+ *   one gets an extra int local, set when it is assigned.  Variables that
+ *   are always assigned before they are read, which is most of them, are
+ *   not checked at all.
+ * - Division and modulo check the divisor through JitRuntime.divisor().
+ */
+public class JitCompiler {
+
+	private static final String CLASS_NAME = "splat/jit/SplatProgram";
+	private static final String RUNTIME = "splat/jit/JitRuntime";
+	private static final String EXCEPTION_DESCRIPTOR = "Lsplat/executor/ExecutionException;";
+	private static final String MAIN = "program";
+	private static final String ENTRY = "enter";
+	private static final String FRAME = "splat/executor/Frame";
+
+	// Holds the errors of functions whose bodies failed to load, when
+	// there are any
+	private static final String LOAD_ERRORS = "LOAD_ERRORS";
+
+	private final ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME);
+
+	// Every function called by compiled code, in the order they were first
+	// called.  A function gets its method when the ones before are done.
+	private final Map<FunctionDecl, Integer> functionIndices = new IdentityHashMap<>();
+	private final List<FunctionDecl> functions = new ArrayList<>();
+	private final List<RuntimeException> loadErrors = new ArrayList<>();
+	private boolean anyLoadErrors = false;
+
+	// For the method being compiled
+	private CodeBuilder code;
+	private Type returnType;
+	private Type[] slotTypes;
+	// The slots read where they may not be assigned yet, and for those
+	// holding an Integer or a Boolean, the local of their assigned flag
+	private BitSet checkedSlots;
+	private int[] flagLocals;
+	// For a loop compiled on its own: the local holding the Frame it runs
+	// in, and the slot its return statements store the return value in
+	private int frameLocal = -1;
+	private int returnSlot;
+
+	private JitCompiler() {
+	}
+
+	/**
+	 * Compiles the program body, and the functions it calls directly or
+	 * indirectly.  Functions that are never called are not compiled, and
+	 * with lazy parsing, not parsed either.
+	 *
+	 * @return the compiled program, or null if it is too large for a
+	 * 			class file, in which case it has to run on the Executor
+	 */
+	public static JitProgram compile(ProgramAST progAST) {
+		try {
+			return new JitCompiler().compileProgram(progAST);
+		} catch (ClassTooLargeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Compiles a function, and the functions it calls directly or
+	 * indirectly, to run on the frames of the AST walker's calls.
+	 *
+	 * @return the compiled function, or null if it is too large for a
+	 * 			class file
+	 */
+	public static JitFunction compile(FunctionDecl funcDecl) {
+		try {
+			return new JitCompiler().compileEntry(funcDecl);
+		} catch (ClassTooLargeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Compiles a loop, and the functions it calls directly or indirectly,
+	 * to run on the frame the AST walker is running it in.  The compiled
+	 * loop starts with its condition, so it can take over from the AST
+	 * walker at any turn.
+	 *
+	 * @param function the function the loop is in, or null if it is in
+	 * 			the program body
+	 * @return the compiled loop, or null if it is too large for a class
+	 * 			file
+	 */
+	public static JitLoop compile(WhileLoopStatement loop, FunctionDecl function, ProgramAST progAST) {
+		try {
+			return new JitCompiler().compileLoop(loop, function, progAST);
+		} catch (ClassTooLargeException ex) {
+			return null;
+		}
+	}
+
+	private JitProgram compileProgram(ProgramAST progAST) {
+		List<Declaration> vars = new ArrayList<>();
+		BitSet assigned = new BitSet();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof VariableDecl) {
+				VariableDecl varDecl = (VariableDecl) decl;
+				vars.add(varDecl);
+
+				// Integer and Boolean program variables start out as 0 and
+				// false
+				if (varDecl.getType() != Type.String()) {
+					assigned.set(varDecl.getSlot());
+				}
+			}
+		}
+		compileMethod(MAIN, "()V", Type.Void(), List.of(), vars, progAST.getStmts(), progAST.getFrameSize(), assigned);
+
+		// Compiling a function can add more to the list
+		for (int i = 0; i < functions.size(); i++) {
+			compileFunction(i);
+		}
+		if (anyLoadErrors) {
+			addLoadErrors();
+		}
+
+		return new JitProgram(define(MAIN, MethodType.methodType(void.class)));
+	}
+
+	private JitFunction compileEntry(FunctionDecl funcDecl) {
+		functionIndex(funcDecl);
+		for (int i = 0; i < functions.size(); i++) {
+			compileFunction(i);
+		}
+		if (anyLoadErrors) {
+			addLoadErrors();
+		}
+
+		// enter(Frame) reads the arguments from their slots, calls the
+		// function's method and stores what it returns in the return slot
+		code = new CodeBuilder(classFile, 1);
+		for (Declaration decl : funcDecl.getParams()) {
+			VariableDecl param = (VariableDecl) decl;
+			code.local(ALOAD, 0);
+			code.pushInt(param.getSlot());
+			code.invokeStatic(RUNTIME, accessorName("get", param.getType()),
+					"(L" + FRAME + ";I)" + descriptor(param.getType()));
+		}
+		code.invokeStatic(CLASS_NAME, methodName(funcDecl), descriptor(funcDecl));
+		Type returnType = funcDecl.getReturnType();
+		if (returnType != Type.Void()) {
+			code.local(ALOAD, 0);
+			code.pushInt(funcDecl.getReturnSlot());
+			code.invokeStatic(RUNTIME, accessorName("set", returnType),
+					"(" + descriptor(returnType) + "L" + FRAME + ";I)V");
+		}
+		code.op(RETURN);
+		classFile.addMethod(ClassFileWriter.ACC_STATIC, ENTRY, "(L" + FRAME + ";)V", code);
+
+		return new JitFunction(define(ENTRY, MethodType.methodType(void.class, Frame.class)));
+	}
+
+	private JitLoop compileLoop(WhileLoopStatement loop, FunctionDecl function, ProgramAST progAST) {
+		// The variables known to be assigned at every turn are those that
+		// always are: a function's parameters, and the program body's
+		// Integers and Booleans
+		List<Declaration> params;
+		List<Declaration> vars;
+		int frameSize;
+		BitSet assigned = new BitSet();
+		if (function == null) {
+			params = List.of();
+			vars = new ArrayList<>();
+			for (Declaration decl : progAST.getDecls()) {
+				if (decl instanceof VariableDecl) {
+					vars.add(decl);
+					if (((VariableDecl) decl).getType() != Type.String()) {
+						assigned.set(((VariableDecl) decl).getSlot());
+					}
+				}
+			}
+			frameSize = progAST.getFrameSize();
+			returnType = Type.Void();
+		} else {
+			params = function.getParams();
+			vars = function.getLocalVars();
+			frameSize = function.getFrameSize();
+			for (Declaration param : params) {
+				assigned.set(((VariableDecl) param).getSlot());
+			}
+			returnType = function.getReturnType();
+			returnSlot = function.getReturnSlot();
+		}
+
+		// loop(slot 0, ..., slot n-1, Frame) keeps each slot in the local
+		// of the same number, as a function's method does, followed by the
+		// Frame and the assigned flags.  It returns whether the loop ran a
+		// return statement.
+		//
+		// What the loop assigns goes back to the frame at the end, but
+		// only if it was assigned, before or during the loop: the Integers
+		// and Booleans that are not always assigned get a flag for that.
+		BitSet written = new BitSet();
+		assignedIn(loop.getStatements(), written);
+		BitSet flagged = (BitSet) written.clone();
+		flagged.andNot(assigned);
+
+		frameLocal = frameSize;
+		prepareSlots(params, vars, List.of(loop), frameSize, assigned, flagged, frameSize + 1);
+		Type[] loopSlotTypes = slotTypes;
+		StringBuilder descriptor = new StringBuilder("(");
+		for (Type type : loopSlotTypes) {
+			descriptor.append(type == null ? "I" : descriptor(type));
+		}
+		descriptor.append("L" + FRAME + ";)Z");
+
+		code = new CodeBuilder(classFile, frameSize + 1);
+		for (int slot = 0; slot < frameSize; slot++) {
+			if (flagLocals[slot] >= 0) {
+				code.local(ALOAD, frameLocal);
+				code.pushInt(slot);
+				code.invokeStatic(RUNTIME, "isAssigned", "(L" + FRAME + ";I)Z");
+				code.local(ISTORE, flagLocals[slot]);
+			}
+		}
+		compileStmt(loop);
+
+		for (int slot = written.nextSetBit(0); slot >= 0; slot = written.nextSetBit(slot + 1)) {
+			Label skip = new Label();
+			Type type = slotTypes[slot];
+			if (type == Type.String()) {
+				code.local(ALOAD, slot);
+				code.jump(IFNULL, skip);
+				code.local(ALOAD, slot);
+			} else {
+				if (flagLocals[slot] >= 0) {
+					code.local(ILOAD, flagLocals[slot]);
+					code.jump(IFEQ, skip);
+				}
+				code.local(ILOAD, slot);
+			}
+			code.local(ALOAD, frameLocal);
+			code.pushInt(slot);
+			code.invokeStatic(RUNTIME, accessorName("set", type), "(" + descriptor(type) + "L" + FRAME + ";I)V");
+			code.bind(skip);
+		}
+		code.pushInt(0);
+		code.op(IRETURN);
+		classFile.addMethod(ClassFileWriter.ACC_STATIC, "loop", descriptor.toString(), code);
+
+		for (int i = 0; i < functions.size(); i++) {
+			compileFunction(i);
+		}
+		if (anyLoadErrors) {
+			addLoadErrors();
+		}
+
+		// enter(Frame) passes every slot of the frame to loop(); slots with
+		// no variable, such as the return slot, are passed as 0
+		code = new CodeBuilder(classFile, 1);
+		for (int slot = 0; slot < frameSize; slot++) {
+			Type type = loopSlotTypes[slot];
+			if (type == null) {
+				code.pushInt(0);
+			} else {
+				code.local(ALOAD, 0);
+				code.pushInt(slot);
+				code.invokeStatic(RUNTIME, accessorName("get", type), "(L" + FRAME + ";I)" + descriptor(type));
+			}
+		}
+		code.local(ALOAD, 0);
+		code.invokeStatic(CLASS_NAME, "loop", descriptor.toString());
+		code.op(IRETURN);
+		classFile.addMethod(ClassFileWriter.ACC_STATIC, ENTRY, "(L" + FRAME + ";)Z", code);
+
+		return new JitLoop(define(ENTRY, MethodType.methodType(boolean.class, Frame.class)));
+	}
+
+	/*
+	 * Adds the slots of every variable assigned by the statements,
+	 * including in nested blocks.
+	 */
+	private static void assignedIn(List<Statement> stmts, BitSet written) {
+		for (Statement stmt : stmts) {
+			if (stmt instanceof AssignmentStatement) {
+				written.set(((AssignmentStatement) stmt).getSlot());
+			} else if (stmt instanceof IfThenElseStatement) {
+				assignedIn(((IfThenElseStatement) stmt).getThenStatements(), written);
+				assignedIn(((IfThenElseStatement) stmt).getElseStatements(), written);
+			} else if (stmt instanceof IfThenStatement) {
+				assignedIn(((IfThenStatement) stmt).getThenStatements(), written);
+			} else if (stmt instanceof WhileLoopStatement) {
+				assignedIn(((WhileLoopStatement) stmt).getStatements(), written);
+			}
+		}
+	}
+
+	/*
+	 * The JitRuntime method that moves a value of the type between a Frame
+	 * and the compiled code, e.g. getInt or setString.
+	 */
+	private static String accessorName(String prefix, Type type) {
+		if (type == Type.Integer()) {
+			return prefix + "Int";
+		} else if (type == Type.Boolean()) {
+			return prefix + "Boolean";
+		}
+		return prefix + "String";
+	}
+
+	/*
+	 * Defines the class, and returns its static method of the given name.
+	 */
+	private MethodHandle define(String name, MethodType type) {
+		byte[] bytes = classFile.toByteArray();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandles.Lookup program = anyLoadErrors
+					? lookup.defineHiddenClassWithClassData(bytes, loadErrors.toArray(), false)
+					: lookup.defineHiddenClass(bytes, false);
+			return program.findStatic(program.lookupClass(), name, type);
+		} catch (IllegalAccessException | NoSuchMethodException ex) {
+			throw new IllegalStateException("Cannot load the compiled program", ex);
+		}
+	}
+
+	private void compileFunction(int index) {
+		FunctionDecl funcDecl = functions.get(index);
+		String descriptor = descriptor(funcDecl);
+
+		// Its body has a parse or semantic error, raised by the AST walker
+		// when the function is first called, so it's raised then here too
+		if (loadErrors.get(index) != null) {
+			code = new CodeBuilder(classFile, funcDecl.getParams().size());
+			code.getStatic(CLASS_NAME, LOAD_ERRORS, "[Ljava/lang/Object;");
+			code.pushInt(index);
+			code.op(AALOAD);
+			code.checkcast("java/lang/RuntimeException");
+			code.op(ATHROW);
+			classFile.addMethod(ClassFileWriter.ACC_STATIC, methodName(funcDecl), descriptor, code);
+			return;
+		}
+
+		BitSet assigned = new BitSet();
+		for (Declaration param : funcDecl.getParams()) {
+			assigned.set(((VariableDecl) param).getSlot());
+		}
+		compileMethod(methodName(funcDecl), descriptor, funcDecl.getReturnType(), funcDecl.getParams(),
+				funcDecl.getLocalVars(), funcDecl.getStmts(), funcDecl.getFrameSize(), assigned);
+	}
+
+	/*
+	 * Compiles a function or the program body into a method whose locals
+	 * are the slots of its frame, followed by the assigned flags.
+	 */
+	private void compileMethod(String name, String descriptor, Type returnType, List<Declaration> params,
+								  List<Declaration> vars, List<Statement> stmts, int frameSize, BitSet assigned) {
+		this.returnType = returnType;
+		frameLocal = -1;
+		prepareSlots(params, vars, stmts, frameSize, assigned, new BitSet(), frameSize);
+
+		code = new CodeBuilder(classFile, params.size());
+
+		// The JVM wants every local assigned before it is read, whether or
+		// not the Splat variable is
+		for (Declaration decl : vars) {
+			VariableDecl varDecl = (VariableDecl) decl;
+			if (varDecl.getType() == Type.String()) {
+				code.op(ACONST_NULL);
+				code.local(ASTORE, varDecl.getSlot());
+			} else {
+				code.pushInt(0);
+				code.local(ISTORE, varDecl.getSlot());
+			}
+		}
+		for (int slot = 0; slot < frameSize; slot++) {
+			if (flagLocals[slot] >= 0) {
+				code.pushInt(0);
+				code.local(ISTORE, flagLocals[slot]);
+			}
+		}
+
+		compileStmts(stmts);
+
+		if (returnType == Type.Void()) {
+			code.op(RETURN);
+		} else if (code.isReachable()) {
+			// The analyzer makes sure a non-void function returns on every
+			// path, so this is only ever reached through a bug
+			code.pushString(name);
+			code.invokeStatic(RUNTIME, "noReturn", "(Ljava/lang/String;)" + EXCEPTION_DESCRIPTOR);
+			code.op(ATHROW);
+		}
+
+		classFile.addMethod(ClassFileWriter.ACC_STATIC, name, descriptor, code);
+	}
+
+	/*
+	 * Finds the type of every slot, the slots that are read where they may
+	 * not be assigned yet, and gives those holding an Integer or a Boolean
+	 * an assigned flag, in the locals from firstFlagLocal on.  So do the
+	 * flagged slots, whether or not they are read.
+	 */
+	private void prepareSlots(List<Declaration> params, List<Declaration> vars, List<Statement> stmts,
+							  int frameSize, BitSet assigned, BitSet flagged, int firstFlagLocal) {
+		slotTypes = new Type[frameSize];
+		for (Declaration decl : params) {
+			slotTypes[((VariableDecl) decl).getSlot()] = ((VariableDecl) decl).getType();
+		}
+		for (Declaration decl : vars) {
+			slotTypes[((VariableDecl) decl).getSlot()] = ((VariableDecl) decl).getType();
+		}
+
+		checkedSlots = new BitSet();
+		assignedAfter(stmts, assigned, checkedSlots);
+		flagLocals = new int[frameSize];
+		int nextLocal = firstFlagLocal;
+		for (int slot = 0; slot < frameSize; slot++) {
+			boolean needsFlag = (checkedSlots.get(slot) || flagged.get(slot)) && slotTypes[slot] != Type.String();
+			flagLocals[slot] = needsFlag ? nextLocal++ : -1;
+		}
+	}
+
+	/*
+	 * The class initializer fetches the load errors from the class data.
+	 */
+	private void addLoadErrors() {
+		classFile.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+				LOAD_ERRORS, "[Ljava/lang/Object;");
+
+		code = new CodeBuilder(classFile, 0);
+		code.invokeStatic("java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+		code.pushString("_");
+		code.pushClass("[Ljava/lang/Object;");
+		code.invokeStatic("java/lang/invoke/MethodHandles", "classData",
+				"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;");
+		code.checkcast("[Ljava/lang/Object;");
+		code.putStatic(CLASS_NAME, LOAD_ERRORS, "[Ljava/lang/Object;");
+		code.op(RETURN);
+		classFile.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V", code);
+	}
+
+	/*
+	 * Returns the slots assigned on every path through the statements, or
+	 * null if no path gets to their end because they all return.  Slots
+	 * read where they may not be assigned yet are added to unproven.
+	 */
+	private static BitSet assignedAfter(List<Statement> stmts, BitSet assigned, BitSet unproven) {
+		BitSet current = (BitSet) assigned.clone();
+		for (Statement stmt : stmts) {
+			if (stmt instanceof AssignmentStatement) {
+				AssignmentStatement assignment = (AssignmentStatement) stmt;
+				reads(assignment.getRhs(), current, unproven);
+				current.set(assignment.getSlot());
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				reads(ifThenElse.getExpression(), current, unproven);
+				BitSet afterThen = assignedAfter(ifThenElse.getThenStatements(), current, unproven);
+				BitSet afterElse = assignedAfter(ifThenElse.getElseStatements(), current, unproven);
+				if (afterThen == null) {
+					current = afterElse;
+				} else if (afterElse == null) {
+					current = afterThen;
+				} else {
+					afterThen.and(afterElse);
+					current = afterThen;
+				}
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				reads(ifThen.getExpression(), current, unproven);
+				assignedAfter(ifThen.getThenStatements(), current, unproven);
+			} else if (stmt instanceof WhileLoopStatement) {
+				// The body may not run at all, and on its first run only
+				// what was assigned before the loop is
+				WhileLoopStatement loop = (WhileLoopStatement) stmt;
+				reads(loop.getExpression(), current, unproven);
+				assignedAfter(loop.getStatements(), current, unproven);
+			} else if (stmt instanceof PrintStatement) {
+				reads(((PrintStatement) stmt).getExpressionToPrint(), current, unproven);
+			} else if (stmt instanceof ReturnStatement) {
+				Expression expr = ((ReturnStatement) stmt).getExpression();
+				if (expr != null) {
+					reads(expr, current, unproven);
+				}
+				return null;
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				for (Expression arg : ((VoidFunctionCallStatement) stmt).getArguments()) {
+					reads(arg, current, unproven);
+				}
+			}
+
+			if (current == null) {
+				return null;
+			}
+		}
+		return current;
+	}
+
+	private static void reads(Expression expr, BitSet assigned, BitSet unproven) {
+		if (expr instanceof LabelExpression) {
+			int slot = ((LabelExpression) expr).getSlot();
+			if (!assigned.get(slot)) {
+				unproven.set(slot);
+			}
+		} else if (expr instanceof BinaryOperatorExpression) {
+			reads(((BinaryOperatorExpression) expr).getArg1(), assigned, unproven);
+			reads(((BinaryOperatorExpression) expr).getArg2(), assigned, unproven);
+		} else if (expr instanceof UnaryOperatorExpression) {
+			reads(((UnaryOperatorExpression) expr).getArg1(), assigned, unproven);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			for (Expression arg : ((NonVoidFunctionCallExpression) expr).getArguments()) {
+				reads(arg, assigned, unproven);
+			}
+		}
+	}
+
+	private void compileStmts(List<Statement> stmts) {
+		for (Statement stmt : stmts) {
+			compileStmt(stmt);
+		}
+	}
+
+	private void compileStmt(Statement stmt) {
+		if (stmt instanceof AssignmentStatement) {
+			AssignmentStatement assignment = (AssignmentStatement) stmt;
+			int slot = assignment.getSlot();
+			compileExpr(assignment.getRhs());
+			code.local(slotTypes[slot] == Type.String() ? ASTORE : ISTORE, slot);
+			if (flagLocals[slot] >= 0) {
+				code.pushInt(1);
+				code.local(ISTORE, flagLocals[slot]);
+			}
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			Label elseLabel = new Label();
+			Label end = new Label();
+			compileCondition(ifThenElse.getExpression(), elseLabel);
+			compileStmts(ifThenElse.getThenStatements());
+			code.jump(GOTO, end);
+			code.bind(elseLabel);
+			compileStmts(ifThenElse.getElseStatements());
+			code.bind(end);
+		} else if (stmt instanceof IfThenStatement) {
+			IfThenStatement ifThen = (IfThenStatement) stmt;
+			Label end = new Label();
+			compileCondition(ifThen.getExpression(), end);
+			compileStmts(ifThen.getThenStatements());
+			code.bind(end);
+		} else if (stmt instanceof WhileLoopStatement) {
+			WhileLoopStatement loop = (WhileLoopStatement) stmt;
+			Label top = new Label();
+			Label end = new Label();
+			code.bind(top);
+			compileCondition(loop.getExpression(), end);
+			compileStmts(loop.getStatements());
+			code.jump(GOTO, top);
+			code.bind(end);
+		} else if (stmt instanceof PrintStatement) {
+			Expression expr = ((PrintStatement) stmt).getExpressionToPrint();
+			code.getStatic("java/lang/System", "out", "Ljava/io/PrintStream;");
+			compileExpr(expr);
+			code.invokeVirtual("java/io/PrintStream", "print", "(" + descriptor(expr.getType()) + ")V");
+		} else if (stmt instanceof ReturnStatement) {
+			Expression expr = ((ReturnStatement) stmt).getExpression();
+			if (frameLocal >= 0) {
+				// A loop compiled on its own stores the return value in the
+				// frame, and tells the AST walker the function returned
+				if (expr != null) {
+					compileExpr(expr);
+					code.local(ALOAD, frameLocal);
+					code.pushInt(returnSlot);
+					code.invokeStatic(RUNTIME, accessorName("set", returnType),
+							"(" + descriptor(returnType) + "L" + FRAME + ";I)V");
+				}
+				code.pushInt(1);
+				code.op(IRETURN);
+			} else if (expr == null) {
+				code.op(RETURN);
+			} else {
+				compileExpr(expr);
+				code.op(returnType == Type.String() ? ARETURN : IRETURN);
+			}
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+			compileCall(call.getFunctionDecl(), call.getArguments());
+		} else {
+			throw new IllegalArgumentException("Cannot compile " + stmt.getClass().getSimpleName());
+		}
+	}
+
+	/*
+	 * Compiles a condition to a jump to ifFalse if it is false, and
+	 * otherwise falls through, without computing the Boolean when it is a
+	 * comparison.
+	 */
+	private void compileCondition(Expression expr, Label ifFalse) {
+		if (expr instanceof EqualBinaryOperatorExpression
+				&& ((EqualBinaryOperatorExpression) expr).getArg1().getType() == Type.String()) {
+			compileExpr(expr);
+			code.jump(IFEQ, ifFalse);
+		} else if (expr instanceof BinaryOperatorExpression && jumpIfFalse((BinaryOperatorExpression) expr) >= 0) {
+			BinaryOperatorExpression comparison = (BinaryOperatorExpression) expr;
+			compileExpr(comparison.getArg1());
+			compileExpr(comparison.getArg2());
+			code.jump(jumpIfFalse(comparison), ifFalse);
+		} else if (expr instanceof NotUnaryOperatorExpression) {
+			compileExpr(((UnaryOperatorExpression) expr).getArg1());
+			code.jump(IFNE, ifFalse);
+		} else {
+			compileExpr(expr);
+			code.jump(IFEQ, ifFalse);
+		}
+	}
+
+	/*
+	 * The jump taken when an int comparison is false, or -1 if the
+	 * operator is not one.
+	 */
+	private static int jumpIfFalse(BinaryOperatorExpression expr) {
+		if (expr instanceof LessThanBinaryOperatorExpression) {
+			return IF_ICMPGE;
+		} else if (expr instanceof LessThanEqualBinaryOperatorExpression) {
+			return IF_ICMPGT;
+		} else if (expr instanceof GreaterThanBinaryOperatorExpression) {
+			return IF_ICMPLE;
+		} else if (expr instanceof GreaterThanEqualBinaryOperatorExpression) {
+			return IF_ICMPLT;
+		} else if (expr instanceof EqualBinaryOperatorExpression) {
+			return IF_ICMPNE;
+		}
+		return -1;
+	}
+
+	private void compileExpr(Expression expr) {
+		if (expr instanceof IntLiteralExpression) {
+			code.pushInt((int) ((IntLiteralExpression) expr).getValue());
+		} else if (expr instanceof BoolLiteralExpression) {
+			code.pushInt((boolean) ((BoolLiteralExpression) expr).getValue() ? 1 : 0);
+		} else if (expr instanceof StringLiteralExpression) {
+			code.pushString((String) ((StringLiteralExpression) expr).getValue());
+		} else if (expr instanceof LabelExpression) {
+			compileLoad((LabelExpression) expr);
+		} else if (expr instanceof EqualBinaryOperatorExpression
+				&& ((EqualBinaryOperatorExpression) expr).getArg1().getType() == Type.String()) {
+			// Strings compare by content; neither is null, since reading
+			// an unassigned String fails
+			compileExpr(((BinaryOperatorExpression) expr).getArg1());
+			compileExpr(((BinaryOperatorExpression) expr).getArg2());
+			code.invokeVirtual("java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+		} else if (expr instanceof BinaryOperatorExpression && jumpIfFalse((BinaryOperatorExpression) expr) >= 0) {
+			Label isFalse = new Label();
+			Label end = new Label();
+			compileCondition(expr, isFalse);
+			code.pushInt(1);
+			code.jump(GOTO, end);
+			code.bind(isFalse);
+			code.pushInt(0);
+			code.bind(end);
+		} else if (expr instanceof BinaryOperatorExpression) {
+			BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+			compileExpr(binary.getArg1());
+			compileExpr(binary.getArg2());
+			if (binary instanceof DivideBinaryOperatorExpression || binary instanceof ModuloBinaryOperatorExpression) {
+				// Division by zero is reported at the divisor
+				code.pushInt(binary.getArg2().getLine());
+				code.pushInt(binary.getArg2().getColumn());
+				code.invokeStatic(RUNTIME, "divisor", "(III)I");
+			}
+			code.op(arithmeticOpcode(binary));
+		} else if (expr instanceof NegativeUnaryOperatorExpression) {
+			compileExpr(((UnaryOperatorExpression) expr).getArg1());
+			code.op(INEG);
+		} else if (expr instanceof NotUnaryOperatorExpression) {
+			compileExpr(((UnaryOperatorExpression) expr).getArg1());
+			code.pushInt(1);
+			code.op(IXOR);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			compileCall(call.getFunctionDecl(), call.getArguments());
+		} else {
+			throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName());
+		}
+	}
+
+	private static int arithmeticOpcode(BinaryOperatorExpression expr) {
+		if (expr instanceof PlusBinaryOperatorExpression) {
+			return IADD;
+		} else if (expr instanceof MinusBinaryOperatorExpression) {
+			return ISUB;
+		} else if (expr instanceof MultiplyBinaryOperatorExpression) {
+			return IMUL;
+		} else if (expr instanceof DivideBinaryOperatorExpression) {
+			return IDIV;
+		} else if (expr instanceof ModuloBinaryOperatorExpression) {
+			return IREM;
+		} else if (expr instanceof AndBinaryOperatorExpression) {
+			// Both sides are always evaluated, as in the AST walker
+			return IAND;
+		} else if (expr instanceof OrBinaryOperatorExpression) {
+			return IOR;
+		}
+		throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName());
+	}
+
+	private void compileLoad(LabelExpression label) {
+		int slot = label.getSlot();
+		boolean isString = slotTypes[slot] == Type.String();
+		if (checkedSlots.get(slot)) {
+			Label assigned = new Label();
+			if (isString) {
+				code.local(ALOAD, slot);
+				code.jump(IFNONNULL, assigned);
+			} else {
+				code.local(ILOAD, flagLocals[slot]);
+				code.jump(IFNE, assigned);
+			}
+			code.pushString(label.getLabel());
+			code.pushInt(label.getLine());
+			code.pushInt(label.getColumn());
+			code.invokeStatic(RUNTIME, "uninitialized", "(Ljava/lang/String;II)" + EXCEPTION_DESCRIPTOR);
+			code.op(ATHROW);
+			code.bind(assigned);
+		}
+		code.local(isString ? ALOAD : ILOAD, slot);
+	}
+
+	private void compileCall(FunctionDecl callee, List<Expression> args) {
+		for (Expression arg : args) {
+			compileExpr(arg);
+		}
+		functionIndex(callee);
+		code.invokeStatic(CLASS_NAME, methodName(callee), descriptor(callee));
+	}
+
+	/*
+	 * Returns the index of a function, adding it to those to compile, and
+	 * loading its body if it was parsed lazily, the first time it is
+	 * called.
+	 */
+	private int functionIndex(FunctionDecl funcDecl) {
+		Integer index = functionIndices.get(funcDecl);
+		if (index == null) {
+			index = functions.size();
+			functionIndices.put(funcDecl, index);
+			functions.add(funcDecl);
+
+			RuntimeException loadError = null;
+			try {
+				funcDecl.load();
+			} catch (FunctionLoadException ex) {
+				loadError = ex;
+				anyLoadErrors = true;
+			}
+			loadErrors.add(loadError);
+		}
+		return index;
+	}
+
+	private static String methodName(FunctionDecl funcDecl) {
+		return "f_" + funcDecl.getLabel();
+	}
+
+	private static String descriptor(FunctionDecl funcDecl) {
+		StringBuilder descriptor = new StringBuilder("(");
+		for (Declaration param : funcDecl.getParams()) {
+			descriptor.append(descriptor(((VariableDecl) param).getType()));
+		}
+		return descriptor.append(')').append(descriptor(funcDecl.getReturnType())).toString();
+	}
+
+	private static String descriptor(Type type) {
+		if (type == Type.Integer()) {
+			return "I";
+		} else if (type == Type.Boolean()) {
+			return "Z";
+		} else if (type == Type.String()) {
+			return "Ljava/lang/String;";
+		}
+		return "V";
+	}
+}
@@ -0,0 +1,36 @@
+package splat.jit;
+
+import java.lang.invoke.MethodHandle;
+
+import splat.executor.CompiledBody;
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+
+/**
+ * A function compiled by the JitCompiler, which runs on the frame of a
+ * call made by the AST walker.
+ */
+public class JitFunction implements CompiledBody {
+
+	// The static method that takes the arguments from the frame, and
+	// stores the return value in it
+	private final MethodHandle entry;
+
+	JitFunction(MethodHandle entry) {
+		this.entry = entry;
+	}
+
+	@Override
+	public Completion execute(Frame frame) throws ExecutionException {
+		try {
+			entry.invokeExact(frame);
+		} catch (ExecutionException | RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			// The compiled code throws nothing else
+			throw new IllegalStateException(ex);
+		}
+		return Completion.RETURN;
+	}
+}
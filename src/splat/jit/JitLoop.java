@@ -0,0 +1,37 @@
+package splat.jit;
+
+import java.lang.invoke.MethodHandle;
+
+import splat.executor.CompiledBody;
+import splat.executor.Completion;
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+
+/**
+ * A loop compiled by the JitCompiler, which takes over from the AST walker
+ * on the frame it was running the loop in.
+ */
+public class JitLoop implements CompiledBody {
+
+	// The static method that takes the variables from the frame, runs the
+	// loop and stores back what it assigned, and tells whether it returned
+	private final MethodHandle entry;
+
+	JitLoop(MethodHandle entry) {
+		this.entry = entry;
+	}
+
+	@Override
+	public Completion execute(Frame frame) throws ExecutionException {
+		boolean returned;
+		try {
+			returned = (boolean) entry.invokeExact(frame);
+		} catch (ExecutionException | RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			// The compiled code throws nothing else
+			throw new IllegalStateException(ex);
+		}
+		return returned ? Completion.RETURN : Completion.NORMAL;
+	}
+}
@@ -0,0 +1,29 @@
+package splat.jit;
+
+import java.lang.invoke.MethodHandle;
+
+import splat.executor.ExecutionException;
+
+/**
+ * A program compiled by the JitCompiler, ready to run.
+ */
+public class JitProgram {
+
+	// The static method compiled from the program body
+	private final MethodHandle main;
+
+	JitProgram(MethodHandle main) {
+		this.main = main;
+	}
+
+	public void runProgram() throws ExecutionException {
+		try {
+			main.invokeExact();
+		} catch (ExecutionException | RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			// The compiled code throws nothing else
+			throw new IllegalStateException(ex);
+		}
+	}
+}
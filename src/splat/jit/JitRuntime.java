@@ -0,0 +1,72 @@
+package splat.jit;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.StringValue;
+import splat.executor.Value;
+
+/**
+ * Helpers called from the code generated by the JitCompiler, for the
+ * run-time errors of a Splat program.  They build the same exceptions,
+ * at the same line and column, as the AST walker does.
+ *
+ * The entry of a compiled function also moves its arguments and its
+ * return value through here, between the Frame of a call and the
+ * compiled code.
+ */
+final class JitRuntime {
+
+	private JitRuntime() {
+	}
+
+	/**
+	 * Returns the divisor of a division or modulo, unless it is 0.  The
+	 * JVM's JIT inlines this, so the check costs a compare and a branch.
+	 */
+	static int divisor(int divisor, int line, int column) throws ExecutionException {
+		if (divisor == 0) {
+			throw new ExecutionException("Division by zero", line, column);
+		}
+		return divisor;
+	}
+
+	static ExecutionException uninitialized(String label, int line, int column) {
+		return new ExecutionException("Cannot use uninitialized label " + label, line, column);
+	}
+
+	static ExecutionException noReturn(String function) {
+		return new ExecutionException("Internal error -- did not return from " + function + "()", -1, -1);
+	}
+
+	static int getInt(Frame frame, int slot) {
+		return (int) frame.getPrimitive(slot);
+	}
+
+	static boolean getBoolean(Frame frame, int slot) {
+		return frame.getPrimitive(slot) != 0;
+	}
+
+	/**
+	 * @return the String in the slot, or null if it is unassigned
+	 */
+	static String getString(Frame frame, int slot) {
+		Value value = frame.get(slot);
+		return value == null ? null : (String) value.getValue();
+	}
+
+	static boolean isAssigned(Frame frame, int slot) {
+		return frame.getPrimitive(slot) != Frame.UNASSIGNED;
+	}
+
+	static void setInt(int value, Frame frame, int slot) {
+		frame.setInt(slot, value);
+	}
+
+	static void setBoolean(boolean value, Frame frame, int slot) {
+		frame.setBoolean(slot, value);
+	}
+
+	static void setString(String value, Frame frame, int slot) {
+		frame.set(slot, new StringValue(value));
+	}
+}
@@ -1,225 +1,393 @@
-package splat.lexer;
-
-import java.io.*;
-import java.util.*;
-
-public class Lexer {
-	private final BufferedReader reader;
-	private int line;
-	private int column;
-	private int currentChar;
-
-	public Lexer(File file) throws IOException {
-
-		this.reader = new BufferedReader(new FileReader(file));
-		this.line = 1;
-		this.column = 1;
-	}
-
-	public List<Token> tokenize() throws LexException, IOException {
-		List<Token> tokens = new ArrayList<>();
-
-		try {
-			StringBuilder token = new StringBuilder();
-
-			currentChar = reader.read();
-			do
-			{
-				switch ((char) currentChar)
-				{
-					// "singular" token
-					case '(':
-					case ')':
-					case ';':
-					case ',':
-					case '+':
-					case '-':
-					case '*':
-					case '/':
-					case '%':
-						// write whatever was before
-						writeTokenAndReset(token, tokens, line, column);
-
-						// add current "singular" token
-						token.append((char) currentChar);
-						writeTokenAndReset(token, tokens, line, column);
-
-						advanceReaderAndIncrementColumn();
-						break;
-					// whitespaces
-					case ' ':
-					case '\t':
-					case '\n':
-						// write whatever was before
-						writeTokenAndReset(token, tokens, line, column);
-
-						if (currentChar == '\n')
-						{
-							// newline logic (\r is ignored, see default case)
-							column=0;
-							line++;
-						}
-
-						advanceReaderAndIncrementColumn();
-						break;
-					// string literals
-					case '"':
-						// write whatever was before
-						writeTokenAndReset(token, tokens, line, column);
-
-						// read till closing
-						handleStringLiteral(token, tokens);
-						break;
-					// single colon or walrus
-					case ':':
-						// write whatever was before
-						writeTokenAndReset(token, tokens, line, column);
-
-						// now add the colon
-						token.append((char) currentChar);
-
-						advanceReaderAndIncrementColumn();
-
-						// walrus
-						if (currentChar == '=')
-						{
-							token.append((char) currentChar);
-							writeTokenAndReset(token, tokens, line, column);
-
-							advanceReaderAndIncrementColumn();
-						}
-						else if (currentChar == ':') // invalid op
-						{
-							throw new LexException("Repeated colon", line, column);
-						}
-						else
-						{
-							// ':' followed by anything else -> just write the ':'
-							writeTokenAndReset(token, tokens, line, column);
-							// not advancing because already did
-						}
-						break;
-					// relational operators. Single or composite
-					case '<':
-					case '>':
-					case '=':
-						// write whatever was before
-						writeTokenAndReset(token, tokens, line, column);
-
-						token.append((char) currentChar);
-						char firstChar = (char) currentChar;
-
-						advanceReaderAndIncrementColumn();
-
-						char secondChar = (char) currentChar;
-
-						if (secondChar != '=' && secondChar != '<' && secondChar != '>') // single
-						{
-							if (firstChar == '=') // single equal is not in spec
-							{
-								throw new LexException("Not in grammar", line, column);
-							}
-							else
-							{
-								writeTokenAndReset(token, tokens, line, column);
-								continue;
-							}
-						}
-
-						String[] validTwoCharOps = {"<=", ">=", "=="};
-
-						token.append((char) currentChar); // add second char to token
-						String currentOp = token.toString();
-						boolean valid = false;
-						for (String validTwoCharOp: validTwoCharOps)
-						{
-							if (validTwoCharOp.equals(currentOp))
-							{
-								valid = true;
-								break;
-							}
-						}
-
-						if (!valid)
-						{
-							throw new LexException("Not in grammar", line, column);
-						}
-
-						writeTokenAndReset(token, tokens, line, column);
-						advanceReaderAndIncrementColumn();
-
-						break;
-					default:
-						// alphanumeric + underscore
-						if (isAlphaNumOrUnderscore(currentChar))
-						{
-							token.append((char) currentChar);
-							advanceReaderAndIncrementColumn();
-							continue;
-						}
-
-						if (currentChar == '\r')
-						{
-							currentChar = reader.read();
-							// no column increment \r is usually coupled with \n and they together are considered as a single column
-							continue;
-						}
-
-						if (currentChar == -1) // ignore EOF here
-						{
-							continue;
-						}
-
-						throw new LexException("Symbol not in grammar", line, column);
-				}
-			}
-			while (currentChar != -1);
-		} finally {
-			reader.close();
-		}
-
-//		System.out.println(file.getAbsolutePath());
-//		System.out.println(Arrays.toString(tokens.toArray()));
-		return tokens;
-	}
-
-	private void advanceReaderAndIncrementColumn() throws IOException {
-		currentChar = reader.read();
-		column++;
-	}
-
-	private static boolean isAlphaNumOrUnderscore(int ch) {
-		return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
-	}
-
-	private static void writeTokenAndReset(StringBuilder token, List<Token> tokens, int line, int column) {
-		// write whatever was before
-		if (token.length() > 0)
-		{
-			tokens.add(new Token(token.toString(), line, column - token.length()));
-			token.delete(0, token.length());
-		}
-	}
-
-	private void handleStringLiteral(StringBuilder token, List<Token> tokens) throws IOException, LexException {
-		do {
-			token.append((char) currentChar);
-			advanceReaderAndIncrementColumn();
-			if (currentChar == '\n')
-			{
-				throw new LexException("Multiline strings are not supported", line, column);
-			}
-		} while (currentChar != '"' && currentChar != -1);
-
-		if (currentChar == -1)
-		{
-			throw new LexException("Unclosed quote", line, column);
-		}
-		else // ch = '"' - closing quote
-		{
-			token.append((char) currentChar);
-			writeTokenAndReset(token, tokens, line, column);
-		}
-		advanceReaderAndIncrementColumn();
-	}
-}
+package splat.lexer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class Lexer {
+
+	// Files smaller than this are simply read into a byte[]; mapping them
+	// costs more than it saves
+	private static final long MAP_THRESHOLD = 64 * 1024;
+
+	// tokenizeParallel() never cuts the source into chunks smaller than this
+	private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+	private final ByteBuffer source;
+	private final int end;
+	private int pos;
+	private int line;
+	private int column;
+
+	// Position of the lexeme found by the last call to scanToken()
+	private int tokenKind;
+	private int tokenStart;
+	private int tokenLine;
+	private int tokenColumn;
+
+	public Lexer(File file) throws IOException {
+
+		this(readSource(file));
+	}
+
+	/**
+	 * Lexes the bytes between the buffer's position and its limit, which
+	 * must hold UTF-8 text.  The buffer is not modified.
+	 */
+	public Lexer(ByteBuffer source) {
+		this(source.slice(), 0, source.remaining());
+	}
+
+	public Lexer(byte[] source) {
+		this(ByteBuffer.wrap(source));
+	}
+
+	public Lexer(CharSequence source) {
+		this(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)));
+	}
+
+	/**
+	 * Reads the stream to its end, but does not close it.
+	 */
+	public Lexer(InputStream source) throws IOException {
+		this(source.readAllBytes());
+	}
+
+	/**
+	 * Lexes only source[start, end), numbering lines from 1 at start.
+	 */
+	private Lexer(ByteBuffer source, int start, int end) {
+		this.source = source;
+		this.end = end;
+		this.pos = start;
+		this.line = 1;
+		this.column = 1;
+	}
+
+	/**
+	 * Maps the whole file into memory (or reads it into a single array if
+	 * it is small), so that tokens can refer to the bytes by offset instead
+	 * of copying every lexeme into its own String.
+	 */
+	private static ByteBuffer readSource(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < MAP_THRESHOLD) {
+				return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large to lex: " + file);
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	public TokenStream tokenize() throws LexException {
+		// roughly one token per five bytes of source; a chunk lexer starts
+		// part way into the source, so only count what it will lex
+		TokenStream tokens = new TokenStream(source, (end - pos) / 5);
+
+		while (scanToken()) {
+			tokens.add(tokenKind, tokenStart, pos - tokenStart, tokenLine, tokenColumn);
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Same as tokenize(), but splits large sources into chunks on line
+	 * boundaries and lexes the chunks in parallel on the common fork-join
+	 * pool.  This works because no token can span a newline (string
+	 * literals are not allowed to).  Each chunk numbers its lines from 1,
+	 * and the lines are shifted by the number of newlines in the chunks
+	 * before it when the chunks are put back together in order.
+	 */
+	public TokenStream tokenizeParallel() throws LexException {
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		int chunkCount = Math.min(4 * parallelism, (end - pos) / MIN_CHUNK_SIZE);
+		if (parallelism < 2 || chunkCount < 2) {
+			return tokenize();
+		}
+
+		// chunk i is source[bounds[i], bounds[i + 1]), each starting a line
+		int[] bounds = new int[chunkCount + 1];
+		bounds[0] = pos;
+		bounds[chunkCount] = end;
+		for (int i = 1; i < chunkCount; i++) {
+			int bound = Math.max(bounds[i - 1], pos + (int) ((long) (end - pos) * i / chunkCount));
+			while (bound < end && source.get(bound) != '\n') {
+				bound++;
+			}
+			bounds[i] = Math.min(bound + 1, end);
+		}
+
+		TokenStream[] chunks = new TokenStream[chunkCount];
+		int[] newlines = new int[chunkCount];
+		LexException[] errors = new LexException[chunkCount];
+		ForkJoinPool.commonPool().invoke(new LexChunks(bounds, chunks, newlines, errors, 0, chunkCount));
+
+		// Report the first error in the file, with its real line number
+		int lineOffset = line - 1;
+		int[] lineOffsets = new int[chunkCount];
+		for (int i = 0; i < chunkCount; i++) {
+			if (errors[i] != null) {
+				throw new LexException(errors[i].getMessage(), errors[i].getLine() + lineOffset, errors[i].getColumn());
+			}
+			lineOffsets[i] = lineOffset;
+			lineOffset += newlines[i];
+		}
+
+		pos = end;
+		line = lineOffset + 1;
+		return TokenStream.concat(source, chunks, lineOffsets);
+	}
+
+	private class LexChunks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] bounds;
+		private final TokenStream[] chunks;
+		private final int[] newlines;
+		private final LexException[] errors;
+		private final int from;
+		private final int to;
+
+		LexChunks(int[] bounds, TokenStream[] chunks, int[] newlines, LexException[] errors, int from, int to) {
+			this.bounds = bounds;
+			this.chunks = chunks;
+			this.newlines = newlines;
+			this.errors = errors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new LexChunks(bounds, chunks, newlines, errors, from, mid),
+						new LexChunks(bounds, chunks, newlines, errors, mid, to));
+				return;
+			}
+
+			Lexer chunkLexer = new Lexer(source, bounds[from], bounds[from + 1]);
+			try {
+				chunks[from] = chunkLexer.tokenize();
+				newlines[from] = chunkLexer.line - 1;
+			} catch (LexException ex) {
+				errors[from] = ex;
+			}
+		}
+	}
+
+	/**
+	 * Returns a TokenSource that lexes tokens only as they are pulled by the
+	 * parser, instead of materializing all of them with tokenize().
+	 */
+	public TokenSource tokenSource() {
+		return new TokenSource(this);
+	}
+
+	/**
+	 * Returns the bytes being lexed, from position 0 to the limit.
+	 */
+	public ByteBuffer getSource() {
+		return source;
+	}
+
+	int getTokenKind() {
+		return tokenKind;
+	}
+
+	int getTokenStart() {
+		return tokenStart;
+	}
+
+	int getTokenLength() {
+		return pos - tokenStart;
+	}
+
+	int getTokenLine() {
+		return tokenLine;
+	}
+
+	int getTokenColumn() {
+		return tokenColumn;
+	}
+
+	/**
+	 * Skips whitespace and scans the next lexeme, leaving its kind and start
+	 * in tokenKind/tokenStart/tokenLine/tokenColumn and its end at pos.
+	 *
+	 * @return false once the end of the source has been reached
+	 */
+	boolean scanToken() throws LexException {
+		skipWhitespace();
+
+		if (pos >= end) {
+			return false;
+		}
+
+		tokenStart = pos;
+		tokenLine = line;
+		tokenColumn = column;
+
+		int ch = source.get(pos);
+		switch (ch)
+		{
+			// "singular" token
+			case '(':
+				return singular(TokenKind.LEFT_PAREN);
+			case ')':
+				return singular(TokenKind.RIGHT_PAREN);
+			case ';':
+				return singular(TokenKind.SEMICOLON);
+			case ',':
+				return singular(TokenKind.COMMA);
+			case '+':
+				return singular(TokenKind.PLUS);
+			case '-':
+				return singular(TokenKind.MINUS);
+			case '*':
+				return singular(TokenKind.MULTIPLY);
+			case '/':
+				return singular(TokenKind.DIVIDE);
+			case '%':
+				return singular(TokenKind.MODULO);
+			// string literals
+			case '"':
+				scanStringLiteral();
+				tokenKind = TokenKind.STRING_LITERAL;
+				return true;
+			// single colon or walrus
+			case ':':
+				advance();
+				tokenKind = TokenKind.COLON;
+				if (peek() == '=')
+				{
+					advance();
+					tokenKind = TokenKind.ASSIGN;
+				}
+				else if (peek() == ':') // invalid op
+				{
+					throw new LexException("Repeated colon", line, column);
+				}
+				return true;
+			// relational operators. Single or composite
+			case '<':
+			case '>':
+			case '=':
+				advance();
+
+				int second = peek();
+				if (second == '=')
+				{
+					// "<=", ">=", "=="
+					advance();
+					tokenKind = ch == '<' ? TokenKind.LESS_THAN_EQUAL
+							: ch == '>' ? TokenKind.GREATER_THAN_EQUAL
+							: TokenKind.EQUAL;
+					return true;
+				}
+				if (second == '<' || second == '>' || ch == '=')
+				{
+					// single equal is not in spec, and neither are "<<", "<>", "=>", ...
+					throw new LexException("Not in grammar", line, column);
+				}
+				tokenKind = ch == '<' ? TokenKind.LESS_THAN : TokenKind.GREATER_THAN;
+				return true;
+			default:
+				// alphanumeric + underscore
+				if (isAlphaNumOrUnderscore(ch))
+				{
+					do {
+						advance();
+					} while (isAlphaNumOrUnderscore(peek()));
+					tokenKind = TokenKind.classifyWord(source, tokenStart, pos - tokenStart);
+					return true;
+				}
+
+				throw new LexException("Symbol not in grammar", line, column);
+		}
+	}
+
+	private boolean singular(int kind) {
+		advance();
+		tokenKind = kind;
+		return true;
+	}
+
+	private void skipWhitespace() {
+		while (pos < end)
+		{
+			switch (source.get(pos))
+			{
+				case ' ':
+				case '\t':
+					pos++;
+					column++;
+					break;
+				case '\n':
+					pos++;
+					line++;
+					column = 1;
+					break;
+				case '\r':
+					// no column increment \r is usually coupled with \n and they together are considered as a single column
+					pos++;
+					break;
+				default:
+					return;
+			}
+		}
+	}
+
+	private int peek() {
+		return pos < end ? source.get(pos) & 0xFF : -1;
+	}
+
+	private void advance() {
+		pos++;
+		column++;
+	}
+
+	private static boolean isAlphaNumOrUnderscore(int ch) {
+		return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+	}
+
+	private void scanStringLiteral() throws LexException {
+		// opening quote
+		advance();
+
+		int ch = peek();
+		while (ch != '"')
+		{
+			if (ch == -1)
+			{
+				throw new LexException("Unclosed quote", line, column);
+			}
+			if (ch == '\n')
+			{
+				throw new LexException("Multiline strings are not supported", line, column);
+			}
+
+			pos++;
+			// UTF-8 continuation bytes don't start a new character
+			if ((ch & 0xC0) != 0x80)
+			{
+				column++;
+			}
+			ch = peek();
+		}
+
+		// closing quote
+		advance();
+	}
+}
@@ -1,40 +1,82 @@
-package splat.lexer;
-
-public class Token {
-    private final int line;
-    private final int column;
-    private final String value;
-
-    public Token(String value, int line, int column) {
-        this.line = line;
-        this.column = column;
-        this.value = value;
-    }
-
-    public Token(char value, int line, int column) {
-        this.line = line;
-        this.column = column;
-        this.value = "" + value;
-    }
-
-    public int getLine() {
-        return line;
-    }
-
-    public int getColumn() {
-        return column;
-    }
-
-    public String getValue() {
-        return value;
-    }
-
-    @Override
-    public String toString() {
-        return "Token{" +
-                "line=" + line +
-                ", column=" + column +
-                ", value='" + value + '\'' +
-                '}';
-    }
-}
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class Token {
+    private final int line;
+    private final int column;
+    private String value;
+
+    // Set when the token is a view into the lexer's source buffer; the
+    // value String is only built the first time someone asks for it
+    private final ByteBuffer source;
+    private final int offset;
+    private final int length;
+
+    public Token(String value, int line, int column) {
+        this.line = line;
+        this.column = column;
+        this.value = value;
+        this.source = null;
+        this.offset = -1;
+        this.length = value.length();
+    }
+
+    public Token(char value, int line, int column) {
+        this("" + value, line, column);
+    }
+
+    public Token(ByteBuffer source, int offset, int length, int line, int column) {
+        this.line = line;
+        this.column = column;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Offset of the first byte of this token in the source buffer, or -1
+     * if the token was not produced from a buffer.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public String getValue() {
+        if (value == null) {
+            value = decode(source, offset, length);
+        }
+        return value;
+    }
+
+    static String decode(ByteBuffer source, int offset, int length) {
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        source.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "Token{" +
+                "line=" + line +
+                ", column=" + column +
+                ", value='" + getValue() + '\'' +
+                '}';
+    }
+}
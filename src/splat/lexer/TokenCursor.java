@@ -0,0 +1,47 @@
+package splat.lexer;
+
+/**
+ * A position in a sequence of tokens, as seen by the parser.  Tokens are
+ * consumed by moving the cursor forward, so nothing is ever shifted or
+ * removed from the underlying sequence.
+ */
+public interface TokenCursor {
+
+	/**
+	 * Returns the kind of the token n positions ahead of the cursor, where
+	 * 0 is the next token to be consumed.
+	 *
+	 * @throws IndexOutOfBoundsException if that is past the last token
+	 */
+	int peek(int n);
+
+	/**
+	 * Returns the token n positions ahead of the cursor as a Token object.
+	 *
+	 * @throws IndexOutOfBoundsException if that is past the last token
+	 */
+	Token peekToken(int n);
+
+	/**
+	 * Returns the text of the token n positions ahead of the cursor.
+	 *
+	 * @throws IndexOutOfBoundsException if that is past the last token
+	 */
+	String peekValue(int n);
+
+	/**
+	 * Consumes the next token.
+	 */
+	void advance();
+
+	/**
+	 * Returns the current position, to be handed back to reset() for
+	 * backtracking.
+	 */
+	int mark();
+
+	/**
+	 * Moves the cursor back (or forward) to a position returned by mark().
+	 */
+	void reset(int mark);
+}
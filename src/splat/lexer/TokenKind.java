@@ -0,0 +1,128 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Integer codes for every kind of token the lexer produces.  Keywords are
+ * recognized once while lexing, so the parser never has to compare the
+ * text of a token.
+ */
+public final class TokenKind {
+
+	// words and literals
+	public static final int LABEL = 0;
+	public static final int INT_LITERAL = 1;
+	public static final int STRING_LITERAL = 2;
+
+	// keywords
+	public static final int PROGRAM = 3;
+	public static final int BEGIN = 4;
+	public static final int END = 5;
+	public static final int IS = 6;
+	public static final int WHILE = 7;
+	public static final int DO = 8;
+	public static final int IF = 9;
+	public static final int THEN = 10;
+	public static final int ELSE = 11;
+	public static final int RETURN = 12;
+	public static final int PRINT = 13;
+	public static final int PRINT_LINE = 14;
+	public static final int TRUE = 15;
+	public static final int FALSE = 16;
+	public static final int AND = 17;
+	public static final int OR = 18;
+	public static final int NOT = 19;
+	public static final int BOOLEAN = 20;
+	public static final int STRING = 21;
+	public static final int INTEGER = 22;
+	public static final int VOID = 23;
+
+	// punctuation and operators
+	public static final int LEFT_PAREN = 24;
+	public static final int RIGHT_PAREN = 25;
+	public static final int SEMICOLON = 26;
+	public static final int COMMA = 27;
+	public static final int COLON = 28;
+	public static final int ASSIGN = 29;
+	public static final int PLUS = 30;
+	public static final int MINUS = 31;
+	public static final int MULTIPLY = 32;
+	public static final int DIVIDE = 33;
+	public static final int MODULO = 34;
+	public static final int LESS_THAN = 35;
+	public static final int GREATER_THAN = 36;
+	public static final int LESS_THAN_EQUAL = 37;
+	public static final int GREATER_THAN_EQUAL = 38;
+	public static final int EQUAL = 39;
+
+	private static final String[] TEXT = {
+			"<label>", "<int-literal>", "<string-literal>",
+			"program", "begin", "end", "is", "while", "do", "if", "then", "else",
+			"return", "print", "print_line", "true", "false", "and", "or", "not",
+			"Boolean", "String", "Integer", "void",
+			"(", ")", ";", ",", ":", ":=", "+", "-", "*", "/", "%",
+			"<", ">", "<=", ">=", "=="
+	};
+
+	// Perfect hash table for the keywords: (2 * length + first + last) & 63
+	// is collision free over the keyword set
+	private static final byte[][] KEYWORD_TEXT = new byte[64][];
+	private static final int[] KEYWORD_KIND = new int[64];
+
+	static {
+		for (int kind = PROGRAM; kind <= VOID; kind++) {
+			byte[] text = TEXT[kind].getBytes(StandardCharsets.US_ASCII);
+			int slot = keywordHash(text[0], text[text.length - 1], text.length);
+			if (KEYWORD_TEXT[slot] != null) {
+				throw new AssertionError("Keyword hash collision: " + TEXT[kind]);
+			}
+			KEYWORD_TEXT[slot] = text;
+			KEYWORD_KIND[slot] = kind;
+		}
+	}
+
+	private TokenKind() {
+	}
+
+	/**
+	 * Returns the source text of a fixed token kind, or a placeholder
+	 * such as "&lt;label&gt;" for labels and literals.
+	 */
+	public static String text(int kind) {
+		return TEXT[kind];
+	}
+
+	public static boolean isKeyword(int kind) {
+		return kind >= PROGRAM && kind <= VOID;
+	}
+
+	private static int keywordHash(int first, int last, int length) {
+		return (2 * length + first + last) & 63;
+	}
+
+	/**
+	 * Classifies the word of the given length starting at offset in the
+	 * source as a keyword, label or integer literal.
+	 */
+	static int classifyWord(ByteBuffer source, int offset, int length) {
+		int first = source.get(offset);
+		if (first >= '0' && first <= '9') {
+			// a word starting with a digit can never be a label; the parser
+			// reports it if it is not a valid integer
+			return INT_LITERAL;
+		}
+
+		int slot = keywordHash(first, source.get(offset + length - 1), length);
+		byte[] text = KEYWORD_TEXT[slot];
+		if (text == null || text.length != length) {
+			return LABEL;
+		}
+		for (int i = 1; i < length; i++) {
+			if (source.get(offset + i) != text[i]) {
+				return LABEL;
+			}
+		}
+		return KEYWORD_KIND[slot];
+	}
+}
@@ -0,0 +1,172 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A TokenCursor that pulls tokens from the lexer as the parser asks for
+ * them, instead of lexing the whole program up front.  Only a small ring
+ * buffer of lookahead tokens is kept, so memory use does not grow with
+ * the size of the program.
+ *
+ * While a mark() is outstanding, every token after it is kept so that
+ * reset() can go back to it; a new mark() releases the previous one.
+ */
+public class TokenSource implements TokenCursor {
+
+	// The parser looks at most two tokens ahead (peekTwoAhead)
+	private static final int LOOKAHEAD = 2;
+
+	private final Lexer lexer;
+	private final ByteBuffer source;
+
+	// Ring buffer, indexed by absolute token index & mask
+	private int[] kinds;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] lines;
+	private int[] columns;
+	private int mask;
+
+	// Absolute index of the next token to be consumed
+	private int pos;
+	// Absolute index one past the last token lexed so far
+	private int lexed;
+	// Absolute index of the oldest token that must be kept, or -1
+	private int markPos = -1;
+
+	private boolean exhausted;
+	private LexException lexError;
+
+	TokenSource(Lexer lexer) {
+		this.lexer = lexer;
+		this.source = lexer.getSource();
+		allocate(Integer.highestOneBit(LOOKAHEAD) << 1);
+	}
+
+	private void allocate(int capacity) {
+		kinds = new int[capacity];
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+		lines = new int[capacity];
+		columns = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Lexes ahead until the token at the given absolute index is in the
+	 * buffer, or the input runs out.
+	 */
+	private void fill(int index) {
+		while (lexed <= index && !exhausted) {
+			int oldest = markPos >= 0 ? Math.min(markPos, pos) : pos;
+			if (lexed - oldest > mask) {
+				grow(oldest);
+			}
+
+			try {
+				if (!lexer.scanToken()) {
+					exhausted = true;
+					break;
+				}
+			} catch (LexException ex) {
+				// Report it once the parser stops; to the parser this looks
+				// like the end of the input
+				lexError = ex;
+				exhausted = true;
+				break;
+			}
+
+			int slot = lexed & mask;
+			kinds[slot] = lexer.getTokenKind();
+			offsets[slot] = lexer.getTokenStart();
+			lengths[slot] = lexer.getTokenLength();
+			lines[slot] = lexer.getTokenLine();
+			columns[slot] = lexer.getTokenColumn();
+			lexed++;
+		}
+	}
+
+	private void grow(int oldest) {
+		int[] oldKinds = kinds;
+		int[] oldOffsets = offsets;
+		int[] oldLengths = lengths;
+		int[] oldLines = lines;
+		int[] oldColumns = columns;
+		int oldMask = mask;
+
+		allocate(kinds.length << 1);
+		for (int i = oldest; i < lexed; i++) {
+			kinds[i & mask] = oldKinds[i & oldMask];
+			offsets[i & mask] = oldOffsets[i & oldMask];
+			lengths[i & mask] = oldLengths[i & oldMask];
+			lines[i & mask] = oldLines[i & oldMask];
+			columns[i & mask] = oldColumns[i & oldMask];
+		}
+	}
+
+	private int slot(int n) {
+		int index = pos + n;
+		fill(index);
+		if (index >= lexed) {
+			throw new IndexOutOfBoundsException("No token at index " + index);
+		}
+		return index & mask;
+	}
+
+	@Override
+	public int peek(int n) {
+		// slot() may grow the buffer, so it has to run before kinds is read
+		int slot = slot(n);
+		return kinds[slot];
+	}
+
+	@Override
+	public Token peekToken(int n) {
+		int slot = slot(n);
+		return new Token(source, offsets[slot], lengths[slot], lines[slot], columns[slot]);
+	}
+
+	@Override
+	public String peekValue(int n) {
+		int slot = slot(n);
+		return Token.decode(source, offsets[slot], lengths[slot]);
+	}
+
+	@Override
+	public void advance() {
+		pos++;
+	}
+
+	@Override
+	public int mark() {
+		markPos = pos;
+		return pos;
+	}
+
+	@Override
+	public void reset(int mark) {
+		if (mark < pos && (markPos < 0 || mark < markPos)) {
+			throw new IllegalArgumentException("Tokens before " + mark + " are no longer buffered");
+		}
+		pos = mark;
+	}
+
+	/**
+	 * Lexes whatever input the parser did not consume, so that lexical
+	 * errors are reported even when parsing stopped before reaching them
+	 * (or finished without needing them).  Lexical errors take precedence
+	 * over parse errors, just as if the whole file was lexed first.
+	 *
+	 * @throws LexException if any part of the input is not lexically valid
+	 */
+	public void finish() throws LexException {
+		if (lexError != null) {
+			throw lexError;
+		}
+		while (!exhausted) {
+			if (!lexer.scanToken()) {
+				exhausted = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package splat.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The tokens of a program, stored as parallel primitive arrays instead of
+ * one Token object per lexeme.  Token text is only decoded from the
+ * source buffer when value() or token() is asked for it.
+ */
+public class TokenStream {
+
+	private final ByteBuffer source;
+	private int size;
+	private int[] kinds;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] lines;
+	private int[] columns;
+
+	TokenStream(ByteBuffer source, int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 16);
+		this.source = source;
+		this.kinds = new int[capacity];
+		this.offsets = new int[capacity];
+		this.lengths = new int[capacity];
+		this.lines = new int[capacity];
+		this.columns = new int[capacity];
+	}
+
+	/**
+	 * Joins streams lexed from consecutive chunks of the same source,
+	 * shifting the line numbers of each chunk by the given offset.  The
+	 * chunks are used up: each of their arrays is dropped once it has been
+	 * copied, so that only one joined array is allocated on top of them at
+	 * a time.
+	 */
+	static TokenStream concat(ByteBuffer source, TokenStream[] chunks, int[] lineOffsets) {
+		int total = 0;
+		for (TokenStream chunk : chunks) {
+			total += chunk.size;
+		}
+
+		TokenStream joined = new TokenStream(source, 0);
+		joined.size = total;
+		joined.kinds = join(chunks, total, null, chunk -> { int[] a = chunk.kinds; chunk.kinds = null; return a; });
+		joined.offsets = join(chunks, total, null, chunk -> { int[] a = chunk.offsets; chunk.offsets = null; return a; });
+		joined.lengths = join(chunks, total, null, chunk -> { int[] a = chunk.lengths; chunk.lengths = null; return a; });
+		joined.lines = join(chunks, total, lineOffsets, chunk -> { int[] a = chunk.lines; chunk.lines = null; return a; });
+		joined.columns = join(chunks, total, null, chunk -> { int[] a = chunk.columns; chunk.columns = null; return a; });
+		return joined;
+	}
+
+	/*
+	 * Copies one array of every chunk into a new array, adding the chunk's
+	 * offset to each value if offsets are given.
+	 */
+	private static int[] join(TokenStream[] chunks, int total, int[] offsets, Function<TokenStream, int[]> take) {
+		int[] joined = new int[Math.max(total, 16)];
+		int at = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			int[] part = take.apply(chunks[i]);
+			int size = chunks[i].size;
+			if (offsets == null) {
+				System.arraycopy(part, 0, joined, at, size);
+			} else {
+				for (int j = 0; j < size; j++) {
+					joined[at + j] = part[j] + offsets[i];
+				}
+			}
+			at += size;
+		}
+		return joined;
+	}
+
+	void add(int kind, int offset, int length, int line, int column) {
+		if (size == kinds.length) {
+			int capacity = size + (size >> 1);
+			kinds = Arrays.copyOf(kinds, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			columns = Arrays.copyOf(columns, capacity);
+		}
+		kinds[size] = kind;
+		offsets[size] = offset;
+		lengths[size] = length;
+		lines[size] = line;
+		columns[size] = column;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public ByteBuffer getSource() {
+		return source;
+	}
+
+	/**
+	 * @throws IndexOutOfBoundsException if index is past the last token
+	 */
+	public int kind(int index) {
+		return kinds[Objects.checkIndex(index, size)];
+	}
+
+	public int offset(int index) {
+		return offsets[Objects.checkIndex(index, size)];
+	}
+
+	public int length(int index) {
+		return lengths[Objects.checkIndex(index, size)];
+	}
+
+	public int line(int index) {
+		return lines[Objects.checkIndex(index, size)];
+	}
+
+	public int column(int index) {
+		return columns[Objects.checkIndex(index, size)];
+	}
+
+	public String value(int index) {
+		Objects.checkIndex(index, size);
+		return Token.decode(source, offsets[index], lengths[index]);
+	}
+
+	/**
+	 * Creates a Token for the given index, for AST elements and error
+	 * messages that need one.
+	 */
+	public Token token(int index) {
+		Objects.checkIndex(index, size);
+		return new Token(source, offsets[index], lengths[index], lines[index], columns[index]);
+	}
+
+	/**
+	 * Returns a cursor positioned at the first token.
+	 */
+	public TokenCursor cursor() {
+		return cursor(0);
+	}
+
+	/**
+	 * Returns a cursor positioned at the given token index.
+	 */
+	public TokenCursor cursor(int start) {
+		return new Cursor(start);
+	}
+
+	private class Cursor implements TokenCursor {
+
+		private int pos;
+
+		Cursor(int start) {
+			this.pos = start;
+		}
+
+		@Override
+		public int peek(int n) {
+			return kind(pos + n);
+		}
+
+		@Override
+		public Token peekToken(int n) {
+			return token(pos + n);
+		}
+
+		@Override
+		public String peekValue(int n) {
+			return value(pos + n);
+		}
+
+		@Override
+		public void advance() {
+			pos++;
+		}
+
+		@Override
+		public int mark() {
+			return pos;
+		}
+
+		@Override
+		public void reset(int mark) {
+			pos = mark;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package splat.opt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Checks that an analyzed AST still holds together after a pass has
+ * rewritten it: what semantic analysis resolved and proved has to be
+ * true of the new nodes as well.
+ *
+ * - Every expression has the type of what it computes, and operators,
+ *   conditions, assignments and calls are given operands of the right
+ *   types.
+ * - Every variable is resolved to a slot of the frame, which holds a
+ *   variable of its type, and every call to a function with as many
+ *   parameters as it has arguments.
+ * - Return statements are only in functions, store in the return slot
+ *   and return what the function's type says.
+ * - No node is in the tree twice, since the engines may keep state in
+ *   them, per node.
+ */
+class AstInvariants {
+
+	private final String where;
+	private final Type[] slotTypes;
+	private final Type returnType;
+	private final int returnSlot;
+	private final Set<ASTElement> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/*
+	 * For a function, or for the program body if returnType is null.
+	 */
+	private AstInvariants(String where, int frameSize, List<Declaration> vars, Type returnType, int returnSlot) {
+		this.where = where;
+		this.slotTypes = new Type[frameSize];
+		for (Declaration decl : vars) {
+			VariableDecl varDecl = (VariableDecl) decl;
+			check(varDecl.getSlot() >= 0 && varDecl.getSlot() < frameSize, "slot out of the frame", varDecl);
+			slotTypes[varDecl.getSlot()] = varDecl.getType();
+		}
+		this.returnType = returnType;
+		this.returnSlot = returnSlot;
+	}
+
+	/**
+	 * @throws IllegalStateException describing the first broken invariant
+	 */
+	static void check(ProgramAST progAST) {
+		List<Declaration> vars = new ArrayList<>();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof VariableDecl) {
+				vars.add(decl);
+			}
+		}
+		new AstInvariants("the program body", progAST.getFrameSize(), vars, null, -1).checkStmts(progAST.getStmts());
+
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && ((FunctionDecl) decl).isBodyParsed()) {
+				check((FunctionDecl) decl);
+			}
+		}
+	}
+
+	static void check(FunctionDecl funcDecl) {
+		List<Declaration> vars = new ArrayList<>(funcDecl.getParams());
+		vars.addAll(funcDecl.getLocalVars());
+		new AstInvariants(funcDecl.getLabel() + "()", funcDecl.getFrameSize(), vars, funcDecl.getReturnType(),
+				funcDecl.getReturnSlot()).checkStmts(funcDecl.getStmts());
+	}
+
+	private void checkStmts(List<Statement> stmts) {
+		check(stmts != null, "missing block", null);
+		for (Statement stmt : stmts) {
+			checkStmt(stmt);
+		}
+	}
+
+	private void checkStmt(Statement stmt) {
+		check(stmt != null, "missing statement", null);
+		check(seen.add(stmt), "statement in the tree twice", stmt);
+
+		if (stmt instanceof AssignmentStatement) {
+			AssignmentStatement assignment = (AssignmentStatement) stmt;
+			checkSlot(assignment.getSlot(), checkExpr(assignment.getRhs()), stmt);
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			checkCondition(ifThenElse.getExpression());
+			checkStmts(ifThenElse.getThenStatements());
+			checkStmts(ifThenElse.getElseStatements());
+		} else if (stmt instanceof IfThenStatement) {
+			IfThenStatement ifThen = (IfThenStatement) stmt;
+			checkCondition(ifThen.getExpression());
+			checkStmts(ifThen.getThenStatements());
+		} else if (stmt instanceof WhileLoopStatement) {
+			WhileLoopStatement loop = (WhileLoopStatement) stmt;
+			checkCondition(loop.getExpression());
+			checkStmts(loop.getStatements());
+		} else if (stmt instanceof PrintStatement) {
+			checkExpr(((PrintStatement) stmt).getExpressionToPrint());
+		} else if (stmt instanceof ReturnStatement) {
+			ReturnStatement ret = (ReturnStatement) stmt;
+			check(returnType != null, "return in the program body", stmt);
+			if (ret.getExpression() == null) {
+				check(returnType == Type.Void(), "return without a value", stmt);
+			} else {
+				check(checkExpr(ret.getExpression()) == returnType, "return of the wrong type", stmt);
+				check(ret.getSlot() == returnSlot, "return value not stored in the return slot", stmt);
+			}
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+			checkCall(call.getFunctionDecl(), call.getArguments(), stmt);
+		} else {
+			check(false, "unknown statement " + stmt.getClass().getSimpleName(), stmt);
+		}
+	}
+
+	private void checkCondition(Expression expr) {
+		check(checkExpr(expr) == Type.Boolean(), "condition is not a Boolean", expr);
+	}
+
+	/*
+	 * Returns the type of the expression, once checked.
+	 */
+	private Type checkExpr(Expression expr) {
+		check(expr != null, "missing expression", null);
+		check(seen.add(expr), "expression in the tree twice", expr);
+		Type type = expr.getType();
+		check(type != null && type != Type.Void(), "expression without a type", expr);
+
+		if (expr instanceof IntLiteralExpression) {
+			check(type == Type.Integer(), "Integer literal of another type", expr);
+		} else if (expr instanceof BoolLiteralExpression) {
+			check(type == Type.Boolean(), "Boolean literal of another type", expr);
+		} else if (expr instanceof StringLiteralExpression) {
+			check(type == Type.String(), "String literal of another type", expr);
+		} else if (expr instanceof LabelExpression) {
+			checkSlot(((LabelExpression) expr).getSlot(), type, expr);
+		} else if (expr instanceof BinaryOperatorExpression) {
+			BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+			Type arg1 = checkExpr(binary.getArg1());
+			Type arg2 = checkExpr(binary.getArg2());
+			if (binary instanceof EqualBinaryOperatorExpression) {
+				check(arg1 == arg2, "== of different types", expr);
+				check(type == Type.Boolean(), "== is not a Boolean", expr);
+			} else if (binary instanceof AndBinaryOperatorExpression || binary instanceof OrBinaryOperatorExpression) {
+				check(arg1 == Type.Boolean() && arg2 == Type.Boolean() && type == Type.Boolean(),
+						"and / or not on Booleans", expr);
+			} else if (binary instanceof IntegerComparisonBinaryOperator) {
+				check(arg1 == Type.Integer() && arg2 == Type.Integer() && type == Type.Boolean(),
+						"comparison not of Integers", expr);
+			} else {
+				check(arg1 == Type.Integer() && arg2 == Type.Integer() && type == Type.Integer(),
+						"arithmetic not on Integers", expr);
+			}
+		} else if (expr instanceof NotUnaryOperatorExpression) {
+			check(checkExpr(((UnaryOperatorExpression) expr).getArg1()) == Type.Boolean() && type == Type.Boolean(),
+					"not of a non-Boolean", expr);
+		} else if (expr instanceof NegativeUnaryOperatorExpression) {
+			check(checkExpr(((UnaryOperatorExpression) expr).getArg1()) == Type.Integer() && type == Type.Integer(),
+					"negation of a non-Integer", expr);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			checkCall(call.getFunctionDecl(), call.getArguments(), expr);
+			check(call.getFunctionDecl().getReturnType() == type, "call of the wrong type", expr);
+		} else {
+			check(false, "unknown expression " + expr.getClass().getSimpleName(), expr);
+		}
+		return type;
+	}
+
+	private void checkCall(FunctionDecl funcDecl, List<Expression> args, ASTElement element) {
+		check(funcDecl != null, "call not resolved to a function", element);
+		List<Declaration> params = funcDecl.getParams();
+		check(params.size() == args.size(), "call with the wrong number of arguments", element);
+		for (int i = 0; i < args.size(); i++) {
+			check(checkExpr(args.get(i)) == ((VariableDecl) params.get(i)).getType(),
+					"argument of the wrong type", args.get(i));
+		}
+	}
+
+	private void checkSlot(int slot, Type type, ASTElement element) {
+		check(slot >= 0 && slot < slotTypes.length, "slot out of the frame", element);
+		check(slotTypes[slot] == type, "slot holds a variable of another type", element);
+	}
+
+	private void check(boolean holds, String problem, ASTElement element) {
+		if (!holds) {
+			String position = element == null ? ""
+					: " at line " + element.getLine() + ", column " + element.getColumn();
+			throw new IllegalStateException(problem + " in " + where + position);
+		}
+	}
+}
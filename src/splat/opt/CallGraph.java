@@ -0,0 +1,143 @@
+package splat.opt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Which functions call which, as far as the bodies parsed so far tell.
+ * A function whose body has not been parsed yet is taken to call nothing.
+ *
+ * The edges of a function are found the first time they are asked for,
+ * and kept.  Inlining a function that is not recursive into its callers
+ * gives them its callees instead, which leaves the same functions
+ * reachable from each, so the graph stays good enough to tell which
+ * functions are recursive.
+ */
+final class CallGraph {
+
+	private final Map<FunctionDecl, Set<FunctionDecl>> callees = new HashMap<>();
+	private final Map<FunctionDecl, Boolean> recursive = new HashMap<>();
+
+	/**
+	 * @return the functions the function calls, in the order of their first
+	 * 			call in its body
+	 */
+	Set<FunctionDecl> getCallees(FunctionDecl funcDecl) {
+		Set<FunctionDecl> called = callees.get(funcDecl);
+		if (called == null) {
+			called = new LinkedHashSet<>();
+			if (funcDecl.isBodyParsed()) {
+				addCallees(funcDecl.getStmts(), called);
+			}
+			callees.put(funcDecl, called);
+		}
+		return called;
+	}
+
+	/**
+	 * Whether the function may end up calling itself, directly or through
+	 * other functions.
+	 */
+	boolean isRecursive(FunctionDecl funcDecl) {
+		Boolean result = recursive.get(funcDecl);
+		if (result == null) {
+			Set<FunctionDecl> reached = new LinkedHashSet<>();
+			reach(funcDecl, reached);
+			result = reached.contains(funcDecl);
+			recursive.put(funcDecl, result);
+		}
+		return result;
+	}
+
+	private void reach(FunctionDecl from, Set<FunctionDecl> reached) {
+		for (FunctionDecl callee : getCallees(from)) {
+			if (reached.add(callee)) {
+				reach(callee, reached);
+			}
+		}
+	}
+
+	/**
+	 * @return the functions of the program whose bodies have been parsed,
+	 * 			each one after those it calls, unless they call it back
+	 */
+	List<FunctionDecl> calleesFirst(ProgramAST progAST) {
+		List<FunctionDecl> order = new ArrayList<>();
+		Set<FunctionDecl> visited = new LinkedHashSet<>();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl) {
+				visit((FunctionDecl) decl, visited, order);
+			}
+		}
+		return Collections.unmodifiableList(order);
+	}
+
+	private void visit(FunctionDecl funcDecl, Set<FunctionDecl> visited, List<FunctionDecl> order) {
+		if (visited.add(funcDecl)) {
+			for (FunctionDecl callee : getCallees(funcDecl)) {
+				visit(callee, visited, order);
+			}
+			if (funcDecl.isBodyParsed()) {
+				order.add(funcDecl);
+			}
+		}
+	}
+
+	private static void addCallees(List<Statement> stmts, Set<FunctionDecl> called) {
+		for (Statement stmt : stmts) {
+			if (stmt instanceof AssignmentStatement) {
+				addCallees(((AssignmentStatement) stmt).getRhs(), called);
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				addCallees(ifThenElse.getExpression(), called);
+				addCallees(ifThenElse.getThenStatements(), called);
+				addCallees(ifThenElse.getElseStatements(), called);
+			} else if (stmt instanceof IfThenStatement) {
+				addCallees(((IfThenStatement) stmt).getExpression(), called);
+				addCallees(((IfThenStatement) stmt).getThenStatements(), called);
+			} else if (stmt instanceof WhileLoopStatement) {
+				addCallees(((WhileLoopStatement) stmt).getExpression(), called);
+				addCallees(((WhileLoopStatement) stmt).getStatements(), called);
+			} else if (stmt instanceof PrintStatement) {
+				addCallees(((PrintStatement) stmt).getExpressionToPrint(), called);
+			} else if (stmt instanceof ReturnStatement) {
+				Expression expr = ((ReturnStatement) stmt).getExpression();
+				if (expr != null) {
+					addCallees(expr, called);
+				}
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+				for (Expression arg : call.getArguments()) {
+					addCallees(arg, called);
+				}
+				called.add(call.getFunctionDecl());
+			}
+		}
+	}
+
+	private static void addCallees(Expression expr, Set<FunctionDecl> called) {
+		if (expr instanceof BinaryOperatorExpression) {
+			addCallees(((BinaryOperatorExpression) expr).getArg1(), called);
+			addCallees(((BinaryOperatorExpression) expr).getArg2(), called);
+		} else if (expr instanceof UnaryOperatorExpression) {
+			addCallees(((UnaryOperatorExpression) expr).getArg1(), called);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			for (Expression arg : call.getArguments()) {
+				addCallees(arg, called);
+			}
+			called.add(call.getFunctionDecl());
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package splat.opt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Folds the constant expressions of an analyzed program, so that they are
+ * worked out once instead of every time they are evaluated.
+ *
+ * - An operator whose operands are all literals is replaced by a literal
+ *   of its value: integer arithmetic, comparisons, and, or and not.  A
+ *   division or modulo by zero is left as it is, to fail when it runs,
+ *   at the same line and column.
+ * - A variable assigned only once, by a statement of the body itself
+ *   rather than of a nested block, to an expression that folds to a
+ *   literal, is replaced by the literal wherever it is read after that
+ *   statement.  Reads before it are left alone, since they see the
+ *   variable unassigned, or as 0 or false in the program body.
+ * - An if statement whose condition folds to a literal is replaced by the
+ *   branch taken, and a while loop whose condition folds to false is
+ *   removed.
+ *
+ * Folded nodes take the line and column of the expression they replace.
+ * The AST is rebuilt where something changed; nodes are never changed in
+ * place.
+ */
+public class ConstantFolder {
+
+	// The literal each slot holds, from the statement that assigns it on
+	private final LiteralExpression[] constants;
+	// The slots assigned exactly once, by a statement of the body itself
+	private final boolean[] singleAssignments;
+
+	private ConstantFolder(int frameSize, int paramCount, List<Statement> stmts) {
+		constants = new LiteralExpression[frameSize];
+		singleAssignments = new boolean[frameSize];
+
+		int[] assignments = new int[frameSize];
+		countAssignments(stmts, assignments);
+		for (Statement stmt : stmts) {
+			if (stmt instanceof AssignmentStatement) {
+				int slot = ((AssignmentStatement) stmt).getSlot();
+
+				// Parameters are assigned by the call as well
+				singleAssignments[slot] = assignments[slot] == 1 && slot >= paramCount;
+			}
+		}
+	}
+
+	/**
+	 * Folds the program body, and the bodies of the functions that have
+	 * been parsed.  A function parsed lazily has to be folded once it is
+	 * loaded.
+	 */
+	public static void fold(ProgramAST progAST) {
+		ConstantFolder folder = new ConstantFolder(progAST.getFrameSize(), 0, progAST.getStmts());
+		progAST.setStmts(folder.foldBlock(progAST.getStmts()));
+
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && ((FunctionDecl) decl).isBodyParsed()) {
+				fold((FunctionDecl) decl);
+			}
+		}
+	}
+
+	public static void fold(FunctionDecl funcDecl) {
+		ConstantFolder folder = new ConstantFolder(funcDecl.getFrameSize(), funcDecl.getParams().size(),
+				funcDecl.getStmts());
+		funcDecl.setBody(funcDecl.getLocalVars(), folder.foldBlock(funcDecl.getStmts()));
+	}
+
+	private static void countAssignments(List<Statement> stmts, int[] assignments) {
+		for (Statement stmt : stmts) {
+			if (stmt instanceof AssignmentStatement) {
+				assignments[((AssignmentStatement) stmt).getSlot()]++;
+			} else if (stmt instanceof IfThenElseStatement) {
+				countAssignments(((IfThenElseStatement) stmt).getThenStatements(), assignments);
+				countAssignments(((IfThenElseStatement) stmt).getElseStatements(), assignments);
+			} else if (stmt instanceof IfThenStatement) {
+				countAssignments(((IfThenStatement) stmt).getThenStatements(), assignments);
+			} else if (stmt instanceof WhileLoopStatement) {
+				countAssignments(((WhileLoopStatement) stmt).getStatements(), assignments);
+			}
+		}
+	}
+
+	private List<Statement> foldBlock(List<Statement> stmts) {
+		List<Statement> folded = new ArrayList<>(stmts.size());
+		for (Statement stmt : stmts) {
+			foldStmt(stmt, folded);
+		}
+		return folded;
+	}
+
+	/*
+	 * Adds what the statement folds to, which is nothing or several
+	 * statements for an if statement or a loop whose condition is known.
+	 */
+	private void foldStmt(Statement stmt, List<Statement> folded) {
+		if (stmt instanceof AssignmentStatement) {
+			AssignmentStatement assignment = (AssignmentStatement) stmt;
+			int slot = assignment.getSlot();
+			Expression rhs = foldExpr(assignment.getRhs());
+			if (rhs != assignment.getRhs()) {
+				assignment = new AssignmentStatement(position(stmt), assignment.getLhs(), rhs);
+				assignment.setSlot(slot);
+			}
+			folded.add(assignment);
+
+			if (singleAssignments[slot] && rhs instanceof LiteralExpression) {
+				constants[slot] = (LiteralExpression) rhs;
+			}
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			Expression expr = foldExpr(ifThenElse.getExpression());
+			if (expr instanceof BoolLiteralExpression) {
+				boolean condition = (boolean) ((BoolLiteralExpression) expr).getValue();
+				folded.addAll(foldBlock(condition ? ifThenElse.getThenStatements() : ifThenElse.getElseStatements()));
+			} else {
+				folded.add(new IfThenElseStatement(position(stmt), expr,
+						foldBlock(ifThenElse.getThenStatements()), foldBlock(ifThenElse.getElseStatements())));
+			}
+		} else if (stmt instanceof IfThenStatement) {
+			IfThenStatement ifThen = (IfThenStatement) stmt;
+			Expression expr = foldExpr(ifThen.getExpression());
+			if (expr instanceof BoolLiteralExpression) {
+				if ((boolean) ((BoolLiteralExpression) expr).getValue()) {
+					folded.addAll(foldBlock(ifThen.getThenStatements()));
+				}
+			} else {
+				folded.add(new IfThenStatement(position(stmt), expr, foldBlock(ifThen.getThenStatements())));
+			}
+		} else if (stmt instanceof WhileLoopStatement) {
+			WhileLoopStatement loop = (WhileLoopStatement) stmt;
+			Expression expr = foldExpr(loop.getExpression());
+			if (!(expr instanceof BoolLiteralExpression) || (boolean) ((BoolLiteralExpression) expr).getValue()) {
+				folded.add(new WhileLoopStatement(position(stmt), expr, foldBlock(loop.getStatements())));
+			}
+		} else if (stmt instanceof PrintStatement) {
+			PrintStatement print = (PrintStatement) stmt;
+			Expression expr = foldExpr(print.getExpressionToPrint());
+			folded.add(expr == print.getExpressionToPrint() ? print : new PrintStatement(position(stmt), expr));
+		} else if (stmt instanceof ReturnStatement) {
+			ReturnStatement ret = (ReturnStatement) stmt;
+			Expression expr = ret.getExpression() == null ? null : foldExpr(ret.getExpression());
+			if (expr != ret.getExpression()) {
+				ReturnStatement foldedRet = new ReturnStatement(position(stmt), expr, ret.getParentLabel());
+				foldedRet.setSlot(ret.getSlot());
+				ret = foldedRet;
+			}
+			folded.add(ret);
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+			List<Expression> args = foldExprs(call.getArguments());
+			if (args != call.getArguments()) {
+				VoidFunctionCallStatement foldedCall = new VoidFunctionCallStatement(position(stmt), call.getLabel(), args);
+				foldedCall.setFunctionDecl(call.getFunctionDecl());
+				call = foldedCall;
+			}
+			folded.add(call);
+		} else {
+			folded.add(stmt);
+		}
+	}
+
+	/*
+	 * Returns the same list if no argument changed.
+	 */
+	private List<Expression> foldExprs(List<Expression> exprs) {
+		List<Expression> folded = new ArrayList<>(exprs.size());
+		boolean changed = false;
+		for (Expression expr : exprs) {
+			Expression foldedExpr = foldExpr(expr);
+			changed |= foldedExpr != expr;
+			folded.add(foldedExpr);
+		}
+		return changed ? folded : exprs;
+	}
+
+	/*
+	 * Returns the same expression if nothing in it folded.
+	 */
+	private Expression foldExpr(Expression expr) {
+		Expression folded = expr;
+		if (expr instanceof LabelExpression) {
+			LiteralExpression constant = constants[((LabelExpression) expr).getSlot()];
+			if (constant != null) {
+				folded = literal(expr, constant.getValue());
+			}
+		} else if (expr instanceof BinaryOperatorExpression) {
+			BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+			Expression arg1 = foldExpr(binary.getArg1());
+			Expression arg2 = foldExpr(binary.getArg2());
+			Object value = null;
+			if (arg1 instanceof LiteralExpression && arg2 instanceof LiteralExpression) {
+				value = evaluate(binary, ((LiteralExpression) arg1).getValue(), ((LiteralExpression) arg2).getValue());
+			}
+			if (value != null) {
+				folded = literal(expr, value);
+			} else if (arg1 != binary.getArg1() || arg2 != binary.getArg2()) {
+				folded = withArgs(binary, arg1, arg2);
+			}
+		} else if (expr instanceof UnaryOperatorExpression) {
+			Expression arg = foldExpr(((UnaryOperatorExpression) expr).getArg1());
+			if (arg instanceof LiteralExpression) {
+				Object value = ((LiteralExpression) arg).getValue();
+				folded = literal(expr, expr instanceof NotUnaryOperatorExpression ? !(boolean) value : -(int) value);
+			} else if (arg != ((UnaryOperatorExpression) expr).getArg1()) {
+				folded = expr instanceof NotUnaryOperatorExpression
+						? new NotUnaryOperatorExpression(position(expr), arg)
+						: new NegativeUnaryOperatorExpression(position(expr), arg);
+			}
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			List<Expression> args = foldExprs(call.getArguments());
+			if (args != call.getArguments()) {
+				NonVoidFunctionCallExpression foldedCall = new NonVoidFunctionCallExpression(position(expr), call.getLabel(), args);
+				foldedCall.setFunctionDecl(call.getFunctionDecl());
+				folded = foldedCall;
+			}
+		}
+
+		if (folded != expr) {
+			folded.setType(expr.getType());
+		}
+		return folded;
+	}
+
+	/*
+	 * The value of an operator on two literals, or null if it has to be
+	 * left to fail at run time.
+	 */
+	private static Object evaluate(BinaryOperatorExpression expr, Object arg1, Object arg2) {
+		if (expr instanceof AndBinaryOperatorExpression) {
+			return (boolean) arg1 && (boolean) arg2;
+		} else if (expr instanceof OrBinaryOperatorExpression) {
+			return (boolean) arg1 || (boolean) arg2;
+		} else if (expr instanceof EqualBinaryOperatorExpression) {
+			// Strings compare by content, as when the program runs
+			return arg1.equals(arg2);
+		}
+
+		int int1 = (int) arg1;
+		int int2 = (int) arg2;
+		if (expr instanceof PlusBinaryOperatorExpression) {
+			return int1 + int2;
+		} else if (expr instanceof MinusBinaryOperatorExpression) {
+			return int1 - int2;
+		} else if (expr instanceof MultiplyBinaryOperatorExpression) {
+			return int1 * int2;
+		} else if (expr instanceof DivideBinaryOperatorExpression) {
+			return int2 == 0 ? null : int1 / int2;
+		} else if (expr instanceof ModuloBinaryOperatorExpression) {
+			return int2 == 0 ? null : int1 % int2;
+		} else if (expr instanceof LessThanBinaryOperatorExpression) {
+			return int1 < int2;
+		} else if (expr instanceof LessThanEqualBinaryOperatorExpression) {
+			return int1 <= int2;
+		} else if (expr instanceof GreaterThanBinaryOperatorExpression) {
+			return int1 > int2;
+		} else if (expr instanceof GreaterThanEqualBinaryOperatorExpression) {
+			return int1 >= int2;
+		}
+		return null;
+	}
+
+	static BinaryOperatorExpression withArgs(BinaryOperatorExpression expr, Expression arg1, Expression arg2) {
+		Token tok = position(expr);
+		if (expr instanceof PlusBinaryOperatorExpression) {
+			return new PlusBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof MinusBinaryOperatorExpression) {
+			return new MinusBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof MultiplyBinaryOperatorExpression) {
+			return new MultiplyBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof DivideBinaryOperatorExpression) {
+			return new DivideBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof ModuloBinaryOperatorExpression) {
+			return new ModuloBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof AndBinaryOperatorExpression) {
+			return new AndBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof OrBinaryOperatorExpression) {
+			return new OrBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof LessThanBinaryOperatorExpression) {
+			return new LessThanBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof LessThanEqualBinaryOperatorExpression) {
+			return new LessThanEqualBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof GreaterThanBinaryOperatorExpression) {
+			return new GreaterThanBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof GreaterThanEqualBinaryOperatorExpression) {
+			return new GreaterThanEqualBinaryOperatorExpression(tok, arg1, arg2);
+		} else if (expr instanceof EqualBinaryOperatorExpression) {
+			return new EqualBinaryOperatorExpression(tok, arg1, arg2);
+		}
+		throw new IllegalArgumentException("Cannot fold " + expr.getClass().getSimpleName());
+	}
+
+	private static LiteralExpression literal(Expression expr, Object value) {
+		Token tok = position(expr);
+		if (expr.getType() == Type.Integer()) {
+			return new IntLiteralExpression(tok, value);
+		} else if (expr.getType() == Type.Boolean()) {
+			return new BoolLiteralExpression(tok, value);
+		}
+		return new StringLiteralExpression(tok, value);
+	}
+
+	/*
+	 * AST elements take their position from a token, so one is made up to
+	 * carry it; its text is never looked at.
+	 */
+	static Token position(ASTElement element) {
+		return new Token("folded", element.getLine(), element.getColumn());
+	}
+}
@@ -0,0 +1,182 @@
+package splat.opt;
+
+import java.util.BitSet;
+import java.util.List;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Works out which slots of a frame are assigned on every path to a point
+ * of a body, so that a pass can tell which reads might fail as reads of
+ * an unassigned variable.
+ *
+ * A body that always returns before some point counts every slot as
+ * assigned there, since no path gets there.
+ */
+final class DefiniteAssignment {
+
+	private final int frameSize;
+	private boolean readsUnassigned = false;
+
+	private DefiniteAssignment(int frameSize) {
+		this.frameSize = frameSize;
+	}
+
+	/**
+	 * @return the slots assigned when the function starts: its parameters
+	 */
+	static BitSet atStart(FunctionDecl funcDecl) {
+		BitSet assigned = new BitSet();
+		assigned.set(0, funcDecl.getParams().size());
+		return assigned;
+	}
+
+	/**
+	 * @return the slots assigned when the program body starts: its Integer
+	 * 			and Boolean variables, which start out as 0 and false
+	 */
+	static BitSet atStart(ProgramAST progAST) {
+		BitSet assigned = new BitSet();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof VariableDecl && ((VariableDecl) decl).getType() != Type.String()) {
+				assigned.set(((VariableDecl) decl).getSlot());
+			}
+		}
+		return assigned;
+	}
+
+	/**
+	 * Whether the function may read a parameter or local variable before
+	 * anything has assigned it.
+	 */
+	static boolean readsUnassigned(FunctionDecl funcDecl) {
+		DefiniteAssignment analysis = new DefiniteAssignment(funcDecl.getFrameSize());
+		analysis.assignedAfter(funcDecl.getStmts(), atStart(funcDecl));
+		return analysis.readsUnassigned;
+	}
+
+	/**
+	 * Updates the slots assigned before the statement to those assigned
+	 * after it.
+	 */
+	static void update(Statement stmt, BitSet assigned, int frameSize) {
+		new DefiniteAssignment(frameSize).assignedAfter(stmt, assigned);
+	}
+
+	/**
+	 * Whether the operator is a division or a modulo by something that may
+	 * be 0.
+	 */
+	static boolean isDivisionByVariable(BinaryOperatorExpression binary) {
+		if (binary instanceof DivideBinaryOperatorExpression || binary instanceof ModuloBinaryOperatorExpression) {
+			Expression divisor = binary.getArg2();
+			return !(divisor instanceof IntLiteralExpression)
+					|| ((Number) ((IntLiteralExpression) divisor).getValue()).intValue() == 0;
+		}
+		return false;
+	}
+
+	static boolean alwaysReturns(Statement stmt) {
+		if (stmt instanceof ReturnStatement) {
+			return true;
+		} else if (stmt instanceof IfThenElseStatement) {
+			return alwaysReturns(((IfThenElseStatement) stmt).getThenStatements())
+					&& alwaysReturns(((IfThenElseStatement) stmt).getElseStatements());
+		}
+		return false;
+	}
+
+	static boolean alwaysReturns(List<Statement> stmts) {
+		for (Statement stmt : stmts) {
+			if (alwaysReturns(stmt)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Returns the slots assigned on every path through the statements that
+	 * falls off their end, given those assigned before them, and notes any
+	 * read of a slot that may not be assigned yet.
+	 */
+	private BitSet assignedAfter(List<Statement> stmts, BitSet assigned) {
+		for (Statement stmt : stmts) {
+			assignedAfter(stmt, assigned);
+		}
+		return assigned;
+	}
+
+	private void assignedAfter(Statement stmt, BitSet assigned) {
+		checkReads(stmt, assigned);
+		if (alwaysReturns(stmt)) {
+			assigned.set(0, frameSize);
+		} else if (stmt instanceof AssignmentStatement) {
+			assigned.set(((AssignmentStatement) stmt).getSlot());
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			BitSet afterThen = assignedAfter(ifThenElse.getThenStatements(), (BitSet) assigned.clone());
+			BitSet afterElse = assignedAfter(ifThenElse.getElseStatements(), (BitSet) assigned.clone());
+			afterThen.and(afterElse);
+			assigned.or(afterThen);
+		}
+	}
+
+	/*
+	 * Checks the reads of the statement itself, and of the blocks it holds
+	 * but that do not tell what is assigned after it.
+	 */
+	private void checkReads(Statement stmt, BitSet assigned) {
+		if (stmt instanceof AssignmentStatement) {
+			checkReads(((AssignmentStatement) stmt).getRhs(), assigned);
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			checkReads(ifThenElse.getExpression(), assigned);
+			if (alwaysReturns(stmt)) {
+				assignedAfter(ifThenElse.getThenStatements(), (BitSet) assigned.clone());
+				assignedAfter(ifThenElse.getElseStatements(), (BitSet) assigned.clone());
+			}
+		} else if (stmt instanceof IfThenStatement) {
+			checkReads(((IfThenStatement) stmt).getExpression(), assigned);
+			assignedAfter(((IfThenStatement) stmt).getThenStatements(), (BitSet) assigned.clone());
+		} else if (stmt instanceof WhileLoopStatement) {
+			checkReads(((WhileLoopStatement) stmt).getExpression(), assigned);
+			assignedAfter(((WhileLoopStatement) stmt).getStatements(), (BitSet) assigned.clone());
+		} else if (stmt instanceof PrintStatement) {
+			checkReads(((PrintStatement) stmt).getExpressionToPrint(), assigned);
+		} else if (stmt instanceof ReturnStatement) {
+			Expression expr = ((ReturnStatement) stmt).getExpression();
+			if (expr != null) {
+				checkReads(expr, assigned);
+			}
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			for (Expression arg : ((VoidFunctionCallStatement) stmt).getArguments()) {
+				checkReads(arg, assigned);
+			}
+		}
+	}
+
+	private void checkReads(Expression expr, BitSet assigned) {
+		if (expr instanceof LabelExpression) {
+			if (!assigned.get(((LabelExpression) expr).getSlot())) {
+				readsUnassigned = true;
+			}
+		} else if (expr instanceof BinaryOperatorExpression) {
+			checkReads(((BinaryOperatorExpression) expr).getArg1(), assigned);
+			checkReads(((BinaryOperatorExpression) expr).getArg2(), assigned);
+		} else if (expr instanceof UnaryOperatorExpression) {
+			checkReads(((UnaryOperatorExpression) expr).getArg1(), assigned);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			for (Expression arg : ((NonVoidFunctionCallExpression) expr).getArguments()) {
+				checkReads(arg, assigned);
+			}
+		}
+	}
+}
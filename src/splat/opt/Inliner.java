@@ -0,0 +1,549 @@
+package splat.opt;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.lexer.Token;
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Replaces calls to small functions that are not recursive by a copy of
+ * their bodies, so that they no longer pay for a frame and the binding of
+ * the arguments, and the engines see the whole loop they are called in.
+ *
+ * A call is inlined as assignments of its arguments to temporaries that
+ * stand for the callee's parameters, followed by the callee's body, with
+ * its variables renamed to temporaries of the caller, and its returns
+ * turned into assignments of a temporary holding the result.  The call
+ * is then replaced by a read of that temporary.
+ *
+ * The inlined body runs before the statement that made the call, so a
+ * call is only inlined if nothing the statement evaluates before it can
+ * fail or call a function: constants, operators other than a division
+ * or modulo by a variable, and variables assigned on every path to the
+ * statement.  A call in the condition of a while loop is evaluated on
+ * every turn, so it is not inlined.
+ *
+ * A callee is inlined if its body has at most as many nodes as the
+ * budget, if the call graph shows it cannot call itself, if it assigns
+ * its variables before reading them, since the temporaries keep their
+ * values from one call to the next, and if its returns can all be turned
+ * into assignments: none in a while loop, and none that would need the
+ * statements after it copied into both branches of an if statement.
+ *
+ * Functions are rewritten after the functions they call, so that a call
+ * to a function that calls others brings their bodies along.
+ */
+public class Inliner {
+
+	public static final int DEFAULT_BUDGET = 40;
+
+	private int budget = DEFAULT_BUDGET;
+	private PrintStream log = null;
+
+	// Numbers the inlined calls, to name their temporaries
+	private int inlinedCalls = 0;
+
+	public Inliner() {
+	}
+
+	/**
+	 * The most nodes, statements and expressions, a function may have to
+	 * be inlined.
+	 */
+	public int getBudget() {
+		return budget;
+	}
+
+	public void setBudget(int budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Where each inlined call is reported, or null.
+	 */
+	public PrintStream getLog() {
+		return log;
+	}
+
+	public void setLog(PrintStream log) {
+		this.log = log;
+	}
+
+	/**
+	 * Inlines calls in the functions that have been parsed, and in the
+	 * program body.  A function parsed lazily has its calls inlined once
+	 * it is loaded.
+	 */
+	public void inline(ProgramAST progAST) {
+		CallGraph graph = new CallGraph();
+		Map<FunctionDecl, Boolean> inlinable = new HashMap<>();
+		for (FunctionDecl funcDecl : graph.calleesFirst(progAST)) {
+			inline(funcDecl, graph, inlinable);
+		}
+
+		Caller caller = new Caller("the program body", new Temporaries(progAST), progAST.getFrameSize(), graph,
+				inlinable);
+		List<Statement> stmts = caller.rewriteBlock(progAST.getStmts(), DefiniteAssignment.atStart(progAST));
+		if (stmts != progAST.getStmts()) {
+			caller.temps.install(stmts);
+		}
+	}
+
+	public void inline(FunctionDecl funcDecl) {
+		inline(funcDecl, new CallGraph(), new HashMap<>());
+	}
+
+	/*
+	 * Whether a callee can be inlined is worked out once per run: the
+	 * callees come first, so they do not change afterwards, unless they
+	 * are recursive and so never inlined anyway.
+	 */
+	private void inline(FunctionDecl funcDecl, CallGraph graph, Map<FunctionDecl, Boolean> inlinable) {
+		Caller caller = new Caller(funcDecl.getLabel() + "()", new Temporaries(funcDecl), funcDecl.getFrameSize(),
+				graph, inlinable);
+		List<Statement> stmts = caller.rewriteBlock(funcDecl.getStmts(), DefiniteAssignment.atStart(funcDecl));
+		if (stmts != funcDecl.getStmts()) {
+			caller.temps.install(stmts);
+		}
+	}
+
+	/*
+	 * The state of inlining calls into one body.
+	 */
+	private class Caller {
+
+		private final String name;
+		private final Temporaries temps;
+		private final int frameSize;
+		private final CallGraph graph;
+
+		// Whether each callee can be inlined, once looked at
+		private final Map<FunctionDecl, Boolean> inlinable;
+
+		// Whether the statement being rewritten has evaluated something
+		// that may fail or call a function
+		private boolean mayHaveFailed;
+
+		Caller(String name, Temporaries temps, int frameSize, CallGraph graph, Map<FunctionDecl, Boolean> inlinable) {
+			this.name = name;
+			this.temps = temps;
+			this.frameSize = frameSize;
+			this.graph = graph;
+			this.inlinable = inlinable;
+		}
+
+		/*
+		 * Returns the statements with their calls inlined, or the same list
+		 * if none was.
+		 */
+		List<Statement> rewriteBlock(List<Statement> stmts, BitSet assigned) {
+			List<Statement> rewritten = new ArrayList<>(stmts.size());
+			for (Statement stmt : stmts) {
+				rewriteStmt(stmt, assigned, rewritten);
+				DefiniteAssignment.update(stmt, assigned, frameSize);
+			}
+			return sameNodes(rewritten, stmts) ? stmts : rewritten;
+		}
+
+		private void rewriteStmt(Statement stmt, BitSet assigned, List<Statement> rewritten) {
+			mayHaveFailed = false;
+			if (stmt instanceof AssignmentStatement) {
+				AssignmentStatement assignment = (AssignmentStatement) stmt;
+				Expression rhs = rewriteExpr(assignment.getRhs(), assigned, rewritten);
+				if (rhs != assignment.getRhs()) {
+					assignment = new AssignmentStatement(ConstantFolder.position(stmt), assignment.getLhs(), rhs);
+					assignment.setSlot(((AssignmentStatement) stmt).getSlot());
+				}
+				rewritten.add(assignment);
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				Expression expr = rewriteExpr(ifThenElse.getExpression(), assigned, rewritten);
+				List<Statement> thenStmts = rewriteBlock(ifThenElse.getThenStatements(), (BitSet) assigned.clone());
+				List<Statement> elseStmts = rewriteBlock(ifThenElse.getElseStatements(), (BitSet) assigned.clone());
+				if (expr != ifThenElse.getExpression() || thenStmts != ifThenElse.getThenStatements()
+						|| elseStmts != ifThenElse.getElseStatements()) {
+					ifThenElse = new IfThenElseStatement(ConstantFolder.position(stmt), expr, thenStmts, elseStmts);
+				}
+				rewritten.add(ifThenElse);
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				Expression expr = rewriteExpr(ifThen.getExpression(), assigned, rewritten);
+				List<Statement> thenStmts = rewriteBlock(ifThen.getThenStatements(), (BitSet) assigned.clone());
+				if (expr != ifThen.getExpression() || thenStmts != ifThen.getThenStatements()) {
+					ifThen = new IfThenStatement(ConstantFolder.position(stmt), expr, thenStmts);
+				}
+				rewritten.add(ifThen);
+			} else if (stmt instanceof WhileLoopStatement) {
+				WhileLoopStatement loop = (WhileLoopStatement) stmt;
+				List<Statement> body = rewriteBlock(loop.getStatements(), (BitSet) assigned.clone());
+				if (body != loop.getStatements()) {
+					loop = new WhileLoopStatement(ConstantFolder.position(stmt), loop.getExpression(), body);
+				}
+				rewritten.add(loop);
+			} else if (stmt instanceof PrintStatement) {
+				PrintStatement print = (PrintStatement) stmt;
+				Expression expr = rewriteExpr(print.getExpressionToPrint(), assigned, rewritten);
+				rewritten.add(expr == print.getExpressionToPrint() ? print
+						: new PrintStatement(ConstantFolder.position(stmt), expr));
+			} else if (stmt instanceof ReturnStatement && ((ReturnStatement) stmt).getExpression() != null) {
+				ReturnStatement ret = (ReturnStatement) stmt;
+				Expression expr = rewriteExpr(ret.getExpression(), assigned, rewritten);
+				if (expr != ret.getExpression()) {
+					ret = new ReturnStatement(ConstantFolder.position(stmt), expr, ret.getParentLabel());
+					ret.setSlot(((ReturnStatement) stmt).getSlot());
+				}
+				rewritten.add(ret);
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				// Nothing is evaluated before the arguments, so the call can
+				// always be inlined
+				VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+				List<Expression> args = rewriteExprs(call.getArguments(), assigned, rewritten);
+				if (!inline(call.getFunctionDecl(), args, stmt, null, rewritten)) {
+					if (args != call.getArguments()) {
+						call = new VoidFunctionCallStatement(ConstantFolder.position(stmt), call.getLabel(), args);
+						call.setFunctionDecl(((VoidFunctionCallStatement) stmt).getFunctionDecl());
+					}
+					rewritten.add(call);
+				}
+			} else {
+				rewritten.add(stmt);
+			}
+		}
+
+		private List<Expression> rewriteExprs(List<Expression> exprs, BitSet assigned, List<Statement> rewritten) {
+			List<Expression> newExprs = new ArrayList<>(exprs.size());
+			for (Expression expr : exprs) {
+				newExprs.add(rewriteExpr(expr, assigned, rewritten));
+			}
+			return sameNodes(newExprs, exprs) ? exprs : newExprs;
+		}
+
+		/*
+		 * Returns the expression with its calls inlined, adding what they
+		 * run before the statement, in the order they are evaluated.
+		 */
+		private Expression rewriteExpr(Expression expr, BitSet assigned, List<Statement> rewritten) {
+			if (expr instanceof LabelExpression) {
+				mayHaveFailed |= !assigned.get(((LabelExpression) expr).getSlot());
+				return expr;
+			} else if (expr instanceof BinaryOperatorExpression) {
+				BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+				Expression arg1 = rewriteExpr(binary.getArg1(), assigned, rewritten);
+				Expression arg2 = rewriteExpr(binary.getArg2(), assigned, rewritten);
+				mayHaveFailed |= DefiniteAssignment.isDivisionByVariable(binary);
+				if (arg1 == binary.getArg1() && arg2 == binary.getArg2()) {
+					return expr;
+				}
+				Expression newBinary = ConstantFolder.withArgs(binary, arg1, arg2);
+				newBinary.setType(expr.getType());
+				return newBinary;
+			} else if (expr instanceof UnaryOperatorExpression) {
+				Expression arg = rewriteExpr(((UnaryOperatorExpression) expr).getArg1(), assigned, rewritten);
+				if (arg == ((UnaryOperatorExpression) expr).getArg1()) {
+					return expr;
+				}
+				return unary(expr, arg);
+			} else if (expr instanceof NonVoidFunctionCallExpression) {
+				NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+
+				// What the arguments evaluate runs before the body either way
+				boolean canInline = !mayHaveFailed;
+				List<Expression> args = rewriteExprs(call.getArguments(), assigned, rewritten);
+
+				if (canInline && isInlinable(call.getFunctionDecl())) {
+					int mark = temps.size();
+					VariableDecl result = temps.add(expr, call.getLabel() + "#" + (inlinedCalls + 1),
+							expr.getType());
+					if (inline(call.getFunctionDecl(), args, expr, result, rewritten)) {
+						return Temporaries.read(result, expr);
+					}
+					temps.truncate(mark);
+				}
+
+				mayHaveFailed = true;
+				if (args == call.getArguments()) {
+					return expr;
+				}
+				NonVoidFunctionCallExpression newCall = new NonVoidFunctionCallExpression(
+						ConstantFolder.position(expr), call.getLabel(), args);
+				newCall.setFunctionDecl(call.getFunctionDecl());
+				newCall.setType(expr.getType());
+				return newCall;
+			}
+			return expr;
+		}
+
+		private boolean isInlinable(FunctionDecl callee) {
+			Boolean result = inlinable.get(callee);
+			if (result == null) {
+				result = callee.isBodyParsed()
+						&& NodeCounter.count(callee) <= budget
+						&& !graph.isRecursive(callee)
+						&& !DefiniteAssignment.readsUnassigned(callee);
+				inlinable.put(callee, result);
+			}
+			return result;
+		}
+
+		/*
+		 * Adds the statements of the call, with the result of a function
+		 * returning a value assigned to the temporary, or returns false if
+		 * the call is not inlined.
+		 */
+		private boolean inline(FunctionDecl callee, List<Expression> args, ASTElement call, VariableDecl result,
+							   List<Statement> rewritten) {
+			if (!isInlinable(callee)) {
+				return false;
+			}
+
+			int site = inlinedCalls + 1;
+			int mark = temps.size();
+			VariableDecl[] vars = new VariableDecl[callee.getFrameSize()];
+			List<Declaration> calleeVars = new ArrayList<>(callee.getParams());
+			calleeVars.addAll(callee.getLocalVars());
+			for (Declaration decl : calleeVars) {
+				VariableDecl var = (VariableDecl) decl;
+				vars[var.getSlot()] = temps.add(call, callee.getLabel() + "#" + site + "." + var.getLabel(),
+						var.getType());
+			}
+
+			List<Statement> body = new BodyCopy(vars, result).copyBlock(callee.getStmts());
+			if (body == null) {
+				temps.truncate(mark);
+				inlinable.put(callee, false);
+				return false;
+			}
+
+			for (int i = 0; i < args.size(); i++) {
+				VariableDecl param = (VariableDecl) callee.getParams().get(i);
+				rewritten.add(Temporaries.assign(vars[param.getSlot()], args.get(i)));
+			}
+			rewritten.addAll(body);
+
+			inlinedCalls++;
+			if (log != null) {
+				log.println("[inline] " + callee.getLabel() + "() into " + name + " at line " + call.getLine()
+						+ ", column " + call.getColumn() + " (" + NodeCounter.count(callee) + " nodes)");
+			}
+			return true;
+		}
+	}
+
+	/*
+	 * Copies a callee's body into a caller, reading and assigning the
+	 * caller's temporaries instead of the callee's variables.
+	 */
+	private static class BodyCopy {
+
+		private final VariableDecl[] vars;
+		private final VariableDecl result;
+
+		BodyCopy(VariableDecl[] vars, VariableDecl result) {
+			this.vars = vars;
+			this.result = result;
+		}
+
+		/*
+		 * Returns the copy, down to the end of the callee, or null if a
+		 * return cannot be turned into an assignment.  Every list passed in
+		 * runs to the end of the callee when it falls off its own end.
+		 */
+		List<Statement> copyBlock(List<Statement> stmts) {
+			List<Statement> copy = new ArrayList<>(stmts.size());
+			for (int i = 0; i < stmts.size(); i++) {
+				Statement stmt = stmts.get(i);
+				List<Statement> rest = stmts.subList(i + 1, stmts.size());
+
+				if (stmt instanceof ReturnStatement) {
+					// The statements after it, if any, are never run
+					Expression expr = ((ReturnStatement) stmt).getExpression();
+					if (expr != null) {
+						copy.add(Temporaries.assign(result, copyExpr(expr)));
+					}
+					return copy;
+				}
+
+				if ((stmt instanceof IfThenElseStatement || stmt instanceof IfThenStatement) && containsReturn(stmt)) {
+					Expression expr;
+					List<Statement> thenStmts;
+					List<Statement> elseStmts;
+					if (stmt instanceof IfThenElseStatement) {
+						IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+						expr = ifThenElse.getExpression();
+						thenStmts = ifThenElse.getThenStatements();
+						elseStmts = ifThenElse.getElseStatements();
+					} else {
+						IfThenStatement ifThen = (IfThenStatement) stmt;
+						expr = ifThen.getExpression();
+						thenStmts = ifThen.getThenStatements();
+						elseStmts = Collections.emptyList();
+					}
+
+					boolean thenFallsThrough = !DefiniteAssignment.alwaysReturns(thenStmts);
+					boolean elseFallsThrough = !DefiniteAssignment.alwaysReturns(elseStmts);
+					if (thenFallsThrough && elseFallsThrough && !rest.isEmpty()) {
+						return null;
+					}
+
+					List<Statement> newThen = copyBlock(append(thenStmts, thenFallsThrough ? rest : null));
+					List<Statement> newElse = copyBlock(append(elseStmts, elseFallsThrough ? rest : null));
+					if (newThen == null || newElse == null) {
+						return null;
+					}
+					copy.add(new IfThenElseStatement(ConstantFolder.position(stmt), copyExpr(expr), newThen, newElse));
+					return copy;
+				}
+
+				if (stmt instanceof WhileLoopStatement && containsReturn(stmt)) {
+					return null;
+				}
+				copy.add(copyStmt(stmt));
+			}
+			return copy;
+		}
+
+		private static List<Statement> append(List<Statement> stmts, List<Statement> rest) {
+			if (rest == null || rest.isEmpty()) {
+				return stmts;
+			}
+			List<Statement> appended = new ArrayList<>(stmts);
+			appended.addAll(rest);
+			return appended;
+		}
+
+		private static boolean containsReturn(Statement stmt) {
+			if (stmt instanceof ReturnStatement) {
+				return true;
+			} else if (stmt instanceof IfThenElseStatement) {
+				return containsReturn(((IfThenElseStatement) stmt).getThenStatements())
+						|| containsReturn(((IfThenElseStatement) stmt).getElseStatements());
+			} else if (stmt instanceof IfThenStatement) {
+				return containsReturn(((IfThenStatement) stmt).getThenStatements());
+			} else if (stmt instanceof WhileLoopStatement) {
+				return containsReturn(((WhileLoopStatement) stmt).getStatements());
+			}
+			return false;
+		}
+
+		private static boolean containsReturn(List<Statement> stmts) {
+			for (Statement stmt : stmts) {
+				if (containsReturn(stmt)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/*
+		 * Copies a statement that holds no return.
+		 */
+		private Statement copyStmt(Statement stmt) {
+			Token tok = ConstantFolder.position(stmt);
+			if (stmt instanceof AssignmentStatement) {
+				AssignmentStatement assignment = (AssignmentStatement) stmt;
+				return Temporaries.assign(vars[assignment.getSlot()], copyExpr(assignment.getRhs()));
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				return new IfThenElseStatement(tok, copyExpr(ifThenElse.getExpression()),
+						copyStmts(ifThenElse.getThenStatements()), copyStmts(ifThenElse.getElseStatements()));
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				return new IfThenStatement(tok, copyExpr(ifThen.getExpression()),
+						copyStmts(ifThen.getThenStatements()));
+			} else if (stmt instanceof WhileLoopStatement) {
+				WhileLoopStatement loop = (WhileLoopStatement) stmt;
+				return new WhileLoopStatement(tok, copyExpr(loop.getExpression()), copyStmts(loop.getStatements()));
+			} else if (stmt instanceof PrintStatement) {
+				return new PrintStatement(tok, copyExpr(((PrintStatement) stmt).getExpressionToPrint()));
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+				VoidFunctionCallStatement copy = new VoidFunctionCallStatement(tok, call.getLabel(),
+						copyExprs(call.getArguments()));
+				copy.setFunctionDecl(call.getFunctionDecl());
+				return copy;
+			}
+			throw new IllegalArgumentException("Cannot copy " + stmt.getClass().getSimpleName());
+		}
+
+		private List<Statement> copyStmts(List<Statement> stmts) {
+			List<Statement> copy = new ArrayList<>(stmts.size());
+			for (Statement stmt : stmts) {
+				copy.add(copyStmt(stmt));
+			}
+			return copy;
+		}
+
+		private List<Expression> copyExprs(List<Expression> exprs) {
+			List<Expression> copy = new ArrayList<>(exprs.size());
+			for (Expression expr : exprs) {
+				copy.add(copyExpr(expr));
+			}
+			return copy;
+		}
+
+		private Expression copyExpr(Expression expr) {
+			Token tok = ConstantFolder.position(expr);
+			Expression copy;
+			if (expr instanceof LabelExpression) {
+				// Keeps the callee's label, which is what errors name
+				LabelExpression read = new LabelExpression(tok, ((LabelExpression) expr).getLabel());
+				read.setSlot(vars[((LabelExpression) expr).getSlot()].getSlot());
+				copy = read;
+			} else if (expr instanceof IntLiteralExpression) {
+				copy = new IntLiteralExpression(tok, ((LiteralExpression) expr).getValue());
+			} else if (expr instanceof BoolLiteralExpression) {
+				copy = new BoolLiteralExpression(tok, ((LiteralExpression) expr).getValue());
+			} else if (expr instanceof StringLiteralExpression) {
+				copy = new StringLiteralExpression(tok, ((LiteralExpression) expr).getValue());
+			} else if (expr instanceof BinaryOperatorExpression) {
+				BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+				copy = ConstantFolder.withArgs(binary, copyExpr(binary.getArg1()), copyExpr(binary.getArg2()));
+			} else if (expr instanceof UnaryOperatorExpression) {
+				return unary(expr, copyExpr(((UnaryOperatorExpression) expr).getArg1()));
+			} else if (expr instanceof NonVoidFunctionCallExpression) {
+				NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+				NonVoidFunctionCallExpression newCall = new NonVoidFunctionCallExpression(tok, call.getLabel(),
+						copyExprs(call.getArguments()));
+				newCall.setFunctionDecl(call.getFunctionDecl());
+				copy = newCall;
+			} else {
+				throw new IllegalArgumentException("Cannot copy " + expr.getClass().getSimpleName());
+			}
+			copy.setType(expr.getType());
+			return copy;
+		}
+	}
+
+	private static Expression unary(Expression expr, Expression arg) {
+		Expression unary = expr instanceof NotUnaryOperatorExpression
+				? new NotUnaryOperatorExpression(ConstantFolder.position(expr), arg)
+				: new NegativeUnaryOperatorExpression(ConstantFolder.position(expr), arg);
+		unary.setType(expr.getType());
+		return unary;
+	}
+
+	private static <T> boolean sameNodes(List<T> a, List<T> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (int i = 0; i < a.size(); i++) {
+			if (a.get(i) != b.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
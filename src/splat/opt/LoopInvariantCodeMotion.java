@@ -0,0 +1,308 @@
+package splat.opt;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Moves the expressions of a while loop that compute the same value on
+ * every turn out of it, into temporaries assigned just before the loop,
+ * so that they are evaluated once instead of on every turn.
+ *
+ * An expression is moved if it is an operator whose operands are
+ * literals and variables that nothing in the loop assigns, and if
+ * evaluating it cannot fail: the variables it reads are assigned on
+ * every path to the loop, and it does not divide by a variable.  It is
+ * then evaluated even when the loop does not run, or when the branch of
+ * the loop holding it does not, with nothing to show for it but the
+ * time.  Calls stay in the loop, since a function may print, fail or
+ * never return.
+ *
+ * Nested loops are done innermost first, so that what is moved out of
+ * an inner loop can be moved further out of the loops around it.
+ */
+public class LoopInvariantCodeMotion {
+
+	private final Temporaries temps;
+	private final int frameSize;
+
+	// Numbers the temporaries, to name them
+	private int hoisted = 0;
+
+	private LoopInvariantCodeMotion(Temporaries temps, int frameSize) {
+		this.temps = temps;
+		this.frameSize = frameSize;
+	}
+
+	/**
+	 * Moves the invariant expressions out of the loops of the program body,
+	 * and of the functions that have been parsed.  A function parsed lazily
+	 * has to be done once it is loaded.
+	 */
+	public static void hoist(ProgramAST progAST) {
+		LoopInvariantCodeMotion licm = new LoopInvariantCodeMotion(new Temporaries(progAST), progAST.getFrameSize());
+		List<Statement> stmts = licm.rewriteBlock(progAST.getStmts(), DefiniteAssignment.atStart(progAST));
+		if (stmts != progAST.getStmts()) {
+			licm.temps.install(stmts);
+		}
+
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && ((FunctionDecl) decl).isBodyParsed()) {
+				hoist((FunctionDecl) decl);
+			}
+		}
+	}
+
+	public static void hoist(FunctionDecl funcDecl) {
+		LoopInvariantCodeMotion licm = new LoopInvariantCodeMotion(new Temporaries(funcDecl), funcDecl.getFrameSize());
+		List<Statement> stmts = licm.rewriteBlock(funcDecl.getStmts(), DefiniteAssignment.atStart(funcDecl));
+		if (stmts != funcDecl.getStmts()) {
+			licm.temps.install(stmts);
+		}
+	}
+
+	/*
+	 * Returns the statements with the invariant expressions of their loops
+	 * moved out, or the same list if there were none.
+	 */
+	private List<Statement> rewriteBlock(List<Statement> stmts, BitSet assigned) {
+		List<Statement> rewritten = new ArrayList<>(stmts.size());
+		boolean changed = false;
+		for (Statement stmt : stmts) {
+			int count = rewritten.size();
+			if (stmt instanceof WhileLoopStatement) {
+				hoistLoop((WhileLoopStatement) stmt, assigned, rewritten);
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				List<Statement> thenStmts = rewriteBlock(ifThenElse.getThenStatements(), (BitSet) assigned.clone());
+				List<Statement> elseStmts = rewriteBlock(ifThenElse.getElseStatements(), (BitSet) assigned.clone());
+				if (thenStmts != ifThenElse.getThenStatements() || elseStmts != ifThenElse.getElseStatements()) {
+					ifThenElse = new IfThenElseStatement(ConstantFolder.position(stmt), ifThenElse.getExpression(),
+							thenStmts, elseStmts);
+				}
+				rewritten.add(ifThenElse);
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				List<Statement> thenStmts = rewriteBlock(ifThen.getThenStatements(), (BitSet) assigned.clone());
+				if (thenStmts != ifThen.getThenStatements()) {
+					ifThen = new IfThenStatement(ConstantFolder.position(stmt), ifThen.getExpression(), thenStmts);
+				}
+				rewritten.add(ifThen);
+			} else {
+				rewritten.add(stmt);
+			}
+			changed |= rewritten.size() != count + 1 || rewritten.get(count) != stmt;
+			DefiniteAssignment.update(stmt, assigned, frameSize);
+		}
+		return changed ? rewritten : stmts;
+	}
+
+	/*
+	 * Adds the assignments of the temporaries, then the loop reading them.
+	 */
+	private void hoistLoop(WhileLoopStatement loop, BitSet assigned, List<Statement> rewritten) {
+		List<Statement> body = rewriteBlock(loop.getStatements(), (BitSet) assigned.clone());
+
+		BitSet assignedInLoop = new BitSet();
+		addAssigned(body, assignedInLoop);
+		Hoister hoister = new Hoister(assigned, assignedInLoop, rewritten);
+
+		Expression expr = hoister.hoistExpr(loop.getExpression());
+		body = hoister.hoistBlock(body);
+		if (expr != loop.getExpression() || body != loop.getStatements()) {
+			loop = new WhileLoopStatement(ConstantFolder.position(loop), expr, body);
+		}
+		rewritten.add(loop);
+	}
+
+	private static void addAssigned(List<Statement> stmts, BitSet assigned) {
+		for (Statement stmt : stmts) {
+			if (stmt instanceof AssignmentStatement) {
+				assigned.set(((AssignmentStatement) stmt).getSlot());
+			} else if (stmt instanceof IfThenElseStatement) {
+				addAssigned(((IfThenElseStatement) stmt).getThenStatements(), assigned);
+				addAssigned(((IfThenElseStatement) stmt).getElseStatements(), assigned);
+			} else if (stmt instanceof IfThenStatement) {
+				addAssigned(((IfThenStatement) stmt).getThenStatements(), assigned);
+			} else if (stmt instanceof WhileLoopStatement) {
+				addAssigned(((WhileLoopStatement) stmt).getStatements(), assigned);
+			}
+		}
+	}
+
+	/*
+	 * Moves the invariant expressions out of one loop.
+	 */
+	private class Hoister {
+
+		private final BitSet assignedBefore;
+		private final BitSet assignedInLoop;
+		private final List<Statement> preheader;
+
+		Hoister(BitSet assignedBefore, BitSet assignedInLoop, List<Statement> preheader) {
+			this.assignedBefore = assignedBefore;
+			this.assignedInLoop = assignedInLoop;
+			this.preheader = preheader;
+		}
+
+		/*
+		 * Inner loops have had their invariant expressions moved out into
+		 * this loop's body already, and what is left in them is not
+		 * invariant here either, so they are left as they are.
+		 */
+		List<Statement> hoistBlock(List<Statement> stmts) {
+			List<Statement> hoistedStmts = new ArrayList<>(stmts.size());
+			boolean changed = false;
+			for (Statement stmt : stmts) {
+				Statement newStmt = hoistStmt(stmt);
+				hoistedStmts.add(newStmt);
+				changed |= newStmt != stmt;
+			}
+			return changed ? hoistedStmts : stmts;
+		}
+
+		private Statement hoistStmt(Statement stmt) {
+			if (stmt instanceof AssignmentStatement) {
+				AssignmentStatement assignment = (AssignmentStatement) stmt;
+				Expression rhs = hoistExpr(assignment.getRhs());
+				if (rhs != assignment.getRhs()) {
+					assignment = new AssignmentStatement(ConstantFolder.position(stmt), assignment.getLhs(), rhs);
+					assignment.setSlot(((AssignmentStatement) stmt).getSlot());
+				}
+				return assignment;
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				Expression expr = hoistExpr(ifThenElse.getExpression());
+				List<Statement> thenStmts = hoistBlock(ifThenElse.getThenStatements());
+				List<Statement> elseStmts = hoistBlock(ifThenElse.getElseStatements());
+				if (expr != ifThenElse.getExpression() || thenStmts != ifThenElse.getThenStatements()
+						|| elseStmts != ifThenElse.getElseStatements()) {
+					return new IfThenElseStatement(ConstantFolder.position(stmt), expr, thenStmts, elseStmts);
+				}
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				Expression expr = hoistExpr(ifThen.getExpression());
+				List<Statement> thenStmts = hoistBlock(ifThen.getThenStatements());
+				if (expr != ifThen.getExpression() || thenStmts != ifThen.getThenStatements()) {
+					return new IfThenStatement(ConstantFolder.position(stmt), expr, thenStmts);
+				}
+			} else if (stmt instanceof PrintStatement) {
+				PrintStatement print = (PrintStatement) stmt;
+				Expression expr = hoistExpr(print.getExpressionToPrint());
+				if (expr != print.getExpressionToPrint()) {
+					return new PrintStatement(ConstantFolder.position(stmt), expr);
+				}
+			} else if (stmt instanceof ReturnStatement && ((ReturnStatement) stmt).getExpression() != null) {
+				ReturnStatement ret = (ReturnStatement) stmt;
+				Expression expr = hoistExpr(ret.getExpression());
+				if (expr != ret.getExpression()) {
+					ReturnStatement newRet = new ReturnStatement(ConstantFolder.position(stmt), expr, ret.getParentLabel());
+					newRet.setSlot(ret.getSlot());
+					return newRet;
+				}
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+				List<Expression> args = hoistExprs(call.getArguments());
+				if (args != call.getArguments()) {
+					VoidFunctionCallStatement newCall = new VoidFunctionCallStatement(ConstantFolder.position(stmt),
+							call.getLabel(), args);
+					newCall.setFunctionDecl(call.getFunctionDecl());
+					return newCall;
+				}
+			}
+			return stmt;
+		}
+
+		private List<Expression> hoistExprs(List<Expression> exprs) {
+			List<Expression> hoistedExprs = new ArrayList<>(exprs.size());
+			boolean changed = false;
+			for (Expression expr : exprs) {
+				Expression newExpr = hoistExpr(expr);
+				hoistedExprs.add(newExpr);
+				changed |= newExpr != expr;
+			}
+			return changed ? hoistedExprs : exprs;
+		}
+
+		/*
+		 * Returns the expression with its largest invariant parts replaced
+		 * by reads of temporaries.  A literal or a variable on its own is
+		 * as cheap to evaluate as a temporary, so it stays.
+		 */
+		Expression hoistExpr(Expression expr) {
+			if (expr instanceof BinaryOperatorExpression) {
+				if (isInvariant(expr)) {
+					return hoistInto(expr);
+				}
+				BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+				Expression arg1 = hoistExpr(binary.getArg1());
+				Expression arg2 = hoistExpr(binary.getArg2());
+				if (arg1 == binary.getArg1() && arg2 == binary.getArg2()) {
+					return expr;
+				}
+				Expression newBinary = ConstantFolder.withArgs(binary, arg1, arg2);
+				newBinary.setType(expr.getType());
+				return newBinary;
+			} else if (expr instanceof UnaryOperatorExpression) {
+				if (isInvariant(expr)) {
+					return hoistInto(expr);
+				}
+				Expression arg = hoistExpr(((UnaryOperatorExpression) expr).getArg1());
+				if (arg == ((UnaryOperatorExpression) expr).getArg1()) {
+					return expr;
+				}
+				Expression unary = expr instanceof NotUnaryOperatorExpression
+						? new NotUnaryOperatorExpression(ConstantFolder.position(expr), arg)
+						: new NegativeUnaryOperatorExpression(ConstantFolder.position(expr), arg);
+				unary.setType(expr.getType());
+				return unary;
+			} else if (expr instanceof NonVoidFunctionCallExpression) {
+				NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+				List<Expression> args = hoistExprs(call.getArguments());
+				if (args == call.getArguments()) {
+					return expr;
+				}
+				NonVoidFunctionCallExpression newCall = new NonVoidFunctionCallExpression(
+						ConstantFolder.position(expr), call.getLabel(), args);
+				newCall.setFunctionDecl(call.getFunctionDecl());
+				newCall.setType(expr.getType());
+				return newCall;
+			}
+			return expr;
+		}
+
+		private Expression hoistInto(Expression expr) {
+			VariableDecl temp = temps.add(expr, "invariant#" + ++hoisted, expr.getType());
+			preheader.add(Temporaries.assign(temp, expr));
+			return Temporaries.read(temp, expr);
+		}
+
+		/*
+		 * Whether the expression has the same value on every turn of the
+		 * loop, and can be evaluated before it without failing.
+		 */
+		private boolean isInvariant(Expression expr) {
+			if (expr instanceof LiteralExpression) {
+				return true;
+			} else if (expr instanceof LabelExpression) {
+				int slot = ((LabelExpression) expr).getSlot();
+				return assignedBefore.get(slot) && !assignedInLoop.get(slot);
+			} else if (expr instanceof BinaryOperatorExpression) {
+				BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+				return isInvariant(binary.getArg1()) && isInvariant(binary.getArg2())
+						&& !DefiniteAssignment.isDivisionByVariable(binary);
+			} else if (expr instanceof UnaryOperatorExpression) {
+				return isInvariant(((UnaryOperatorExpression) expr).getArg1());
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package splat.opt;
+
+import java.util.List;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Counts the statements and expressions of a program, as a measure of how
+ * much a pass grew or shrank it.
+ */
+final class NodeCounter {
+
+	private NodeCounter() {
+	}
+
+	/**
+	 * Counts the program body, and the function bodies parsed so far.
+	 */
+	static int count(ProgramAST progAST) {
+		int count = countStmts(progAST.getStmts());
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && ((FunctionDecl) decl).isBodyParsed()) {
+				count += count((FunctionDecl) decl);
+			}
+		}
+		return count;
+	}
+
+	static int count(FunctionDecl funcDecl) {
+		return countStmts(funcDecl.getStmts());
+	}
+
+	private static int countStmts(List<Statement> stmts) {
+		int count = 0;
+		for (Statement stmt : stmts) {
+			count++;
+			if (stmt instanceof AssignmentStatement) {
+				count += countExpr(((AssignmentStatement) stmt).getRhs());
+			} else if (stmt instanceof IfThenElseStatement) {
+				IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+				count += countExpr(ifThenElse.getExpression()) + countStmts(ifThenElse.getThenStatements())
+						+ countStmts(ifThenElse.getElseStatements());
+			} else if (stmt instanceof IfThenStatement) {
+				IfThenStatement ifThen = (IfThenStatement) stmt;
+				count += countExpr(ifThen.getExpression()) + countStmts(ifThen.getThenStatements());
+			} else if (stmt instanceof WhileLoopStatement) {
+				WhileLoopStatement loop = (WhileLoopStatement) stmt;
+				count += countExpr(loop.getExpression()) + countStmts(loop.getStatements());
+			} else if (stmt instanceof PrintStatement) {
+				count += countExpr(((PrintStatement) stmt).getExpressionToPrint());
+			} else if (stmt instanceof ReturnStatement) {
+				Expression expr = ((ReturnStatement) stmt).getExpression();
+				count += expr == null ? 0 : countExpr(expr);
+			} else if (stmt instanceof VoidFunctionCallStatement) {
+				count += countExprs(((VoidFunctionCallStatement) stmt).getArguments());
+			}
+		}
+		return count;
+	}
+
+	private static int countExprs(List<Expression> exprs) {
+		int count = 0;
+		for (Expression expr : exprs) {
+			count += countExpr(expr);
+		}
+		return count;
+	}
+
+	private static int countExpr(Expression expr) {
+		if (expr instanceof BinaryOperatorExpression) {
+			return 1 + countExpr(((BinaryOperatorExpression) expr).getArg1())
+					+ countExpr(((BinaryOperatorExpression) expr).getArg2());
+		} else if (expr instanceof UnaryOperatorExpression) {
+			return 1 + countExpr(((UnaryOperatorExpression) expr).getArg1());
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			return 1 + countExprs(((NonVoidFunctionCallExpression) expr).getArguments());
+		}
+		return 1;
+	}
+}
@@ -0,0 +1,49 @@
+package splat.opt;
+
+import java.util.function.Consumer;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.FunctionDecl;
+
+/**
+ * A transformation of the analyzed AST, run by the PassManager.  It
+ * rewrites the whole program in one go, and a single function whose body
+ * is loaded lazily, after the rest of the program has started running.
+ *
+ * Whatever a pass does, the program has to behave exactly as before: the
+ * same output, and the same run-time errors at the same line and column.
+ */
+public final class Pass {
+
+	private final String name;
+	private final Consumer<ProgramAST> programRewriter;
+	private final Consumer<FunctionDecl> functionRewriter;
+
+	/**
+	 * @param programRewriter rewrites the program body, and every function
+	 * 			whose body has been parsed
+	 * @param functionRewriter rewrites the body of one function
+	 */
+	public Pass(String name, Consumer<ProgramAST> programRewriter, Consumer<FunctionDecl> functionRewriter) {
+		this.name = name;
+		this.programRewriter = programRewriter;
+		this.functionRewriter = functionRewriter;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void run(ProgramAST progAST) {
+		programRewriter.accept(progAST);
+	}
+
+	public void run(FunctionDecl funcDecl) {
+		functionRewriter.accept(funcDecl);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
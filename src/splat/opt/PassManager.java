@@ -0,0 +1,153 @@
+package splat.opt;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.FunctionDecl;
+
+/**
+ * Runs an ordered list of passes over an analyzed program, between
+ * semantic analysis and execution, and reports the time each one took
+ * and how many nodes it added or removed.
+ *
+ * The optimization levels pick the passes, trading the time spent before
+ * the program starts against how fast it runs:
+ *
+ * - 0 runs no passes, so the program runs as it was written.
+ * - 1, the default, runs the passes that pay for themselves on any
+ *   program: constant folding, and turning self tail calls into loops.
+ * - 2 also runs the passes that take longer, or make the program larger,
+ *   to make long-running programs faster: inlining, moving invariant
+ *   expressions out of loops, and constant folding again, for the
+ *   arguments inlining has made constant.
+ *
+ * When verifying, AstInvariants checks the tree after every pass, so
+ * that a pass that breaks it fails there, and not later as the program
+ * runs.
+ */
+public class PassManager {
+
+	public static final int MAX_LEVEL = 2;
+
+	private final List<Pass> passes;
+	private boolean verifying = false;
+
+	// The program-wide runs, in order; functions loaded lazily are not
+	// reported
+	private final List<PassResult> results = new ArrayList<>();
+
+	public PassManager(List<Pass> passes) {
+		this.passes = new ArrayList<>(passes);
+	}
+
+	/**
+	 * @return the passes of the optimization level, from 0 to MAX_LEVEL
+	 */
+	public static PassManager forLevel(int level) {
+		return forLevel(level, new Inliner());
+	}
+
+	/**
+	 * @param inliner the inlining pass, if the level runs it
+	 */
+	public static PassManager forLevel(int level, Inliner inliner) {
+		if (level < 0 || level > MAX_LEVEL) {
+			throw new IllegalArgumentException("No optimization level " + level);
+		}
+
+		List<Pass> passes = new ArrayList<>();
+		if (level >= 1) {
+			passes.add(new Pass("constant-folding", ConstantFolder::fold, ConstantFolder::fold));
+			passes.add(new Pass("tail-calls", TailCallEliminator::eliminate, TailCallEliminator::eliminate));
+		}
+		if (level >= 2) {
+			passes.add(new Pass("inlining", inliner::inline, inliner::inline));
+			passes.add(new Pass("loop-invariants", LoopInvariantCodeMotion::hoist, LoopInvariantCodeMotion::hoist));
+			passes.add(new Pass("constant-folding", ConstantFolder::fold, ConstantFolder::fold));
+		}
+		return new PassManager(passes);
+	}
+
+	public List<Pass> getPasses() {
+		return Collections.unmodifiableList(passes);
+	}
+
+	/**
+	 * Whether the tree is checked after every pass.  Meant for debugging
+	 * the passes, since it takes about as long as a pass.
+	 */
+	public boolean isVerifying() {
+		return verifying;
+	}
+
+	public void setVerifying(boolean verifying) {
+		this.verifying = verifying;
+	}
+
+	/**
+	 * Runs the passes over the program body, and every function whose body
+	 * has been parsed.
+	 *
+	 * @throws IllegalStateException if verifying, and a pass left the tree
+	 * 			broken
+	 */
+	public void run(ProgramAST progAST) {
+		if (passes.isEmpty()) {
+			return;
+		}
+
+		int nodes = NodeCounter.count(progAST);
+		for (Pass pass : passes) {
+			long start = System.nanoTime();
+			pass.run(progAST);
+			double millis = (System.nanoTime() - start) / 1e6;
+
+			int nodesAfter = NodeCounter.count(progAST);
+			results.add(new PassResult(pass.getName(), millis, nodes, nodesAfter));
+			nodes = nodesAfter;
+
+			if (verifying) {
+				verify(pass, () -> AstInvariants.check(progAST));
+			}
+		}
+	}
+
+	/**
+	 * Runs the passes over the body of a function, once it is loaded.
+	 */
+	public void run(FunctionDecl funcDecl) {
+		for (Pass pass : passes) {
+			pass.run(funcDecl);
+			if (verifying) {
+				verify(pass, () -> AstInvariants.check(funcDecl));
+			}
+		}
+	}
+
+	private static void verify(Pass pass, Runnable check) {
+		try {
+			check.run();
+		} catch (IllegalStateException ex) {
+			throw new IllegalStateException("Pass " + pass.getName() + " broke the AST: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * @return what each pass did in run(ProgramAST), in the order they ran
+	 */
+	public List<PassResult> getResults() {
+		return Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * Prints the results, one pass per line.
+	 */
+	public void printReport(PrintStream out) {
+		for (PassResult result : results) {
+			out.println("[opt] " + result);
+		}
+	}
+}
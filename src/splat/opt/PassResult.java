@@ -0,0 +1,50 @@
+package splat.opt;
+
+import java.util.Locale;
+
+/**
+ * What one pass did to the program, as reported by the PassManager.
+ */
+public class PassResult {
+
+	private final String pass;
+	private final double millis;
+	private final int nodesBefore;
+	private final int nodesAfter;
+
+	PassResult(String pass, double millis, int nodesBefore, int nodesAfter) {
+		this.pass = pass;
+		this.millis = millis;
+		this.nodesBefore = nodesBefore;
+		this.nodesAfter = nodesAfter;
+	}
+
+	public String getPass() {
+		return pass;
+	}
+
+	/**
+	 * How long the pass took, in milliseconds.
+	 */
+	public double getMillis() {
+		return millis;
+	}
+
+	/**
+	 * The number of statements and expressions before the pass, in the
+	 * program body and the function bodies parsed so far.
+	 */
+	public int getNodesBefore() {
+		return nodesBefore;
+	}
+
+	public int getNodesAfter() {
+		return nodesAfter;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%-20s %8.2f ms  %7d -> %7d nodes (%+d)",
+				pass, millis, nodesBefore, nodesAfter, nodesAfter - nodesBefore);
+	}
+}
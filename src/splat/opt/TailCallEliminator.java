@@ -0,0 +1,261 @@
+package splat.opt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import splat.lexer.Token;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Turns the calls a function makes to itself in tail position into jumps
+ * back to its start, so that tail-recursive functions run in a loop, in
+ * one frame, however deep they recurse.
+ *
+ * A tail call is a return f(...) of the function's own call, or, in a
+ * function returning void, a call f(...) that is the last statement the
+ * function runs.  The body of a function making one is wrapped in a
+ * while true loop, and each tail call is replaced by assignments of its
+ * arguments to the parameters.  An argument that a later one reads the
+ * parameter of is stored in a temporary until they have all been
+ * evaluated, so the arguments see the values they would have seen.
+ *
+ * The statements after an if statement making a tail call are moved into
+ * its branches that can run past it, so that the tail call skips them.
+ * A function is left as it is when that would copy them into both
+ * branches, and when its tail calls are all inside while loops.
+ *
+ * A call gets a fresh frame whose locals are unassigned, while a loop
+ * keeps their values from the previous iteration.  A function that may
+ * read a local before assigning it is left as it is, so that the read
+ * fails in the same way.
+ */
+public class TailCallEliminator {
+
+	private final FunctionDecl funcDecl;
+	private final List<Declaration> params;
+
+	private final Temporaries temps;
+	// One per parameter, for arguments that a later argument reads it in
+	private final VariableDecl[] paramTemps;
+
+	private int tailCalls = 0;
+
+	private TailCallEliminator(FunctionDecl funcDecl) {
+		this.funcDecl = funcDecl;
+		this.params = funcDecl.getParams();
+		this.temps = new Temporaries(funcDecl);
+		this.paramTemps = new VariableDecl[params.size()];
+	}
+
+	/**
+	 * Rewrites the functions that have been parsed.  A function parsed
+	 * lazily has to be rewritten once it is loaded.
+	 */
+	public static void eliminate(ProgramAST progAST) {
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl && ((FunctionDecl) decl).isBodyParsed()) {
+				eliminate((FunctionDecl) decl);
+			}
+		}
+	}
+
+	public static void eliminate(FunctionDecl funcDecl) {
+		if (DefiniteAssignment.readsUnassigned(funcDecl)) {
+			return;
+		}
+
+		TailCallEliminator eliminator = new TailCallEliminator(funcDecl);
+		List<Statement> body = eliminator.rewriteBlock(funcDecl.getStmts());
+		if (body == null || eliminator.tailCalls == 0) {
+			return;
+		}
+
+		Token tok = ConstantFolder.position(funcDecl);
+		BoolLiteralExpression always = new BoolLiteralExpression(tok, true);
+		always.setType(Type.Boolean());
+		eliminator.temps.install(Collections.singletonList(new WhileLoopStatement(tok, always, body)));
+	}
+
+	/*
+	 * Returns the statements with their tail calls replaced, down to the
+	 * end of the function, or null to leave the function as it is.  Every
+	 * list passed in runs to the end of the function when it falls off its
+	 * own end.
+	 */
+	private List<Statement> rewriteBlock(List<Statement> stmts) {
+		List<Statement> rewritten = new ArrayList<>();
+		for (int i = 0; i < stmts.size(); i++) {
+			Statement stmt = stmts.get(i);
+			List<Statement> rest = stmts.subList(i + 1, stmts.size());
+
+			List<Expression> args = tailCallArguments(stmt, rest);
+			if (args != null) {
+				// The statements after it, if any, are never run
+				rebind(args, rewritten);
+				tailCalls++;
+				return rewritten;
+			}
+
+			if ((stmt instanceof IfThenElseStatement || stmt instanceof IfThenStatement) && containsSelfCall(stmt)) {
+				Expression expr;
+				List<Statement> thenStmts;
+				List<Statement> elseStmts;
+				if (stmt instanceof IfThenElseStatement) {
+					IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+					expr = ifThenElse.getExpression();
+					thenStmts = ifThenElse.getThenStatements();
+					elseStmts = ifThenElse.getElseStatements();
+				} else {
+					IfThenStatement ifThen = (IfThenStatement) stmt;
+					expr = ifThen.getExpression();
+					thenStmts = ifThen.getThenStatements();
+					elseStmts = Collections.emptyList();
+				}
+
+				boolean thenFallsThrough = !DefiniteAssignment.alwaysReturns(thenStmts);
+				boolean elseFallsThrough = !DefiniteAssignment.alwaysReturns(elseStmts);
+				if (thenFallsThrough && elseFallsThrough && !rest.isEmpty()) {
+					return null;
+				}
+
+				List<Statement> newThen = rewriteBlock(append(thenStmts, thenFallsThrough ? rest : null));
+				List<Statement> newElse = rewriteBlock(append(elseStmts, elseFallsThrough ? rest : null));
+				if (newThen == null || newElse == null) {
+					return null;
+				}
+				rewritten.add(new IfThenElseStatement(ConstantFolder.position(stmt), expr, newThen, newElse));
+				return rewritten;
+			}
+
+			rewritten.add(stmt);
+			if (DefiniteAssignment.alwaysReturns(stmt)) {
+				return rewritten;
+			}
+		}
+
+		// Falling off the end returns from a void function; a function
+		// returning a value always ends in a return
+		if (funcDecl.getReturnType() == Type.Void()) {
+			ReturnStatement ret = new ReturnStatement(ConstantFolder.position(funcDecl), funcDecl.getLabel());
+			ret.setSlot(funcDecl.getReturnSlot());
+			rewritten.add(ret);
+		}
+		return rewritten;
+	}
+
+	private static List<Statement> append(List<Statement> stmts, List<Statement> rest) {
+		if (rest == null || rest.isEmpty()) {
+			return stmts;
+		}
+		List<Statement> appended = new ArrayList<>(stmts);
+		appended.addAll(rest);
+		return appended;
+	}
+
+	/*
+	 * Returns the arguments of the statement if it is a tail call, followed
+	 * by the rest of its list, or null.
+	 */
+	private List<Expression> tailCallArguments(Statement stmt, List<Statement> rest) {
+		if (stmt instanceof ReturnStatement) {
+			Expression expr = ((ReturnStatement) stmt).getExpression();
+			if (expr instanceof NonVoidFunctionCallExpression
+					&& ((NonVoidFunctionCallExpression) expr).getFunctionDecl() == funcDecl) {
+				return ((NonVoidFunctionCallExpression) expr).getArguments();
+			}
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+			if (call.getFunctionDecl() == funcDecl && (rest.isEmpty() || rest.get(0) instanceof ReturnStatement)) {
+				return call.getArguments();
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Whether the statement calls the function outside a while loop, where
+	 * the call may be a tail call once the statements after it are moved
+	 * into its branches.
+	 */
+	private boolean containsSelfCall(Statement stmt) {
+		if (stmt instanceof IfThenElseStatement) {
+			return containsSelfCall(((IfThenElseStatement) stmt).getThenStatements())
+					|| containsSelfCall(((IfThenElseStatement) stmt).getElseStatements());
+		} else if (stmt instanceof IfThenStatement) {
+			return containsSelfCall(((IfThenStatement) stmt).getThenStatements());
+		}
+		return tailCallArguments(stmt, Collections.emptyList()) != null;
+	}
+
+	private boolean containsSelfCall(List<Statement> stmts) {
+		for (Statement stmt : stmts) {
+			if (containsSelfCall(stmt)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Adds the assignments of the arguments to the parameters, in the order
+	 * the call would have evaluated them.
+	 */
+	private void rebind(List<Expression> args, List<Statement> rewritten) {
+		List<Statement> fromTemps = new ArrayList<>();
+		for (int i = 0; i < args.size(); i++) {
+			Expression arg = args.get(i);
+			VariableDecl param = (VariableDecl) params.get(i);
+			if (arg instanceof LabelExpression && ((LabelExpression) arg).getSlot() == param.getSlot()) {
+				continue;
+			}
+
+			if (reads(args.subList(i + 1, args.size()), param.getSlot())) {
+				VariableDecl temp = temp(i);
+				rewritten.add(Temporaries.assign(temp, arg));
+				fromTemps.add(Temporaries.assign(param, Temporaries.read(temp, arg)));
+			} else {
+				rewritten.add(Temporaries.assign(param, arg));
+			}
+		}
+		rewritten.addAll(fromTemps);
+	}
+
+	private VariableDecl temp(int param) {
+		if (paramTemps[param] == null) {
+			VariableDecl paramDecl = (VariableDecl) params.get(param);
+			paramTemps[param] = temps.add(paramDecl, paramDecl.getLabel() + "'", paramDecl.getType());
+		}
+		return paramTemps[param];
+	}
+
+	private static boolean reads(List<Expression> exprs, int slot) {
+		for (Expression expr : exprs) {
+			if (reads(expr, slot)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean reads(Expression expr, int slot) {
+		if (expr instanceof LabelExpression) {
+			return ((LabelExpression) expr).getSlot() == slot;
+		} else if (expr instanceof BinaryOperatorExpression) {
+			return reads(((BinaryOperatorExpression) expr).getArg1(), slot)
+					|| reads(((BinaryOperatorExpression) expr).getArg2(), slot);
+		} else if (expr instanceof UnaryOperatorExpression) {
+			return reads(((UnaryOperatorExpression) expr).getArg1(), slot);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			return reads(((NonVoidFunctionCallExpression) expr).getArguments(), slot);
+		}
+		return false;
+	}
+}
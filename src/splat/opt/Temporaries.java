@@ -0,0 +1,118 @@
+package splat.opt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.Expression;
+import splat.parser.elements.expressions.literals.LabelExpression;
+import splat.parser.elements.statements.*;
+
+/**
+ * The variables a pass adds to a function or to the program body, which
+ * take new slots at the end of its frame.
+ *
+ * Their labels are not ones a program can use, so they never clash with
+ * its own variables.
+ */
+final class Temporaries {
+
+	// One of the two
+	private final FunctionDecl funcDecl;
+	private final ProgramAST progAST;
+
+	private final int firstSlot;
+	private final List<Declaration> temps = new ArrayList<>();
+
+	Temporaries(FunctionDecl funcDecl) {
+		this.funcDecl = funcDecl;
+		this.progAST = null;
+		// The return slot moves up past them
+		this.firstSlot = funcDecl.getReturnSlot();
+	}
+
+	Temporaries(ProgramAST progAST) {
+		this.funcDecl = null;
+		this.progAST = progAST;
+		this.firstSlot = progAST.getFrameSize();
+	}
+
+	VariableDecl add(ASTElement position, String label, Type type) {
+		VariableDecl temp = new VariableDecl(ConstantFolder.position(position), label, type);
+		temp.setSlot(firstSlot + temps.size());
+		temps.add(temp);
+		return temp;
+	}
+
+	int size() {
+		return temps.size();
+	}
+
+	/**
+	 * Drops the temporaries added after the first count, which nothing may
+	 * use.
+	 */
+	void truncate(int count) {
+		temps.subList(count, temps.size()).clear();
+	}
+
+	/**
+	 * Makes the statements the body, with the temporaries in its frame.
+	 * The return statements of a function are changed in place to store
+	 * in its new return slot: they are only in its own tree, and no engine
+	 * has run it yet.
+	 */
+	void install(List<Statement> stmts) {
+		if (funcDecl != null) {
+			List<Declaration> localVars = funcDecl.getLocalVars();
+			if (!temps.isEmpty()) {
+				localVars = new ArrayList<>(localVars);
+				localVars.addAll(temps);
+				funcDecl.setFrameSize(funcDecl.getFrameSize() + temps.size());
+				moveReturnSlot(stmts, funcDecl.getReturnSlot());
+			}
+			funcDecl.setBody(localVars, stmts);
+		} else {
+			if (!temps.isEmpty()) {
+				List<Declaration> decls = new ArrayList<>(progAST.getDecls());
+				decls.addAll(temps);
+				progAST.setDecls(decls);
+				progAST.setFrameSize(progAST.getFrameSize() + temps.size());
+			}
+			progAST.setStmts(stmts);
+		}
+	}
+
+	static LabelExpression read(VariableDecl var, ASTElement position) {
+		LabelExpression read = new LabelExpression(ConstantFolder.position(position), var.getLabel());
+		read.setSlot(var.getSlot());
+		read.setType(var.getType());
+		return read;
+	}
+
+	static AssignmentStatement assign(VariableDecl var, Expression rhs) {
+		AssignmentStatement assignment = new AssignmentStatement(ConstantFolder.position(rhs), var.getLabel(), rhs);
+		assignment.setSlot(var.getSlot());
+		return assignment;
+	}
+
+	private static void moveReturnSlot(List<Statement> stmts, int returnSlot) {
+		for (Statement stmt : stmts) {
+			if (stmt instanceof ReturnStatement) {
+				((ReturnStatement) stmt).setSlot(returnSlot);
+			} else if (stmt instanceof IfThenElseStatement) {
+				moveReturnSlot(((IfThenElseStatement) stmt).getThenStatements(), returnSlot);
+				moveReturnSlot(((IfThenElseStatement) stmt).getElseStatements(), returnSlot);
+			} else if (stmt instanceof IfThenStatement) {
+				moveReturnSlot(((IfThenStatement) stmt).getThenStatements(), returnSlot);
+			} else if (stmt instanceof WhileLoopStatement) {
+				moveReturnSlot(((WhileLoopStatement) stmt).getStatements(), returnSlot);
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package splat.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import splat.lexer.TokenCursor;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenStream;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.statements.Statement;
+
+/**
+ * Parses the declarations of a program in parallel, on the common
+ * fork-join pool, and produces the same ProgramAST as Parser.parse().
+ *
+ * A quick pre-scan over the token kinds finds where each top-level
+ * declaration starts, by counting begin/while/if against end.  Runs of
+ * consecutive declarations, and the program body, are then parsed as
+ * separate tasks, each with its own Parser over a cursor into the same
+ * TokenStream.  Each task has to stop exactly where the pre-scan said the
+ * next one starts.
+ *
+ * If anything fails, or the pre-scan could not make sense of the tokens,
+ * the program is parsed again sequentially.  Errors are therefore
+ * reported at exactly the same (earliest) position as with Parser.
+ */
+public class ParallelParser {
+
+	// Runs of declarations are never cut smaller than this many tokens
+	private static final int MIN_CHUNK_TOKENS = 16 * 1024;
+
+	private final TokenStream tokens;
+
+	public ParallelParser(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	public ProgramAST parse() throws ParseException {
+		List<Integer> declStarts = new ArrayList<>();
+		int bodyStart = findDeclarations(declStarts);
+		if (bodyStart < 0) {
+			return new Parser(tokens).parse();
+		}
+
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		int declCount = declStarts.size();
+		int chunkCount = Math.min(Math.min(4 * parallelism, bodyStart / MIN_CHUNK_TOKENS), declCount);
+		if (parallelism < 2 || chunkCount < 2) {
+			return new Parser(tokens).parse();
+		}
+
+		// starts[i] is the first token of declaration i, and starts[declCount]
+		// is the 'begin' of the program body
+		int[] starts = new int[declCount + 1];
+		for (int i = 0; i < declCount; i++) {
+			starts[i] = declStarts.get(i);
+		}
+		starts[declCount] = bodyStart;
+
+		// chunk i is declarations [bounds[i], bounds[i + 1]), cut so that each
+		// chunk has about the same number of tokens
+		int[] bounds = new int[chunkCount + 1];
+		bounds[chunkCount] = declCount;
+		for (int i = 1; i < chunkCount; i++) {
+			int target = starts[0] + (int) ((long) (bodyStart - starts[0]) * i / chunkCount);
+			int found = Arrays.binarySearch(starts, 0, declCount, target);
+			int bound = found >= 0 ? found : -found - 1;
+			bounds[i] = Math.max(bounds[i - 1], bound);
+		}
+
+		Declaration[] decls = new Declaration[declCount];
+		ParseTasks tasks = new ParseTasks(starts, bounds, decls, 0, chunkCount + 1);
+		ForkJoinPool.commonPool().invoke(tasks);
+
+		if (tasks.failed) {
+			// Let the sequential parser find the earliest error
+			return new Parser(tokens).parse();
+		}
+
+		return new ProgramAST(Arrays.asList(decls), tasks.stmts, tokens.token(0));
+	}
+
+	/**
+	 * Finds the first token of every top-level declaration, without
+	 * checking that the declarations are well formed.
+	 *
+	 * @return the index of the 'begin' that starts the program body, or -1
+	 * 			if the tokens do not have the expected shape
+	 */
+	private int findDeclarations(List<Integer> declStarts) {
+		int size = tokens.size();
+		if (size == 0 || tokens.kind(0) != TokenKind.PROGRAM) {
+			return -1;
+		}
+
+		int i = 1;
+		while (i < size && tokens.kind(i) != TokenKind.BEGIN) {
+			declStarts.add(i);
+			if (i + 1 < size && tokens.kind(i + 1) == TokenKind.LEFT_PAREN) {
+				i = skipFunction(i);
+			} else {
+				i = skipPast(TokenKind.SEMICOLON, i);
+			}
+			if (i < 0) {
+				return -1;
+			}
+		}
+		return i < size ? i : -1;
+	}
+
+	/*
+	 * A function's own 'begin' opens a block, as does every while and if
+	 * that is not the second half of 'end while' or 'end if'.  The function
+	 * ends with the ';' after the 'end' that closes its own block.
+	 */
+	private int skipFunction(int start) {
+		int i = skipPast(TokenKind.IS, start);
+		if (i >= 0) {
+			i = skipPast(TokenKind.BEGIN, i);
+		}
+		if (i < 0) {
+			return -1;
+		}
+
+		int size = tokens.size();
+		int depth = 1;
+		for (; i < size; i++) {
+			int kind = tokens.kind(i);
+			if (kind == TokenKind.END) {
+				depth--;
+				if (depth == 0) {
+					return i + 2 <= size ? i + 2 : -1;
+				}
+			} else if ((kind == TokenKind.WHILE || kind == TokenKind.IF)
+					&& tokens.kind(i - 1) != TokenKind.END) {
+				depth++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index just after the next token of the given kind, or -1
+	 */
+	private int skipPast(int kind, int start) {
+		int size = tokens.size();
+		for (int i = start; i < size; i++) {
+			if (tokens.kind(i) == kind) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Tasks [from, to) of chunkCount + 1: one per chunk of declarations,
+	 * and the last one for the program body.
+	 */
+	private class ParseTasks extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] starts;
+		private final int[] bounds;
+		private final Declaration[] decls;
+		private final int from;
+		private final int to;
+
+		// Set for the caller once compute() returns
+		boolean failed;
+		List<Statement> stmts;
+
+		ParseTasks(int[] starts, int[] bounds, Declaration[] decls, int from, int to) {
+			this.starts = starts;
+			this.bounds = bounds;
+			this.decls = decls;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				ParseTasks left = new ParseTasks(starts, bounds, decls, from, mid);
+				ParseTasks right = new ParseTasks(starts, bounds, decls, mid, to);
+				invokeAll(left, right);
+				failed = left.failed || right.failed;
+				stmts = right.stmts != null ? right.stmts : left.stmts;
+				return;
+			}
+
+			try {
+				if (from == bounds.length - 1) {
+					parseBody();
+				} else {
+					parseChunk(bounds[from], bounds[from + 1]);
+				}
+			} catch (ParseException | IndexOutOfBoundsException ex) {
+				failed = true;
+			}
+		}
+
+		private void parseBody() throws ParseException {
+			TokenCursor cursor = tokens.cursor(starts[starts.length - 1]);
+			stmts = new Parser(cursor).parseBody();
+		}
+
+		private void parseChunk(int first, int last) throws ParseException {
+			for (int i = first; i < last; i++) {
+				TokenCursor cursor = tokens.cursor(starts[i]);
+				decls[i] = new Parser(cursor).parseDecl();
+				if (cursor.mark() != starts[i + 1]) {
+					// The pre-scan got this declaration's extent wrong
+					failed = true;
+					return;
+				}
+			}
+		}
+	}
+}
@@ -1,511 +1,694 @@
-package splat.parser;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
-import splat.lexer.Token;
-import splat.parser.elements.*;
-import splat.parser.elements.expressions.*;
-import splat.parser.elements.declarations.Declaration;
-import splat.parser.elements.declarations.FunctionDecl;
-import splat.parser.elements.declarations.VariableDecl;
-import splat.parser.elements.expressions.literals.*;
-import splat.parser.elements.statements.*;
-
-public class Parser {
-
-	private final List<Token> tokens;
-	
-	public Parser(List<Token> tokens) {
-		this.tokens = tokens;
-	}
-
-	/**
-	 * Compares the next token to an expected value, and throws
-	 * an exception if they don't match.  This removes the front-most
-	 * (next) token  
-	 * 
-	 * @param expected value of the next token
-	 * @throws ParseException if the actual token doesn't match what 
-	 * 			was expected
-	 */
-	private void checkNext(String expected) throws ParseException {
-
-		Token tok = tokens.remove(0);
-		
-		if (!tok.getValue().equals(expected)) {
-			throw new ParseException("Expected '"+ expected + "', got '" 
-					+ tok.getValue()+ "'.", tok);
-		}
-	}
-	
-	/**
-	 * Returns a boolean indicating whether or not the next token matches
-	 * the expected String value.  This does not remove the token from the
-	 * token list.
-	 * 
-	 * @param expected value of the next token
-	 * @return true iff the token value matches the expected string
-	 */
-	private boolean peekNext(String expected) {
-		return tokens.get(0).getValue().equals(expected);
-	}
-	
-	/**
-	 * Returns a boolean indicating whether or not the token directly after
-	 * the front most token matches the expected String value.  This does 
-	 * not remove any tokens from the token list.
-	 * 
-	 * @param expected value of the token directly after the next token
-	 * @return true iff the value matches the expected string
-	 */
-	private boolean peekTwoAhead(String expected) {
-		return tokens.get(1).getValue().equals(expected);
-	}
-	
-	
-	/*
-	 *  <program> ::= program <decls> begin <stmts> end ;
-	 */
-	public ProgramAST parse() throws ParseException {
-		
-		try {
-			// Needed for 'program' token position info
-			Token startTok = tokens.get(0);
-			
-			checkNext("program");
-			
-			List<Declaration> decls = parseDecls();
-			
-			checkNext("begin");
-			
-			List<Statement> stmts = parseStmts();
-			
-			checkNext("end");
-			checkNext(";");
-	
-			return new ProgramAST(decls, stmts, startTok);
-			
-		// This might happen if we do a tokens.get(), and nothing is there!
-		} catch (IndexOutOfBoundsException ex) {
-			
-			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
-		}
-	}
-	
-	/*
-	 *  <decls> ::= (  <decl>  )*
-	 */
-	private List<Declaration> parseDecls() throws ParseException {
-		
-		List<Declaration> decls = new ArrayList<>();
-		
-		while (!peekNext("begin")) {
-			Declaration decl = parseDecl();
-			decls.add(decl);
-		}
-		
-		return decls;
-	}
-	
-	/*
-	 * <decl> ::= <var-decl> | <func-decl>
-	 */
-	private Declaration parseDecl() throws ParseException {
-
-		if (peekTwoAhead(":")) {
-			var varDecl =  parseVarDecl();
-			checkNext(";");
-			return varDecl;
-		} else if (peekTwoAhead("(")) {
-			return parseFuncDecl();
-		} else {
-			Token tok = tokens.get(0);
-			throw new ParseException("Declaration expected", tok);
-		}
-	}
-	
-	/*
-	 * <func-decl> ::= <label> ( <params> ) : <ret-type> is 
-	 * 						<loc-var-decls> begin <stmts> end ;
-	 */
-	private FunctionDecl parseFuncDecl() throws ParseException {
-		Token functionName = tokens.remove(0);
-		if(!isLabel(functionName.getValue()))
-		{
-			throw new ParseException("Label was expected. But " + functionName.getValue() + " was found instead", functionName);
-		}
-
-		List<Declaration> params;
-		List<Declaration> localVariables = new ArrayList<>();
-		Token functionReturnType;
-		List<Statement> stmts;
-
-		params = parseParams();
-
-		checkNext(":");
-
-		functionReturnType = tokens.remove(0);
-
-		checkNext("is");
-
-		// by the lang spec there are no local functions, only local variables
-		while (!peekNext("begin")) {
-			Declaration decl = parseVarDecl();
-			checkNext(";");
-			localVariables.add(decl);
-		}
-
-		checkNext("begin");
-
-		stmts = parseStmts(functionName.getValue());
-
-		checkNext("end");
-		checkNext(";");
-
-        return new FunctionDecl(tokens.get(0), functionName.getValue(), parseFuncReturnType(functionReturnType), params, localVariables, stmts);
-	}
-
-	private Type parseFuncReturnType(Token functionReturnType) throws ParseException {
-		switch (functionReturnType.getValue())
-		{
-			case Type.String:
-				return Type.String();
-			case Type.Boolean:
-				return Type.Boolean();
-			case Type.Integer:
-				return Type.Integer();
-			case Type.Void:
-				return Type.Void();
-			default:
-				throw new ParseException("Invalid function return type: " + functionReturnType.getValue(), functionReturnType);
-		}
-	}
-
-	private Type parseType(Token token) throws ParseException {
-		switch (token.getValue())
-		{
-			case Type.String:
-				return Type.String();
-			case Type.Boolean:
-				return Type.Boolean();
-			case Type.Integer:
-				return Type.Integer();
-			default:
-				throw new ParseException("Invalid type: " + token.getValue(), token);
-		}
-	}
-
-	private List<Declaration> parseParams() throws ParseException {
-		checkNext("(");
-		List<Declaration> params = new ArrayList<>();
-		while (!peekNext(")"))
-		{
-			params.add(parseVarDecl());
-			if (!peekNext(","))
-			{
-				break;
-			}
-			checkNext(",");
-		}
-		checkNext(")");
-		return params;
-	}
-
-	/*
-	 * <var-decl> ::= <label> : <type> ;
-	 */
-	private VariableDecl parseVarDecl() throws ParseException {
-		Token variableName = tokens.remove(0);
-
-		if (!isLabel(variableName.getValue()))
-		{
-			throw new ParseException("Label was expected. But " + variableName.getValue() + " was found instead", variableName);
-		}
-
-		checkNext(":");
-		Token variableType = tokens.remove(0);
-        return new VariableDecl(tokens.get(0), variableName.getValue(), parseType(variableType));
-	}
-
-	private List<Statement> parseStmts() throws ParseException {
-		return parseStmts("program");
-	}
-
-	/*
-	 * <stmts> ::= (  <stmt>  )*
-	 */
-	private List<Statement> parseStmts(String parentLabel) throws ParseException {
-		List<Statement> statements = new ArrayList<>();
-		while (!peekNext("end") && !peekNext("else"))
-		{
-			if (peekNext("while"))
-			{
-				var tok = tokens.remove(0);
-				Expression expr = parseExpression();
-				checkNext("do");
-				List<Statement> loopBody = parseStmts(parentLabel);
-				checkNext("end");
-				checkNext("while");
-				checkNext(";");
-				statements.add(new WhileLoopStatement(tok, expr, loopBody));
-			}
-			else if (peekNext("if"))
-			{
-				var tok = tokens.remove(0);
-				Expression expr = parseExpression();
-				checkNext("then");
-				List<Statement> thenStatements = parseStmts(parentLabel);
-				List<Statement> elseStatements = null;
-				if (peekNext("else"))
-				{
-					checkNext("else");
-					elseStatements = parseStmts(parentLabel);
-				}
-				checkNext("end");
-				checkNext("if");
-				checkNext(";");
-				if (elseStatements == null)
-				{
-					statements.add(new IfThenStatement(tok, expr, thenStatements));
-				}
-				else
-				{
-					statements.add(new IfThenElseStatement(tok, expr, thenStatements, elseStatements));
-				}
-			}
-			else if (peekNext("print"))
-			{
-				var tok = tokens.remove(0);
-				Expression expr = parseExpression();
-				checkNext(";");
-				var printStatement = new PrintStatement(tok, expr);
-				statements.add(printStatement);
-			}
-			else if (peekNext("print_line"))
-			{
-				var tok = tokens.remove(0);
-				checkNext(";");
-				Expression expr = new StringLiteralExpression(new Token("\n", tok.getLine(), tok.getColumn()), "\n");
-				var printStatement = new PrintStatement(tok, expr);
-				statements.add(printStatement);
-			}
-			else if (peekNext("return"))
-			{
-				var returnToken = tokens.remove(0);
-				if (peekNext(";"))
-				{
-					statements.add(new ReturnStatement(returnToken, parentLabel));
-				}
-				else
-				{
-					Expression expression = parseExpression();
-					statements.add(new ReturnStatement(returnToken, expression, parentLabel));
-				}
-				checkNext(";");
-			}
-			else if (peekTwoAhead("("))
-			{
-				var functionName = tokens.remove(0);
-
-				if (!isLabel(functionName.getValue()))
-				{
-					throw new ParseException("Label was expected. But " + functionName.getValue() + " was found instead", functionName);
-				}
-
-				// todo: extract method
-				checkNext("(");
-
-				List<Expression> args = new ArrayList<>();
-				while(!peekNext(")"))
-				{
-					args.add(parseExpression());
-					if (!peekNext(","))
-					{
-						break;
-					}
-					checkNext(",");
-				}
-
-				checkNext(")");
-				// end todo: extract method
-
-				checkNext(";");
-
-				var statement = new VoidFunctionCallStatement(functionName, functionName.getValue(), args);
-				statements.add(statement);
-			}
-			else
-			{
-				var label = tokens.remove(0);
-
-				if (!isLabel(label.getValue()))
-				{
-					throw new ParseException("Label was expected. But " + label.getValue() + " was found instead", label);
-				}
-
-				if (peekNext(":="))
-				{
-					checkNext(":=");
-					Expression expression = parseExpression();
-					checkNext(";");
-					statements.add(new AssignmentStatement(label, label.getValue(), expression));
-				}
-				else
-				{
-					throw new ParseException("Unknown syntax", tokens.remove(0));
-				}
-			}
-		}
-		return statements;
-	}
-
-	private Expression parseExpression() throws ParseException {
-
-//		if (peekNext("(") && peekTwoAhead("("))
-//		{
-//			var openParen = tokens.remove(0);
-//			return new NestedExpression(openParen, parseExpression());
-//		}
-
-		if (peekNext("("))
-		{
-			var expressionStart = tokens.remove(0);
-			// check for unary op
-			// if unary parse unary
-			if (peekNext("not") || peekNext("-"))
-			{
-				var unaryOpTok = tokens.remove(0);
-				var argExpression = parseExpression();
-				var unaryOpExpression = unaryOpTok.getValue().equals("not")
-						? new NotUnaryOperatorExpression(unaryOpTok, argExpression)
-						: new NegativeUnaryOperatorExpression(unaryOpTok, argExpression);
-				checkNext(")");
-				return unaryOpExpression;
-			}
-			else
-			{
-				Expression arg1Expression = parseExpression();
-				var binaryOpToken = tokens.remove(0);
-				Expression arg2Expression = parseExpression();
-				checkNext(")");
-                return createBinaryOperatorExpression(binaryOpToken, arg1Expression, arg2Expression);
-			}
-		}
-		else
-		{
-			// non void call
-			if (peekTwoAhead("("))
-			{
-				var label = tokens.remove(0);
-
-				if (!isLabel(label.getValue()))
-				{
-					throw new ParseException("Label was expected. But " + label.getValue() + " was found instead", label);
-				}
-
-				// todo: extract method
-				checkNext("(");
-
-				List<Expression> args = new ArrayList<>();
-				while(!peekNext(")"))
-				{
-					args.add(parseExpression());
-					if (!peekNext(","))
-					{
-						break;
-					}
-					checkNext(",");
-				}
-
-				checkNext(")");
-				// end todo: extract method
-
-				return new NonVoidFunctionCallExpression(label, label.getValue(), args);
-			}
-
-			var literalOrLabel = tokens.remove(0);
-
-			try
-			{
-				// Works for now, I guess
-				if (Integer.parseUnsignedInt(literalOrLabel.getValue()) >= 0)
-				{
-					return new IntLiteralExpression(literalOrLabel, Integer.parseUnsignedInt(literalOrLabel.getValue()));
-				}
-			} catch (NumberFormatException ignored)
-			{
-
-			}
-
-			if ("true".equals(literalOrLabel.getValue()) || "false".equals(literalOrLabel.getValue()))
-			{
-				return new BoolLiteralExpression(literalOrLabel, Boolean.parseBoolean(literalOrLabel.getValue()));
-			}
-			if (literalOrLabel.getValue().startsWith("\""))
-			{
-				// strip the quotes when saving the value
-				return new StringLiteralExpression(literalOrLabel, literalOrLabel.getValue().substring(1, literalOrLabel.getValue().length()-1));
-			}
-
-
-			if (isLabel(literalOrLabel.getValue()))
-			{
-				return new LabelExpression(literalOrLabel, literalOrLabel.getValue());
-			}
-
-			throw new ParseException("Literal or label was expected", literalOrLabel);
-		}
-	}
-
-	private boolean isLabel(String s) {
-
-		List<String> keywords = Arrays.asList("Boolean", "String", "Integer", "and", "or", "not", "while", "if", "then", "else", "end", "program", "begin", "is", "return", "do", "print", "print_line", "true", "false", "void");
-
-		if (keywords.contains(s))
-		{
-			return false;
-		}
-
-		boolean firstIsDigit = s.charAt(0) >= '0' && s.charAt(0) <= '0';
-
-		return !firstIsDigit && s.chars().allMatch(Parser::isAlphaNumOrUnderscore);
-	}
-
-	private static boolean isAlphaNumOrUnderscore(int ch) {
-		return (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
-	}
-
-	private Expression createBinaryOperatorExpression(Token token, Expression arg1Expression, Expression arg2Expression) throws ParseException {
-		switch (token.getValue())
-		{
-			case "+":
-				return new PlusBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "-":
-				return new MinusBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "*":
-				return new MultiplyBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "/":
-				return new DivideBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "%":
-				return new ModuloBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case ">":
-				return new GreaterThanBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "<":
-				return new LessThanBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case ">=":
-				return new GreaterThanEqualBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "<=":
-				return new LessThanEqualBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "==":
-				return new EqualBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "and":
-				return new AndBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			case "or":
-				return new OrBinaryOperatorExpression(token, arg1Expression, arg2Expression);
-			default:
-				throw new ParseException("Invalid syntax. Expected a known valid operator but received " + token.getValue() + ".", token);
-		}
-	}
-}
+package splat.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import splat.lexer.Token;
+import splat.lexer.TokenCursor;
+import splat.lexer.TokenKind;
+import splat.lexer.TokenStream;
+import splat.parser.elements.*;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+public class Parser {
+
+	private final TokenCursor tokens;
+
+	// Only set when parsing a whole TokenStream, which lazy mode needs to
+	// come back to function bodies later
+	private final TokenStream stream;
+	private boolean lazyFunctions = false;
+
+	public Parser(TokenStream tokens) {
+		this.tokens = tokens.cursor();
+		this.stream = tokens;
+	}
+
+	public Parser(TokenCursor tokens) {
+		this.tokens = tokens;
+		this.stream = null;
+	}
+
+	/**
+	 * In lazy mode, only the signature of each function is parsed.  The
+	 * rest of it is skipped over, and its position is kept so that
+	 * parseFunctionBody() can parse it when it is needed.
+	 *
+	 * @throws IllegalStateException if this parser was not created on a
+	 * 			TokenStream
+	 */
+	public void setLazyFunctions(boolean lazyFunctions) {
+		if (lazyFunctions && stream == null) {
+			throw new IllegalStateException("Lazy parsing needs a TokenStream");
+		}
+		this.lazyFunctions = lazyFunctions;
+	}
+
+	/**
+	 * Compares the kind of the next token to an expected kind, and throws
+	 * an exception if they don't match.  This consumes the front-most
+	 * (next) token
+	 *
+	 * @param expected kind of the next token, one of the TokenKind codes
+	 * @throws ParseException if the actual token doesn't match what
+	 * 			was expected
+	 */
+	private void checkNext(int expected) throws ParseException {
+
+		if (tokens.peek(0) != expected) {
+			throw new ParseException("Expected '"+ TokenKind.text(expected) + "', got '"
+					+ tokens.peekValue(0) + "'.", tokens.peekToken(0));
+		}
+
+		tokens.advance();
+	}
+
+	/**
+	 * Returns a boolean indicating whether or not the next token is of the
+	 * expected kind.  This does not consume the token.
+	 *
+	 * @param expected kind of the next token
+	 * @return true iff the token kind matches the expected kind
+	 */
+	private boolean peekNext(int expected) {
+		return tokens.peek(0) == expected;
+	}
+
+	/**
+	 * Returns a boolean indicating whether or not the token directly after
+	 * the front most token is of the expected kind.  This does not consume
+	 * any tokens.
+	 *
+	 * @param expected kind of the token directly after the next token
+	 * @return true iff the kind matches the expected kind
+	 */
+	private boolean peekTwoAhead(int expected) {
+		return tokens.peek(1) == expected;
+	}
+
+	/**
+	 * Consumes the next token and returns it as a Token object, for the
+	 * AST elements that need its position.
+	 */
+	private Token nextToken() {
+		Token tok = tokens.peekToken(0);
+		tokens.advance();
+		return tok;
+	}
+
+	/**
+	 * Consumes the next token, which must be a label.
+	 */
+	private Token nextLabel() throws ParseException {
+		boolean isLabel = tokens.peek(0) == TokenKind.LABEL;
+		Token label = nextToken();
+		if (!isLabel)
+		{
+			throw new ParseException("Label was expected. But " + label.getValue() + " was found instead", label);
+		}
+		return label;
+	}
+
+
+	public ProgramAST parse() throws ParseException {
+
+		if (!lazyFunctions) {
+			return parseProgram();
+		}
+
+		try {
+			return parseProgram();
+		} catch (ParseException ex) {
+			// A broken function body may have thrown off the skipping; parse
+			// everything to report the earliest error, as an eager parse would.
+			// Lazy mode always has the whole TokenStream, so this starts over
+			// on a fresh cursor rather than marking a TokenSource, which would
+			// keep every token buffered
+			return new Parser(stream).parseProgram();
+		}
+	}
+
+	/*
+	 *  <program> ::= program <decls> begin <stmts> end ;
+	 */
+	private ProgramAST parseProgram() throws ParseException {
+
+		try {
+			// Needed for 'program' token position info
+			Token startTok = tokens.peekToken(0);
+
+			checkNext(TokenKind.PROGRAM);
+
+			List<Declaration> decls = parseDecls();
+
+			List<Statement> stmts = parseBody();
+
+			return new ProgramAST(decls, stmts, startTok);
+
+		// This might happen if we look past the last token
+		} catch (IndexOutOfBoundsException ex) {
+
+			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
+		}
+	}
+
+	/*
+	 *  begin <stmts> end ;
+	 */
+	List<Statement> parseBody() throws ParseException {
+
+		checkNext(TokenKind.BEGIN);
+
+		List<Statement> stmts = parseStmts();
+
+		checkNext(TokenKind.END);
+		checkNext(TokenKind.SEMICOLON);
+
+		return stmts;
+	}
+
+	/*
+	 *  <decls> ::= (  <decl>  )*
+	 */
+	private List<Declaration> parseDecls() throws ParseException {
+
+		List<Declaration> decls = new ArrayList<>();
+
+		while (!peekNext(TokenKind.BEGIN)) {
+			Declaration decl = parseDecl();
+			decls.add(decl);
+		}
+
+		return decls;
+	}
+
+	/*
+	 * <decl> ::= <var-decl> | <func-decl>
+	 */
+	Declaration parseDecl() throws ParseException {
+
+		if (peekTwoAhead(TokenKind.COLON)) {
+			var varDecl =  parseVarDecl();
+			checkNext(TokenKind.SEMICOLON);
+			return varDecl;
+		} else if (peekTwoAhead(TokenKind.LEFT_PAREN)) {
+			return parseFuncDecl();
+		} else {
+			throw new ParseException("Declaration expected", tokens.peekToken(0));
+		}
+	}
+
+	/*
+	 * <func-decl> ::= <label> ( <params> ) : <ret-type> is
+	 * 						<loc-var-decls> begin <stmts> end ;
+	 */
+	private FunctionDecl parseFuncDecl() throws ParseException {
+		Token functionName = nextLabel();
+
+		List<Declaration> params;
+		Type returnType;
+
+		params = parseParams();
+
+		checkNext(TokenKind.COLON);
+
+		returnType = parseFuncReturnType();
+
+		var funcDecl = new FunctionDecl(functionName, functionName.getValue(), returnType, params);
+		if (lazyFunctions) {
+			funcDecl.setBodyStart(tokens.mark());
+			skipFuncBody();
+		} else {
+			parseFuncBody(funcDecl);
+		}
+		return funcDecl;
+	}
+
+	/**
+	 * Parses the body of a function that was skipped in lazy mode, and
+	 * sets it on the function.
+	 */
+	public void parseFunctionBody(FunctionDecl funcDecl) throws ParseException {
+		Parser bodyParser = new Parser(stream.cursor(funcDecl.getBodyStart()));
+		try {
+			bodyParser.parseFuncBody(funcDecl);
+		} catch (IndexOutOfBoundsException ex) {
+			throw new ParseException("Unexpectedly reached the end of file.", -1, -1);
+		}
+	}
+
+	/*
+	 * is <loc-var-decls> begin <stmts> end ;
+	 */
+	private void parseFuncBody(FunctionDecl funcDecl) throws ParseException {
+		List<Declaration> localVariables = new ArrayList<>();
+		List<Statement> stmts;
+
+		checkNext(TokenKind.IS);
+
+		// by the lang spec there are no local functions, only local variables
+		while (!peekNext(TokenKind.BEGIN)) {
+			Declaration decl = parseVarDecl();
+			checkNext(TokenKind.SEMICOLON);
+			localVariables.add(decl);
+		}
+
+		checkNext(TokenKind.BEGIN);
+
+		stmts = parseStmts(funcDecl.getLabel());
+
+		checkNext(TokenKind.END);
+		checkNext(TokenKind.SEMICOLON);
+
+		funcDecl.setBody(localVariables, stmts);
+	}
+
+	/*
+	 * Skips from 'is' to just after the ';' that ends the function.  The
+	 * function's own 'begin' opens a block, as does every while and if that
+	 * is not the second half of 'end while' or 'end if'; the function ends
+	 * with the 'end' that closes its own block.
+	 */
+	private void skipFuncBody() throws ParseException {
+		checkNext(TokenKind.IS);
+		while (!peekNext(TokenKind.BEGIN)) {
+			tokens.advance();
+		}
+		tokens.advance();
+
+		int depth = 1;
+		int previous = TokenKind.BEGIN;
+		while (depth > 0) {
+			int kind = tokens.peek(0);
+			if (kind == TokenKind.END) {
+				depth--;
+			} else if ((kind == TokenKind.WHILE || kind == TokenKind.IF) && previous != TokenKind.END) {
+				depth++;
+			}
+			previous = kind;
+			tokens.advance();
+		}
+		checkNext(TokenKind.SEMICOLON);
+	}
+
+	private Type parseFuncReturnType() throws ParseException {
+		switch (tokens.peek(0))
+		{
+			case TokenKind.STRING:
+			case TokenKind.BOOLEAN:
+			case TokenKind.INTEGER:
+				return parseType();
+			case TokenKind.VOID:
+				tokens.advance();
+				return Type.Void();
+			default:
+				throw new ParseException("Invalid function return type: " + tokens.peekValue(0), tokens.peekToken(0));
+		}
+	}
+
+	private Type parseType() throws ParseException {
+		Type type;
+		switch (tokens.peek(0))
+		{
+			case TokenKind.STRING:
+				type = Type.String();
+				break;
+			case TokenKind.BOOLEAN:
+				type = Type.Boolean();
+				break;
+			case TokenKind.INTEGER:
+				type = Type.Integer();
+				break;
+			default:
+				throw new ParseException("Invalid type: " + tokens.peekValue(0), tokens.peekToken(0));
+		}
+		tokens.advance();
+		return type;
+	}
+
+	private List<Declaration> parseParams() throws ParseException {
+		checkNext(TokenKind.LEFT_PAREN);
+		List<Declaration> params = new ArrayList<>();
+		while (!peekNext(TokenKind.RIGHT_PAREN))
+		{
+			params.add(parseVarDecl());
+			if (!peekNext(TokenKind.COMMA))
+			{
+				break;
+			}
+			checkNext(TokenKind.COMMA);
+		}
+		checkNext(TokenKind.RIGHT_PAREN);
+		return params;
+	}
+
+	/*
+	 * <var-decl> ::= <label> : <type> ;
+	 */
+	private VariableDecl parseVarDecl() throws ParseException {
+		Token variableName = nextLabel();
+
+		checkNext(TokenKind.COLON);
+        return new VariableDecl(variableName, variableName.getValue(), parseType());
+	}
+
+	private List<Statement> parseStmts() throws ParseException {
+		return parseStmts("program");
+	}
+
+	/*
+	 * <stmts> ::= (  <stmt>  )*
+	 */
+	private List<Statement> parseStmts(String parentLabel) throws ParseException {
+		List<Statement> statements = new ArrayList<>();
+		while (!peekNext(TokenKind.END) && !peekNext(TokenKind.ELSE))
+		{
+			switch (tokens.peek(0))
+			{
+				case TokenKind.WHILE:
+				{
+					var tok = nextToken();
+					Expression expr = parseExpression();
+					checkNext(TokenKind.DO);
+					List<Statement> loopBody = parseStmts(parentLabel);
+					checkNext(TokenKind.END);
+					checkNext(TokenKind.WHILE);
+					checkNext(TokenKind.SEMICOLON);
+					statements.add(new WhileLoopStatement(tok, expr, loopBody));
+					break;
+				}
+				case TokenKind.IF:
+				{
+					var tok = nextToken();
+					Expression expr = parseExpression();
+					checkNext(TokenKind.THEN);
+					List<Statement> thenStatements = parseStmts(parentLabel);
+					List<Statement> elseStatements = null;
+					if (peekNext(TokenKind.ELSE))
+					{
+						checkNext(TokenKind.ELSE);
+						elseStatements = parseStmts(parentLabel);
+					}
+					checkNext(TokenKind.END);
+					checkNext(TokenKind.IF);
+					checkNext(TokenKind.SEMICOLON);
+					if (elseStatements == null)
+					{
+						statements.add(new IfThenStatement(tok, expr, thenStatements));
+					}
+					else
+					{
+						statements.add(new IfThenElseStatement(tok, expr, thenStatements, elseStatements));
+					}
+					break;
+				}
+				case TokenKind.PRINT:
+				{
+					var tok = nextToken();
+					Expression expr = parseExpression();
+					checkNext(TokenKind.SEMICOLON);
+					statements.add(new PrintStatement(tok, expr));
+					break;
+				}
+				case TokenKind.PRINT_LINE:
+				{
+					var tok = nextToken();
+					checkNext(TokenKind.SEMICOLON);
+					Expression expr = new StringLiteralExpression(new Token("\n", tok.getLine(), tok.getColumn()), "\n");
+					statements.add(new PrintStatement(tok, expr));
+					break;
+				}
+				case TokenKind.RETURN:
+				{
+					var returnToken = nextToken();
+					if (peekNext(TokenKind.SEMICOLON))
+					{
+						statements.add(new ReturnStatement(returnToken, parentLabel));
+					}
+					else
+					{
+						Expression expression = parseExpression();
+						statements.add(new ReturnStatement(returnToken, expression, parentLabel));
+					}
+					checkNext(TokenKind.SEMICOLON);
+					break;
+				}
+				default:
+					if (peekTwoAhead(TokenKind.LEFT_PAREN))
+					{
+						var functionName = nextLabel();
+						List<Expression> args = parseArgs();
+						checkNext(TokenKind.SEMICOLON);
+
+						statements.add(new VoidFunctionCallStatement(functionName, functionName.getValue(), args));
+					}
+					else
+					{
+						var label = nextLabel();
+
+						if (peekNext(TokenKind.ASSIGN))
+						{
+							checkNext(TokenKind.ASSIGN);
+							Expression expression = parseExpression();
+							checkNext(TokenKind.SEMICOLON);
+							statements.add(new AssignmentStatement(label, label.getValue(), expression));
+						}
+						else
+						{
+							throw new ParseException("Unknown syntax", nextToken());
+						}
+					}
+			}
+		}
+		return statements;
+	}
+
+	/*
+	 * ( <args> ) where <args> ::= <expr> ( , <expr> )* | empty
+	 */
+	private List<Expression> parseArgs() throws ParseException {
+		checkNext(TokenKind.LEFT_PAREN);
+
+		List<Expression> args = new ArrayList<>();
+		while (!peekNext(TokenKind.RIGHT_PAREN))
+		{
+			args.add(parseExpression());
+			if (!peekNext(TokenKind.COMMA))
+			{
+				break;
+			}
+			checkNext(TokenKind.COMMA);
+		}
+
+		checkNext(TokenKind.RIGHT_PAREN);
+		return args;
+	}
+
+	/**
+	 * An expression whose opening tokens have been read, but which is still
+	 * waiting for one or more of its operands.  parseExpression() keeps
+	 * these on an explicit stack instead of recursing once per level of
+	 * nesting.
+	 */
+	private static class PendingExpression {
+
+		static final int UNARY = 0;
+		static final int BINARY = 1;
+		static final int CALL = 2;
+
+		final int form;
+		// The unary operator, or the label of the function being called
+		final Token token;
+		final boolean isNot;
+
+		// Binary operator, read once the left operand is complete
+		Expression arg1;
+		int binaryOpKind;
+		Token binaryOpToken;
+
+		List<Expression> args;
+
+		PendingExpression(int form, Token token, boolean isNot) {
+			this.form = form;
+			this.token = token;
+			this.isNot = isNot;
+		}
+	}
+
+	/*
+	 * <expr> ::= ( <expr> <bin-op> <expr> )
+	 * 			| ( <unary-op> <expr> )
+	 * 			| <label> ( <args> )
+	 * 			| <label>
+	 * 			| <literal>
+	 *
+	 * Each time an operand is needed, its opening tokens are read and, if
+	 * it is not a leaf, it is pushed as a PendingExpression.  Once a leaf
+	 * is read it is handed to the innermost pending expression, which
+	 * either asks for its next operand or is complete and is itself handed
+	 * on to the one below it.  Nesting depth is bounded only by the heap.
+	 */
+	private Expression parseExpression() throws ParseException {
+
+		ArrayDeque<PendingExpression> pending = new ArrayDeque<>();
+
+		while (true)
+		{
+			Expression operand;
+
+			if (peekNext(TokenKind.LEFT_PAREN))
+			{
+				tokens.advance();
+				if (peekNext(TokenKind.NOT) || peekNext(TokenKind.MINUS))
+				{
+					boolean isNot = peekNext(TokenKind.NOT);
+					pending.push(new PendingExpression(PendingExpression.UNARY, nextToken(), isNot));
+				}
+				else
+				{
+					pending.push(new PendingExpression(PendingExpression.BINARY, null, false));
+				}
+				continue;
+			}
+
+			// non void call
+			if (peekTwoAhead(TokenKind.LEFT_PAREN))
+			{
+				var label = nextLabel();
+				checkNext(TokenKind.LEFT_PAREN);
+				if (!peekNext(TokenKind.RIGHT_PAREN))
+				{
+					var call = new PendingExpression(PendingExpression.CALL, label, false);
+					call.args = new ArrayList<>();
+					pending.push(call);
+					continue;
+				}
+				tokens.advance();
+				operand = new NonVoidFunctionCallExpression(label, label.getValue(), new ArrayList<>());
+			}
+			else
+			{
+				operand = parseLiteralOrLabel();
+			}
+
+			// Hand the finished operand to the pending expressions until one
+			// of them needs another operand
+			while (true)
+			{
+				PendingExpression top = pending.peek();
+				if (top == null)
+				{
+					return operand;
+				}
+
+				if (top.form == PendingExpression.BINARY && top.arg1 == null)
+				{
+					top.arg1 = operand;
+					top.binaryOpKind = tokens.peek(0);
+					top.binaryOpToken = nextToken();
+					break;
+				}
+
+				if (top.form == PendingExpression.CALL)
+				{
+					top.args.add(operand);
+					if (peekNext(TokenKind.COMMA))
+					{
+						checkNext(TokenKind.COMMA);
+						// Same as parseArgs(), a trailing comma is let through
+						if (!peekNext(TokenKind.RIGHT_PAREN))
+						{
+							break;
+						}
+					}
+					checkNext(TokenKind.RIGHT_PAREN);
+					pending.pop();
+					operand = new NonVoidFunctionCallExpression(top.token, top.token.getValue(), top.args);
+					continue;
+				}
+
+				checkNext(TokenKind.RIGHT_PAREN);
+				pending.pop();
+				if (top.form == PendingExpression.UNARY)
+				{
+					operand = top.isNot
+							? new NotUnaryOperatorExpression(top.token, operand)
+							: new NegativeUnaryOperatorExpression(top.token, operand);
+				}
+				else
+				{
+					operand = createBinaryOperatorExpression(top.binaryOpKind, top.binaryOpToken, top.arg1, operand);
+				}
+			}
+		}
+	}
+
+	private Expression parseLiteralOrLabel() throws ParseException {
+
+		int kind = tokens.peek(0);
+		var literalOrLabel = nextToken();
+
+		switch (kind)
+		{
+			case TokenKind.INT_LITERAL:
+				try
+				{
+					return new IntLiteralExpression(literalOrLabel, Integer.parseInt(literalOrLabel.getValue()));
+				}
+				catch (NumberFormatException ex)
+				{
+					throw new ParseException("Invalid integer literal " + literalOrLabel.getValue(), literalOrLabel);
+				}
+			case TokenKind.TRUE:
+				return new BoolLiteralExpression(literalOrLabel, true);
+			case TokenKind.FALSE:
+				return new BoolLiteralExpression(literalOrLabel, false);
+			case TokenKind.STRING_LITERAL:
+				// strip the quotes when saving the value
+				String quoted = literalOrLabel.getValue();
+				return new StringLiteralExpression(literalOrLabel, quoted.substring(1, quoted.length() - 1));
+			case TokenKind.LABEL:
+				return new LabelExpression(literalOrLabel, literalOrLabel.getValue());
+			default:
+				throw new ParseException("Literal or label was expected", literalOrLabel);
+		}
+	}
+
+	private Expression createBinaryOperatorExpression(int kind, Token token, Expression arg1Expression, Expression arg2Expression) throws ParseException {
+		switch (kind)
+		{
+			case TokenKind.PLUS:
+				return new PlusBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.MINUS:
+				return new MinusBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.MULTIPLY:
+				return new MultiplyBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.DIVIDE:
+				return new DivideBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.MODULO:
+				return new ModuloBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.GREATER_THAN:
+				return new GreaterThanBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.LESS_THAN:
+				return new LessThanBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.GREATER_THAN_EQUAL:
+				return new GreaterThanEqualBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.LESS_THAN_EQUAL:
+				return new LessThanEqualBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.EQUAL:
+				return new EqualBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.AND:
+				return new AndBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			case TokenKind.OR:
+				return new OrBinaryOperatorExpression(token, arg1Expression, arg2Expression);
+			default:
+				throw new ParseException("Invalid syntax. Expected a known valid operator but received " + token.getValue() + ".", token);
+		}
+	}
+}
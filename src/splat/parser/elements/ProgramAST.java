@@ -10,6 +10,12 @@ public class ProgramAST extends ASTElement {
 
 	private List<Declaration> decls;
 	private List<Statement> stmts;
+
+	// Number of slots in the Frame for the program variables
+	private int frameSize;
+
+	// Set once the whole program has passed semantic analysis
+	private boolean analyzed;
 	
 	public ProgramAST(List<Declaration> decls,
 					  List<Statement> stmts,
@@ -23,10 +29,39 @@ public class ProgramAST extends ASTElement {
 	public List<Declaration> getDecls() {
 		return decls;
 	}
+
+	public void setDecls(List<Declaration> decls) {
+		this.decls = decls;
+	}
 	
 	public List<Statement> getStmts() {
 		return stmts;
 	}
+
+	public void setStmts(List<Statement> stmts) {
+		this.stmts = stmts;
+	}
+
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	public void setFrameSize(int frameSize) {
+		this.frameSize = frameSize;
+	}
+
+	/**
+	 * Whether SemanticAnalyzer.analyze() has accepted this program, and
+	 * so resolved its variables and calls and proved it well typed.  A
+	 * lazily parsed function is still analyzed on its first call.
+	 */
+	public boolean isAnalyzed() {
+		return analyzed;
+	}
+
+	public void setAnalyzed(boolean analyzed) {
+		this.analyzed = analyzed;
+	}
 	
 	public String toString() {
 		String result = "program \n";
@@ -1,8 +1,26 @@
 package splat.parser.elements;
 
-import java.util.Objects;
+/**
+ * The type of a variable, expression or function result.
+ *
+ * Types are canonical: there is exactly one instance of each distinct
+ * type, handed out by the factory methods below, so two types are the same
+ * exactly when they are the same object and can be compared with ==.
+ * Nothing is allocated when a type is looked up, which matters since the
+ * analyzer and every Value ask for them all the time.
+ *
+ * A composite type added later (an array of some element type, say) gets
+ * its own final subclass in the permits list, and a factory method that
+ * interns its instances, for example in a map keyed by the component types,
+ * so that == keeps working for it too.
+ */
+public abstract sealed class Type permits BooleanType, IntegerType, StringType, VoidType {
+
+    private static final Type BOOLEAN = new BooleanType();
+    private static final Type INTEGER = new IntegerType();
+    private static final Type STRING = new StringType();
+    private static final Type VOID = new VoidType();
 
-public class Type {
     private final String name;
 
     protected Type(String name) {
@@ -14,22 +32,22 @@ public class Type {
     }
 
     public static Type Boolean() {
-        return new BooleanType();
+        return BOOLEAN;
     }
 
     public static Type String()
     {
-        return new StringType();
+        return STRING;
     }
 
     public static Type Integer()
     {
-        return new IntegerType();
+        return INTEGER;
     }
 
     public static Type Void()
     {
-        return new VoidType();
+        return VOID;
     }
 
     public static final String String = "String";
@@ -41,17 +59,4 @@ public class Type {
     public String toString() {
         return name;
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Type type = (Type) o;
-        return Objects.equals(name, type.name);
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(name);
-    }
 }
@@ -1,5 +1,7 @@
 package splat.parser.elements.declarations;
 
+import splat.SplatException;
+import splat.executor.CompiledBody;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.statements.Statement;
@@ -8,11 +10,39 @@ import java.util.List;
 
 public class FunctionDecl extends Declaration {
 
+	/**
+	 * Parses and analyzes the body of a function that was parsed lazily,
+	 * i.e. with only its signature.
+	 */
+	public interface BodyLoader {
+		void load(FunctionDecl funcDecl) throws SplatException;
+	}
+
 	private final List<Declaration> params;
-	private final List<Declaration> localVars;
-	private final List<Statement> stmts;
+	private List<Declaration> localVars;
+	private List<Statement> stmts;
 	private final Type returnType;
 
+	// Number of slots in a Frame for a call: parameters plus local variables
+	private int frameSize;
+
+	// For a body that has not been parsed yet: the token index of its 'is',
+	// and what will parse it the first time the function is called.  Both
+	// volatile fields are null once there is nothing left to load, which
+	// calls check without taking the lock
+	private int bodyStart = -1;
+	private volatile BodyLoader bodyLoader;
+	// What the body failed with, to fail the same way on every call
+	private volatile FunctionLoadException loadError;
+	// Whether the body is being loaded, by the thread holding the lock
+	private boolean loading = false;
+
+	// Calls run by the AST walker, counted only when it is profiled
+	private long invocationCount = 0;
+
+	// Set by another thread, once a faster tier has compiled the body
+	private volatile CompiledBody compiledBody;
+
 	public FunctionDecl(Token tok, String label, Type returnType, List<Declaration> params, List<Declaration> localVars, List<Statement> stmts) {
 		super(tok, label);
 		this.params = params;
@@ -21,6 +51,14 @@ public class FunctionDecl extends Declaration {
 		this.returnType = returnType;
 	}
 
+	/**
+	 * Creates a function with only its signature.  Its local variables and
+	 * statements stay null until setBody() is called.
+	 */
+	public FunctionDecl(Token tok, String label, Type returnType, List<Declaration> params) {
+		this(tok, label, returnType, params, null, null);
+	}
+
 	public List<Declaration> getParams() {
 		return params;
 	}
@@ -37,6 +75,110 @@ public class FunctionDecl extends Declaration {
 		return returnType;
 	}
 
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	public void setFrameSize(int frameSize) {
+		this.frameSize = frameSize;
+	}
+
+	/**
+	 * The slot of a call's Frame that a return statement stores the
+	 * return value in, which is the last one.
+	 */
+	public int getReturnSlot() {
+		return frameSize - 1;
+	}
+
+	public boolean isBodyParsed() {
+		return stmts != null;
+	}
+
+	public void setBody(List<Declaration> localVars, List<Statement> stmts) {
+		this.localVars = localVars;
+		this.stmts = stmts;
+		this.bodyStart = -1;
+	}
+
+	public int getBodyStart() {
+		return bodyStart;
+	}
+
+	public void setBodyStart(int bodyStart) {
+		this.bodyStart = bodyStart;
+	}
+
+	public void setBodyLoader(BodyLoader bodyLoader) {
+		this.bodyLoader = bodyLoader;
+	}
+
+	/**
+	 * Makes sure the body of the function is parsed and analyzed, before
+	 * it is called.  Does nothing for a function that was parsed eagerly
+	 * or has been loaded already.
+	 *
+	 * A compiler may load the body from another thread than the one that
+	 * runs the program, so loading is synchronized.  Only a load that is
+	 * still pending takes the lock; once the body is loaded, this is two
+	 * volatile reads.
+	 *
+	 * @throws FunctionLoadException wrapping the parse or semantic error
+	 * 			found in the body, every time the function is loaded
+	 */
+	public void load() {
+		if (bodyLoader != null || loadError != null) {
+			loadPending();
+		}
+	}
+
+	private synchronized void loadPending() {
+		if (loadError != null) {
+			throw loadError;
+		}
+		if (bodyLoader == null || loading) {
+			return;
+		}
+
+		// The loader is only cleared once the body is in, so that another
+		// thread cannot skip the lock and find it missing
+		loading = true;
+		try {
+			bodyLoader.load(this);
+		} catch (SplatException ex) {
+			loadError = new FunctionLoadException(ex);
+			throw loadError;
+		} finally {
+			loading = false;
+			bodyLoader = null;
+		}
+	}
+
+	/**
+	 * Counts one more call run by the AST walker.
+	 *
+	 * @return the number of calls counted so far
+	 */
+	public long countInvocation() {
+		return ++invocationCount;
+	}
+
+	public long getInvocationCount() {
+		return invocationCount;
+	}
+
+	/**
+	 * The body compiled by a faster tier, which calls run instead of the
+	 * statements once it is set, or null while there is none.
+	 */
+	public CompiledBody getCompiledBody() {
+		return compiledBody;
+	}
+
+	public void setCompiledBody(CompiledBody compiledBody) {
+		this.compiledBody = compiledBody;
+	}
+
 	@Override
 	public String toString() {
 		return "FunctionDecl{" +
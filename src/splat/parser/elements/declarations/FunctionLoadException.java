@@ -0,0 +1,25 @@
+package splat.parser.elements.declarations;
+
+import splat.SplatException;
+
+/**
+ * Carries a ParseException or SemanticAnalysisException found in the
+ * body of a lazily parsed function out of the executor, which only
+ * declares ExecutionException.  Splat.processFileAndExecute() rethrows
+ * the original error.
+ */
+public class FunctionLoadException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final SplatException error;
+
+	public FunctionLoadException(SplatException error) {
+		super(error.getMessage(), error);
+		this.error = error;
+	}
+
+	public SplatException getError() {
+		return error;
+	}
+}
@@ -6,6 +6,9 @@ public class VariableDecl extends Declaration {
 
 	private final splat.parser.elements.Type type;
 
+	// Index of the variable in its Frame, set by the SemanticAnalyzer
+	private int slot = -1;
+
 	public VariableDecl(Token tok, String label, splat.parser.elements.Type type) {
 		super(tok, label);
 		this.type = type;
@@ -15,6 +18,14 @@ public class VariableDecl extends Declaration {
 		return type;
 	}
 
+	public int getSlot() {
+		return slot;
+	}
+
+	public void setSlot(int slot) {
+		this.slot = slot;
+	}
+
 	@Override
 	public String toString() {
 		return "VariableDecl{" +
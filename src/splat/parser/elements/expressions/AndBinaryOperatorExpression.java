@@ -2,14 +2,15 @@ package splat.parser.elements.expressions;
 
 import splat.executor.BoolValue;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
-import java.util.Objects;
 
 public class AndBinaryOperatorExpression extends BinaryOperatorExpression {
     public AndBinaryOperatorExpression(Token tok, Expression arg1, Expression arg2) {
@@ -17,16 +18,16 @@ public class AndBinaryOperatorExpression extends BinaryOperatorExpression {
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        Type arg1Type = arg1.analyzeAndGetType(funcMap, varAndParamMap);
-        Type arg2Type = arg2.analyzeAndGetType(funcMap, varAndParamMap);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        Type arg1Type = arg1.analyze(funcMap, varAndParamMap);
+        Type arg2Type = arg2.analyze(funcMap, varAndParamMap);
 
-        if (!Objects.equals(arg1Type, Type.Boolean()))
+        if (arg1Type != Type.Boolean())
         {
             throw new SemanticAnalysisException("Expected type of arg1 was Boolean. " + arg1Type + " was found instead", arg1);
         }
 
-        if (!Objects.equals(arg2Type, Type.Boolean()))
+        if (arg2Type != Type.Boolean())
         {
             throw new SemanticAnalysisException("Expected type of arg1 was Boolean. " + arg1Type + " was found instead", arg1);
         }
@@ -35,20 +36,38 @@ public class AndBinaryOperatorExpression extends BinaryOperatorExpression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value arg1Value = arg1.evaluate(funcMap, varAndParamMap);
-        Value arg2Value = arg2.evaluate(funcMap, varAndParamMap);
+    public Value evaluate(Frame frame) throws ExecutionException {
+        if (!frame.isChecked())
+        {
+            return new BoolValue(evaluateBoolean(frame));
+        }
+
+        Value arg1Value = arg1.evaluate(frame);
+        Value arg2Value = arg2.evaluate(frame);
 
-        if (!Objects.equals(arg1Value.getType(), Type.Boolean()))
+        if (arg1Value.getType() != Type.Boolean())
         {
             throw new ExecutionException("Expected type: " + Type.Boolean(), arg1);
         }
 
-        if (!Objects.equals(arg2Value.getType(), Type.Boolean()))
+        if (arg2Value.getType() != Type.Boolean())
         {
             throw new ExecutionException("Expected type: " + Type.Boolean(), arg2);
         }
 
         return new BoolValue((boolean) arg1Value.getValue() && (boolean) arg2Value.getValue());
     }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+        if (frame.isChecked())
+        {
+            return (boolean) evaluate(frame).getValue();
+        }
+
+        // Splat evaluates both sides, even when the first one decides
+        boolean arg1Val = arg1.evaluateBoolean(frame);
+        boolean arg2Val = arg2.evaluateBoolean(frame);
+        return arg1Val && arg2Val;
+    }
 }
@@ -11,4 +11,12 @@ public abstract class BinaryOperatorExpression extends Expression {
         this.arg1 = arg1;
         this.arg2 = arg2;
     }
+
+    public Expression getArg1() {
+        return arg1;
+    }
+
+    public Expression getArg2() {
+        return arg2;
+    }
 }
@@ -2,10 +2,12 @@ package splat.parser.elements.expressions;
 
 import splat.executor.BoolValue;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
@@ -17,11 +19,11 @@ public class EqualBinaryOperatorExpression extends BinaryOperatorExpression {
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        Type arg1Type = arg1.analyzeAndGetType(funcMap, varAndParamMap);
-        Type arg2Type = arg2.analyzeAndGetType(funcMap, varAndParamMap);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        Type arg1Type = arg1.analyze(funcMap, varAndParamMap);
+        Type arg2Type = arg2.analyze(funcMap, varAndParamMap);
 
-        if (!Objects.equals(arg1Type, arg2Type))
+        if (arg1Type != arg2Type)
         {
             throw new SemanticAnalysisException("Argument types do not match. Arg1 type: " + arg1Type + ". Arg2 type: " + arg2Type, this);
         }
@@ -30,18 +32,44 @@ public class EqualBinaryOperatorExpression extends BinaryOperatorExpression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value arg1Value = arg1.evaluate(funcMap, varAndParamMap);
-        Value arg2Value = arg2.evaluate(funcMap, varAndParamMap);
+    public Value evaluate(Frame frame) throws ExecutionException {
+        if (!frame.isChecked())
+        {
+            return new BoolValue(evaluateBoolean(frame));
+        }
+
+        Value arg1Value = arg1.evaluate(frame);
+        Value arg2Value = arg2.evaluate(frame);
 
         Type arg1Type = arg1Value.getType();
         Type arg2Type = arg2Value.getType();
 
-        if (!Objects.equals(arg1Type, arg2Type))
+        if (arg1Type != arg2Type)
         {
             throw new ExecutionException("Argument types do not match. Arg1 type: " + arg1Type + ". Arg2 type: " + arg2Type, this);
         }
 
-        return new BoolValue(arg1Value.getValue() == arg2Value.getValue());
+        // Compares the boxed values by content, not by identity
+        return new BoolValue(Objects.equals(arg1Value.getValue(), arg2Value.getValue()));
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+        if (frame.isChecked())
+        {
+            return (boolean) evaluate(frame).getValue();
+        }
+
+        // Both sides have the same type, as semantic analysis checked
+        Type argType = arg1.getType();
+        if (argType == Type.Integer())
+        {
+            return arg1.evaluateInt(frame) == arg2.evaluateInt(frame);
+        }
+        if (argType == Type.Boolean())
+        {
+            return arg1.evaluateBoolean(frame) == arg2.evaluateBoolean(frame);
+        }
+        return Objects.equals(arg1.evaluate(frame).getValue(), arg2.evaluate(frame).getValue());
     }
 }
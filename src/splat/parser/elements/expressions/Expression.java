@@ -1,21 +1,46 @@
 package splat.parser.elements.expressions;
 
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.ASTElement;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
 
 public abstract class Expression extends ASTElement {
 
+	// The type worked out for this expression by semantic analysis, or
+	// null if it has not been analyzed
+	private Type type;
+
 	public Expression(Token tok) {
 		super(tok);
 	}
 
+	/**
+	 * Runs analyzeAndGetType() and remembers the resulting type, so that
+	 * later stages can read it back with getType().  Statements and
+	 * enclosing expressions should analyze sub-expressions through this.
+	 */
+	public Type analyze(Map<String, FunctionDecl> funcMap,
+						Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+		type = analyzeAndGetType(funcMap, varAndParamMap);
+		return type;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public void setType(Type type) {
+		this.type = type;
+	}
+
 	/**
 	 * This will be needed for Phase 3 - this abstract method will need to be
 	 * implemented by every Expression subclass.  This method does two things:
@@ -33,10 +58,12 @@ public abstract class Expression extends ASTElement {
 	 * 
 	 * varAndParamMap is needed in case this expression or a sub-expression
 	 * contains variables or parameters -- we use this map to keep track of
-	 * what items are currently in scope, and what their types are
+	 * what items are currently in scope, and what their types are.  Each
+	 * reference to one is also resolved to the declaration's Frame slot,
+	 * and each call to its FunctionDecl, for evaluate() to use.
 	 */
 	 public abstract Type analyzeAndGetType(Map<String, FunctionDecl> funcMap,
-	                                        Map<String, Type> varAndParamMap) throws SemanticAnalysisException;
+	                                        Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException;
 	
 	/**
 	 * This will be needed for Phase 4 - this abstract method will need to be
@@ -44,15 +71,46 @@ public abstract class Expression extends ASTElement {
 	 * "calculate" the value of this expression, which will usually require we
 	 * recursively call the same method on all sub-expressions. 
 	 * 
-	 * funcMap is needed in case this expression or a sub-expression contains
-	 * a function call -- we will have to evaluate the individual arguments and 
-	 * create a new varAndParamMap to bind the function params to the new values
-	 * and then execute the function body.  More on this later...
-	 *  
-	 * varAndParamMap is needed in case this expression or a sub-expression
-	 * contains variables or parameters -- we use this map to keep track of the
-	 * values of the items that are currently in scope
+	 * frame holds the values of the variables and parameters currently in
+	 * scope, in the slots that semantic analysis resolved them to.  A
+	 * function call evaluates its arguments into a new Frame, and executes
+	 * the function body with that one.
 	 */
-	public abstract Value evaluate(Map<String, FunctionDecl> funcMap,
-								   Map<String, Value> varAndParamMap) throws ExecutionException;
+	public abstract Value evaluate(Frame frame) throws ExecutionException;
+
+	/**
+	 * Evaluates an expression that semantic analysis found to be of type
+	 * Integer, without boxing the result.  Operators on integers override
+	 * this to work on the unboxed values of their operands, so that a tree
+	 * of them allocates nothing; a Value only has to be made where one is
+	 * stored or printed.
+	 *
+	 * In a checked frame, operators go through evaluate() instead, so that
+	 * the types of the values are checked as well.
+	 */
+	public int evaluateInt(Frame frame) throws ExecutionException {
+		return (int) evaluate(frame).getValue();
+	}
+
+	/**
+	 * The same as evaluateInt(), for expressions of type Boolean.
+	 */
+	public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+		return (boolean) evaluate(frame).getValue();
+	}
+
+	/**
+	 * Evaluates this expression with frame, and stores the result in a
+	 * slot of target, unboxed if it is an Integer or a Boolean.  The slot
+	 * has to belong to a variable of the same type as this expression.
+	 */
+	public void evaluateInto(Frame frame, Frame target, int slot) throws ExecutionException {
+		if (type == Type.Integer()) {
+			target.setInt(slot, evaluateInt(frame));
+		} else if (type == Type.Boolean()) {
+			target.setBoolean(slot, evaluateBoolean(frame));
+		} else {
+			target.set(slot, evaluate(frame));
+		}
+	}
 }
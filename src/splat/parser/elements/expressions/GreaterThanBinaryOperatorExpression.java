@@ -2,13 +2,11 @@ package splat.parser.elements.expressions;
 
 import splat.executor.BoolValue;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
-import splat.parser.elements.declarations.FunctionDecl;
 
-import java.util.Map;
-import java.util.Objects;
 
 public class GreaterThanBinaryOperatorExpression extends IntegerComparisonBinaryOperator {
     public GreaterThanBinaryOperatorExpression(Token tok, Expression arg1, Expression arg2) {
@@ -16,23 +14,38 @@ public class GreaterThanBinaryOperatorExpression extends IntegerComparisonBinary
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value arg1Value = arg1.evaluate(funcMap, varAndParamMap);
-        Value arg2Value = arg2.evaluate(funcMap, varAndParamMap);
+    public Value evaluate(Frame frame) throws ExecutionException {
+        if (!frame.isChecked())
+        {
+            return new BoolValue(evaluateBoolean(frame));
+        }
+
+        Value arg1Value = arg1.evaluate(frame);
+        Value arg2Value = arg2.evaluate(frame);
 
         Type arg1Type = arg1Value.getType();
         Type arg2Type = arg2Value.getType();
 
-        if (!Objects.equals(arg1Type, Type.Integer()))
+        if (arg1Type != Type.Integer())
         {
             throw new ExecutionException("Expected type of arg1 was Integer. " + arg1Type + " was found instead", arg1);
         }
 
-        if (!Objects.equals(arg2Type, Type.Integer()))
+        if (arg2Type != Type.Integer())
         {
             throw new ExecutionException("Expected type of arg1 was Integer. " + arg1Type + " was found instead", arg1);
         }
 
-        return new BoolValue(((int) arg1Value.getValue() > (int)arg2Value.getValue()));
+        return new BoolValue((int) arg1Value.getValue() > (int) arg2Value.getValue());
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+        if (frame.isChecked())
+        {
+            return (boolean) evaluate(frame).getValue();
+        }
+
+        return arg1.evaluateInt(frame) > arg2.evaluateInt(frame);
     }
 }
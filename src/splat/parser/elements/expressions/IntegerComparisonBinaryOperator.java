@@ -5,10 +5,10 @@ import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
-import java.util.Objects;
 
 public abstract class IntegerComparisonBinaryOperator extends BinaryOperatorExpression {
     public IntegerComparisonBinaryOperator(Token tok, Expression arg1, Expression arg2) {
@@ -16,16 +16,16 @@ public abstract class IntegerComparisonBinaryOperator extends BinaryOperatorExpr
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        Type arg1Type = arg1.analyzeAndGetType(funcMap, varAndParamMap);
-        Type arg2Type = arg2.analyzeAndGetType(funcMap, varAndParamMap);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        Type arg1Type = arg1.analyze(funcMap, varAndParamMap);
+        Type arg2Type = arg2.analyze(funcMap, varAndParamMap);
 
-        if (!Objects.equals(arg1Type, Type.Integer()))
+        if (arg1Type != Type.Integer())
         {
             throw new SemanticAnalysisException("Expected type of arg1 was Integer. " + arg1Type + " was found instead", arg1);
         }
 
-        if (!Objects.equals(arg2Type, Type.Integer()))
+        if (arg2Type != Type.Integer())
         {
             throw new SemanticAnalysisException("Expected type of arg1 was Integer. " + arg1Type + " was found instead", arg1);
         }
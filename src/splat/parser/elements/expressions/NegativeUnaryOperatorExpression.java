@@ -1,15 +1,16 @@
 package splat.parser.elements.expressions;
 
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.IntValue;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
-import java.util.Objects;
 
 public class NegativeUnaryOperatorExpression extends UnaryOperatorExpression {
     public NegativeUnaryOperatorExpression(Token tok, Expression arg1) {
@@ -18,10 +19,10 @@ public class NegativeUnaryOperatorExpression extends UnaryOperatorExpression {
 
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        Type arg1Type = arg1.analyzeAndGetType(funcMap, varAndParamMap);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        Type arg1Type = arg1.analyze(funcMap, varAndParamMap);
 
-        if (!Objects.equals(arg1Type, Type.Integer()))
+        if (arg1Type != Type.Integer())
         {
             throw new SemanticAnalysisException("Expected type of arg was Integer. " + arg1Type + " was found instead", arg1);
         }
@@ -30,14 +31,29 @@ public class NegativeUnaryOperatorExpression extends UnaryOperatorExpression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value arg1Value = arg1.evaluate(funcMap, varAndParamMap);
+    public Value evaluate(Frame frame) throws ExecutionException {
+        if (!frame.isChecked())
+        {
+            return new IntValue(evaluateInt(frame));
+        }
+
+        Value arg1Value = arg1.evaluate(frame);
 
         Type arg1Type = arg1Value.getType();
-        if (!Objects.equals(arg1Type, Type.Integer()))
+        if (arg1Type != Type.Integer())
         {
             throw new ExecutionException("Expected type of arg was Integer. " + arg1Type + " was found instead", arg1);
         }
         return new IntValue(-((int) arg1Value.getValue()));
     }
+
+    @Override
+    public int evaluateInt(Frame frame) throws ExecutionException {
+        if (frame.isChecked())
+        {
+            return (int) evaluate(frame).getValue();
+        }
+
+        return -arg1.evaluateInt(frame);
+    }
 }
@@ -1,24 +1,26 @@
 package splat.parser.elements.expressions;
 
+import splat.executor.BoolValue;
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
+import splat.executor.IntValue;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
-import splat.parser.elements.declarations.Declaration;
 import splat.parser.elements.declarations.FunctionDecl;
 import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.statements.Statement;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 public class NonVoidFunctionCallExpression extends Expression {
     private final String label;
     private final List<Expression> args;
+    // The function called, resolved during semantic analysis
+    private FunctionDecl functionDecl;
 
     public NonVoidFunctionCallExpression(Token tok, String label, List<Expression> args) {
         super(tok);
@@ -34,16 +36,24 @@ public class NonVoidFunctionCallExpression extends Expression {
         return label;
     }
 
+    public FunctionDecl getFunctionDecl() {
+        return functionDecl;
+    }
+
+    public void setFunctionDecl(FunctionDecl functionDecl) {
+        this.functionDecl = functionDecl;
+    }
+
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        var functionDecl = funcMap.get(label);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        functionDecl = funcMap.get(label);
 
         if (functionDecl == null)
         {
             throw new SemanticAnalysisException(label + "() is not declared", this);
         }
 
-        if (Objects.equals(functionDecl.getReturnType(), Type.Void()))
+        if (functionDecl.getReturnType() == Type.Void())
         {
             throw new SemanticAnalysisException("void-typed function " + label + "() is used in an expression", this);
         }
@@ -59,8 +69,8 @@ public class NonVoidFunctionCallExpression extends Expression {
             var functionArgument  = args.get(i);
 
             var paramType = functionParameter.getType();
-            var argType = functionArgument.analyzeAndGetType(funcMap, varAndParamMap);
-            if (!Objects.equals(paramType, argType))
+            var argType = functionArgument.analyze(funcMap, varAndParamMap);
+            if (paramType != argType)
             {
                 throw new SemanticAnalysisException("Argument type " + argType + "does not match the function parameter type " + paramType, functionArgument);
             }
@@ -70,67 +80,84 @@ public class NonVoidFunctionCallExpression extends Expression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        var functionDecl = funcMap.get(label);
-
-        if (functionDecl == null)
-        {
-            throw new ExecutionException(label + "() is not declared", this);
-        }
+    public Value evaluate(Frame frame) throws ExecutionException {
+        Frame functionFrame = call(frame);
+        int returnSlot = functionDecl.getReturnSlot();
 
-        if (Objects.equals(functionDecl.getReturnType(), Type.Void()))
+        // Integer and Boolean return values are stored unboxed
+        if (functionDecl.getReturnType() == Type.Integer())
         {
-            throw new ExecutionException("void-typed function " + label + "() is used in an expression", this);
+            return new IntValue((int) functionFrame.getPrimitive(returnSlot));
         }
-
-        if (functionDecl.getParams().size() != args.size())
+        if (functionDecl.getReturnType() == Type.Boolean())
         {
-            throw new ExecutionException(label + "() takes " + functionDecl.getParams().size() + " arguments but " + args.size() + " were given", this);
+            return new BoolValue(functionFrame.getPrimitive(returnSlot) != 0);
         }
+        return functionFrame.get(returnSlot);
+    }
 
-        Map<String, Value> functionVarMap = new HashMap<>();
-        SetMap(funcMap, varAndParamMap, functionVarMap);
+    @Override
+    public int evaluateInt(Frame frame) throws ExecutionException {
+        return (int) call(frame).getPrimitive(functionDecl.getReturnSlot());
+    }
 
-        try {
+    @Override
+    public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+        return call(frame).getPrimitive(functionDecl.getReturnSlot()) != 0;
+    }
 
-            // Go through and execute each of the statements
-            for (Statement stmt : functionDecl.getStmts()) {
-                stmt.execute(funcMap, functionVarMap);
+    /*
+     * Runs the function up to its return statement, and returns the frame
+     * of the call, which holds the return value in its return slot.
+     */
+    private Frame call(Frame frame) throws ExecutionException {
+        if (frame.isChecked())
+        {
+            if (functionDecl == null)
+            {
+                throw new ExecutionException(label + "() is not declared", this);
             }
 
-            // We should never have to catch this exception here, since the
-            // main program body cannot have returns
-        } catch (ReturnFromCall ex) {
-            System.err.println("Returned from " + label + "()");
+            if (functionDecl.getReturnType() == Type.Void())
+            {
+                throw new ExecutionException("void-typed function " + label + "() is used in an expression", this);
+            }
 
-            return ex.getReturnVal();
+            if (functionDecl.getParams().size() != args.size())
+            {
+                throw new ExecutionException(label + "() takes " + functionDecl.getParams().size() + " arguments but " + args.size() + " were given", this);
+            }
         }
-        throw new ExecutionException("Internal error -- did not return from " + this.label + "()", -1, -1);
-    }
 
-    private void SetMap(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap, Map<String, Value> functionVarMap) throws ExecutionException {
-        var functionDecl = funcMap.get(label);
+        // A lazily parsed function is parsed and analyzed on its first call
+        functionDecl.load();
 
-        for (Declaration decl : functionDecl.getLocalVars()) {
+        Frame functionFrame = new Frame(functionDecl, frame);
+        bindArguments(frame, functionFrame);
 
-            String label = decl.getLabel();
-
-            if (decl instanceof VariableDecl) {
-                functionVarMap.put(label, null);
-            }
+        // Go through and execute each of the statements, up to a return
+        if (Statement.executeBody(functionDecl, functionFrame) == Completion.RETURN)
+        {
+            return functionFrame;
         }
+        throw new ExecutionException("Internal error -- did not return from " + this.label + "()", -1, -1);
+    }
 
+    /*
+     * Evaluates the arguments in the caller's frame, into the parameter
+     * slots of the new one.  Local variables start out unassigned.
+     */
+    private void bindArguments(Frame frame, Frame functionFrame) throws ExecutionException {
         for (int i = 0; i < args.size(); i++)
         {
             var functionParameter = (VariableDecl) functionDecl.getParams().get(i);
             var functionArgument  = args.get(i);
-            if (functionArgument == null)
+            if (frame.isChecked() && functionArgument == null)
             {
                 throw new ExecutionException("Argument is uninitialized", this);
             }
 
-            var argValue = functionArgument.evaluate(funcMap, varAndParamMap);
-            functionVarMap.put(functionParameter.getLabel(), argValue);
+            functionArgument.evaluateInto(frame, functionFrame, functionParameter.getSlot());
         }
     }
 }
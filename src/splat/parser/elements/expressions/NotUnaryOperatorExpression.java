@@ -2,14 +2,15 @@ package splat.parser.elements.expressions;
 
 import splat.executor.BoolValue;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
-import java.util.Objects;
 
 public class NotUnaryOperatorExpression extends UnaryOperatorExpression {
     public NotUnaryOperatorExpression(Token tok, Expression arg1) {
@@ -17,10 +18,10 @@ public class NotUnaryOperatorExpression extends UnaryOperatorExpression {
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        Type arg1Type = arg1.analyzeAndGetType(funcMap, varAndParamMap);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        Type arg1Type = arg1.analyze(funcMap, varAndParamMap);
 
-        if (!Objects.equals(arg1Type, Type.Boolean()))
+        if (arg1Type != Type.Boolean())
         {
             throw new SemanticAnalysisException("Expected type of arg1 was Boolean. " + arg1Type + " was found instead", arg1);
         }
@@ -29,14 +30,29 @@ public class NotUnaryOperatorExpression extends UnaryOperatorExpression {
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value arg1Value = arg1.evaluate(funcMap, varAndParamMap);
+    public Value evaluate(Frame frame) throws ExecutionException {
+        if (!frame.isChecked())
+        {
+            return new BoolValue(evaluateBoolean(frame));
+        }
+
+        Value arg1Value = arg1.evaluate(frame);
 
-        if (!Objects.equals(arg1Value.getType(), Type.Boolean()))
+        if (arg1Value.getType() != Type.Boolean())
         {
             throw new ExecutionException("Expected type: " + Type.Boolean(), arg1);
         }
 
         return new BoolValue(!(boolean) arg1Value.getValue());
     }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+        if (frame.isChecked())
+        {
+            return (boolean) evaluate(frame).getValue();
+        }
+
+        return !arg1.evaluateBoolean(frame);
+    }
 }
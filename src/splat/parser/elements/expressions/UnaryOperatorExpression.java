@@ -8,4 +8,8 @@ public abstract class UnaryOperatorExpression extends Expression {
         super(tok);
         this.arg1 = arg1;
     }
+
+    public Expression getArg1() {
+        return arg1;
+    }
 }
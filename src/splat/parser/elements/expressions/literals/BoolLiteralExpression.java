@@ -1,25 +1,38 @@
 package splat.parser.elements.expressions.literals;
 
 import splat.executor.BoolValue;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 
 import java.util.Map;
 
 public class BoolLiteralExpression extends LiteralExpression {
+    // Values are immutable, so every evaluation can share this one
+    private final BoolValue constant;
+    private final boolean boolValue;
+
     public BoolLiteralExpression(Token tok, Object value) {
         super(tok, value);
+        this.constant = new BoolValue(value);
+        this.boolValue = (boolean) value;
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) {
         return Type.Boolean();
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) {
-        return new BoolValue(this.value);
+    public Value evaluate(Frame frame) {
+        return constant;
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) {
+        return boolValue;
     }
 }
@@ -1,25 +1,38 @@
 package splat.parser.elements.expressions.literals;
 
+import splat.executor.Frame;
 import splat.executor.IntValue;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 
 import java.util.Map;
 
 public class IntLiteralExpression extends LiteralExpression {
+    // Values are immutable, so every evaluation can share this one
+    private final IntValue constant;
+    private final int intValue;
+
     public IntLiteralExpression(Token tok, Object value) {
         super(tok, value);
+        this.constant = new IntValue(value);
+        this.intValue = (int) value;
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) {
         return Type.Integer();
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) {
-        return new IntValue(this.value);
+    public Value evaluate(Frame frame) {
+        return constant;
+    }
+
+    @Override
+    public int evaluateInt(Frame frame) {
+        return intValue;
     }
 }
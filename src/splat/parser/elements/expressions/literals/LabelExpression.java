@@ -1,16 +1,23 @@
 package splat.parser.elements.expressions.literals;
 
+import splat.executor.BoolValue;
 import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.executor.IntValue;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
+import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
 
 public class LabelExpression extends Expression {
     private final String label;
+    // Frame slot of the variable, resolved during semantic analysis
+    private int slot = -1;
 
     public LabelExpression(Token tok, String value) {
         super(tok);
@@ -21,18 +28,63 @@ public class LabelExpression extends Expression {
         return label;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
-        return varAndParamMap.get(label);
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        var variableDecl = varAndParamMap.get(label);
+
+        if (variableDecl == null)
+        {
+            throw new SemanticAnalysisException("Cannot use undeclared variable " + label, this);
+        }
+
+        slot = variableDecl.getSlot();
+        return variableDecl.getType();
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        var value = varAndParamMap.get(this.label);
+    public Value evaluate(Frame frame) throws ExecutionException {
+        // Integer and Boolean variables are stored unboxed
+        if (getType() == Type.Integer())
+        {
+            return new IntValue(evaluateInt(frame));
+        }
+        if (getType() == Type.Boolean())
+        {
+            return new BoolValue(evaluateBoolean(frame));
+        }
+
+        var value = frame.get(slot);
         if (value == null)
         {
             throw new ExecutionException("Cannot use uninitialized label " + this.label, this);
         }
         return value;
     }
+
+    @Override
+    public int evaluateInt(Frame frame) throws ExecutionException {
+        return (int) getPrimitive(frame);
+    }
+
+    @Override
+    public boolean evaluateBoolean(Frame frame) throws ExecutionException {
+        return getPrimitive(frame) != 0;
+    }
+
+    private long getPrimitive(Frame frame) throws ExecutionException {
+        long value = frame.getPrimitive(slot);
+        if (value == Frame.UNASSIGNED)
+        {
+            throw new ExecutionException("Cannot use uninitialized label " + this.label, this);
+        }
+        return value;
+    }
 }
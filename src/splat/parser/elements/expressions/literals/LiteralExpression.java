@@ -10,4 +10,8 @@ public abstract class LiteralExpression extends Expression {
         super(tok);
         this.value = value;
     }
+
+    public Object getValue() {
+        return value;
+    }
 }
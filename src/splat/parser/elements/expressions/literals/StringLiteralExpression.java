@@ -1,25 +1,31 @@
 package splat.parser.elements.expressions.literals;
 
+import splat.executor.Frame;
 import splat.executor.StringValue;
 import splat.executor.Value;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 
 import java.util.Map;
 
 public class StringLiteralExpression extends LiteralExpression {
+    // Values are immutable, so every evaluation can share this one
+    private final StringValue constant;
+
     public StringLiteralExpression(Token tok, Object value) {
         super(tok, value);
+        this.constant = new StringValue(value);
     }
 
     @Override
-    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) {
+    public Type analyzeAndGetType(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) {
         return Type.String();
     }
 
     @Override
-    public Value evaluate(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) {
-        return new StringValue(this.value);
+    public Value evaluate(Frame frame) {
+        return constant;
     }
 }
@@ -1,20 +1,22 @@
 package splat.parser.elements.statements;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
-import splat.executor.Value;
+import splat.executor.Frame;
 import splat.lexer.Token;
-import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.Map;
-import java.util.Objects;
 
 public class AssignmentStatement extends Statement {
     private final String lhs;
     private final Expression rhs;
+    // Frame slot of the variable, resolved during semantic analysis
+    private int slot = -1;
+
     public AssignmentStatement(Token tok, String label, Expression expression) {
         super(tok);
         lhs = label;
@@ -29,27 +31,38 @@ public class AssignmentStatement extends Statement {
         return rhs;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
 
-        var lhsType = varAndParamMap.get(lhs);
+        var lhsDecl = varAndParamMap.get(lhs);
 
-        if (lhsType == null)
+        if (lhsDecl == null)
         {
             throw new SemanticAnalysisException("Cannot assign to undeclared variable " + lhs, this);
         }
 
-        var rhsType = rhs.analyzeAndGetType(funcMap, varAndParamMap);
+        var lhsType = lhsDecl.getType();
+        slot = lhsDecl.getSlot();
+
+        var rhsType = rhs.analyze(funcMap, varAndParamMap);
 
-        if (!Objects.equals(lhsType, rhsType))
+        if (lhsType != rhsType)
         {
             throw new SemanticAnalysisException("Cannot assign a value of type " + rhsType + " to " + lhs + " of type " + lhsType, this);
         }
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ExecutionException {
-        Value rhsValue = rhs.evaluate(funcMap, varAndParamMap);
-        varAndParamMap.replace(lhs, rhsValue);
+    public Completion execute(Frame frame) throws ExecutionException {
+        rhs.evaluateInto(frame, frame, slot);
+        return Completion.NORMAL;
     }
 }
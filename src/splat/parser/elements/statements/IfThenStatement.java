@@ -1,17 +1,17 @@
 package splat.parser.elements.statements;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
-import splat.executor.Value;
+import splat.executor.Frame;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 public class IfThenStatement extends Statement {
     private final Expression expression;
@@ -32,9 +32,9 @@ public class IfThenStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        var expressionType = expression.analyzeAndGetType(funcMap, varAndParamMap);
-        if (!Objects.equals(expressionType, Type.Boolean()))
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        var expressionType = expression.analyze(funcMap, varAndParamMap);
+        if (expressionType != Type.Boolean())
         {
             throw new SemanticAnalysisException("Type of expression must be Boolean", expression);
         }
@@ -45,13 +45,11 @@ public class IfThenStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        Value value = expression.evaluate(funcMap, varAndParamMap);
-        if ((boolean) value.getValue())
+    public Completion execute(Frame frame) throws ExecutionException {
+        if (expression.evaluateBoolean(frame))
         {
-            for (var stmt: thenStatements) {
-                stmt.execute(funcMap, varAndParamMap);
-            }
+            return executeBlock(thenStatements, frame);
         }
+        return Completion.NORMAL;
     }
 }
@@ -1,11 +1,12 @@
 package splat.parser.elements.statements;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
+import splat.executor.Frame;
 import splat.executor.Value;
 import splat.lexer.Token;
-import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
@@ -23,13 +24,14 @@ public class PrintStatement extends Statement {
     }
 
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        expressionToPrint.analyzeAndGetType(funcMap, varAndParamMap);
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        expressionToPrint.analyze(funcMap, varAndParamMap);
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        Value value = expressionToPrint.evaluate(funcMap, varAndParamMap);
+    public Completion execute(Frame frame) throws ExecutionException {
+        Value value = expressionToPrint.evaluate(frame);
         System.out.print(value.getValue());
+        return Completion.NORMAL;
     }
 }
@@ -1,11 +1,12 @@
 package splat.parser.elements.statements;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
-import splat.executor.Value;
+import splat.executor.Frame;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
@@ -15,6 +16,8 @@ import java.util.Objects;
 public class ReturnStatement extends Statement {
     private final Expression expression;
     private final String parentLabel;
+    // Frame slot for the return value, resolved during semantic analysis
+    private int slot = -1;
 
     public ReturnStatement(Token tok, Expression expression, String parentLabel) {
         super(tok);
@@ -32,20 +35,30 @@ public class ReturnStatement extends Statement {
         return expression;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
         if (Objects.equals(parentLabel, "program"))
         {
             throw new SemanticAnalysisException("Return statements can only be used in the body statements of a function definition", this);
         }
 
         boolean isReturningValue = expression != null;
-        Type parentFunctionReturnType = funcMap.get(parentLabel).getReturnType();
-        boolean parentFunctionReturnsValue = !Objects.equals(parentFunctionReturnType, Type.Void());
+        FunctionDecl parentFunction = funcMap.get(parentLabel);
+        Type parentFunctionReturnType = parentFunction.getReturnType();
+        slot = parentFunction.getReturnSlot();
+        boolean parentFunctionReturnsValue = parentFunctionReturnType != Type.Void();
         if (isReturningValue && parentFunctionReturnsValue)
         {
-            Type returnedType = expression.analyzeAndGetType(funcMap, varAndParamMap);
-            if (!returnedType.equals(parentFunctionReturnType))
+            Type returnedType = expression.analyze(funcMap, varAndParamMap);
+            if (returnedType != parentFunctionReturnType)
             {
                 throw new SemanticAnalysisException("Return type was " + returnedType + " when the " + "parentLabel()" + " was declared to return " + parentFunctionReturnType, expression);
             }
@@ -63,14 +76,12 @@ public class ReturnStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-
-        if (expression == null) // void-return
+    public Completion execute(Frame frame) throws ExecutionException {
+        if (expression != null) // not a void-return
         {
-            throw new ReturnFromCall(null);
+            expression.evaluateInto(frame, frame, slot);
         }
-        Value value = expression.evaluate(funcMap, varAndParamMap);
-        throw new ReturnFromCall(value);
+        return Completion.RETURN;
     }
 
     public String getParentLabel() {
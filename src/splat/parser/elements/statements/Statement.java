@@ -1,14 +1,17 @@
 package splat.parser.elements.statements;
 
+import splat.executor.CompiledBody;
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
-import splat.executor.Value;
+import splat.executor.Frame;
+import splat.executor.Profiler;
 import splat.lexer.Token;
 import splat.parser.elements.ASTElement;
-import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
+import java.util.List;
 import java.util.Map;
 
 public abstract class Statement extends ASTElement {
@@ -26,16 +29,52 @@ public abstract class Statement extends ASTElement {
 	 * sub-expressions.
 	 */
 	 public abstract void analyze(Map<String, FunctionDecl> funcMap,
-								  Map<String, Type> varAndParamMap) throws SemanticAnalysisException;
+								  Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException;
 	
 	/**
 	 * This will be needed for Phase 4 - this abstract method will need to be
 	 * implemented by every Statement subclass.  This method is used to 
 	 * execute each statement, which may result in output to the console, or
-	 * updating the varAndParamMap.  Both of the given maps may be needed for 
+	 * updating the variables in the frame.  The frame is also needed for
 	 * evaluating any sub-expressions in the statement.
+	 *
+	 * Returns Completion.RETURN once a return statement has run, directly
+	 * or in a nested block, and Completion.NORMAL otherwise.  A statement
+	 * holding a block has to stop at, and pass on, a RETURN.
 	 */
-	 public abstract void execute(Map<String, FunctionDecl> funcMap,
-	                              Map<String, Value> varAndParamMap)
-			 throws ReturnFromCall, ExecutionException;
+	 public abstract Completion execute(Frame frame)
+			 throws ExecutionException;
+
+	/**
+	 * Executes a block of statements in order, up to the first one that
+	 * returns, and tells whether one did.
+	 */
+	 public static Completion executeBlock(List<Statement> stmts, Frame frame)
+			 throws ExecutionException {
+		for (Statement stmt : stmts) {
+			if (stmt.execute(frame) == Completion.RETURN) {
+				return Completion.RETURN;
+			}
+		}
+		return Completion.NORMAL;
+	}
+
+	/**
+	 * Runs the body of a function on the frame of a call, whose arguments
+	 * are bound already, and tells whether it returned.  In a profiled
+	 * frame, the call is counted, or runs the compiled body once a faster
+	 * tier has compiled one.
+	 */
+	 public static Completion executeBody(FunctionDecl funcDecl, Frame frame)
+			 throws ExecutionException {
+		Profiler profiler = frame.getProfiler();
+		if (profiler != null) {
+			CompiledBody compiled = funcDecl.getCompiledBody();
+			if (compiled != null) {
+				return compiled.execute(frame);
+			}
+			profiler.functionCalled(funcDecl, funcDecl.countInvocation());
+		}
+		return executeBlock(funcDecl.getStmts(), frame);
+	}
 }
@@ -1,24 +1,23 @@
 package splat.parser.elements.statements;
 
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
-import splat.executor.Value;
+import splat.executor.Frame;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
-import splat.parser.elements.declarations.Declaration;
 import splat.parser.elements.declarations.FunctionDecl;
 import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 public class VoidFunctionCallStatement extends Statement {
     private final String label;
     private final List<Expression> args;
+    // The function called, resolved during semantic analysis
+    private FunctionDecl functionDecl;
 
     public VoidFunctionCallStatement(Token tok, String label, List<Expression> args) {
         super(tok);
@@ -34,16 +33,24 @@ public class VoidFunctionCallStatement extends Statement {
         return label;
     }
 
+    public FunctionDecl getFunctionDecl() {
+        return functionDecl;
+    }
+
+    public void setFunctionDecl(FunctionDecl functionDecl) {
+        this.functionDecl = functionDecl;
+    }
+
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        var functionDecl = funcMap.get(label);
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        functionDecl = funcMap.get(label);
 
         if (functionDecl == null)
         {
             throw new SemanticAnalysisException(label + "() is not declared", this);
         }
 
-        if (!Objects.equals(functionDecl.getReturnType(), Type.Void()))
+        if (functionDecl.getReturnType() != Type.Void())
         {
             throw new SemanticAnalysisException("non-void-typed function " + label + "() is used called as a statement", this);
         }
@@ -59,8 +66,8 @@ public class VoidFunctionCallStatement extends Statement {
             var functionArgument  = args.get(i);
 
             var paramType = functionParameter.getType();
-            var argType = functionArgument.analyzeAndGetType(funcMap, varAndParamMap);
-            if (!Objects.equals(paramType, argType))
+            var argType = functionArgument.analyze(funcMap, varAndParamMap);
+            if (paramType != argType)
             {
                 throw new SemanticAnalysisException("Argument type " + argType + "does not match the function parameter type " + paramType, functionArgument);
             }
@@ -68,46 +75,30 @@ public class VoidFunctionCallStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        FunctionDecl functionDecl = funcMap.get(label);
+    public Completion execute(Frame frame) throws ExecutionException {
+        // A lazily parsed function is parsed and analyzed on its first call
+        functionDecl.load();
 
-        Map<String, Value> functionVarMap = new HashMap<>();
-        SetMap(funcMap, varAndParamMap, functionVarMap);
-
-        try {
-
-            // Go through and execute each of the statements
-            for (Statement stmt : functionDecl.getStmts()) {
-                stmt.execute(funcMap, functionVarMap);
-            }
+        Frame functionFrame = new Frame(functionDecl, frame);
+        bindArguments(frame, functionFrame);
 
-            // We should never have to catch this exception here, since the
-            // main program body cannot have returns
-        } catch (ReturnFromCall ex) {
-            System.err.println("Returned from " + label + "()");
-        }
+        // Go through and execute each of the statements, up to a return;
+        // that only ends the called function, not the caller's block
+        executeBody(functionDecl, functionFrame);
+        return Completion.NORMAL;
     }
 
-    private void SetMap(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap, Map<String, Value> functionVarMap) throws ExecutionException {
-        var functionDecl = funcMap.get(label);
-
-        for (Declaration decl : functionDecl.getLocalVars()) {
-
-            String label = decl.getLabel();
-
-            if (decl instanceof VariableDecl) {
-                //VariableDecl varDecl = (VariableDecl)decl;
-                functionVarMap.put(label, null);
-            }
-        }
-
+    /*
+     * Evaluates the arguments in the caller's frame, into the parameter
+     * slots of the new one.  Local variables start out unassigned.
+     */
+    private void bindArguments(Frame frame, Frame functionFrame) throws ExecutionException {
         for (int i = 0; i < args.size(); i++)
         {
             var functionParameter = (VariableDecl) functionDecl.getParams().get(i);
             var functionArgument  = args.get(i);
 
-            var argValue = functionArgument.evaluate(funcMap, varAndParamMap);
-            functionVarMap.put(functionParameter.getLabel(), argValue);
+            functionArgument.evaluateInto(frame, functionFrame, functionParameter.getSlot());
         }
     }
 }
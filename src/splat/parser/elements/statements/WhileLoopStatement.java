@@ -1,22 +1,30 @@
 package splat.parser.elements.statements;
 
+import splat.executor.CompiledBody;
+import splat.executor.Completion;
 import splat.executor.ExecutionException;
-import splat.executor.ReturnFromCall;
-import splat.executor.Value;
+import splat.executor.Frame;
+import splat.executor.Profiler;
 import splat.lexer.Token;
 import splat.parser.elements.Type;
 import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.declarations.VariableDecl;
 import splat.parser.elements.expressions.Expression;
 import splat.semanticanalyzer.SemanticAnalysisException;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 public class WhileLoopStatement extends Statement {
     private final Expression expression;
     private final List<Statement> statements;
 
+    // Times the body has run, counted only when the AST walker is profiled
+    private long backEdgeCount = 0;
+
+    // Set by another thread, once a faster tier has compiled the loop
+    private volatile CompiledBody compiledLoop;
+
     public WhileLoopStatement(Token tok, Expression expr, List<Statement> loopBody) {
         super(tok);
         this.expression = expr;
@@ -31,10 +39,28 @@ public class WhileLoopStatement extends Statement {
         return expression;
     }
 
+    public long getBackEdgeCount() {
+        return backEdgeCount;
+    }
+
+    /**
+     * The loop compiled by a faster tier, or null while there is none.
+     * Once it is set, a profiled frame running the loop hands it over to
+     * the compiled loop at the next turn, and runs it from the start the
+     * next time.  The compiled loop starts with the condition.
+     */
+    public CompiledBody getCompiledLoop() {
+        return compiledLoop;
+    }
+
+    public void setCompiledLoop(CompiledBody compiledLoop) {
+        this.compiledLoop = compiledLoop;
+    }
+
     @Override
-    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, Type> varAndParamMap) throws SemanticAnalysisException {
-        var expressionType = expression.analyzeAndGetType(funcMap, varAndParamMap);
-        if (!Objects.equals(expressionType, Type.Boolean()))
+    public void analyze(Map<String, FunctionDecl> funcMap, Map<String, VariableDecl> varAndParamMap) throws SemanticAnalysisException {
+        var expressionType = expression.analyze(funcMap, varAndParamMap);
+        if (expressionType != Type.Boolean())
         {
             throw new SemanticAnalysisException("Type of expression must be Boolean", expression);
         }
@@ -45,12 +71,33 @@ public class WhileLoopStatement extends Statement {
     }
 
     @Override
-    public void execute(Map<String, FunctionDecl> funcMap, Map<String, Value> varAndParamMap) throws ReturnFromCall, ExecutionException {
-        while ((boolean) expression.evaluate(funcMap, varAndParamMap).getValue())
+    public Completion execute(Frame frame) throws ExecutionException {
+        Profiler profiler = frame.getProfiler();
+        CompiledBody compiled = profiler != null ? compiledLoop : null;
+        if (compiled != null)
+        {
+            return compiled.execute(frame);
+        }
+
+        while (expression.evaluateBoolean(frame))
         {
-            for (var stmt: statements) {
-                stmt.execute(funcMap, varAndParamMap);
+            if (executeBlock(statements, frame) == Completion.RETURN)
+            {
+                return Completion.RETURN;
+            }
+            if (profiler != null)
+            {
+                profiler.loopIterated(this, frame, ++backEdgeCount);
+
+                // On-stack replacement: the compiled loop goes on from
+                // here, with the variables as they are in the frame
+                compiled = compiledLoop;
+                if (compiled != null)
+                {
+                    return compiled.execute(frame);
+                }
             }
         }
+        return Completion.NORMAL;
     }
 }
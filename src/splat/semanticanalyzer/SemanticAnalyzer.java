@@ -18,7 +18,7 @@ public class SemanticAnalyzer {
 	private final ProgramAST progAST;
 	
 	private final Map<String, FunctionDecl> funcMap = new HashMap<>();
-	private final Map<String, Type> progVarMap = new HashMap<>();
+	private final Map<String, VariableDecl> progVarMap = new HashMap<>();
 	
 	public SemanticAnalyzer(ProgramAST progAST) {
 		this.progAST = progAST;
@@ -35,9 +35,12 @@ public class SemanticAnalyzer {
 		// program body
 		setProgVarAndFuncMaps();
 		
-		// Perform semantic analysis on the functions
+		// Perform semantic analysis on the functions.  Bodies that were
+		// not parsed yet are analyzed when they are loaded
 		for (FunctionDecl funcDecl : funcMap.values()) {	
-			analyzeFuncDecl(funcDecl);
+			if (funcDecl.isBodyParsed()) {
+				analyzeFuncDecl(funcDecl);
+			}
 		}
 		
 		// Perform semantic analysis on the program body
@@ -45,16 +48,22 @@ public class SemanticAnalyzer {
 			stmt.analyze(funcMap, progVarMap);
 		}
 		
+		progAST.setAnalyzed(true);
 	}
 
-	private void analyzeFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
+	/**
+	 * Analyzes the body of one function.  analyze() does this for every
+	 * function whose body was parsed; one that was parsed lazily has to be
+	 * analyzed here, after analyze(), once its body has been parsed.
+	 */
+	public void analyzeFuncDecl(FunctionDecl funcDecl) throws SemanticAnalysisException {
 		
 		// Checks to make sure we don't use the same labels more than once
 		// among our function parameters, local variables, and function names
 		checkNoDuplicateFuncLabels(funcDecl);
 		
-		// Get the types of the parameters and local variables
-		Map<String, Type> varAndParamMap = getVarAndParamMap(funcDecl);
+		// Get the parameters and local variables, with their frame slots
+		Map<String, VariableDecl> varAndParamMap = getVarAndParamMap(funcDecl);
 
 		boolean hasReturnStatements = false;
 
@@ -65,21 +74,21 @@ public class SemanticAnalyzer {
 
 
 
-		if (!funcDecl.getReturnType().equals(Type.Void()))
+		if (funcDecl.getReturnType() != Type.Void())
 		{
 			checkLastStatementReturnsValue(funcDecl.getStmts());
 		}
 	}
 	
 	
-	private Map<String, Type> getVarAndParamMap(FunctionDecl funcDecl) {
+	private Map<String, VariableDecl> getVarAndParamMap(FunctionDecl funcDecl) {
 
-		Map<String, Type> varAndParamMap = new HashMap<>();
-		varAndParamMap.put(funcDecl.getLabel(), funcDecl.getReturnType());
+		Map<String, VariableDecl> varAndParamMap = new HashMap<>();
 
-		// add return type of the function
-		List<Declaration> allDeclarations = new ArrayList<>(funcDecl.getLocalVars());
-		allDeclarations.addAll(funcDecl.getParams());
+		// The parameters take the first slots of a call's frame, in order, so
+		// that the caller can bind the arguments by position
+		List<Declaration> allDeclarations = new ArrayList<>(funcDecl.getParams());
+		allDeclarations.addAll(funcDecl.getLocalVars());
 
 		// I'm not sure that it's correct that params and local vars are both of type VariableDecl
 		// but let's see how it goes
@@ -91,7 +100,8 @@ public class SemanticAnalyzer {
 			if (decl instanceof VariableDecl)
 			{
 				VariableDecl variableDecl = (VariableDecl) decl;
-				varAndParamMap.put(label, variableDecl.getType());
+				variableDecl.setSlot(varAndParamMap.size());
+				varAndParamMap.put(label, variableDecl);
 			}
 			else
 			{
@@ -99,6 +109,8 @@ public class SemanticAnalyzer {
 			}
 		}
 
+		// One more slot at the end holds the return value
+		funcDecl.setFrameSize(varAndParamMap.size() + 1);
 		return varAndParamMap;
 	}
 
@@ -181,8 +193,11 @@ public class SemanticAnalyzer {
 				
 			} else if (decl instanceof VariableDecl) {
 				VariableDecl varDecl = (VariableDecl)decl;
-				progVarMap.put(label, varDecl.getType());
+				varDecl.setSlot(progVarMap.size());
+				progVarMap.put(label, varDecl);
 			}
 		}
+
+		progAST.setFrameSize(progVarMap.size());
 	}
 }
@@ -0,0 +1,100 @@
+package splat.tiered;
+
+import java.util.Locale;
+
+/**
+ * One entry of the compile log kept by the TieredCompiler: a function or
+ * a loop that got hot, and what came of compiling it.  Times are in
+ * milliseconds since the TieredCompiler was created.
+ */
+public class CompileEvent {
+
+	// Null for a loop in the program body
+	private final String function;
+	// 0 for a whole function
+	private final int loopLine;
+	private final TieredCompiler.Tier tier;
+	private final String reason;
+	private final double queuedAt;
+	private final double finishedAt;
+	private final double compileTime;
+	// Null if the function was compiled
+	private final String failure;
+
+	CompileEvent(String function, int loopLine, TieredCompiler.Tier tier, String reason, double queuedAt,
+				 double finishedAt, double compileTime, String failure) {
+		this.function = function;
+		this.loopLine = loopLine;
+		this.tier = tier;
+		this.reason = reason;
+		this.queuedAt = queuedAt;
+		this.finishedAt = finishedAt;
+		this.compileTime = compileTime;
+		this.failure = failure;
+	}
+
+	/**
+	 * The label of the function compiled, or of the function the loop
+	 * compiled is in; null for a loop in the program body.
+	 */
+	public String getFunction() {
+		return function;
+	}
+
+	/**
+	 * The line of the loop compiled for on-stack replacement, or 0 if a
+	 * whole function was compiled.
+	 */
+	public int getLoopLine() {
+		return loopLine;
+	}
+
+	public TieredCompiler.Tier getTier() {
+		return tier;
+	}
+
+	/**
+	 * Which counter made the function hot, e.g. "1000 calls".
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	public double getQueuedAt() {
+		return queuedAt;
+	}
+
+	/**
+	 * When the compiled body was installed, or compiling gave up.
+	 */
+	public double getFinishedAt() {
+		return finishedAt;
+	}
+
+	public double getCompileTime() {
+		return compileTime;
+	}
+
+	public boolean isCompiled() {
+		return failure == null;
+	}
+
+	/**
+	 * Why the function stays in the AST walker, or null if it was
+	 * compiled.
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		String outcome = failure == null
+				? String.format(Locale.ROOT, "compiled in %.1f ms", compileTime)
+				: "not compiled: " + failure;
+		String compiled = loopLine == 0 ? function + "()"
+				: "loop at line " + loopLine + " of " + (function == null ? "the program body" : function + "()");
+		return String.format(Locale.ROOT, "%9.1f ms  %s -> %s after %s, %s (queued at %.1f ms)",
+				finishedAt, compiled, tier.name().toLowerCase(Locale.ROOT), reason, outcome, queuedAt);
+	}
+}
@@ -0,0 +1,258 @@
+package splat.tiered;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import splat.closure.ClosureCompiler;
+import splat.closure.StatementClosure;
+import splat.executor.CompiledBody;
+import splat.executor.Frame;
+import splat.executor.Profiler;
+import splat.jit.JitCompiler;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.statements.WhileLoopStatement;
+
+/**
+ * Runs a program in tiers: every function starts out in the AST walker,
+ * which costs nothing to start, and the ones that get hot are compiled by
+ * a faster tier on a background thread, while the program goes on
+ * running.  Once a function's compiled body is installed in its
+ * FunctionDecl, the calls that follow run it instead of the statements.
+ *
+ * A function gets hot when it has been called callThreshold times, or
+ * when a loop in its body has gone round loopThreshold times, over all
+ * its calls.  A call that is already running stays in the AST walker
+ * until it returns.
+ *
+ * That never helps a loop in the program body, which only runs once, or
+ * a long loop in a call that is already running.  So a loop that has gone
+ * round osrThreshold times is compiled on its own as well, and replaces
+ * the AST walker on the stack: at its next turn, the compiled loop goes
+ * on from where the AST walker was, with the variables in the frame.
+ *
+ * The counters are kept in the AST, so they add up over every run of the
+ * same ProgramAST.
+ */
+public class TieredCompiler implements Profiler {
+
+	/**
+	 * What hot functions are compiled to.
+	 */
+	public enum Tier {
+		// A tree of closures by the ClosureCompiler, quick to build
+		CLOSURE,
+		// A JVM class by the JitCompiler, with the function and all it calls
+		JIT
+	}
+
+	private Tier tier = Tier.JIT;
+	private long callThreshold = 1000;
+	private long loopThreshold = 10000;
+	private long osrThreshold = 10000;
+	private PrintStream log;
+
+	private final ProgramAST progAST;
+	private final long start = System.nanoTime();
+
+	// The functions and loops compiled or being compiled, only used by
+	// the thread that runs the program
+	private final Set<Object> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+	private ExecutorService compilerThread;
+
+	private final List<CompileEvent> compileLog = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * @param progAST the program to run, for the variables of its body
+	 */
+	public TieredCompiler(ProgramAST progAST) {
+		this.progAST = progAST;
+	}
+
+	public Tier getTier() {
+		return tier;
+	}
+
+	public void setTier(Tier tier) {
+		this.tier = tier;
+	}
+
+	/**
+	 * The number of calls after which a function is compiled.
+	 */
+	public long getCallThreshold() {
+		return callThreshold;
+	}
+
+	public void setCallThreshold(long callThreshold) {
+		this.callThreshold = callThreshold;
+	}
+
+	/**
+	 * The number of times a loop goes round, in the body of a function,
+	 * after which the function is compiled.
+	 */
+	public long getLoopThreshold() {
+		return loopThreshold;
+	}
+
+	public void setLoopThreshold(long loopThreshold) {
+		this.loopThreshold = loopThreshold;
+	}
+
+	/**
+	 * The number of turns after which a loop is compiled on its own, to
+	 * take over from the AST walker.
+	 */
+	public long getOsrThreshold() {
+		return osrThreshold;
+	}
+
+	public void setOsrThreshold(long osrThreshold) {
+		this.osrThreshold = osrThreshold;
+	}
+
+	/**
+	 * Where each entry of the compile log is printed as it is made, or
+	 * null, the default, for nowhere.
+	 */
+	public PrintStream getLog() {
+		return log;
+	}
+
+	public void setLog(PrintStream log) {
+		this.log = log;
+	}
+
+	/**
+	 * @return every function compiled, or that failed to compile, so far,
+	 * 			in the order they finished
+	 */
+	public List<CompileEvent> getCompileLog() {
+		synchronized (compileLog) {
+			return new ArrayList<>(compileLog);
+		}
+	}
+
+	@Override
+	public void functionCalled(FunctionDecl funcDecl, long invocations) {
+		if (invocations == callThreshold) {
+			promote(funcDecl, invocations + " calls");
+		}
+	}
+
+	@Override
+	public void loopIterated(WhileLoopStatement loop, Frame frame, long backEdges) {
+		FunctionDecl function = frame.getFunction();
+		if (backEdges == osrThreshold) {
+			replace(loop, function, backEdges + " turns");
+		}
+
+		// The program body runs only once, so there is no later call that
+		// a compiled body would help
+		if (backEdges == loopThreshold && function != null) {
+			promote(function, backEdges + " turns of the loop at line " + loop.getLine());
+		}
+	}
+
+	/**
+	 * Stops the background thread, dropping the functions still waiting
+	 * to be compiled.  A compile under way is not waited for.
+	 */
+	public void shutdown() {
+		if (compilerThread != null) {
+			compilerThread.shutdownNow();
+		}
+	}
+
+	private void promote(FunctionDecl funcDecl, String reason) {
+		if (!queued.add(funcDecl)) {
+			return;
+		}
+		Tier tier = this.tier;
+		submit(funcDecl.getLabel(), 0, tier, reason, () -> {
+			if (tier == Tier.JIT) {
+				return JitCompiler.compile(funcDecl);
+			}
+			StatementClosure closure = new ClosureCompiler().compileBlock(funcDecl.getStmts());
+			return closure::execute;
+		}, funcDecl::setCompiledBody);
+	}
+
+	/*
+	 * Compiles a loop for on-stack replacement.
+	 */
+	private void replace(WhileLoopStatement loop, FunctionDecl function, String reason) {
+		if (!queued.add(loop)) {
+			return;
+		}
+		Tier tier = this.tier;
+		String label = function == null ? null : function.getLabel();
+		submit(label, loop.getLine(), tier, reason, () -> {
+			if (tier == Tier.JIT) {
+				return JitCompiler.compile(loop, function, progAST);
+			}
+			// Closures run on the AST walker's frame as they are
+			StatementClosure closure = new ClosureCompiler().compileStmt(loop);
+			return closure::execute;
+		}, loop::setCompiledLoop);
+	}
+
+	/*
+	 * Has the compiler run on the background thread, and the compiled code
+	 * installed, unless the compiler returns null.
+	 */
+	private void submit(String function, int loopLine, Tier tier, String reason,
+						Supplier<CompiledBody> compiler, Consumer<CompiledBody> installer) {
+		if (compilerThread == null) {
+			compilerThread = Executors.newSingleThreadExecutor(task -> {
+				Thread thread = new Thread(task, "splat-tiered-compiler");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		double queuedAt = millisSince(start);
+		compilerThread.execute(() -> {
+			long compileStart = System.nanoTime();
+			CompiledBody compiled = null;
+			String failure = null;
+			try {
+				compiled = compiler.get();
+				if (compiled == null) {
+					failure = "too large for a class file";
+				}
+			} catch (RuntimeException | LinkageError ex) {
+				// A bug in the compiler, which the AST walker may not share
+				failure = ex.toString();
+			}
+
+			// Logged first, so that the log has it if the program ends
+			// right after running it
+			log(new CompileEvent(function, loopLine, tier, reason, queuedAt,
+					millisSince(start), millisSince(compileStart), failure));
+			if (compiled != null) {
+				installer.accept(compiled);
+			}
+		});
+	}
+
+	private void log(CompileEvent event) {
+		compileLog.add(event);
+		if (log != null) {
+			log.println("[tiered] " + event);
+		}
+	}
+
+	private static double millisSince(long nanoTime) {
+		return (System.nanoTime() - nanoTime) / 1e6;
+	}
+}
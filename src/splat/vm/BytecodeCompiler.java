@@ -0,0 +1,275 @@
+package splat.vm;
+
+import java.util.Arrays;
+import java.util.List;
+
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.FunctionDecl;
+import splat.parser.elements.expressions.*;
+import splat.parser.elements.expressions.literals.*;
+import splat.parser.elements.statements.*;
+
+/**
+ * Compiles analyzed Splat code to bytecode for the VirtualMachine, one
+ * function, or the program body, at a time.
+ *
+ * Everything the code needs was worked out by semantic analysis: the frame
+ * slot of every variable, the FunctionDecl of every call and the type of
+ * every expression, which picks the PRINT instruction.  The compiler itself
+ * cannot fail on an analyzed tree.
+ */
+public class BytecodeCompiler {
+
+	private final BytecodeProgram program;
+
+	private int[] code = new int[64];
+	private ASTElement[] sources = new ASTElement[64];
+	private int length = 0;
+
+	// Operand stack depth at the current point of the code, and the most it
+	// has been so far
+	private int depth = 0;
+	private int maxDepth = 0;
+
+	private BytecodeCompiler(BytecodeProgram program) {
+		this.program = program;
+	}
+
+	/**
+	 * Compiles the program body.  Functions are compiled the first time
+	 * they are called, through BytecodeProgram.getFunction().
+	 */
+	public static BytecodeProgram compile(ProgramAST progAST) {
+		BytecodeProgram program = new BytecodeProgram(progAST);
+		BytecodeCompiler compiler = new BytecodeCompiler(program);
+		compiler.compileStmts(progAST.getStmts());
+		compiler.emit(Opcode.HALT, null);
+		program.setMain(compiler.finish(null, "program", 0, progAST.getFrameSize()));
+		return program;
+	}
+
+	static CompiledFunction compileFunction(BytecodeProgram program, FunctionDecl funcDecl) {
+		BytecodeCompiler compiler = new BytecodeCompiler(program);
+		compiler.compileStmts(funcDecl.getStmts());
+
+		// The analyzer makes sure a non-void function ends with a return on
+		// every path that gets to its end, so this is only ever reached
+		// through a bug
+		if (funcDecl.getReturnType() == Type.Void()) {
+			compiler.emit(Opcode.RETURN, null);
+		} else {
+			compiler.emit(Opcode.NO_RETURN, funcDecl);
+		}
+		return compiler.finish(funcDecl, funcDecl.getLabel(), funcDecl.getParams().size(), funcDecl.getFrameSize());
+	}
+
+	private CompiledFunction finish(FunctionDecl funcDecl, String name, int paramCount, int frameSize) {
+		return new CompiledFunction(funcDecl, name, Arrays.copyOf(code, length),
+				Arrays.copyOf(sources, length), paramCount, frameSize, maxDepth);
+	}
+
+	private void compileStmts(List<Statement> stmts) {
+		for (Statement stmt : stmts) {
+			compileStmt(stmt);
+		}
+	}
+
+	private void compileStmt(Statement stmt) {
+		if (stmt instanceof AssignmentStatement) {
+			AssignmentStatement assignment = (AssignmentStatement) stmt;
+			compileExpr(assignment.getRhs());
+			emit(Opcode.STORE, assignment.getSlot(), null);
+		} else if (stmt instanceof IfThenElseStatement) {
+			IfThenElseStatement ifThenElse = (IfThenElseStatement) stmt;
+			compileExpr(ifThenElse.getExpression());
+			int toElse = emitJump(Opcode.JUMP_IF_FALSE);
+			compileStmts(ifThenElse.getThenStatements());
+			int toEnd = emitJump(Opcode.JUMP);
+			patchJump(toElse);
+			compileStmts(ifThenElse.getElseStatements());
+			patchJump(toEnd);
+		} else if (stmt instanceof IfThenStatement) {
+			IfThenStatement ifThen = (IfThenStatement) stmt;
+			compileExpr(ifThen.getExpression());
+			int toEnd = emitJump(Opcode.JUMP_IF_FALSE);
+			compileStmts(ifThen.getThenStatements());
+			patchJump(toEnd);
+		} else if (stmt instanceof WhileLoopStatement) {
+			WhileLoopStatement loop = (WhileLoopStatement) stmt;
+			int top = length;
+			compileExpr(loop.getExpression());
+			int toEnd = emitJump(Opcode.JUMP_IF_FALSE);
+			compileStmts(loop.getStatements());
+			emit(Opcode.JUMP, top, null);
+			patchJump(toEnd);
+		} else if (stmt instanceof PrintStatement) {
+			Expression expr = ((PrintStatement) stmt).getExpressionToPrint();
+			compileExpr(expr);
+			if (expr.getType() == Type.Integer()) {
+				emit(Opcode.PRINT_INT, null);
+			} else if (expr.getType() == Type.Boolean()) {
+				emit(Opcode.PRINT_BOOL, null);
+			} else {
+				emit(Opcode.PRINT_STRING, null);
+			}
+		} else if (stmt instanceof ReturnStatement) {
+			Expression expr = ((ReturnStatement) stmt).getExpression();
+			if (expr == null) {
+				emit(Opcode.RETURN, null);
+			} else {
+				compileExpr(expr);
+				emit(Opcode.RETURN_VALUE, null);
+			}
+		} else if (stmt instanceof VoidFunctionCallStatement) {
+			VoidFunctionCallStatement call = (VoidFunctionCallStatement) stmt;
+			compileCall(call.getFunctionDecl(), call.getArguments(), stmt);
+		} else {
+			throw new IllegalArgumentException("Cannot compile " + stmt.getClass().getSimpleName());
+		}
+	}
+
+	private void compileExpr(Expression expr) {
+		if (expr instanceof IntLiteralExpression) {
+			emit(Opcode.PUSH_INT, (int) ((IntLiteralExpression) expr).getValue(), null);
+		} else if (expr instanceof BoolLiteralExpression) {
+			emit(Opcode.PUSH_INT, (boolean) ((BoolLiteralExpression) expr).getValue() ? 1 : 0, null);
+		} else if (expr instanceof StringLiteralExpression) {
+			String text = (String) ((StringLiteralExpression) expr).getValue();
+			emit(Opcode.PUSH_STRING, program.addConstant(text), null);
+		} else if (expr instanceof LabelExpression) {
+			// Reading a variable fails if it was never assigned
+			emit(Opcode.LOAD, ((LabelExpression) expr).getSlot(), expr);
+		} else if (expr instanceof BinaryOperatorExpression) {
+			BinaryOperatorExpression binary = (BinaryOperatorExpression) expr;
+			compileExpr(binary.getArg1());
+			compileExpr(binary.getArg2());
+			// Division by zero is reported at the divisor
+			emit(binaryOpcode(binary), binary.getArg2());
+		} else if (expr instanceof NegativeUnaryOperatorExpression) {
+			compileExpr(((UnaryOperatorExpression) expr).getArg1());
+			emit(Opcode.NEG, null);
+		} else if (expr instanceof NotUnaryOperatorExpression) {
+			compileExpr(((UnaryOperatorExpression) expr).getArg1());
+			emit(Opcode.NOT, null);
+		} else if (expr instanceof NonVoidFunctionCallExpression) {
+			NonVoidFunctionCallExpression call = (NonVoidFunctionCallExpression) expr;
+			compileCall(call.getFunctionDecl(), call.getArguments(), expr);
+		} else {
+			throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName());
+		}
+	}
+
+	private static int binaryOpcode(BinaryOperatorExpression expr) {
+		if (expr instanceof PlusBinaryOperatorExpression) {
+			return Opcode.ADD;
+		} else if (expr instanceof MinusBinaryOperatorExpression) {
+			return Opcode.SUB;
+		} else if (expr instanceof MultiplyBinaryOperatorExpression) {
+			return Opcode.MUL;
+		} else if (expr instanceof DivideBinaryOperatorExpression) {
+			return Opcode.DIV;
+		} else if (expr instanceof ModuloBinaryOperatorExpression) {
+			return Opcode.MOD;
+		} else if (expr instanceof LessThanBinaryOperatorExpression) {
+			return Opcode.LT;
+		} else if (expr instanceof LessThanEqualBinaryOperatorExpression) {
+			return Opcode.LE;
+		} else if (expr instanceof GreaterThanBinaryOperatorExpression) {
+			return Opcode.GT;
+		} else if (expr instanceof GreaterThanEqualBinaryOperatorExpression) {
+			return Opcode.GE;
+		} else if (expr instanceof EqualBinaryOperatorExpression) {
+			return Opcode.EQ;
+		} else if (expr instanceof AndBinaryOperatorExpression) {
+			return Opcode.AND;
+		} else if (expr instanceof OrBinaryOperatorExpression) {
+			return Opcode.OR;
+		}
+		throw new IllegalArgumentException("Cannot compile " + expr.getClass().getSimpleName());
+	}
+
+	private void compileCall(FunctionDecl callee, List<Expression> args, ASTElement call) {
+		for (Expression arg : args) {
+			compileExpr(arg);
+		}
+		emit(Opcode.CALL, program.indexOf(callee), call);
+
+		// The arguments are replaced by the result, if there is one
+		depth -= args.size();
+		if (callee.getReturnType() != Type.Void()) {
+			depth++;
+		}
+		maxDepth = Math.max(maxDepth, depth);
+	}
+
+	/*
+	 * Emits a jump whose target is filled in later by patchJump(), and
+	 * returns where its operand is.
+	 */
+	private int emitJump(int opcode) {
+		emit(opcode, -1, null);
+		return length - 1;
+	}
+
+	private void patchJump(int operandAt) {
+		code[operandAt] = length;
+	}
+
+	private void emit(int opcode, ASTElement source) {
+		ensureCapacity(1);
+		sources[length] = source;
+		code[length++] = opcode;
+		adjustDepth(opcode);
+	}
+
+	private void emit(int opcode, int operand, ASTElement source) {
+		ensureCapacity(2);
+		sources[length] = source;
+		code[length++] = opcode;
+		code[length++] = operand;
+		adjustDepth(opcode);
+	}
+
+	private void ensureCapacity(int more) {
+		if (length + more > code.length) {
+			code = Arrays.copyOf(code, 2 * code.length);
+			sources = Arrays.copyOf(sources, 2 * sources.length);
+		}
+	}
+
+	private void adjustDepth(int opcode) {
+		switch (opcode) {
+			case Opcode.PUSH_INT:
+			case Opcode.PUSH_STRING:
+			case Opcode.LOAD:
+				depth++;
+				break;
+			case Opcode.STORE:
+			case Opcode.ADD:
+			case Opcode.SUB:
+			case Opcode.MUL:
+			case Opcode.DIV:
+			case Opcode.MOD:
+			case Opcode.LT:
+			case Opcode.LE:
+			case Opcode.GT:
+			case Opcode.GE:
+			case Opcode.EQ:
+			case Opcode.AND:
+			case Opcode.OR:
+			case Opcode.JUMP_IF_FALSE:
+			case Opcode.RETURN_VALUE:
+			case Opcode.PRINT_INT:
+			case Opcode.PRINT_BOOL:
+			case Opcode.PRINT_STRING:
+				depth--;
+				break;
+			default:
+				// CALL is accounted for by compileCall()
+				break;
+		}
+		maxDepth = Math.max(maxDepth, depth);
+	}
+}
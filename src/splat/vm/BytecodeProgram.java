@@ -0,0 +1,101 @@
+package splat.vm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import splat.parser.elements.ProgramAST;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.FunctionDecl;
+
+/**
+ * A program compiled for the VirtualMachine: the code of the program body
+ * and of every function, and the constant pool of string texts.
+ *
+ * Functions are numbered in the order they are declared, and CALL refers
+ * to them by that number.  Each one is compiled the first time it is
+ * called, after its body has been loaded if it was parsed lazily.
+ */
+public class BytecodeProgram {
+
+	private final ProgramAST progAST;
+	private CompiledFunction main;
+
+	private final FunctionDecl[] decls;
+	private final CompiledFunction[] functions;
+	private final Map<FunctionDecl, Integer> functionIndices = new IdentityHashMap<>();
+
+	private final List<String> constants = new ArrayList<>();
+	private final Map<String, Integer> constantIndices = new HashMap<>();
+
+	BytecodeProgram(ProgramAST progAST) {
+		this.progAST = progAST;
+
+		List<FunctionDecl> funcDecls = new ArrayList<>();
+		for (Declaration decl : progAST.getDecls()) {
+			if (decl instanceof FunctionDecl) {
+				functionIndices.put((FunctionDecl) decl, funcDecls.size());
+				funcDecls.add((FunctionDecl) decl);
+			}
+		}
+		this.decls = funcDecls.toArray(new FunctionDecl[0]);
+		this.functions = new CompiledFunction[decls.length];
+	}
+
+	public ProgramAST getProgAST() {
+		return progAST;
+	}
+
+	public CompiledFunction getMain() {
+		return main;
+	}
+
+	void setMain(CompiledFunction main) {
+		this.main = main;
+	}
+
+	public int getFunctionCount() {
+		return functions.length;
+	}
+
+	/**
+	 * Returns the code of a function, compiling it first if it has not
+	 * been called before.
+	 *
+	 * @throws splat.parser.elements.declarations.FunctionLoadException if
+	 * 			the function was parsed lazily and its body has an error
+	 */
+	public CompiledFunction getFunction(int index) {
+		CompiledFunction function = functions[index];
+		if (function == null) {
+			decls[index].load();
+			function = BytecodeCompiler.compileFunction(this, decls[index]);
+			functions[index] = function;
+		}
+		return function;
+	}
+
+	int indexOf(FunctionDecl funcDecl) {
+		return functionIndices.get(funcDecl);
+	}
+
+	public String getConstant(int index) {
+		return constants.get(index);
+	}
+
+	/**
+	 * @return the index of the text in the constant pool, where it is only
+	 * 			ever added once
+	 */
+	int addConstant(String text) {
+		Integer index = constantIndices.get(text);
+		if (index == null) {
+			index = constants.size();
+			constants.add(text);
+			constantIndices.put(text, index);
+		}
+		return index;
+	}
+}
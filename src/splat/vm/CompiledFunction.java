@@ -0,0 +1,89 @@
+package splat.vm;
+
+import splat.parser.elements.ASTElement;
+import splat.parser.elements.declarations.FunctionDecl;
+
+/**
+ * The bytecode of one function, or of the program body, with the layout of
+ * its frame.
+ *
+ * A frame takes frameSize consecutive stack slots, numbered the same way
+ * as the slots of the AST walker's Frame: the parameters first, which the
+ * caller has already pushed as arguments, and then the local variables.
+ * The operand stack of the call starts right above them, and never grows
+ * past maxStack values.
+ */
+public class CompiledFunction {
+
+	private final FunctionDecl decl;
+	private final String name;
+	private final int[] code;
+	private final ASTElement[] sources;
+	private final int paramCount;
+	private final int frameSize;
+	private final int maxStack;
+
+	CompiledFunction(FunctionDecl decl, String name, int[] code, ASTElement[] sources,
+					 int paramCount, int frameSize, int maxStack) {
+		this.decl = decl;
+		this.name = name;
+		this.code = code;
+		this.sources = sources;
+		this.paramCount = paramCount;
+		this.frameSize = frameSize;
+		this.maxStack = maxStack;
+	}
+
+	/**
+	 * @return the function compiled, or null for the program body
+	 */
+	public FunctionDecl getDecl() {
+		return decl;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int[] getCode() {
+		return code;
+	}
+
+	/**
+	 * @return the element to report an error at, for the instruction that
+	 * 			starts at pc, or null if that instruction cannot fail
+	 */
+	public ASTElement getSource(int pc) {
+		return sources[pc];
+	}
+
+	public int getParamCount() {
+		return paramCount;
+	}
+
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	public int getMaxStack() {
+		return maxStack;
+	}
+
+	/**
+	 * Lists the instructions one per line, for debugging the compiler.
+	 */
+	public String disassemble() {
+		StringBuilder result = new StringBuilder();
+		result.append(name).append(": params ").append(paramCount)
+				.append(", frame ").append(frameSize)
+				.append(", stack ").append(maxStack).append('\n');
+		for (int pc = 0; pc < code.length; pc += 1 + Opcode.operandCount(code[pc])) {
+			result.append(String.format("%6d  %s", pc, Opcode.name(code[pc])));
+			if (Opcode.operandCount(code[pc]) > 0) {
+				result.append(' ').append(code[pc + 1]);
+			}
+			result.append('\n');
+		}
+		return result.toString();
+	}
+}
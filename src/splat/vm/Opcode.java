@@ -0,0 +1,102 @@
+package splat.vm;
+
+/**
+ * Integer codes for the instructions of the Splat virtual machine.
+ *
+ * Code is an int[] in which each opcode is followed by its operands, if it
+ * has any, and no instruction has more than one.  Every value on the stack
+ * is a long: an Integer as itself, a Boolean as 0 or 1, and a String as the
+ * index of its text in the program's constant pool.  The pool holds every
+ * distinct text once, so EQ compares strings by comparing indices.
+ *
+ * The comment on each group gives the stack before and after, top last.
+ */
+public final class Opcode {
+
+	// ... -> ... value
+	public static final int PUSH_INT = 0;		// operand: the int
+	public static final int PUSH_STRING = 1;	// operand: constant pool index
+	public static final int LOAD = 2;			// operand: frame slot
+
+	// ... value -> ...
+	public static final int STORE = 3;			// operand: frame slot
+
+	// ... a b -> ... (a op b)
+	public static final int ADD = 4;
+	public static final int SUB = 5;
+	public static final int MUL = 6;
+	public static final int DIV = 7;
+	public static final int MOD = 8;
+	public static final int LT = 9;
+	public static final int LE = 10;
+	public static final int GT = 11;
+	public static final int GE = 12;
+	public static final int EQ = 13;
+	public static final int AND = 14;
+	public static final int OR = 15;
+
+	// ... a -> ... (op a)
+	public static final int NEG = 16;
+	public static final int NOT = 17;
+
+	// ... -> ...
+	public static final int JUMP = 18;			// operand: code offset
+
+	// ... condition -> ...
+	public static final int JUMP_IF_FALSE = 19;	// operand: code offset
+
+	// ... arg1 .. argN -> ... [result]
+	public static final int CALL = 20;			// operand: function index
+
+	// ... -> (caller's stack)
+	public static final int RETURN = 21;
+
+	// ... value -> (caller's stack) value
+	public static final int RETURN_VALUE = 22;
+
+	// ... value -> ...
+	public static final int PRINT_INT = 23;
+	public static final int PRINT_BOOL = 24;
+	public static final int PRINT_STRING = 25;
+
+	// Ends the program body
+	public static final int HALT = 26;
+
+	// Ends a non-void function whose last statement did not return
+	public static final int NO_RETURN = 27;
+
+	private static final String[] NAMES = {
+			"PUSH_INT", "PUSH_STRING", "LOAD", "STORE",
+			"ADD", "SUB", "MUL", "DIV", "MOD",
+			"LT", "LE", "GT", "GE", "EQ", "AND", "OR",
+			"NEG", "NOT",
+			"JUMP", "JUMP_IF_FALSE", "CALL", "RETURN", "RETURN_VALUE",
+			"PRINT_INT", "PRINT_BOOL", "PRINT_STRING",
+			"HALT", "NO_RETURN"
+	};
+
+	private Opcode() {
+	}
+
+	public static String name(int opcode) {
+		return NAMES[opcode];
+	}
+
+	/**
+	 * @return how many operands follow the opcode in the code, 0 or 1
+	 */
+	public static int operandCount(int opcode) {
+		switch (opcode) {
+			case PUSH_INT:
+			case PUSH_STRING:
+			case LOAD:
+			case STORE:
+			case JUMP:
+			case JUMP_IF_FALSE:
+			case CALL:
+				return 1;
+			default:
+				return 0;
+		}
+	}
+}
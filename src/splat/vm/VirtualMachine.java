@@ -0,0 +1,234 @@
+package splat.vm;
+
+import java.util.Arrays;
+
+import splat.executor.ExecutionException;
+import splat.executor.Frame;
+import splat.parser.elements.Type;
+import splat.parser.elements.declarations.Declaration;
+import splat.parser.elements.declarations.VariableDecl;
+import splat.parser.elements.expressions.literals.LabelExpression;
+
+/**
+ * Runs a BytecodeProgram, as an alternative to the Executor walking the
+ * AST.  Both produce the same output and the same errors.
+ *
+ * Frames and operands share one contiguous stack of longs: a call's frame
+ * starts where the caller pushed its arguments, so that they become the
+ * first slots of the frame without being copied, and its operand stack
+ * starts right after the frame.  The return addresses are kept apart, in
+ * a separate call stack.
+ *
+ * Values carry no type, since the program was analyzed before it was
+ * compiled, so nothing is checked at run time apart from what analysis
+ * cannot rule out: using a variable that was never assigned, and
+ * dividing by zero.
+ */
+public class VirtualMachine {
+
+	private final BytecodeProgram program;
+
+	private long[] stack = new long[1024];
+
+	// For each active call: the function and pc to return to, and the
+	// caller's frame pointer
+	private CompiledFunction[] callerFunctions = new CompiledFunction[64];
+	private int[] callerPcs = new int[64];
+	private int[] callerFps = new int[64];
+	private int callDepth = 0;
+
+	public VirtualMachine(BytecodeProgram program) {
+		this.program = program;
+	}
+
+	public void runProgram() throws ExecutionException {
+		CompiledFunction function = program.getMain();
+		setProgramFrame(function);
+
+		int[] code = function.getCode();
+		long[] stack = this.stack;
+		int pc = 0;
+		int fp = 0;
+		int sp = function.getFrameSize();
+
+		while (true) {
+			int opcode = code[pc++];
+			switch (opcode) {
+				case Opcode.PUSH_INT:
+				case Opcode.PUSH_STRING:
+					stack[sp++] = code[pc++];
+					break;
+				case Opcode.LOAD: {
+					long value = stack[fp + code[pc++]];
+					if (value == Frame.UNASSIGNED) {
+						LabelExpression label = (LabelExpression) function.getSource(pc - 2);
+						throw new ExecutionException("Cannot use uninitialized label " + label.getLabel(), label);
+					}
+					stack[sp++] = value;
+					break;
+				}
+				case Opcode.STORE:
+					stack[fp + code[pc++]] = stack[--sp];
+					break;
+				case Opcode.ADD:
+					sp--;
+					stack[sp - 1] = (int) stack[sp - 1] + (int) stack[sp];
+					break;
+				case Opcode.SUB:
+					sp--;
+					stack[sp - 1] = (int) stack[sp - 1] - (int) stack[sp];
+					break;
+				case Opcode.MUL:
+					sp--;
+					stack[sp - 1] = (int) stack[sp - 1] * (int) stack[sp];
+					break;
+				case Opcode.DIV:
+					sp--;
+					if (stack[sp] == 0) {
+						throw new ExecutionException("Division by zero", function.getSource(pc - 1));
+					}
+					stack[sp - 1] = (int) stack[sp - 1] / (int) stack[sp];
+					break;
+				case Opcode.MOD:
+					sp--;
+					if (stack[sp] == 0) {
+						throw new ExecutionException("Division by zero", function.getSource(pc - 1));
+					}
+					stack[sp - 1] = (int) stack[sp - 1] % (int) stack[sp];
+					break;
+				case Opcode.LT:
+					sp--;
+					stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+					break;
+				case Opcode.LE:
+					sp--;
+					stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+					break;
+				case Opcode.GT:
+					sp--;
+					stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+					break;
+				case Opcode.GE:
+					sp--;
+					stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+					break;
+				case Opcode.EQ:
+					sp--;
+					stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+					break;
+				case Opcode.AND:
+					sp--;
+					stack[sp - 1] &= stack[sp];
+					break;
+				case Opcode.OR:
+					sp--;
+					stack[sp - 1] |= stack[sp];
+					break;
+				case Opcode.NEG:
+					stack[sp - 1] = -(int) stack[sp - 1];
+					break;
+				case Opcode.NOT:
+					stack[sp - 1] ^= 1;
+					break;
+				case Opcode.JUMP:
+					pc = code[pc];
+					break;
+				case Opcode.JUMP_IF_FALSE:
+					if (stack[--sp] == 0) {
+						pc = code[pc];
+					} else {
+						pc++;
+					}
+					break;
+				case Opcode.CALL: {
+					CompiledFunction callee = program.getFunction(code[pc++]);
+					int calleeFp = sp - callee.getParamCount();
+					int calleeSp = calleeFp + callee.getFrameSize();
+					if (calleeSp + callee.getMaxStack() > stack.length) {
+						stack = growStack(calleeSp + callee.getMaxStack());
+					}
+					pushCall(function, pc, fp);
+
+					// The arguments are already in place; the locals start out
+					// unassigned
+					Arrays.fill(stack, sp, calleeSp, Frame.UNASSIGNED);
+					function = callee;
+					code = callee.getCode();
+					pc = 0;
+					fp = calleeFp;
+					sp = calleeSp;
+					break;
+				}
+				case Opcode.RETURN:
+				case Opcode.RETURN_VALUE: {
+					int resultSp = fp;
+					if (opcode == Opcode.RETURN_VALUE) {
+						stack[resultSp++] = stack[sp - 1];
+					}
+					callDepth--;
+					function = callerFunctions[callDepth];
+					callerFunctions[callDepth] = null;
+					code = function.getCode();
+					pc = callerPcs[callDepth];
+					fp = callerFps[callDepth];
+					sp = resultSp;
+					break;
+				}
+				case Opcode.PRINT_INT:
+					System.out.print((int) stack[--sp]);
+					break;
+				case Opcode.PRINT_BOOL:
+					System.out.print(stack[--sp] != 0);
+					break;
+				case Opcode.PRINT_STRING:
+					System.out.print(program.getConstant((int) stack[--sp]));
+					break;
+				case Opcode.HALT:
+					return;
+				case Opcode.NO_RETURN:
+					throw new ExecutionException("Internal error -- did not return from "
+							+ function.getName() + "()", -1, -1);
+				default:
+					throw new ExecutionException("Internal error -- unknown opcode " + opcode
+							+ " in " + function.getName() + "()", -1, -1);
+			}
+		}
+	}
+
+	/*
+	 * Program variables of type Integer and Boolean start out as 0 and
+	 * false, like in the Executor, and Strings unassigned.
+	 */
+	private void setProgramFrame(CompiledFunction main) {
+		if (main.getFrameSize() + main.getMaxStack() > stack.length) {
+			growStack(main.getFrameSize() + main.getMaxStack());
+		}
+		Arrays.fill(stack, 0, main.getFrameSize(), Frame.UNASSIGNED);
+
+		for (Declaration decl : program.getProgAST().getDecls()) {
+			if (decl instanceof VariableDecl) {
+				VariableDecl varDecl = (VariableDecl) decl;
+				if (varDecl.getType() == Type.Integer() || varDecl.getType() == Type.Boolean()) {
+					stack[varDecl.getSlot()] = 0;
+				}
+			}
+		}
+	}
+
+	private long[] growStack(int needed) {
+		stack = Arrays.copyOf(stack, Math.max(needed, 2 * stack.length));
+		return stack;
+	}
+
+	private void pushCall(CompiledFunction function, int pc, int fp) {
+		if (callDepth == callerPcs.length) {
+			callerFunctions = Arrays.copyOf(callerFunctions, 2 * callDepth);
+			callerPcs = Arrays.copyOf(callerPcs, 2 * callDepth);
+			callerFps = Arrays.copyOf(callerFps, 2 * callDepth);
+		}
+		callerFunctions[callDepth] = function;
+		callerPcs[callDepth] = pc;
+		callerFps[callDepth] = fp;
+		callDepth++;
+	}
+}